@@ -7,15 +7,36 @@ def sourceforgeWebHost = 'web.sourceforge.net'
 /* URL for downloading raw CEDict dictionary data */
 ext.cedictDataUrl = 'http://www.mdbg.net/chindict/export/cedict/cedict_1_0_ts_utf-8_mdbg.txt.gz'
 
+/* Maximum number of dictionary entries held in memory while generating a dictionary database */
+ext.datagenMaxEntriesInMemory = 50000
+
+/* Minimum dictionary load throughput (entries per second) below which a dictionary database build fails */
+ext.datagenMinEntriesPerSecond = 1000
+
+/* Compression codec for dictionary artifacts (gzip, xz or stored) */
+ext.dictionaryCompressionCodec = 'xz'
+
+/* Maximum simplified headword length of entries in the core tier of a dictionary, which is installed first */
+ext.dictionaryCoreTierMaxHeadwordLength = 2
+
 /* Protocol for publishing dictionary artifacts */
 ext.dictionaryArtifactPublishType = 'amazon'
 
 /* URL prefix for downloading published dictionary artifacts */
 ext.dictionaryArtifactUrlPrefix = 'https://s3.amazonaws.com/juzidian-dictionaries/'
 
+/* URL prefixes of mirrors that published dictionary artifacts are also downloaded from */
+ext.dictionaryArtifactMirrorUrlPrefixes = []
+
+/* Milliseconds the measured latency of a dictionary artifact mirror is used before it is probed again */
+ext.dictionaryMirrorProbeIntervalMillis = 3600000
+
 /* URL prefix for downloading dictionary registries */
 ext.dictionaryRegistryUrlPrefix = 'http://juzidian.org/dictionaries/'
 
+/* Milliseconds a cached dictionary registry is used before it is revalidated with the server */
+ext.dictionaryRegistryCacheTtlMillis = 86400000
+
 /* Remote server details for publishing a dictionary registry */
 ext.dictionaryRegistryPublishHost = sourceforgeWebHost
 ext.dictionaryRegistryPublishPath = '/home/project-web/juzidian/htdocs/dictionaries'
@@ -8,15 +8,36 @@ def hostname = java.net.InetAddress.getLocalHost().getHostName()
 /* URL for downloading raw CEDict dictionary data */
 ext.cedictDataUrl = "file://${userhome}/Downloads/cedict_1_0_ts_utf-8_mdbg.txt.gz"
 
+/* Maximum number of dictionary entries held in memory while generating a dictionary database */
+ext.datagenMaxEntriesInMemory = 50000
+
+/* Minimum dictionary load throughput (entries per second) below which a dictionary database build fails */
+ext.datagenMinEntriesPerSecond = 0
+
+/* Compression codec for dictionary artifacts (gzip, xz or stored) */
+ext.dictionaryCompressionCodec = 'stored'
+
+/* Maximum simplified headword length of entries in the core tier of a dictionary, which is installed first */
+ext.dictionaryCoreTierMaxHeadwordLength = 2
+
 /* Protocol for publishing dictionary artifacts */
 ext.dictionaryArtifactPublishType = 'rsync'
 
 /* URL prefix for downloading published dictionary artifacts */
 ext.dictionaryArtifactUrlPrefix = "http://${hostname}:8000/"
 
+/* URL prefixes of mirrors that published dictionary artifacts are also downloaded from */
+ext.dictionaryArtifactMirrorUrlPrefixes = []
+
+/* Milliseconds the measured latency of a dictionary artifact mirror is used before it is probed again */
+ext.dictionaryMirrorProbeIntervalMillis = 0
+
 /* URL prefix for downloading dictionary registries */
 ext.dictionaryRegistryUrlPrefix = "http://${hostname}:8000/"
 
+/* Milliseconds a cached dictionary registry is used before it is revalidated with the server */
+ext.dictionaryRegistryCacheTtlMillis = 0
+
 /* Remote server details for publishing a dictionary registry */
 ext.dictionaryRegistryPublishHost = 'localhost'
 ext.dictionaryRegistryPublishPath = '/usr/share/juzidian-dictionary-repo'
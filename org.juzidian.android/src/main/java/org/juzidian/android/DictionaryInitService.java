@@ -18,6 +18,7 @@
  */
 package org.juzidian.android;
 
+import org.juzidian.dataload.DictionaryPatchResource;
 import org.juzidian.dataload.DictionaryResource;
 
 /**
@@ -28,10 +29,19 @@ public interface DictionaryInitService {
 	/**
 	 * Check if the dictionary is initialized.
 	 * 
-	 * @return <code>true</code> if the dictionary database is initialized.
+	 * @return <code>true</code> if the dictionary database is initialized,
+	 *         though it may hold only the core tier of the dictionary.
 	 */
 	boolean isDictionaryInitialized();
 
+	/**
+	 * Check if only the core tier of a tiered dictionary is installed.
+	 * 
+	 * @return <code>true</code> if searches may not find every matching entry
+	 *         until the remainder tier is merged.
+	 */
+	boolean isDictionaryPartial();
+
 	/**
 	 * Check if dictionary initialization is in progress.
 	 * 
@@ -50,6 +60,18 @@ public interface DictionaryInitService {
 	 */
 	void downloadDictionary(final DictionaryResource dictionaryResource);
 
+	/**
+	 * Schedules the asynchronous download of the remainder tier of a
+	 * dictionary and its merge into the installed core tier.
+	 * <p>
+	 * Listeners are not notified of the merge, as the dictionary remains
+	 * searchable throughout.
+	 * 
+	 * @throws IllegalStateException if there is already a download in progress
+	 *         or the remainder tier does not apply to the installed dictionary.
+	 */
+	void mergeRemainderTier(final DictionaryPatchResource remainderTier);
+
 	/**
 	 * Add a {@link DictionaryInitListener} to receive download
 	 * notifications of download events.
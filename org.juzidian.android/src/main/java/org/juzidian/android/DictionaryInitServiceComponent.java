@@ -18,19 +18,30 @@
  */
 package org.juzidian.android;
 
+import static android.database.sqlite.SQLiteDatabase.NO_LOCALIZED_COLLATORS;
+import static android.database.sqlite.SQLiteDatabase.OPEN_READONLY;
+import static android.database.sqlite.SQLiteDatabase.OPEN_READWRITE;
 import static java.util.Collections.synchronizedSet;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.SQLException;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
 
 import javax.inject.Inject;
-
+import javax.inject.Provider;
+
+import org.juzidian.core.DictionaryDataStore;
+import org.juzidian.core.DictionaryDataStoreEntry;
+import org.juzidian.core.DictionaryDataStoreMetadata;
+import org.juzidian.core.DictionaryDataStorePatch;
+import org.juzidian.core.DictionaryDataStoreReference;
+import org.juzidian.dataload.CompressionCodec;
+import org.juzidian.dataload.DictionaryPatchResource;
 import org.juzidian.dataload.DictionaryResource;
+import org.juzidian.util.AtomicFileOutputStream;
 import org.juzidian.util.IoUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,10 +50,16 @@ import roboguice.service.RoboService;
 import android.app.DownloadManager;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.AsyncTask;
 import android.os.IBinder;
 import android.os.ParcelFileDescriptor;
 
+import com.j256.ormlite.android.AndroidConnectionSource;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.support.ConnectionSource;
+
 /**
  * Android service component for asynchronously downloading and installing
  * dictionaries.
@@ -75,6 +92,10 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 	@Inject
 	private JuzidianDownloadManager downloadManager;
 
+	/* the data store used for searches, which is only opened once installed */
+	@Inject
+	private Provider<DictionaryDataStore> searchDataStore;
+
 	private final DownloadHandler downloadHandler = new DownloadHandler();
 
 	private final Set<DictionaryInitListener> downloadListeners = synchronizedSet(new HashSet<DictionaryInitListener>());
@@ -91,10 +112,25 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 	 */
 	private DictionaryInitStatus oldStatus;
 
+	/**
+	 * The source version of the installed dictionary, or <code>null</code> if
+	 * there is none or it is not known.
+	 */
+	private volatile String sourceVersion;
+
+	/**
+	 * The remainder tier to merge once the core tier being downloaded is
+	 * installed.
+	 */
+	private DictionaryPatchResource pendingRemainderTier;
+
 	@Override
 	public void onCreate() {
 		super.onCreate();
 		this.status = this.dbExists() ? DictionaryInitStatus.INITIALIZED : DictionaryInitStatus.UNINITIALIZED;
+		if (this.dbExists()) {
+			this.sourceVersion = this.readSourceVersion();
+		}
 	}
 
 	private boolean dbExists() {
@@ -107,7 +143,13 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 
 	@Override
 	public boolean isDictionaryInitialized() {
-		return DictionaryInitStatus.INITIALIZED.equals(this.status);
+		return this.status.isSearchable();
+	}
+
+	@Override
+	public boolean isDictionaryPartial() {
+		final String sourceVersion = this.sourceVersion;
+		return sourceVersion != null && sourceVersion.endsWith(DictionaryDataStore.CORE_TIER_SOURCE_VERSION_SUFFIX);
 	}
 
 	@Override
@@ -129,7 +171,27 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 		 */
 		this.startService(new Intent(this, DictionaryInitServiceComponent.class));
 		this.status = DictionaryInitStatus.DOWNLOADING;
-		AsyncTask.execute(new RunnableDictionaryDownloader(dictionaryResource));
+		if (!this.oldStatus.isSearchable() && dictionaryResource.getCoreTier() != null && dictionaryResource.getRemainderTier() != null) {
+			LOGGER.debug("Downloading core tier of dictionary database first");
+			this.pendingRemainderTier = dictionaryResource.getRemainderTier();
+			AsyncTask.execute(new RunnableDictionaryDownloader(dictionaryResource.getCoreTier()));
+		} else {
+			AsyncTask.execute(new RunnableDictionaryDownloader(dictionaryResource));
+		}
+	}
+
+	@Override
+	public synchronized void mergeRemainderTier(final DictionaryPatchResource remainderTier) {
+		if (this.status.isInProgress()) {
+			throw new IllegalStateException("Initialization already in progress");
+		}
+		if (!remainderTier.getFromSourceVersion().equals(this.sourceVersion)) {
+			throw new IllegalStateException("Remainder tier does not apply to source version " + this.sourceVersion);
+		}
+		this.oldStatus = this.status;
+		this.startService(new Intent(this, DictionaryInitServiceComponent.class));
+		this.status = DictionaryInitStatus.MERGING;
+		AsyncTask.execute(new RunnableDictionaryDownloader(remainderTier));
 	}
 
 	private void doDownload(final DictionaryResource dictionaryResource) {
@@ -144,8 +206,12 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 	}
 
 	private void onDownloadSuccess() {
-		this.status = DictionaryInitStatus.INSTALLING;
-		AsyncTask.execute(new RunnableDictionaryInstaller());
+		if (DictionaryInitStatus.MERGING.equals(this.status)) {
+			AsyncTask.execute(new RunnableRemainderTierMerger());
+		} else {
+			this.status = DictionaryInitStatus.INSTALLING;
+			AsyncTask.execute(new RunnableDictionaryInstaller());
+		}
 	}
 
 	private void installDownloadedDictionary() {
@@ -158,15 +224,87 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 		}
 	}
 
+	private void mergeDownloadedRemainderTier() {
+		try {
+			this.applyRemainderTier(this.downloadManager.getDownloadedFile());
+			this.onMergeSuccess();
+		} catch (final Throwable e) {
+			LOGGER.error("Failed to merge remainder tier into dictionary", e);
+			this.onMergeFailure();
+		}
+	}
+
+	/*
+	 * Searches use a read-only connection, so the merge writes through its own
+	 * connection; its changes become visible to searches once committed.
+	 */
+	private void applyRemainderTier(final ParcelFileDescriptor fileDescriptor) throws IOException, SQLException {
+		LOGGER.debug("Merging remainder tier from downloaded file");
+		final InputStream patchInputStream = CompressionCodec.detectAndDecompress(new ParcelFileDescriptor.AutoCloseInputStream(
+				fileDescriptor));
+		final DictionaryDataStorePatch patch;
+		try {
+			patch = DictionaryDataStorePatch.readFrom(patchInputStream);
+		} finally {
+			patchInputStream.close();
+		}
+		final ConnectionSource connectionSource = this.openConnectionSource(OPEN_READWRITE);
+		try {
+			createDataStore(connectionSource).applyPatch(patch);
+		} finally {
+			connectionSource.close();
+		}
+	}
+
+	private String readSourceVersion() {
+		try {
+			final ConnectionSource connectionSource = this.openConnectionSource(OPEN_READONLY);
+			try {
+				return createDataStore(connectionSource).getSourceVersion();
+			} finally {
+				connectionSource.close();
+			}
+		} catch (final Exception e) {
+			LOGGER.warn("Failed to read dictionary source version", e);
+			return null;
+		}
+	}
+
+	private ConnectionSource openConnectionSource(final int openFlags) {
+		return new AndroidConnectionSource(SQLiteDatabase.openDatabase(this.dictionaryDbPath, null, openFlags | NO_LOCALIZED_COLLATORS));
+	}
+
+	private static DictionaryDataStore createDataStore(final ConnectionSource connectionSource) throws SQLException {
+		final Dao<DictionaryDataStoreEntry, Long> entryDao = DaoManager.createDao(connectionSource, DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> metadataDao = DaoManager.createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> referenceDao = DaoManager.createDao(connectionSource, DictionaryDataStoreReference.class);
+		return new DictionaryDataStore(entryDao, metadataDao, referenceDao);
+	}
+
 	private void installDictionary(final ParcelFileDescriptor fileDescriptor) throws IOException {
 		LOGGER.debug("Installing dictionary database from downloaded file");
 		final InputStream rawInputStream = new ParcelFileDescriptor.AutoCloseInputStream(fileDescriptor);
-		final GZIPInputStream gzipInputStream = new GZIPInputStream(rawInputStream);
-		IoUtil.copy(gzipInputStream, new FileOutputStream(this.dictionaryDbPath));
+		final InputStream dbInputStream = CompressionCodec.detectAndDecompress(rawInputStream);
+		/*
+		 * The activity is restarted once installation succeeds, which opens a
+		 * new connection to the replaced file.
+		 */
+		final AtomicFileOutputStream dbOutputStream = new AtomicFileOutputStream(new File(this.dictionaryDbPath));
+		try {
+			IoUtil.copy(dbInputStream, dbOutputStream);
+			dbOutputStream.commit();
+		} finally {
+			dbOutputStream.discard();
+		}
 	}
 
 	private void onDownloadFailure() {
 		LOGGER.error("Download was unsuccessful");
+		if (DictionaryInitStatus.MERGING.equals(this.status)) {
+			this.onMergeFailure();
+			return;
+		}
+		this.pendingRemainderTier = null;
 		this.status = this.oldStatus;
 		try {
 			this.notifyFailure();
@@ -176,6 +314,19 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 	}
 
 	private void onInstallSuccess() {
+		this.sourceVersion = this.readSourceVersion();
+		final DictionaryPatchResource remainderTier = this.pendingRemainderTier;
+		this.pendingRemainderTier = null;
+		if (remainderTier != null) {
+			this.status = DictionaryInitStatus.MERGING;
+			try {
+				this.notifySuccess();
+			} finally {
+				this.clearDownload();
+			}
+			this.doDownload(remainderTier);
+			return;
+		}
 		this.status = DictionaryInitStatus.INITIALIZED;
 		try {
 			this.notifySuccess();
@@ -184,7 +335,25 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 		}
 	}
 
+	/*
+	 * Listeners are not notified of the merge; the core tier stays searchable
+	 * and a failed merge can be retried.
+	 */
+	private void onMergeSuccess() {
+		this.sourceVersion = this.readSourceVersion();
+		this.searchDataStore.get().reloadMetadata();
+		LOGGER.info("Merged remainder tier into dictionary");
+		this.status = DictionaryInitStatus.INITIALIZED;
+		this.cleanUp();
+	}
+
+	private void onMergeFailure() {
+		this.status = DictionaryInitStatus.INITIALIZED;
+		this.cleanUp();
+	}
+
 	private void onInstallFailure() {
+		this.pendingRemainderTier = null;
 		this.status = this.oldStatus;
 		try {
 			if (DictionaryInitStatus.UNINITIALIZED.equals(this.status)) {
@@ -217,14 +386,20 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 	}
 
 	private void cleanUp() {
+		try {
+			this.clearDownload();
+		} finally {
+			this.oldStatus = null;
+			this.stopSelf();
+		}
+	}
+
+	private void clearDownload() {
 		try {
 			this.unregisterDownloadReceiver();
 			this.downloadManager.clearDownload();
 		} catch (final Throwable e) {
 			LOGGER.warn("Uncaught exception while cleaning up download", e);
-		} finally {
-			this.oldStatus = null;
-			this.stopSelf();
 		}
 	}
 
@@ -282,6 +457,15 @@ public class DictionaryInitServiceComponent extends RoboService implements Dicti
 
 	}
 
+	private class RunnableRemainderTierMerger implements Runnable {
+
+		@Override
+		public void run() {
+			DictionaryInitServiceComponent.this.mergeDownloadedRemainderTier();
+		}
+
+	}
+
 	/**
 	 * A binder for a {@link DictionaryInitServiceComponent}.
 	 */
@@ -23,7 +23,8 @@ package org.juzidian.android;
  * Enumeration of the initialization states for a dictionary database.
  * <p>
  * The states, in sequence, are: {@link #UNINITIALIZED}, {@link #DOWNLOADING},
- * {@link #INSTALLING} and {@link #INITIALIZED}.
+ * {@link #INSTALLING}, {@link #MERGING} (tiered dictionaries only) and
+ * {@link #INITIALIZED}.
  */
 public enum DictionaryInitStatus {
 
@@ -42,13 +43,22 @@ public enum DictionaryInitStatus {
 	 */
 	INSTALLING(true),
 
+	/**
+	 * Initialization is in progress - the core tier of a dictionary is
+	 * installed and searchable, and the remainder is being downloaded and
+	 * merged into it.
+	 */
+	MERGING(true, true),
+
 	/**
 	 * A dictionary has been successfully initialized.
 	 */
-	INITIALIZED;
+	INITIALIZED(false, true);
 
 	private boolean inProgress;
 
+	private boolean searchable;
+
 	private DictionaryInitStatus() {
 	}
 
@@ -56,6 +66,11 @@ public enum DictionaryInitStatus {
 		this.inProgress = inProgress;
 	}
 
+	private DictionaryInitStatus(final boolean inProgress, final boolean searchable) {
+		this.inProgress = inProgress;
+		this.searchable = searchable;
+	}
+
 	/**
 	 * Check if this status is an "in progress" status ({@link #DOWNLOADING} or
 	 * {@link #INSTALLING}).
@@ -66,4 +81,14 @@ public enum DictionaryInitStatus {
 		return this.inProgress;
 	}
 
+	/**
+	 * Check if a dictionary can be searched in this status ({@link #MERGING}
+	 * or {@link #INITIALIZED}).
+	 * 
+	 * @return <code>true</code> if a dictionary is installed.
+	 */
+	public boolean isSearchable() {
+		return this.searchable;
+	}
+
 }
@@ -18,16 +18,34 @@
  */
 package org.juzidian.android;
 
-import org.juzidian.core.SearchCancelledException;
+import java.util.concurrent.Executor;
+
 import org.juzidian.core.SearchResults;
 import org.juzidian.core.SearchResultsFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 
 /**
- * Task to asynchronously get results from a {@link SearchResultsFuture}.
+ * Task to deliver results from a {@link SearchResultsFuture} on the main
+ * thread once the search is done, without blocking a thread to wait for them.
  */
-public class DictionarySearchTask extends AsyncTask<SearchResultsFuture, Void, SearchResults> {
+public class DictionarySearchTask implements SearchResultsFuture.Callback {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DictionarySearchTask.class);
+
+	private static final Executor MAIN_THREAD_EXECUTOR = new Executor() {
+
+		private final Handler handler = new Handler(Looper.getMainLooper());
+
+		@Override
+		public void execute(final Runnable command) {
+			this.handler.post(command);
+		}
+
+	};
 
 	private final DictionarySearchTaskListener listener;
 
@@ -35,19 +53,28 @@ public class DictionarySearchTask extends AsyncTask<SearchResultsFuture, Void, S
 		this.listener = listener;
 	}
 
+	/**
+	 * @param searchResultsFuture the {@link SearchResultsFuture} to deliver
+	 *        results from.
+	 */
+	public void execute(final SearchResultsFuture searchResultsFuture) {
+		searchResultsFuture.addCallback(this, MAIN_THREAD_EXECUTOR);
+	}
+
 	@Override
-	protected SearchResults doInBackground(final SearchResultsFuture... searchResultsFutures) {
-		final SearchResultsFuture searchResultsFuture = searchResultsFutures[0];
-		try {
-			return searchResultsFuture.getResults();
-		} catch (SearchCancelledException e) {
-			return null;
-		}
+	public void onResults(final SearchResults searchResults) {
+		this.listener.searchComplete(searchResults);
+	}
+
+	@Override
+	public void onCancelled() {
+		this.listener.searchComplete(null);
 	}
 
 	@Override
-	protected void onPostExecute(final SearchResults result) {
-		this.listener.searchComplete(result);
+	public void onFailure(final Throwable cause) {
+		LOGGER.error("Search failed", cause);
+		this.listener.searchComplete(null);
 	}
 
 }
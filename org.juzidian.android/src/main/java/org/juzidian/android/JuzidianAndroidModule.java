@@ -18,11 +18,13 @@
  */
 package org.juzidian.android;
 
+import java.io.File;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.juzidian.core.AsyncQueryExecutor;
+import org.juzidian.core.PriorityQueryExecutor;
+import org.juzidian.dataload.DictionaryRegistryCacheDirectory;
 
 import roboguice.inject.SharedPreferencesProvider;
 import roboguice.inject.SystemServiceProvider;
@@ -41,8 +43,10 @@ public class JuzidianAndroidModule extends AbstractModule {
 		this.bind(DownloadManager.class).toProvider(new SystemServiceProvider<DownloadManager>(Context.DOWNLOAD_SERVICE));
 		this.bind(SharedPreferences.class).annotatedWith(DownloadSharedPrefs.class).toProvider(new SharedPreferencesProvider("juzidian-download-info"));
 		this.bindConstant().annotatedWith(DictionaryDbPath.class).to("/data/data/org.juzidian.android/juzidian-dictionary.db");
+		this.bind(File.class).annotatedWith(DictionaryRegistryCacheDirectory.class).toInstance(new File("/data/data/org.juzidian.android/cache"));
 		this.bind(Properties.class).toProvider(BuildInfoPropertiesProvider.class);
-		this.bind(ExecutorService.class).annotatedWith(AsyncQueryExecutor.class).toInstance(Executors.newSingleThreadExecutor());
+		this.bind(ExecutorService.class).annotatedWith(AsyncQueryExecutor.class).toInstance(
+				new PriorityQueryExecutor(1, PriorityQueryExecutor.DEFAULT_AGING_MILLIS));
 	}
 
 }
@@ -5,6 +5,8 @@ import javax.inject.Inject;
 import org.juzidian.core.DictionaryDataStore;
 import org.juzidian.core.SearchQuery;
 import org.juzidian.core.SearchType;
+import org.juzidian.dataload.DictionaryMirrorSelector;
+import org.juzidian.dataload.DictionaryPatchResource;
 import org.juzidian.dataload.DictionaryResource;
 import org.juzidian.dataload.DictionaryResourceRegistry;
 import org.juzidian.dataload.DictionaryResourceRegistryService;
@@ -35,6 +37,9 @@ public class MainActivity extends RoboActivity {
 	@Inject
 	private DictionaryResourceRegistryService registryService;
 
+	@Inject
+	private DictionaryMirrorSelector mirrorSelector;
+
 	@InjectView(R.id.searchView)
 	@Nullable
 	private SearchView searchView;
@@ -81,6 +86,9 @@ public class MainActivity extends RoboActivity {
 					this.savedSearchType = null;
 					this.savedSearchText = null;
 				}
+				if (dictionaryInitService.isDictionaryPartial() && !dictionaryInitService.isInitializationInProgress()) {
+					AsyncTask.execute(new RunnableRemainderTierMerger());
+				}
 			} else {
 				this.initializeDatabase();
 				this.setContentView(R.layout.download_view);
@@ -114,9 +122,33 @@ public class MainActivity extends RoboActivity {
 		}
 	}
 
+	private class RunnableRemainderTierMerger implements Runnable {
+		@Override
+		public void run() {
+			MainActivity.this.startRemainderTierMerge();
+		}
+	}
+
+	/*
+	 * Resumes a merge that did not complete; the core tier remains searchable
+	 * if this fails, so failures are not reported.
+	 */
+	private void startRemainderTierMerge() {
+		try {
+			final DictionaryPatchResource remainderTier = this.getDictionaryResource().getRemainderTier();
+			if (remainderTier != null) {
+				this.dictionaryInitService.mergeRemainderTier(remainderTier);
+			}
+		} catch (final DictonaryResourceRegistryServiceException e) {
+			LOGGER.warn("Failed to resume merge of remainder tier", e);
+		} catch (final IllegalStateException e) {
+			LOGGER.warn("Failed to resume merge of remainder tier", e);
+		}
+	}
+
 	private DictionaryResource getDictionaryResource() throws DictonaryResourceRegistryServiceException {
 		final DictionaryResourceRegistry registry = this.registryService.getDictionaryResourceRegistry(DictionaryDataStore.DATA_FORMAT_VERSION);
-		final DictionaryResource dictionaryResource = registry.getDictionaryResources().get(0);
+		final DictionaryResource dictionaryResource = this.mirrorSelector.selectMirror(registry.getDictionaryResources().get(0));
 		return dictionaryResource;
 	}
 
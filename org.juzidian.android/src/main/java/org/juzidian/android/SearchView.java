@@ -24,6 +24,7 @@ import org.juzidian.core.Dictionary;
 import org.juzidian.core.SearchQuery;
 import org.juzidian.core.SearchResults;
 import org.juzidian.core.SearchResultsFuture;
+import org.juzidian.core.SearchSession;
 import org.juzidian.core.SearchType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,19 +44,35 @@ public class SearchView extends RelativeLayout implements DictionarySearchTaskLi
 
 	private static final int PAGE_SIZE = 25;
 
+	/**
+	 * Milliseconds to wait for further input before running a search.
+	 */
+	private static final long SEARCH_DEBOUNCE_MILLIS = 150;
+
+	/**
+	 * Milliseconds after which the first page of results is shown as found so
+	 * far, and completed afterwards.
+	 */
+	private static final long FIRST_PAGE_LATENCY_BUDGET_MILLIS = 30;
+
 	@Inject
 	private Dictionary dictionary;
 
+	private final SearchSession searchSession;
+
 	private SearchQuery currentQuery;
 
 	private SearchResultsFuture currentSearchResultsFuture;
 
 	private SearchResults currentSearchResults;
 
+	private boolean showingPartialPage;
+
 	public SearchView(final Context context, final AttributeSet attrs) {
 		super(context, attrs);
 		LayoutInflater.from(context).inflate(R.layout.search_view, this, true);
 		RoboGuice.injectMembers(context, this);
+		this.searchSession = this.dictionary.createSearchSession(SEARCH_DEBOUNCE_MILLIS, true);
 		this.getSearchBar().setSearchTriggerListener(this);
 		this.getSearchResultsView().setPageRequestListener(this);
 	}
@@ -66,7 +83,7 @@ public class SearchView extends RelativeLayout implements DictionarySearchTaskLi
 		if (currentSearchResultsFuture != null) {
 			currentSearchResultsFuture.cancel();
 		}
-		currentSearchResultsFuture = dictionary.findAsync(searchQuery);
+		currentSearchResultsFuture = searchSession.findAsync(searchQuery);
 		final DictionarySearchTask dictionarySearchTask = new DictionarySearchTask(this);
 		dictionarySearchTask.execute(currentSearchResultsFuture);
 	}
@@ -83,13 +100,14 @@ public class SearchView extends RelativeLayout implements DictionarySearchTaskLi
 	public void searchTriggered(final SearchType searchType, final String searchText) {
 		LOGGER.debug("Search triggered: {} - {}", searchType, searchText);
 		this.currentSearchResults = null;
+		this.showingPartialPage = false;
 		final SearchResultsView searchResultsView = this.getSearchResultsView();
 		searchResultsView.clearSearchResults();
 		if (searchType == null) {
 			this.currentQuery = null;
 			searchResultsView.showLoadingIndicator(false);
 		} else {
-			final SearchQuery searchQuery = new SearchQuery(searchType, searchText, PAGE_SIZE, 0);
+			final SearchQuery searchQuery = new SearchQuery(searchType, searchText, PAGE_SIZE, 0).withLatencyBudget(FIRST_PAGE_LATENCY_BUDGET_MILLIS);
 			this.doSearch(searchQuery);
 		}
 	}
@@ -112,12 +130,22 @@ public class SearchView extends RelativeLayout implements DictionarySearchTaskLi
 		if (searchResults == null || !searchResults.getSearchQuery().equals(this.currentQuery)) {
 			return;
 		}
-		this.currentSearchResults = searchResults;
 		final SearchResultsView searchResultsView = this.getSearchResultsView();
+		if (this.showingPartialPage) {
+			/* only the first page has a latency budget, so it is the only page shown */
+			searchResultsView.clearSearchResults();
+			this.showingPartialPage = false;
+		}
+		searchResultsView.addSearchResults(searchResults.getEntries());
+		if (searchResults.getContinuation() != null) {
+			this.showingPartialPage = true;
+			this.doSearch(searchResults.getContinuation());
+			return;
+		}
+		this.currentSearchResults = searchResults;
 		if (searchResults.isLastPage()) {
 			searchResultsView.setAllowMoreResults(false);
 		}
-		searchResultsView.addSearchResults(searchResults.getEntries());
 		searchResultsView.showLoadingIndicator(false);
 	}
 
@@ -37,6 +37,8 @@ public interface CedictLoadHandler {
 
 	/**
 	 * A CEDict input stream has finished being read.
+	 * 
+	 * @param statistics {@link CedictLoadStatistics} describing the load.
 	 */
-	void loadingFinished();
+	void loadingFinished(CedictLoadStatistics statistics);
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright Nathan Jones 2013
+ * 
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.cedict;
+
+/**
+ * Measurements taken by a {@link CedictLoader} while reading CEDict data.
+ */
+public class CedictLoadStatistics {
+
+	private final long bytesRead;
+
+	private final long linesRead;
+
+	private final long entriesLoaded;
+
+	private final long loadingTimeNanos;
+
+	private final long handlerTimeNanos;
+
+	public CedictLoadStatistics(final long bytesRead, final long linesRead, final long entriesLoaded, final long loadingTimeNanos,
+			final long handlerTimeNanos) {
+		this.bytesRead = bytesRead;
+		this.linesRead = linesRead;
+		this.entriesLoaded = entriesLoaded;
+		this.loadingTimeNanos = loadingTimeNanos;
+		this.handlerTimeNanos = handlerTimeNanos;
+	}
+
+	/**
+	 * @return the number of bytes read from the CEDict input stream.
+	 */
+	public long getBytesRead() {
+		return this.bytesRead;
+	}
+
+	/**
+	 * @return the number of lines read, including comment lines.
+	 */
+	public long getLinesRead() {
+		return this.linesRead;
+	}
+
+	/**
+	 * @return the number of entries passed to the load handler.
+	 */
+	public long getEntriesLoaded() {
+		return this.entriesLoaded;
+	}
+
+	/**
+	 * @return the total time taken to load the data, including time spent in
+	 *         the load handler.
+	 */
+	public long getLoadingTimeNanos() {
+		return this.loadingTimeNanos;
+	}
+
+	/**
+	 * @return the time spent in {@link CedictLoadHandler#entryLoaded(CedictEntry)}.
+	 */
+	public long getHandlerTimeNanos() {
+		return this.handlerTimeNanos;
+	}
+
+	/**
+	 * @return the time spent reading and parsing lines, excluding time spent
+	 *         in the load handler.
+	 */
+	public long getParsingTimeNanos() {
+		return this.loadingTimeNanos - this.handlerTimeNanos;
+	}
+
+	/**
+	 * @return the number of lines read and parsed per second, excluding time
+	 *         spent in the load handler.
+	 */
+	public double getLinesPerSecond() {
+		return ratePerSecond(this.linesRead, this.getParsingTimeNanos());
+	}
+
+	static double ratePerSecond(final long count, final long nanos) {
+		if (nanos <= 0) {
+			return 0;
+		}
+		return count * 1000000000.0 / nanos;
+	}
+
+	@Override
+	public String toString() {
+		return "CedictLoadStatistics [bytesRead=" + this.bytesRead + ", linesRead=" + this.linesRead + ", entriesLoaded="
+				+ this.entriesLoaded + ", loadingTimeNanos=" + this.loadingTimeNanos + ", handlerTimeNanos=" + this.handlerTimeNanos + "]";
+	}
+
+}
@@ -43,23 +43,37 @@ public class CedictLoader {
 	 * <p>
 	 * No validation is performed on the input; behaviour is undefined for
 	 * invalid input.
+	 * <p>
+	 * When loading finishes the handler is given {@link CedictLoadStatistics}
+	 * describing the volume of data read and the time taken.
 	 * 
 	 * @param loadHandler an {@link CedictLoadHandler} to notify of entry
 	 *        loading events.
 	 * @throws IOException if an entry fails to be read.
 	 */
 	public void loadEntries(final CedictLoadHandler loadHandler) throws IOException {
-		final Reader fileReader = new InputStreamReader(this.inputStreamProvider.getInputStream(), "UTF-8");
+		final CountingInputStream inputStream = new CountingInputStream(this.inputStreamProvider.getInputStream());
+		final Reader fileReader = new InputStreamReader(inputStream, "UTF-8");
 		final BufferedReader bufferedReader = new BufferedReader(fileReader);
 		loadHandler.loadingStarted();
+		final long startTime = System.nanoTime();
+		long handlerTime = 0;
+		long lineCount = 0;
+		long entryCount = 0;
 		String line = bufferedReader.readLine();
 		while (line != null) {
+			lineCount += 1;
 			if (!line.startsWith("#")) {
-				loadHandler.entryLoaded(new CedictLineParser(line).parse());
+				final CedictEntry entry = new CedictLineParser(line).parse();
+				final long handlerStartTime = System.nanoTime();
+				loadHandler.entryLoaded(entry);
+				handlerTime += System.nanoTime() - handlerStartTime;
+				entryCount += 1;
 			}
 			line = bufferedReader.readLine();
 		}
-		loadHandler.loadingFinished();
+		final long loadingTime = System.nanoTime() - startTime;
+		loadHandler.loadingFinished(new CedictLoadStatistics(inputStream.getByteCount(), lineCount, entryCount, loadingTime, handlerTime));
 	}
 
 }
\ No newline at end of file
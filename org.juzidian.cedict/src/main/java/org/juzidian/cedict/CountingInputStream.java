@@ -0,0 +1,70 @@
+/*
+ * Copyright Nathan Jones 2013
+ * 
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.cedict;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from an underlying input stream.
+ */
+class CountingInputStream extends FilterInputStream {
+
+	private long byteCount;
+
+	public CountingInputStream(final InputStream inputStream) {
+		super(inputStream);
+	}
+
+	public long getByteCount() {
+		return this.byteCount;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int value = super.read();
+		if (value != -1) {
+			this.byteCount += 1;
+		}
+		return value;
+	}
+
+	@Override
+	public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+		final int bytesRead = super.read(buffer, offset, length);
+		if (bytesRead > 0) {
+			this.byteCount += bytesRead;
+		}
+		return bytesRead;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		final long skipped = super.skip(n);
+		this.byteCount += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright Nathan Jones 2013
+ * 
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.cedict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CedictLoaderTest {
+
+	private static final String CEDICT_DATA = "# CC-CEDICT\n" + "學生 学生 [xue2 sheng5] /student/schoolchild/\n"
+			+ "你好 你好 [ni3 hao3] /Hello!/Hi!/\n";
+
+	private byte[] cedictBytes;
+
+	private RecordingLoadHandler loadHandler;
+
+	@Before
+	public void setUp() throws Exception {
+		this.cedictBytes = CEDICT_DATA.getBytes("UTF-8");
+		this.loadHandler = new RecordingLoadHandler();
+		new CedictLoader(new CedictInputStreamProvider() {
+
+			@Override
+			public InputStream getInputStream() {
+				return new ByteArrayInputStream(CedictLoaderTest.this.cedictBytes);
+			}
+
+		}).loadEntries(this.loadHandler);
+	}
+
+	@Test
+	public void loadEntriesShouldSkipCommentLines() {
+		assertEquals(2, this.loadHandler.entries.size());
+	}
+
+	@Test
+	public void loadEntriesShouldReportBytesRead() {
+		assertEquals(this.cedictBytes.length, this.loadHandler.statistics.getBytesRead());
+	}
+
+	@Test
+	public void loadEntriesShouldReportLinesRead() {
+		assertEquals(3, this.loadHandler.statistics.getLinesRead());
+	}
+
+	@Test
+	public void loadEntriesShouldReportEntriesLoaded() {
+		assertEquals(2, this.loadHandler.statistics.getEntriesLoaded());
+	}
+
+	@Test
+	public void loadEntriesShouldReportParsingTimeWithinLoadingTime() {
+		final CedictLoadStatistics statistics = this.loadHandler.statistics;
+		assertTrue(statistics.getParsingTimeNanos() <= statistics.getLoadingTimeNanos());
+		assertTrue(statistics.getHandlerTimeNanos() >= 0);
+	}
+
+	private static class RecordingLoadHandler implements CedictLoadHandler {
+
+		private final List<CedictEntry> entries = new ArrayList<CedictEntry>();
+
+		private CedictLoadStatistics statistics;
+
+		@Override
+		public void loadingStarted() {
+
+		}
+
+		@Override
+		public void entryLoaded(final CedictEntry cedictEntry) {
+			this.entries.add(cedictEntry);
+		}
+
+		@Override
+		public void loadingFinished(final CedictLoadStatistics statistics) {
+			this.statistics = statistics;
+		}
+
+	}
+
+}
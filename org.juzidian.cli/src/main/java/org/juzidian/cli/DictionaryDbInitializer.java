@@ -21,19 +21,36 @@ package org.juzidian.cli;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.List;
 
 import javax.inject.Inject;
 
 import org.juzidian.core.DictionaryDataStore;
+import org.juzidian.core.DictionaryDataStoreEntry;
+import org.juzidian.core.DictionaryDataStoreMetadata;
+import org.juzidian.core.DictionaryDataStorePatch;
+import org.juzidian.core.DictionaryDataStoreReference;
+import org.juzidian.dataload.DictionaryMirrorSelector;
+import org.juzidian.dataload.DictionaryPatchResource;
 import org.juzidian.dataload.DictionaryResource;
 import org.juzidian.dataload.DictionaryResourceDownloader;
 import org.juzidian.dataload.DictionaryResourceRegistry;
 import org.juzidian.dataload.DictionaryResourceRegistryService;
+import org.juzidian.dataload.DictionaryUpdatePlanner;
 import org.juzidian.dataload.DictonaryResourceRegistryServiceException;
-import org.juzidian.util.IoUtil;
+import org.juzidian.util.AtomicFileOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+
 class DictionaryDbInitializer {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryDbInitializer.class);
@@ -46,41 +63,178 @@ class DictionaryDbInitializer {
 
 	final File dictionaryDbFile;
 
+	final DictionaryMirrorSelector mirrorSelector;
+
+	final DictionaryUpdatePlanner updatePlanner;
+
 	@Inject
 	public DictionaryDbInitializer(final DictionaryDataStore dataStore, final DictionaryResourceRegistryService registryService,
-			final DictionaryResourceDownloader dictionaryDownloader, @DictionaryDbPath final File dictionaryDbFile) {
+			final DictionaryResourceDownloader dictionaryDownloader, @DictionaryDbPath final File dictionaryDbFile,
+			final DictionaryMirrorSelector mirrorSelector, final DictionaryUpdatePlanner updatePlanner) {
 		this.dictionaryDataStore = dataStore;
 		this.dictionaryRegistryService = registryService;
 		this.dictionaryDownloader = dictionaryDownloader;
 		this.dictionaryDbFile = dictionaryDbFile;
+		this.mirrorSelector = mirrorSelector;
+		this.updatePlanner = updatePlanner;
 	}
 
+	/**
+	 * Make sure a searchable dictionary DB is installed.
+	 * <p>
+	 * When there is no usable DB and the dictionary is tiered, only the core
+	 * tier is installed before this method returns. The remainder is merged
+	 * by a background thread, which keeps the JVM running until it is done.
+	 */
 	public void initializeDb() throws Exception {
 		if (!this.dictionaryDbFile.exists()) {
 			LOGGER.info("Dictionary DB missing.");
-			this.downloadDb();
+			this.installDb();
 		} else {
 			if (this.dictionaryDataStore.getCurrentDataFormatVersion() != DictionaryDataStore.DATA_FORMAT_VERSION) {
 				LOGGER.info("Dictionary DB incompatible.");
-				this.downloadDb();
+				this.installDb();
 			} else {
 				LOGGER.debug("Dictionary DB compatible.");
+				this.updateDb();
 			}
 		}
 	}
 
-	private void downloadDb() throws Exception {
-		this.dictionaryDbFile.getParentFile().mkdirs();
+	/*
+	 * A compatible DB is still usable while offline, so failing to reach the
+	 * registry is not an error.
+	 */
+	private void updateDb() throws Exception {
+		final DictionaryResource resource;
+		try {
+			resource = this.getDictionaryResource();
+		} catch (final DictonaryResourceRegistryServiceException e) {
+			LOGGER.info("Unable to check for dictionary DB updates: " + e.getMessage());
+			return;
+		}
+		final List<DictionaryPatchResource> patches = this.updatePlanner.plan(this.dictionaryDataStore.getSourceVersion(), resource);
+		if (patches == null) {
+			LOGGER.info("Dictionary DB outdated.");
+			this.downloadDb(resource);
+		} else if (patches.isEmpty()) {
+			LOGGER.debug("Dictionary DB up to date.");
+		} else {
+			try {
+				for (final DictionaryPatchResource patch : patches) {
+					this.applyPatch(patch, this.dictionaryDataStore);
+				}
+			} catch (final Exception e) {
+				LOGGER.warn("Failed to patch dictionary DB, downloading it in full", e);
+				this.downloadDb(resource);
+			}
+		}
+	}
+
+	private void installDb() throws Exception {
 		final DictionaryResource resource = this.getDictionaryResource();
+		if (resource.getCoreTier() == null || resource.getRemainderTier() == null) {
+			this.downloadDb(resource);
+			return;
+		}
+		LOGGER.info("Installing core tier of dictionary DB.");
+		this.downloadDb(this.mirrorSelector.selectMirror(resource.getCoreTier()));
+		final Thread mergeThread = new Thread(new RemainderTierMerge(resource.getRemainderTier()), "dictionary-merge");
+		mergeThread.start();
+	}
+
+	/*
+	 * The merge writes through its own connection so that searches made on
+	 * the shared connection meanwhile are not part of its transaction.
+	 */
+	private void mergeRemainderTier(final DictionaryPatchResource remainderTier) throws Exception {
+		final JdbcConnectionSource mergeConnectionSource = new JdbcConnectionSource("jdbc:sqlite:" + this.dictionaryDbFile.getAbsolutePath());
+		try {
+			this.applyPatch(remainderTier, createDataStore(mergeConnectionSource));
+		} finally {
+			mergeConnectionSource.close();
+		}
+		this.dictionaryDataStore.reloadMetadata();
+		LOGGER.info("Merged remainder tier into dictionary DB.");
+	}
+
+	private static DictionaryDataStore createDataStore(final ConnectionSource connectionSource) throws SQLException {
+		final Dao<DictionaryDataStoreEntry, Long> entryDao = DaoManager.createDao(connectionSource, DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> metadataDao = DaoManager.createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> referenceDao = DaoManager.createDao(connectionSource, DictionaryDataStoreReference.class);
+		return new DictionaryDataStore(entryDao, metadataDao, referenceDao);
+	}
+
+	private void applyPatch(final DictionaryPatchResource patchResource, final DictionaryDataStore dataStore) throws Exception {
+		LOGGER.info("Downloading dictionary DB patch: " + patchResource.getUrl());
+		final File patchFile = File.createTempFile("juzidian_patch", ".tmp", this.dictionaryDbFile.getParentFile());
+		try {
+			final OutputStream patchOutputStream = new FileOutputStream(patchFile);
+			try {
+				this.dictionaryDownloader.download(this.mirrorSelector.selectMirror(patchResource), patchOutputStream,
+						new DownloadProgressLogger());
+			} finally {
+				patchOutputStream.close();
+			}
+			final InputStream patchInputStream = new FileInputStream(patchFile);
+			final DictionaryDataStorePatch patch;
+			try {
+				patch = DictionaryDataStorePatch.readFrom(patchInputStream);
+			} finally {
+				patchInputStream.close();
+			}
+			dataStore.applyPatch(patch);
+		} finally {
+			if (!patchFile.delete()) {
+				LOGGER.warn("Failed to delete patch file: " + patchFile);
+			}
+		}
+	}
+
+	private void downloadDb(final DictionaryResource resource) throws Exception {
+		this.dictionaryDbFile.getParentFile().mkdirs();
 		LOGGER.info("Downloading dictionary DB: " + resource.getUrl());
-		final File tempFile = File.createTempFile("juzidian-dictionary-download", null);
-		this.dictionaryDownloader.download(resource, new FileOutputStream(tempFile), new DownloadProgressLogger());
-		IoUtil.copy(new FileInputStream(tempFile), new FileOutputStream(this.dictionaryDbFile));
+		this.checkUsableSpace(resource);
+		final AtomicFileOutputStream dbOutputStream = new AtomicFileOutputStream(this.dictionaryDbFile);
+		try {
+			this.dictionaryDownloader.download(resource, dbOutputStream, new DownloadProgressLogger());
+			dbOutputStream.commit();
+		} finally {
+			dbOutputStream.discard();
+		}
+		this.swapDb();
+	}
+
+	/*
+	 * Connections opened while checking the old DB still refer to the
+	 * replaced file. Queries are routed to connections of the new file, and
+	 * the old connections are closed once the queries using them are done.
+	 */
+	private void swapDb() throws SQLException {
+		final ConnectionSource replacement = JuzidianCliModule.openConnectionSource(this.dictionaryDbFile);
+		try {
+			this.dictionaryDataStore.swapDatabase(replacement);
+		} catch (final RuntimeException e) {
+			replacement.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * The old DB stays in place until the new one is complete, so there must
+	 * be room for both.
+	 */
+	private void checkUsableSpace(final DictionaryResource resource) throws IOException {
+		final long requiredSpace = resource.getUncompressedSize();
+		final long usableSpace = this.dictionaryDbFile.getParentFile().getUsableSpace();
+		if (requiredSpace > usableSpace) {
+			throw new IOException("Dictionary DB needs " + requiredSpace + " bytes but only " + usableSpace + " are available");
+		}
 	}
 
 	private DictionaryResource getDictionaryResource() throws DictonaryResourceRegistryServiceException {
 		final DictionaryResourceRegistry registry = this.getDictionaryResourceRegistry();
-		return registry.getDictionaryResources().get(0);
+		return this.mirrorSelector.selectMirror(registry.getDictionaryResources().get(0));
 	}
 
 	private DictionaryResourceRegistry getDictionaryResourceRegistry() throws DictonaryResourceRegistryServiceException {
@@ -88,4 +242,28 @@ class DictionaryDbInitializer {
 		return this.dictionaryRegistryService.getDictionaryResourceRegistry(DictionaryDataStore.DATA_FORMAT_VERSION);
 	}
 
+	/**
+	 * Merges the remainder tier into an installed core tier. A failed merge
+	 * leaves the core tier searchable, and is retried as an update the next
+	 * time the DB is initialized.
+	 */
+	private class RemainderTierMerge implements Runnable {
+
+		private final DictionaryPatchResource remainderTier;
+
+		public RemainderTierMerge(final DictionaryPatchResource remainderTier) {
+			this.remainderTier = remainderTier;
+		}
+
+		@Override
+		public void run() {
+			try {
+				DictionaryDbInitializer.this.mergeRemainderTier(this.remainderTier);
+			} catch (final Exception e) {
+				LOGGER.warn("Failed to merge remainder tier into dictionary DB", e);
+			}
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -25,6 +25,7 @@ import java.util.List;
 import org.juzidian.core.Dictionary;
 import org.juzidian.core.DictionaryEntry;
 import org.juzidian.core.SearchQuery;
+import org.juzidian.core.SearchResults;
 import org.juzidian.core.SearchType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,25 +61,32 @@ public class JuzidianCli {
 		final long freeMemory = runtime.freeMemory();
 		LOGGER.debug(MessageFormat.format("Memory used: {0}KB", (totalMemory - freeMemory) / 1024));
 		final String queryString = args[1];
-		final List<DictionaryEntry> foundCharacters = findAllWords(dictionary, queryString, searchType);
-		printSearchResults(foundCharacters);
+		final List<SearchResults> foundPages = findAllWords(dictionary, queryString, searchType);
+		printSearchResults(foundPages);
 	}
 
-	private static List<DictionaryEntry> findAllWords(final Dictionary dictionary, final String queryString, final SearchType searchType) {
-		final List<DictionaryEntry> allEntries = new ArrayList<DictionaryEntry>();
+	private static List<SearchResults> findAllWords(final Dictionary dictionary, final String queryString, final SearchType searchType) {
+		final List<SearchResults> pages = new ArrayList<SearchResults>();
 		int pageNumber = 0;
-		List<DictionaryEntry> entries;
+		SearchResults page;
 		do {
-			entries = dictionary.find(new SearchQuery(searchType, queryString, PAGE_SIZE, pageNumber)).getEntries();
-			allEntries.addAll(entries);
+			page = dictionary.find(new SearchQuery(searchType, queryString, PAGE_SIZE, pageNumber));
+			pages.add(page);
 			pageNumber += 1;
-		} while (entries.size() == PAGE_SIZE);
-		return allEntries;
+		} while (!page.isLastPage());
+		return pages;
 	}
 
-	private static void printSearchResults(final List<DictionaryEntry> entries) {
-		for (final DictionaryEntry entry : entries) {
-			System.out.println(entry);
+	private static void printSearchResults(final List<SearchResults> pages) {
+		boolean partial = false;
+		for (final SearchResults page : pages) {
+			for (final DictionaryEntry entry : page.getEntries()) {
+				System.out.println(entry);
+			}
+			partial |= page.isPartial();
+		}
+		if (partial) {
+			System.out.println("(Partial results: the full dictionary is still being installed.)");
 		}
 	}
 }
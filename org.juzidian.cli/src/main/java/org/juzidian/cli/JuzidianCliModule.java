@@ -21,38 +21,64 @@ package org.juzidian.cli;
 import java.io.File;
 import java.sql.SQLException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.juzidian.core.AsyncQueryExecutor;
+import org.juzidian.core.PriorityQueryExecutor;
+import org.juzidian.core.SwappableConnectionSource;
 import org.juzidian.core.inject.DictionaryModule;
 import org.juzidian.core.inject.ModuleConfigurationException;
+import org.juzidian.dataload.DictionaryArtifactCache;
+import org.juzidian.dataload.DictionaryRegistryCacheDirectory;
+import org.juzidian.dataload.DictionaryResourceDownloader;
 import org.juzidian.dataload.inject.DataloadModule;
 
 import com.google.inject.AbstractModule;
-import com.j256.ormlite.jdbc.JdbcConnectionSource;
 import com.j256.ormlite.support.ConnectionSource;
 
 public class JuzidianCliModule extends AbstractModule {
 
 	static final File DICTIONARY_DB_FILE = new File(System.getProperty("user.home") + "/.juzidian/juzidian-dictionary.db");
 
+	private static final int DOWNLOAD_SEGMENT_COUNT = 4;
+
+	private static final File ARTIFACT_CACHE_DIRECTORY = new File(DICTIONARY_DB_FILE.getParentFile(), "artifact-cache");
+
+	private static final long ARTIFACT_CACHE_MAX_BYTES = 256L * 1024 * 1024;
+
+	private static final int QUERY_CONNECTION_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
 	@Override
 	protected void configure() {
 		install(new DictionaryModule());
 		install(new DataloadModule());
-		this.bind(ConnectionSource.class).toInstance(this.createConnectionSource());
+		this.bind(ConnectionSource.class).toInstance(new SwappableConnectionSource(this.createConnectionSource()));
 		this.bind(File.class).annotatedWith(DictionaryDbPath.class).toInstance(DICTIONARY_DB_FILE);
-		this.bind(ExecutorService.class).annotatedWith(AsyncQueryExecutor.class).toInstance(Executors.newSingleThreadExecutor());
+		this.bind(File.class).annotatedWith(DictionaryRegistryCacheDirectory.class).toInstance(DICTIONARY_DB_FILE.getParentFile());
+		this.bind(ExecutorService.class).annotatedWith(AsyncQueryExecutor.class).toInstance(
+				new PriorityQueryExecutor(QUERY_CONNECTION_POOL_SIZE, PriorityQueryExecutor.DEFAULT_AGING_MILLIS));
+		this.bind(DictionaryResourceDownloader.class).toInstance(
+				new DictionaryResourceDownloader(DICTIONARY_DB_FILE.getParentFile(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS,
+						DOWNLOAD_SEGMENT_COUNT, new DictionaryArtifactCache(ARTIFACT_CACHE_DIRECTORY, ARTIFACT_CACHE_MAX_BYTES)));
 	}
 
-	private JdbcConnectionSource createConnectionSource() {
-		final JdbcConnectionSource jdbcConnectionSource;
+	private ReadOnlyPooledConnectionSource createConnectionSource() {
+		final ReadOnlyPooledConnectionSource connectionSource;
 		try {
-			jdbcConnectionSource = new JdbcConnectionSource("jdbc:sqlite:" + DICTIONARY_DB_FILE.getAbsolutePath());
+			connectionSource = openConnectionSource(DICTIONARY_DB_FILE);
 		} catch (final SQLException e) {
 			throw new ModuleConfigurationException(e);
 		}
-		return jdbcConnectionSource;
+		return connectionSource;
+	}
+
+	/**
+	 * @param dbFile a dictionary DB file.
+	 * @return a connection source for the file, with the query connection pool
+	 *         of the CLI.
+	 * @throws SQLException if the connection source can not be created.
+	 */
+	static ReadOnlyPooledConnectionSource openConnectionSource(final File dbFile) throws SQLException {
+		return new ReadOnlyPooledConnectionSource("jdbc:sqlite:" + dbFile.getAbsolutePath(), QUERY_CONNECTION_POOL_SIZE, false);
 	}
 
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.cli;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.juzidian.core.Dictionary;
+import org.juzidian.core.DictionaryDataStore;
+import org.juzidian.core.DictionaryDataStoreEntry;
+import org.juzidian.core.DictionaryDataStoreMetadata;
+import org.juzidian.core.DictionaryDataStoreReference;
+import org.juzidian.core.SearchQuery;
+import org.juzidian.core.SearchType;
+import org.juzidian.pinyin.PinyinParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+
+/**
+ * Compares dictionary query throughput for increasing numbers of querying
+ * threads, using a single shared connection and using a
+ * {@link ReadOnlyPooledConnectionSource} with a connection per thread.
+ * <p>
+ * Usage: <code>QueryThroughputBenchmark [dictionary db file]</code>
+ */
+public class QueryThroughputBenchmark {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(QueryThroughputBenchmark.class);
+
+	private static final int PAGE_SIZE = 25;
+
+	private static final List<SearchQuery> QUERIES = Arrays.asList(
+			new SearchQuery(SearchType.PINYIN, "han", PAGE_SIZE, 0),
+			new SearchQuery(SearchType.PINYIN, "zhongguo", PAGE_SIZE, 0),
+			new SearchQuery(SearchType.HANZI, "中", PAGE_SIZE, 0),
+			new SearchQuery(SearchType.HANZI, "学生", PAGE_SIZE, 0),
+			new SearchQuery(SearchType.REVERSE, "dog", PAGE_SIZE, 0),
+			new SearchQuery(SearchType.REVERSE, "to study", PAGE_SIZE, 0));
+
+	private final File databaseFile;
+
+	private final long durationMillis;
+
+	/**
+	 * @param databaseFile the dictionary database to query.
+	 * @param durationMillis the number of milliseconds to run queries for at
+	 *        each thread count.
+	 */
+	public QueryThroughputBenchmark(final File databaseFile, final long durationMillis) {
+		this.databaseFile = databaseFile;
+		this.durationMillis = durationMillis;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final File databaseFile = args.length > 0 ? new File(args[0]) : JuzidianCliModule.DICTIONARY_DB_FILE;
+		final Properties results = new QueryThroughputBenchmark(databaseFile, 5000).run();
+		results.store(System.out, "Juzidian dictionary query throughput benchmark");
+	}
+
+	/**
+	 * @return the queries per second for each connection source and thread
+	 *         count, keyed by "single.&lt;threads&gt;.queriesPerSecond" and
+	 *         "pooled.&lt;threads&gt;.queriesPerSecond".
+	 * @throws SQLException if the database can not be opened.
+	 * @throws InterruptedException if interrupted while queries are running.
+	 */
+	public Properties run() throws SQLException, InterruptedException {
+		final Properties properties = new Properties();
+		final String url = "jdbc:sqlite:" + this.databaseFile.getAbsolutePath();
+		final int maxThreads = 2 * Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			final JdbcConnectionSource singleConnectionSource = new JdbcConnectionSource(url);
+			try {
+				this.record(properties, "single", threads, this.measure(singleConnectionSource, threads));
+			} finally {
+				singleConnectionSource.close();
+			}
+			final ReadOnlyPooledConnectionSource pooledConnectionSource = new ReadOnlyPooledConnectionSource(url, threads, false);
+			try {
+				this.record(properties, "pooled", threads, this.measure(pooledConnectionSource, threads));
+			} finally {
+				pooledConnectionSource.close();
+			}
+		}
+		return properties;
+	}
+
+	private void record(final Properties properties, final String connectionType, final int threads, final double queriesPerSecond) {
+		LOGGER.info("{} connection, {} threads: {} queries/s", new Object[] { connectionType, threads, String.format("%.1f", queriesPerSecond) });
+		properties.setProperty(connectionType + "." + threads + ".queriesPerSecond", String.format("%.1f", queriesPerSecond));
+	}
+
+	private double measure(final ConnectionSource connectionSource, final int threadCount) throws SQLException, InterruptedException {
+		final Dictionary dictionary = new Dictionary(createDataStore(connectionSource), new PinyinParser(), null);
+		/* warm up the page cache so that the first measurement is not penalised */
+		for (final SearchQuery query : QUERIES) {
+			dictionary.find(query);
+		}
+		final AtomicLong queryCount = new AtomicLong();
+		final CountDownLatch finished = new CountDownLatch(threadCount);
+		final long deadline = System.nanoTime() + this.durationMillis * 1000 * 1000;
+		final List<Thread> threads = new ArrayList<Thread>(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			final int offset = i;
+			threads.add(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						for (int q = offset; System.nanoTime() < deadline; q++) {
+							dictionary.find(QUERIES.get(q % QUERIES.size()));
+							queryCount.incrementAndGet();
+						}
+					} finally {
+						finished.countDown();
+					}
+				}
+
+			}, "query-benchmark-" + i));
+		}
+		final long start = System.nanoTime();
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+		finished.await();
+		final long elapsedNanos = System.nanoTime() - start;
+		return queryCount.get() * 1000.0 * 1000 * 1000 / elapsedNanos;
+	}
+
+	private static DictionaryDataStore createDataStore(final ConnectionSource connectionSource) throws SQLException {
+		final Dao<DictionaryDataStoreEntry, Long> entryDao = DaoManager.createDao(connectionSource, DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> metadataDao = DaoManager.createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> referenceDao = DaoManager.createDao(connectionSource, DictionaryDataStoreReference.class);
+		return new DictionaryDataStore(entryDao, metadataDao, referenceDao);
+	}
+
+}
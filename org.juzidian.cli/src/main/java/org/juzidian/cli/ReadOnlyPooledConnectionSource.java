@@ -0,0 +1,263 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.cli;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.juzidian.core.InterruptibleConnectionSource;
+import org.juzidian.core.SearchCanceller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.Function;
+import org.sqlite.SQLiteConfig;
+
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.support.DatabaseConnection;
+
+/**
+ * A SQLite {@link com.j256.ormlite.support.ConnectionSource ConnectionSource}
+ * that serves read-only connections from a pool, so that queries on
+ * different threads run concurrently.
+ * <p>
+ * ORMLite DAOs take a read-only connection for each query and release it
+ * afterwards. Pooled connections are opened read-only with
+ * <code>query_only</code> set. Writes and transactions use a single
+ * read-write connection, as with {@link JdbcConnectionSource}; queries made
+ * within a transaction use the transaction's connection.
+ * <p>
+ * The pooled connections may share one page cache. This saves memory, but
+ * SQLite serializes access to a shared cache, so it is off by default.
+ * <p>
+ * Queries are interrupted with a SQL function that fails once the search is
+ * cancelled. The driver serializes <code>sqlite3_interrupt</code> with the
+ * statement it would interrupt, so <code>Statement.cancel()</code> can not
+ * stop a running query.
+ */
+public class ReadOnlyPooledConnectionSource extends JdbcConnectionSource implements InterruptibleConnectionSource {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReadOnlyPooledConnectionSource.class);
+
+	private static final com.j256.ormlite.logger.Logger ORMLITE_LOGGER = com.j256.ormlite.logger.LoggerFactory
+			.getLogger(ReadOnlyPooledConnectionSource.class);
+
+	private static final String INTERRUPT_CHECK_FUNCTION = "juzidian_interrupt_check";
+
+	private final boolean sharedCache;
+
+	private final Semaphore availableConnections;
+
+	private final BlockingQueue<DatabaseConnection> idleConnections = new LinkedBlockingQueue<DatabaseConnection>();
+
+	/* all open read-only connections, whether idle or checked out */
+	private final List<DatabaseConnection> pooledConnections = new ArrayList<DatabaseConnection>();
+
+	private boolean closed;
+
+	private final Map<DatabaseConnection, InterruptCheck> interruptChecks = new IdentityHashMap<DatabaseConnection, InterruptCheck>();
+
+	/**
+	 * @param url the JDBC URL of the SQLite database.
+	 * @param poolSize the maximum number of read-only connections.
+	 * @param sharedCache <code>true</code> if read-only connections should
+	 *        share a page cache.
+	 * @throws SQLException if the URL is not a supported database URL.
+	 */
+	public ReadOnlyPooledConnectionSource(final String url, final int poolSize, final boolean sharedCache) throws SQLException {
+		super(url);
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("poolSize must be positive");
+		}
+		this.sharedCache = sharedCache;
+		this.availableConnections = new Semaphore(poolSize, true);
+	}
+
+	/**
+	 * Get a read-only connection, waiting for one to be released if all are
+	 * in use.
+	 */
+	@Override
+	public DatabaseConnection getReadOnlyConnection() throws SQLException {
+		final DatabaseConnection savedConnection = this.getSavedConnection();
+		if (savedConnection != null) {
+			return savedConnection;
+		}
+		try {
+			this.availableConnections.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a read-only connection", e);
+		}
+		final DatabaseConnection idleConnection = this.idleConnections.poll();
+		if (idleConnection != null) {
+			return idleConnection;
+		}
+		try {
+			return this.openReadOnlyConnection();
+		} catch (final SQLException e) {
+			this.availableConnections.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public void releaseConnection(final DatabaseConnection connection) throws SQLException {
+		if (this.isSavedConnection(connection)) {
+			return;
+		}
+		final boolean pooled;
+		synchronized (this.pooledConnections) {
+			pooled = this.pooledConnections.contains(connection);
+		}
+		if (pooled) {
+			this.releasePooledConnection(connection);
+			this.availableConnections.release();
+		} else {
+			super.releaseConnection(connection);
+		}
+	}
+
+	/*
+	 * JdbcConnectionSource has a single connection and does not save it, but
+	 * queries in a transaction must use the transaction's connection rather
+	 * than one from the pool.
+	 */
+	@Override
+	public boolean saveSpecialConnection(final DatabaseConnection connection) throws SQLException {
+		return this.saveSpecial(connection);
+	}
+
+	@Override
+	public void clearSpecialConnection(final DatabaseConnection connection) {
+		this.clearSpecial(connection, ORMLITE_LOGGER);
+	}
+
+	@Override
+	public String getInterruptCheck() {
+		return INTERRUPT_CHECK_FUNCTION + "()";
+	}
+
+	@Override
+	public void setCanceller(final DatabaseConnection connection, final SearchCanceller canceller) throws SQLException {
+		InterruptCheck interruptCheck;
+		synchronized (this.interruptChecks) {
+			interruptCheck = this.interruptChecks.get(connection);
+			if (interruptCheck == null) {
+				interruptCheck = new InterruptCheck();
+				Function.create(((JdbcDatabaseConnection) connection).getInternalConnection(), INTERRUPT_CHECK_FUNCTION, interruptCheck);
+				this.interruptChecks.put(connection, interruptCheck);
+			}
+		}
+		interruptCheck.canceller = canceller;
+	}
+
+	/*
+	 * A connection returned after the pool is closed is closed rather than
+	 * kept idle.
+	 */
+	private void releasePooledConnection(final DatabaseConnection connection) {
+		synchronized (this.pooledConnections) {
+			if (!this.closed) {
+				this.idleConnections.add(connection);
+				return;
+			}
+			this.pooledConnections.remove(connection);
+		}
+		this.closePooledConnection(connection);
+	}
+
+	private void closePooledConnection(final DatabaseConnection connection) {
+		synchronized (this.interruptChecks) {
+			this.interruptChecks.remove(connection);
+		}
+		connection.closeQuietly();
+	}
+
+	/**
+	 * Close the read-write connection and the idle read-only connections.
+	 * Read-only connections that are in use by running queries are closed
+	 * when they are released.
+	 */
+	@Override
+	public void close() throws SQLException {
+		final List<DatabaseConnection> idleConnections = new ArrayList<DatabaseConnection>();
+		synchronized (this.pooledConnections) {
+			this.closed = true;
+			this.idleConnections.drainTo(idleConnections);
+			this.pooledConnections.removeAll(idleConnections);
+		}
+		for (final DatabaseConnection connection : idleConnections) {
+			this.closePooledConnection(connection);
+		}
+		super.close();
+	}
+
+	private DatabaseConnection openReadOnlyConnection() throws SQLException {
+		final SQLiteConfig config = new SQLiteConfig();
+		config.setReadOnly(true);
+		config.setSharedCache(this.sharedCache);
+		final Connection connection = config.createConnection(this.getUrl());
+		final Statement statement = connection.createStatement();
+		try {
+			/* older SQLite versions ignore this pragma; the connection is still opened read-only */
+			statement.execute("PRAGMA query_only = 1");
+		} finally {
+			statement.close();
+		}
+		final DatabaseConnection databaseConnection = new JdbcDatabaseConnection(connection);
+		synchronized (this.pooledConnections) {
+			if (this.closed) {
+				databaseConnection.closeQuietly();
+				throw new SQLException("Connection source is closed");
+			}
+			this.pooledConnections.add(databaseConnection);
+			LOGGER.debug("Opened read-only connection {} of pool", this.pooledConnections.size());
+		}
+		return databaseConnection;
+	}
+
+	/**
+	 * Fails the query that evaluates it once the search is cancelled. Throwing
+	 * from the function makes SQLite abandon the statement with an error.
+	 */
+	private static class InterruptCheck extends Function {
+
+		private volatile SearchCanceller canceller;
+
+		@Override
+		protected void xFunc() throws SQLException {
+			final SearchCanceller currentCanceller = this.canceller;
+			if (currentCanceller != null && currentCanceller.isCancelled()) {
+				throw new SQLException("Query interrupted");
+			}
+			this.result(1);
+		}
+
+	}
+
+}
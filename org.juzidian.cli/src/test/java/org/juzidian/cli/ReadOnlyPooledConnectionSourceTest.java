@@ -0,0 +1,172 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.cli;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.juzidian.core.Dictionary;
+import org.juzidian.core.DictionaryDataStore;
+import org.juzidian.core.DictionaryDataStoreEntry;
+import org.juzidian.core.DictionaryDataStoreMetadata;
+import org.juzidian.core.DictionaryDataStoreReference;
+import org.juzidian.core.SearchQuery;
+import org.juzidian.core.SearchResultsFuture;
+import org.juzidian.core.SearchType;
+import org.juzidian.pinyin.PinyinParser;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+public class ReadOnlyPooledConnectionSourceTest {
+
+	private static final int ENTRY_COUNT = 200000;
+
+	/*
+	 * Far less than the time left in a full scan of the synthetic dictionary
+	 * when the search is cancelled.
+	 */
+	private static final long MAX_CANCEL_LATENCY_MILLIS = 50;
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private ReadOnlyPooledConnectionSource connectionSource;
+
+	private ExecutorService executor;
+
+	private Dictionary dictionary;
+
+	@Before
+	public void setUp() throws Exception {
+		final String url = "jdbc:sqlite:" + new File(this.tempFolder.getRoot(), "dictionary.db").getAbsolutePath();
+		final JdbcConnectionSource writeConnectionSource = new JdbcConnectionSource(url);
+		try {
+			final DictionaryDataStore writeDataStore = createDataStore(writeConnectionSource);
+			writeDataStore.createSchema();
+			writeDataStore.populateMetadata();
+		} finally {
+			writeConnectionSource.close();
+		}
+		insertSyntheticEntries(url);
+		this.connectionSource = new ReadOnlyPooledConnectionSource(url, 2, false);
+		this.executor = Executors.newSingleThreadExecutor();
+		this.dictionary = new Dictionary(createDataStore(this.connectionSource), new PinyinParser(), this.executor);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.executor.shutdownNow();
+		this.connectionSource.close();
+	}
+
+	private static DictionaryDataStore createDataStore(final ConnectionSource connectionSource) throws Exception {
+		final Dao<DictionaryDataStoreEntry, Long> entryDao = DaoManager.createDao(connectionSource, DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> metadataDao = DaoManager.createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> referenceDao = DaoManager.createDao(connectionSource, DictionaryDataStoreReference.class);
+		return new DictionaryDataStore(entryDao, metadataDao, referenceDao);
+	}
+
+	private static void insertSyntheticEntries(final String url) throws Exception {
+		final Connection connection = DriverManager.getConnection(url);
+		try {
+			connection.setAutoCommit(false);
+			final PreparedStatement statement = connection.prepareStatement("insert into dictionary_entry "
+					+ "(id, hanzi_traditional, hanzi_simplified, pinyin, english, content_hash, flags) values (?, ?, ?, ?, ?, '', 0)");
+			for (int i = 0; i < ENTRY_COUNT; i++) {
+				statement.setLong(1, i);
+				statement.setString(2, "字" + i);
+				statement.setString(3, "字" + i);
+				statement.setString(4, "zi4");
+				statement.setString(5, "/ character number " + i + " / written form of a synthetic entry " + i + " /");
+				statement.addBatch();
+			}
+			statement.executeBatch();
+			statement.close();
+			connection.commit();
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void cancelShouldInterruptRunningReverseScan() throws Exception {
+		final SearchResultsFuture future = this.dictionary.findAsync(new SearchQuery(SearchType.REVERSE, "no such definition", 25, 0));
+		Thread.sleep(20);
+		final long cancelled = System.nanoTime();
+		future.cancel();
+		this.executor.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() {
+				return null;
+			}
+
+		}).get();
+		final long released = System.nanoTime();
+		assertThat(TimeUnit.NANOSECONDS.toMillis(released - cancelled), lessThan(MAX_CANCEL_LATENCY_MILLIS));
+	}
+
+	@Test
+	public void findShouldSucceedOnConnectionAfterCancelledScan() throws Exception {
+		final SearchResultsFuture future = this.dictionary.findAsync(new SearchQuery(SearchType.REVERSE, "no such definition", 25, 0));
+		Thread.sleep(20);
+		future.cancel();
+		final SearchResultsFuture nextFuture = this.dictionary.findAsync(new SearchQuery(SearchType.REVERSE, "number 1234 /", 25, 0));
+		assertThat(nextFuture.getResults().getEntries(), hasSize(1));
+	}
+
+	@Test
+	public void closeShouldNotCloseConnectionInUse() throws Exception {
+		final DatabaseConnection connection = this.connectionSource.getReadOnlyConnection();
+		this.connectionSource.close();
+		assertThat(connection.queryForLong("select count(*) from dictionary_entry"), equalTo((long) ENTRY_COUNT));
+		this.connectionSource.releaseConnection(connection);
+		assertThat(connection.isClosed(), is(true));
+	}
+
+	@Test(expected = SQLException.class)
+	public void getReadOnlyConnectionShouldFailAfterClose() throws Exception {
+		this.connectionSource.releaseConnection(this.connectionSource.getReadOnlyConnection());
+		this.connectionSource.close();
+		this.connectionSource.getReadOnlyConnection();
+	}
+
+}
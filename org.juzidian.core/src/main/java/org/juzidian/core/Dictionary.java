@@ -19,19 +19,25 @@
 package org.juzidian.core;
 
 import java.lang.Character.UnicodeBlock;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.juzidian.core.DictionaryDataStore.MatchScope;
 import org.juzidian.pinyin.PinyinParser;
 import org.juzidian.pinyin.PinyinSyllable;
 import org.slf4j.Logger;
@@ -61,12 +67,17 @@ public class Dictionary {
 
 	private static Set<SearchType> PINYIN_AND_REVERSE = new HashSet<SearchType>(Arrays.asList(SearchType.PINYIN, SearchType.REVERSE));
 
+	private static final Collection<DictionaryEntryReference.Type> CROSS_REFERENCE_TYPES = Arrays.asList(DictionaryEntryReference.Type.VARIANT,
+			DictionaryEntryReference.Type.SEE);
+
 	private final DictionaryDataStore dataStore;
 
 	private final PinyinParser pinyinParser;
 
 	private final ExecutorService executor;
 
+	private Timer searchTimer;
+
 	@Inject
 	public Dictionary(final DictionaryDataStore dataStore, final PinyinParser pinyinParser,
 			@AsyncQueryExecutor final ExecutorService executor) {
@@ -81,6 +92,16 @@ public class Dictionary {
 	 * <p>
 	 * If the number of results returned is less than the given query page size
 	 * then queries for subsequent pages will return empty results.
+	 * <p>
+	 * If the query has a latency budget, the matches that start with the
+	 * search text are found first, and the search is widened to other matches
+	 * only while the budget remains. If the budget is spent first, the results
+	 * are {@link SearchResults#isPartial() partial} and have a
+	 * {@link SearchResults#getContinuation() continuation} that completes the
+	 * page. Pinyin searches only find matches that start with the search text,
+	 * so they have nothing to widen to and always complete the page. A data
+	 * store that cannot interrupt a running query checks the budget only
+	 * between queries and while reading their results.
 	 * 
 	 * @param query the {@link SearchQuery} to find entries for.
 	 * @return a {@link SearchResults}.
@@ -90,14 +111,92 @@ public class Dictionary {
 		return find(query, null);
 	}
 
-	private SearchResults find(final SearchQuery query, final SearchCanceller canceller) {
+	SearchResults find(final SearchQuery query, final SearchCanceller canceller) {
+		checkCancelled(canceller, "before search");
 		final long start = System.nanoTime();
-		final List<DictionaryEntry> searchResults = query.getSearchType().doSearch(this, query.getSearchText().trim(), query.getPageSize(),
-				query.getPageSize() * query.getPageIndex(), canceller);
+		final SearchResults searchResults;
+		if (query.getLatencyBudgetMillis() > 0 && query.getSearchType().isScoped()) {
+			searchResults = this.findWithinBudget(query, canceller, start + TimeUnit.MILLISECONDS.toNanos(query.getLatencyBudgetMillis()));
+		} else {
+			final List<DictionaryEntry> entries = query.getSearchType().doSearch(this, query.getSearchText().trim(), query.getFilter(),
+					query.getPageSize(), query.getPageSize() * query.getPageIndex(), canceller);
+			searchResults = new SearchResults(query, entries, this.dataStore.isCoreTier());
+		}
+		checkCancelled(canceller, "after search");
 		final long end = System.nanoTime();
-		LOGGER.info("Found {} words matching '{}' in {} seconds.", new Object[] { searchResults.size(), query.getSearchText(),
+		LOGGER.info("Found {} words matching '{}' in {} seconds.", new Object[] { searchResults.getEntries().size(), query.getSearchText(),
 				((end - start) / 1000 / 1000 / 1000f) });
-		return new SearchResults(query, searchResults);
+		return searchResults;
+	}
+
+	/*
+	 * The prefix matches are ranked before all other matches, so a page is
+	 * the prefix matches within its bounds followed by as many of the other
+	 * matches as fit. Both searches are cancelled at the deadline.
+	 */
+	private SearchResults findWithinBudget(final SearchQuery query, final SearchCanceller canceller, final long deadline) {
+		final SearchType searchType = query.getSearchType();
+		final String searchText = query.getSearchText().trim();
+		final long limit = query.getPageSize();
+		final long offset = query.getPageSize() * query.getPageIndex();
+		final SearchCanceller deadlineCanceller = new SearchCanceller();
+		final SearchCanceller.Listener cancelListener = new SearchCanceller.Listener() {
+
+			@Override
+			public void onCancel() {
+				deadlineCanceller.cancel();
+			}
+		};
+		if (canceller != null) {
+			canceller.register(cancelListener);
+		}
+		final TimerTask deadlineTask = new TimerTask() {
+
+			@Override
+			public void run() {
+				deadlineCanceller.cancel();
+			}
+		};
+		this.schedule(deadlineTask, Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+		final List<DictionaryEntry> entries = new ArrayList<DictionaryEntry>();
+		try {
+			entries.addAll(searchType.doSearch(this, searchText, query.getFilter(), MatchScope.PREFIX, limit, offset, deadlineCanceller));
+			if (entries.size() == limit) {
+				return new SearchResults(query, entries, this.dataStore.isCoreTier());
+			}
+			long widenedOffset = 0;
+			if (entries.isEmpty() && offset > 0) {
+				widenedOffset = Math.max(0, offset - searchType.countMatches(this, searchText, query.getFilter(), MatchScope.PREFIX));
+			}
+			if (deadline - System.nanoTime() <= 0) {
+				deadlineCanceller.cancel();
+			}
+			deadlineCanceller.checkCancelled("before widening search");
+			entries.addAll(searchType.doSearch(this, searchText, query.getFilter(), MatchScope.NON_PREFIX, limit - entries.size(),
+					widenedOffset, deadlineCanceller));
+		} catch (final DictionaryDataStoreQueryCancelledException e) {
+			checkCancelled(canceller, "searching within latency budget");
+			LOGGER.debug("Latency budget spent with {} entries found: {}", entries.size(), query);
+			return new SearchResults(query, entries, this.dataStore.isCoreTier(), query.withLatencyBudget(0));
+		} finally {
+			deadlineTask.cancel();
+			if (canceller != null) {
+				canceller.unregister(cancelListener);
+			}
+		}
+		return new SearchResults(query, entries, this.dataStore.isCoreTier());
+	}
+
+	/*
+	 * Timed search work such as deadlines and debouncing runs on a single
+	 * timer thread, so that it never holds up a query thread. Tasks must be
+	 * brief and must not throw.
+	 */
+	synchronized void schedule(final TimerTask task, final long delayMillis) {
+		if (this.searchTimer == null) {
+			this.searchTimer = new Timer("search-timer", true);
+		}
+		this.searchTimer.schedule(task, delayMillis);
 	}
 
 	/**
@@ -105,39 +204,229 @@ public class Dictionary {
 	 * pagination bounds.
 	 * <p>
 	 * The query will be schedule for future execution and can be cancelled via
-	 * the returned {@link SearchResultsFuture}.
+	 * the returned {@link SearchResultsFuture}. It is scheduled with the
+	 * {@link SearchPriority#forQuery(SearchQuery) default priority} for the
+	 * query.
 	 * 
 	 * @param query the {@link SearchQuery} to find entries for.
 	 * @return a {@link SearchResultsFuture}.
 	 */
 	public SearchResultsFuture findAsync(final SearchQuery query) {
-		LOGGER.debug("Find entries async: {}", query);
+		return this.findAsync(query, SearchPriority.forQuery(query));
+	}
+
+	/**
+	 * Asynchronously find all Chinese words that match the search criteria and
+	 * pagination bounds, with a scheduling priority.
+	 * <p>
+	 * The priority takes effect if the query executor is a
+	 * {@link PriorityQueryExecutor}.
+	 * 
+	 * @param query the {@link SearchQuery} to find entries for.
+	 * @param priority the {@link SearchPriority} of the query.
+	 * @return a {@link SearchResultsFuture}.
+	 */
+	public SearchResultsFuture findAsync(final SearchQuery query, final SearchPriority priority) {
+		LOGGER.debug("Find entries async: {} ({})", query, priority);
 		final SearchCanceller canceller = new SearchCanceller();
-		Future<SearchResults> future = executor.submit(new Callable<SearchResults>() {
+		final SearchTask future = new SearchTask(new Callable<SearchResults>() {
 
 			@Override
 			public SearchResults call() throws Exception {
 				return Dictionary.this.find(query, canceller);
 			}
 		});
+		this.execute(future, priority);
 		return new SearchResultsFuture(future, canceller);
 	}
 
-	List<DictionaryEntry> findChinese(final String queryString, final long limit, final long offset, final SearchCanceller canceller) {
+	/**
+	 * Asynchronously find the first page of Chinese words that match the
+	 * search text with each of its
+	 * {@link #getApplicableSearchTypes(String) applicable search types}.
+	 * <p>
+	 * The search of each type is scheduled separately, so that they run
+	 * concurrently on the query executor.
+	 * 
+	 * @param searchText the text to search for.
+	 * @param pageSize the maximum number of entries to find for each search
+	 *        type.
+	 * @return a {@link MultiSearchResultsFuture}, which has no search types if
+	 *         none are applicable.
+	 */
+	public MultiSearchResultsFuture findAll(final String searchText, final int pageSize) {
+		LOGGER.debug("Find entries of all applicable search types: {}", searchText);
+		final Map<SearchType, SearchResultsFuture> branches = new EnumMap<SearchType, SearchResultsFuture>(SearchType.class);
+		boolean scheduled = false;
+		try {
+			for (final SearchType searchType : this.getApplicableSearchTypes(searchText)) {
+				branches.put(searchType, this.findAsync(new SearchQuery(searchType, searchText, pageSize, 0)));
+			}
+			scheduled = true;
+		} finally {
+			if (!scheduled) {
+				for (final SearchResultsFuture branch : branches.values()) {
+					branch.cancel();
+				}
+			}
+		}
+		return new MultiSearchResultsFuture(branches);
+	}
+
+	/**
+	 * @return a number that changes each time the database of the dictionary
+	 *         is swapped.
+	 */
+	long getDataGeneration() {
+		return this.dataStore.getGeneration();
+	}
+
+	void execute(final Runnable task, final SearchPriority priority) {
+		if (this.executor instanceof PriorityQueryExecutor) {
+			((PriorityQueryExecutor) this.executor).execute(task, priority);
+		} else {
+			this.executor.execute(task);
+		}
+	}
+
+	/**
+	 * Create a {@link SearchSession} in which each query supersedes any query
+	 * that has not yet started.
+	 * 
+	 * @return a {@link SearchSession} without a debounce window.
+	 */
+	public SearchSession createSearchSession() {
+		return this.createSearchSession(0);
+	}
+
+	/**
+	 * Create a {@link SearchSession} in which each query supersedes any query
+	 * that has not yet started.
+	 * 
+	 * @param debounceMillis the number of milliseconds a query is held back
+	 *        for in case a newer query arrives, or zero to run queries as soon
+	 *        as possible.
+	 * @return a {@link SearchSession}.
+	 */
+	public SearchSession createSearchSession(final long debounceMillis) {
+		return this.createSearchSession(debounceMillis, false);
+	}
+
+	/**
+	 * Create a {@link SearchSession} in which each query supersedes any query
+	 * that has not yet started, optionally prefetching the next page of
+	 * results once a page is delivered.
+	 * 
+	 * @param debounceMillis the number of milliseconds a query is held back
+	 *        for in case a newer query arrives, or zero to run queries as soon
+	 *        as possible.
+	 * @param prefetch <code>true</code> to prefetch the next page of results.
+	 * @return a {@link SearchSession}.
+	 */
+	public SearchSession createSearchSession(final long debounceMillis, final boolean prefetch) {
+		return new SearchSession(this, debounceMillis, prefetch);
+	}
+
+	List<DictionaryEntry> findChinese(final String queryString, final SearchFilter filter, final long limit, final long offset, final SearchCanceller canceller) {
 		LOGGER.debug("Find chinese: " + queryString);
-		return this.dataStore.findChinese(queryString, limit, offset, canceller);
+		return this.dataStore.findChinese(queryString, filter, limit, offset, canceller);
+	}
+
+	List<DictionaryEntry> findChinese(final String queryString, final SearchFilter filter, final MatchScope scope, final long limit,
+			final long offset, final SearchCanceller canceller) {
+		LOGGER.debug("Find chinese ({}): {}", scope, queryString);
+		return this.dataStore.findChinese(queryString, filter, scope, limit, offset, canceller);
 	}
 
-	List<DictionaryEntry> findPinyin(final String queryString, final long limit, final long offset, final SearchCanceller canceller) {
+	long countChinese(final String queryString, final SearchFilter filter, final MatchScope scope) {
+		return this.dataStore.countChinese(queryString, filter, scope);
+	}
+
+	List<DictionaryEntry> findPinyin(final String queryString, final SearchFilter filter, final long limit, final long offset, final SearchCanceller canceller) {
 		LOGGER.debug("Find pinyin: " + queryString);
 		final String filteredQueryString = this.filterPinyinQuery(queryString);
 		final List<PinyinSyllable> pinyinSyllables = this.pinyinParser.parse(filteredQueryString);
-		return this.dataStore.findPinyin(pinyinSyllables, limit, offset, canceller);
+		checkCancelled(canceller, "after parsing pinyin");
+		return this.dataStore.findPinyin(pinyinSyllables, filter, limit, offset, canceller);
 	}
 
-	List<DictionaryEntry> findDefinitions(final String queryString, final long limit, final long offset, final SearchCanceller canceller) {
+	List<DictionaryEntry> findDefinitions(final String queryString, final SearchFilter filter, final long limit, final long offset, final SearchCanceller canceller) {
 		LOGGER.debug("Find definitions: " + queryString);
-		return this.dataStore.findDefinitions(queryString, limit, offset, canceller);
+		return this.dataStore.findDefinitions(queryString, filter, limit, offset, canceller);
+	}
+
+	List<DictionaryEntry> findDefinitions(final String queryString, final SearchFilter filter, final MatchScope scope, final long limit,
+			final long offset, final SearchCanceller canceller) {
+		LOGGER.debug("Find definitions ({}): {}", scope, queryString);
+		return this.dataStore.findDefinitions(queryString, filter, scope, limit, offset, canceller);
+	}
+
+	long countDefinitions(final String queryString, final SearchFilter filter, final MatchScope scope) {
+		return this.dataStore.countDefinitions(queryString, filter, scope);
+	}
+
+	private static void checkCancelled(final SearchCanceller canceller, final String stage) {
+		if (canceller != null) {
+			canceller.checkCancelled(stage);
+		}
+	}
+
+	/**
+	 * Get the classifiers (measure words) used with a word.
+	 * 
+	 * @param entry a {@link DictionaryEntry}.
+	 * @return a list of {@link DictionaryEntryReference} of type
+	 *         {@link DictionaryEntryReference.Type#CLASSIFIER CLASSIFIER}.
+	 */
+	public List<DictionaryEntryReference> getClassifiers(final DictionaryEntry entry) {
+		final List<DictionaryEntryReference> classifiers = new ArrayList<DictionaryEntryReference>();
+		for (final DictionaryEntryReference reference : this.dataStore.getReferences(entry)) {
+			if (reference.getType() == DictionaryEntryReference.Type.CLASSIFIER) {
+				classifiers.add(reference);
+			}
+		}
+		return classifiers;
+	}
+
+	/**
+	 * Get the words that a word is a variant of or otherwise refers to.
+	 * 
+	 * @param entry a {@link DictionaryEntry}.
+	 * @return a list of {@link DictionaryEntryReference} that are not
+	 *         classifiers.
+	 */
+	public List<DictionaryEntryReference> getCrossReferences(final DictionaryEntry entry) {
+		final List<DictionaryEntryReference> crossReferences = new ArrayList<DictionaryEntryReference>();
+		for (final DictionaryEntryReference reference : this.dataStore.getReferences(entry)) {
+			if (reference.getType() != DictionaryEntryReference.Type.CLASSIFIER) {
+				crossReferences.add(reference);
+			}
+		}
+		return crossReferences;
+	}
+
+	/**
+	 * Get the dictionary entries for the words that a word is a variant of or
+	 * otherwise refers to.
+	 * 
+	 * @param entry a {@link DictionaryEntry}.
+	 * @return a list of {@link DictionaryEntry}.
+	 */
+	public List<DictionaryEntry> getReferencedEntries(final DictionaryEntry entry) {
+		return this.dataStore.getReferencedEntries(entry, CROSS_REFERENCE_TYPES);
+	}
+
+	/**
+	 * Find the words that use the given classifier (measure word).
+	 * 
+	 * @param classifier the {@link DictionaryEntry} of a classifier.
+	 * @param limit the maximum number of entries to return.
+	 * @param offset the number of entries to skip.
+	 * @return a list of {@link DictionaryEntry}.
+	 */
+	public List<DictionaryEntry> findEntriesByClassifier(final DictionaryEntry classifier, final long limit, final long offset) {
+		LOGGER.debug("Find entries by classifier: " + classifier);
+		return this.dataStore.findReferringEntries(classifier, DictionaryEntryReference.Type.CLASSIFIER, limit, offset, null);
 	}
 
 	private String filterPinyinQuery(final String queryString) {
@@ -19,28 +19,43 @@
 
 package org.juzidian.core;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 
 import org.juzidian.pinyin.PinyinSyllable;
 import org.juzidian.pinyin.Tone;
+import org.juzidian.util.HexUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
 import com.j256.ormlite.field.SqlType;
 import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.stmt.DeleteBuilder;
 import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.Where;
 import com.j256.ormlite.support.CancellationSignaller;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
 
 /**
  * A searchable Chinese {@link DictionaryEntry} data store.
@@ -51,6 +66,12 @@ public class DictionaryDataStore {
 
 	private static final Long METADATA_ROW_ID = 1L;
 
+	/**
+	 * The maximum number of ids deleted by a single statement, which keeps
+	 * delete statements within SQLite's limit on bound parameters.
+	 */
+	private static final int MAX_DELETE_BATCH_SIZE = 500;
+
 	/**
 	 * The sequential integer version number of the data format that is created
 	 * by and expected by this data store.
@@ -58,17 +79,34 @@ public class DictionaryDataStore {
 	 * The data format includes the database schema as well as the format of
 	 * values within the database.
 	 */
-	public static final int DATA_FORMAT_VERSION = 0;
+	public static final int DATA_FORMAT_VERSION = 3;
+
+	/**
+	 * The suffix of the source version of a data store that contains only the
+	 * core tier of a dictionary.
+	 */
+	public static final String CORE_TIER_SOURCE_VERSION_SUFFIX = "+core";
 
 	protected final Dao<DictionaryDataStoreEntry, Long> dictionaryEntryDao;
 
 	protected final Dao<DictionaryDataStoreMetadata, Long> dictionaryMetadataDao;
 
+	protected final Dao<DictionaryDataStoreReference, Long> dictionaryReferenceDao;
+
+	private final AtomicLong generation = new AtomicLong();
+
+	private final Object tierLock = new Object();
+
+	/* null until the metadata is first read */
+	private volatile Boolean coreTier;
+
 	@Inject
 	public DictionaryDataStore(final Dao<DictionaryDataStoreEntry, Long> dictionaryEntryDao,
-			final Dao<DictionaryDataStoreMetadata, Long> dictionaryMetadataDao) {
+			final Dao<DictionaryDataStoreMetadata, Long> dictionaryMetadataDao,
+			final Dao<DictionaryDataStoreReference, Long> dictionaryReferenceDao) {
 		this.dictionaryEntryDao = dictionaryEntryDao;
 		this.dictionaryMetadataDao = dictionaryMetadataDao;
+		this.dictionaryReferenceDao = dictionaryReferenceDao;
 	}
 
 	private static CancellationSignaller createOrmliteSignaller(final SearchCanceller canceller) {
@@ -90,6 +128,7 @@ public class DictionaryDataStore {
 	 */
 	public void createSchema() {
 		new DictionaryDataStoreSchemaCreator().createSchema(this.getConnectionSource());
+		this.reloadMetadata();
 	}
 
 	private ConnectionSource getConnectionSource() {
@@ -100,12 +139,24 @@ public class DictionaryDataStore {
 	 * Insert expected dictionary metadata into the database.
 	 */
 	public void populateMetadata() {
+		this.populateMetadata(null);
+	}
+
+	/**
+	 * Insert expected dictionary metadata into the database.
+	 * 
+	 * @param sourceVersion the version of the source data that the dictionary
+	 *        is loaded from (may be <code>null</code>).
+	 */
+	public void populateMetadata(final String sourceVersion) {
 		LOGGER.debug("Populating DB metadata.");
 		final DictionaryDataStoreMetadata metadata = new DictionaryDataStoreMetadata();
 		metadata.setId(METADATA_ROW_ID);
 		metadata.setVersion(DATA_FORMAT_VERSION);
 		metadata.setBuildDate(new Date());
+		metadata.setSourceVersion(sourceVersion);
 		this.saveMetadata(metadata);
+		this.setCoreTier(metadata);
 	}
 
 	/**
@@ -118,13 +169,145 @@ public class DictionaryDataStore {
 	 * @return a sequential integer version number.
 	 */
 	public int getCurrentDataFormatVersion() {
+		return readDataFormatVersion(this.dictionaryMetadataDao);
+	}
+
+	/*
+	 * Query the version column alone since the metadata table of an older data
+	 * format may not have all the columns of the current format.
+	 */
+	private static int readDataFormatVersion(final Dao<DictionaryDataStoreMetadata, Long> metadataDao) {
+		try {
+			return (int) metadataDao.queryRawValue("select " + DictionaryDataStoreMetadata.COLUMN_VERSION + " from "
+					+ DictionaryDataStoreMetadata.TABLE_NAME + " where " + DictionaryDataStoreMetadata.COLUMN_ID + " = " + METADATA_ROW_ID);
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to load datastore metadata", e);
+		}
+	}
+
+	/**
+	 * Route the queries of this data store to another database, without
+	 * interrupting queries that are running.
+	 * <p>
+	 * The data store must have been created with DAOs of a
+	 * {@link SwappableConnectionSource}. Queries that are running finish on
+	 * the replaced database, which is closed once they are done. Pages that
+	 * were prefetched from the replaced database are not served afterwards.
+	 * 
+	 * @param replacement the connection source of the database to route to.
+	 *        It is not closed if it is rejected.
+	 * @throws DictionaryDataStoreException if the database does not have the
+	 *         current {@link #DATA_FORMAT_VERSION data format version}.
+	 * @throws IllegalStateException if the connection source of this data
+	 *         store is not swappable.
+	 */
+	public void swapDatabase(final ConnectionSource replacement) {
+		final ConnectionSource connectionSource = this.getConnectionSource();
+		if (!(connectionSource instanceof SwappableConnectionSource)) {
+			throw new IllegalStateException("Data store connection source is not swappable");
+		}
+		final int dataFormatVersion = readDataFormatVersion(replacement);
+		if (dataFormatVersion != DATA_FORMAT_VERSION) {
+			throw new DictionaryDataStoreException("Replacement database has data format version " + dataFormatVersion + ", expected "
+					+ DATA_FORMAT_VERSION, null);
+		}
+		/* the generation changes after the swap, so no page of the old database outlives it */
+		((SwappableConnectionSource) connectionSource).swap(replacement);
+		this.generation.incrementAndGet();
+		this.reloadMetadata();
+		LOGGER.info("Swapped dictionary database");
+	}
+
+	/*
+	 * The DAO is unregistered afterwards, as the DAO manager would otherwise
+	 * keep the connection source reachable after it is replaced again.
+	 */
+	private static int readDataFormatVersion(final ConnectionSource connectionSource) {
+		final Dao<DictionaryDataStoreMetadata, Long> metadataDao;
 		try {
-			return this.dictionaryMetadataDao.queryForId(METADATA_ROW_ID).getVersion();
+			metadataDao = DaoManager.createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to create metadata DAO", e);
+		}
+		try {
+			return readDataFormatVersion(metadataDao);
+		} finally {
+			DaoManager.unregisterDao(connectionSource, metadataDao);
+		}
+	}
+
+	/**
+	 * @return a number that changes each time the database is
+	 *         {@link #swapDatabase(ConnectionSource) swapped}.
+	 */
+	long getGeneration() {
+		return this.generation.get();
+	}
+
+	/**
+	 * Get the version of the source data that this data store's entries were
+	 * loaded from.
+	 * 
+	 * @return the source version or <code>null</code> if it was not recorded.
+	 */
+	public String getSourceVersion() {
+		try {
+			return this.dictionaryMetadataDao.queryForId(METADATA_ROW_ID).getSourceVersion();
 		} catch (final SQLException e) {
 			throw new DictionaryDataStoreException("Failed to load datastore metadata", e);
 		}
 	}
 
+	/**
+	 * Check whether this data store contains only the core tier of a
+	 * dictionary, so that searches may not find every matching entry.
+	 * <p>
+	 * The answer is read from the metadata once and kept until this data
+	 * store changes the metadata, its database is swapped or
+	 * {@link #reloadMetadata()} is called.
+	 * 
+	 * @return <code>true</code> if the data store was reduced by
+	 *         {@link #reduceToCoreTier(int, Collection)} and the remainder has
+	 *         not yet been merged.
+	 */
+	public boolean isCoreTier() {
+		final Boolean coreTier = this.coreTier;
+		if (coreTier != null) {
+			return coreTier;
+		}
+		/* a write that commits meanwhile sets the field after this read */
+		synchronized (this.tierLock) {
+			if (this.coreTier == null) {
+				this.coreTier = isCoreTierSourceVersion(this.getSourceVersion());
+			}
+			return this.coreTier;
+		}
+	}
+
+	/**
+	 * Discard the metadata that this data store has cached, so that it is
+	 * read again from the database.
+	 * <p>
+	 * This should be called after the database has been changed through
+	 * another data store, such as when a patch is applied over a separate
+	 * connection.
+	 */
+	public void reloadMetadata() {
+		synchronized (this.tierLock) {
+			this.coreTier = null;
+		}
+	}
+
+	private void setCoreTier(final DictionaryDataStoreMetadata metadata) {
+		synchronized (this.tierLock) {
+			this.coreTier = isCoreTierSourceVersion(metadata.getSourceVersion());
+		}
+	}
+
+	private static boolean isCoreTierSourceVersion(final String sourceVersion) {
+		return sourceVersion != null && sourceVersion.endsWith(CORE_TIER_SOURCE_VERSION_SUFFIX);
+	}
+
 	private void saveMetadata(final DictionaryDataStoreMetadata metadata) {
 		LOGGER.debug("Saving DB metadata: {}.", metadata);
 		try {
@@ -135,56 +318,653 @@ public class DictionaryDataStore {
 	}
 
 	/**
-	 * Add a collection of entries to the datastore.
+	 * Add a collection of entries to the datastore in a single transaction.
+	 * <p>
+	 * Entries which share a key are given successive ids in the order they
+	 * appear in the collection, without checking the ids already in the data
+	 * store. Entries with the same key must therefore be added in the same
+	 * collection.
 	 * 
 	 * @param entries a collection of {@link DictionaryEntry}.
+	 * @return {@link DictionaryDataStoreBatchStatistics} for the transaction.
 	 */
-	public void add(final Collection<DictionaryEntry> entries) {
+	public DictionaryDataStoreBatchStatistics add(final Collection<DictionaryEntry> entries) {
 		LOGGER.debug(String.format("Adding %d entries to dictionary DB.", entries.size()));
+		final BulkEntryAdd bulkEntryAdd = new BulkEntryAdd(entries);
+		final long startTime = System.nanoTime();
 		try {
-			TransactionManager.callInTransaction(this.dictionaryEntryDao.getConnectionSource(), new BulkEntryAdd(entries));
+			TransactionManager.callInTransaction(this.dictionaryEntryDao.getConnectionSource(), bulkEntryAdd);
 		} catch (final SQLException e) {
 			throw new DictionaryDataStoreException("Failed to add dictionary entries", e);
 		}
+		final long transactionTime = System.nanoTime() - startTime;
+		return new DictionaryDataStoreBatchStatistics(entries.size(), bulkEntryAdd.insertTime, transactionTime - bulkEntryAdd.insertTime);
 	}
 
 	private class BulkEntryAdd implements Callable<Void> {
 
 		private final Collection<DictionaryEntry> entries;
 
+		private long insertTime;
+
 		public BulkEntryAdd(final Collection<DictionaryEntry> entries) {
 			this.entries = entries;
 		}
 
 		@Override
 		public Void call() throws Exception {
-			for (final DictionaryEntry dictionaryEntry : this.entries) {
-				DictionaryDataStore.this.add(dictionaryEntry);
+			final long startTime = System.nanoTime();
+			for (final Map.Entry<Long, DictionaryEntry> entryWithId : DictionaryDataStore.this.createEntryIds(this.entries).entrySet()) {
+				DictionaryDataStore.this.add(entryWithId.getKey(), entryWithId.getValue());
 			}
+			this.insertTime = System.nanoTime() - startTime;
 			return null;
 		}
 
 	}
 
+	/**
+	 * Add a single entry to the data store.
+	 * <p>
+	 * The entry is given the first id in its key's id sequence that is not
+	 * already used, so it may share a key with entries already in the data
+	 * store.
+	 * 
+	 * @param entry a {@link DictionaryEntry}.
+	 */
 	public void add(final DictionaryEntry entry) {
+		final Long id;
+		try {
+			id = this.findUnusedEntryId(this.createEntryKey(entry));
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to add dictionary entry: " + entry, e);
+		}
+		this.add(id, entry);
+	}
+
+	private void add(final Long id, final DictionaryEntry entry) {
 		LOGGER.debug("Adding entry to dictionary DB: " + entry);
 		final DictionaryDataStoreEntry dbEntry = this.createDbEntry(entry);
+		dbEntry.setId(id);
 		try {
 			this.dictionaryEntryDao.create(dbEntry);
+			this.addReferences(id, entry.getReferences());
 		} catch (final SQLException e) {
 			throw new DictionaryDataStoreException("Failed to add dictionary entry: " + entry, e);
 		}
 	}
 
+	/**
+	 * Find the first id in the given key's id sequence that is not used by a
+	 * persisted entry.
+	 * <p>
+	 * This allocates the same ids as {@link #createEntryIds(Collection)} does
+	 * when entries are added to an empty data store in order.
+	 */
+	private Long findUnusedEntryId(final String entryKey) throws SQLException {
+		int occurrence = 0;
+		Long id = createEntryId(entryKey, occurrence);
+		while (this.dictionaryEntryDao.idExists(id)) {
+			occurrence += 1;
+			id = createEntryId(entryKey, occurrence);
+		}
+		return id;
+	}
+
+	/**
+	 * Get the stable id that identifies the given entry in any data store.
+	 * <p>
+	 * Entry ids are derived from the traditional characters, simplified
+	 * characters and pinyin of an entry so that an entry keeps its id when the
+	 * dictionary is rebuilt from newer source data. Definitions are not part of
+	 * the id, so an entry whose definitions are revised is updated rather than
+	 * replaced.
+	 * <p>
+	 * In the rare case that several entries share the same characters and
+	 * pinyin, this is the id of the first such entry.
+	 * 
+	 * @param entry a {@link DictionaryEntry}.
+	 * @return a positive entry id.
+	 */
+	public long getEntryId(final DictionaryEntry entry) {
+		return createEntryId(this.createEntryKey(entry), 0);
+	}
+
+	private String createEntryKey(final DictionaryEntry entry) {
+		return this.createEntryKey(entry.getTraditional(), entry.getSimplified(), entry.getPinyin());
+	}
+
+	private String createEntryKey(final String traditional, final String simplified, final List<PinyinSyllable> pinyin) {
+		return traditional + " " + simplified + " [" + this.formatPinyin(pinyin).trim() + "]";
+	}
+
+	private static Long createEntryId(final String entryKey, final int occurrence) {
+		final String idSource = occurrence == 0 ? entryKey : entryKey + "#" + occurrence;
+		final byte[] digest = sha1(idSource);
+		long id = 0;
+		for (int i = 0; i < 8; i++) {
+			id = (id << 8) | (digest[i] & 0xff);
+		}
+		return id & Long.MAX_VALUE;
+	}
+
+	private String createContentHash(final DictionaryDataStoreEntry dbEntry, final List<DictionaryEntryReference> references) {
+		final StringBuilder content = new StringBuilder();
+		content.append(dbEntry.getTraditional()).append("\n").append(dbEntry.getSimplified()).append("\n").append(dbEntry.getPinyin())
+				.append("\n").append(dbEntry.getEnglish()).append("\n").append(dbEntry.getFlags());
+		for (final DictionaryEntryReference reference : references) {
+			content.append("\n").append(reference.getType()).append(" ")
+					.append(this.createEntryKey(reference.getTraditional(), reference.getSimplified(), reference.getPinyin()));
+		}
+		return HexUtil.bytesToHex(sha1(content.toString()));
+	}
+
+	private static byte[] sha1(final String text) {
+		try {
+			return MessageDigest.getInstance("SHA1").digest(text.getBytes("UTF-8"));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new DictionaryDataStoreException("SHA1 digest unavailable", e);
+		} catch (final UnsupportedEncodingException e) {
+			throw new DictionaryDataStoreException("UTF-8 encoding unavailable", e);
+		}
+	}
+
+	/**
+	 * Assign an entry id to each dictionary entry.
+	 * <p>
+	 * Entries which share a key are given successive ids in the order they
+	 * appear in the collection.
+	 */
+	private Map<Long, DictionaryEntry> createEntryIds(final Collection<DictionaryEntry> entries) {
+		final Map<Long, DictionaryEntry> entriesById = new LinkedHashMap<Long, DictionaryEntry>();
+		final Map<String, Integer> keyOccurrences = new HashMap<String, Integer>();
+		for (final DictionaryEntry entry : entries) {
+			final String entryKey = this.createEntryKey(entry);
+			final Integer previousOccurrences = keyOccurrences.get(entryKey);
+			final int occurrence = previousOccurrences == null ? 0 : previousOccurrences;
+			keyOccurrences.put(entryKey, occurrence + 1);
+			entriesById.put(createEntryId(entryKey, occurrence), entry);
+		}
+		return entriesById;
+	}
+
 	private DictionaryDataStoreEntry createDbEntry(final DictionaryEntry entry) {
 		final DictionaryDataStoreEntry dbEntry = new DictionaryDataStoreEntry();
 		dbEntry.setTraditional(entry.getTraditional());
 		dbEntry.setSimplified(entry.getSimplified());
 		dbEntry.setPinyin(this.formatPinyin(entry.getPinyin()));
 		dbEntry.setEnglish(this.formatDefinitions(entry.getDefinitions()));
+		dbEntry.setFlags(DictionaryEntryFlag.toMask(entry.getFlags()));
+		dbEntry.setContentHash(this.createContentHash(dbEntry, entry.getReferences()));
 		return dbEntry;
 	}
 
+	private void addReferences(final Long entryId, final List<DictionaryEntryReference> references) throws SQLException {
+		for (final DictionaryEntryReference reference : references) {
+			this.dictionaryReferenceDao.create(this.createDbReference(entryId, reference));
+		}
+	}
+
+	/*
+	 * References that specify the pinyin and tone of every syllable identify
+	 * the referenced entry exactly, so its stable id is known up front. Other
+	 * references are matched on their characters by resolveReferences().
+	 */
+	private DictionaryDataStoreReference createDbReference(final Long entryId, final DictionaryEntryReference reference) {
+		final DictionaryDataStoreReference dbReference = new DictionaryDataStoreReference();
+		dbReference.setEntryId(entryId);
+		dbReference.setType(reference.getType());
+		dbReference.setTraditional(reference.getTraditional());
+		dbReference.setSimplified(reference.getSimplified());
+		if (!reference.getPinyin().isEmpty()) {
+			dbReference.setPinyin(this.formatPinyin(reference.getPinyin()));
+		}
+		if (!reference.getPinyin().isEmpty() && !hasAnyTone(reference.getPinyin())) {
+			dbReference.setReferencedEntryId(createEntryId(
+					this.createEntryKey(reference.getTraditional(), reference.getSimplified(), reference.getPinyin()), 0));
+		}
+		return dbReference;
+	}
+
+	/**
+	 * Link references that do not specify pinyin with tones to an entry with
+	 * the referenced characters.
+	 * <p>
+	 * This should be called after entries have been added to the data store.
+	 * If several entries have the referenced characters, the reference is
+	 * linked to the one whose pinyin sorts first, preferring lower case pinyin
+	 * over the capitalised pinyin of proper nouns. The choice depends only on
+	 * the content of the data store, so a data store that has been updated or
+	 * patched links the same entries as one populated from scratch. Every such
+	 * reference is linked again on each call, and references that cannot be
+	 * matched to any entry are left unresolved.
+	 */
+	public void resolveReferences() {
+		LOGGER.debug("Resolving dictionary entry references.");
+		final String referenceTable = DictionaryDataStoreReference.TABLE_NAME;
+		final String pinyinColumn = referenceTable + "." + DictionaryDataStoreReference.COLUMN_PINYIN;
+		try {
+			/*
+			 * A formatted syllable of any tone has no tone number, so it is
+			 * followed directly by a space.
+			 */
+			final int resolvedCount = this.dictionaryReferenceDao.executeRaw("update " + referenceTable + " set "
+					+ DictionaryDataStoreReference.COLUMN_REFERENCED_ENTRY_ID + " = (select e." + DictionaryDataStoreEntry.COLUMN_ID + " from "
+					+ DictionaryDataStoreEntry.TABLE_NAME + " e where e." + DictionaryDataStoreEntry.COLUMN_HANZI_SIMPLIFIED + " = "
+					+ referenceTable + "." + DictionaryDataStoreReference.COLUMN_HANZI_SIMPLIFIED + " and e."
+					+ DictionaryDataStoreEntry.COLUMN_HANZI_TRADITIONAL + " = " + referenceTable + "."
+					+ DictionaryDataStoreReference.COLUMN_HANZI_TRADITIONAL + " order by lower(e." + DictionaryDataStoreEntry.COLUMN_PINYIN
+					+ "), e." + DictionaryDataStoreEntry.COLUMN_PINYIN + " desc, e." + DictionaryDataStoreEntry.COLUMN_ID + " limit 1) where "
+					+ pinyinColumn + " is null or " + pinyinColumn + " glob '*[^0-9] *'");
+			LOGGER.debug("Resolved {} references by their characters.", resolvedCount);
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to resolve references", e);
+		}
+	}
+
+	/**
+	 * Incrementally update the data store so that it contains exactly the
+	 * given entries.
+	 * <p>
+	 * The given entries are compared against the content hashes of the
+	 * persisted entries and only the entries that have been added, changed or
+	 * removed are written. All changes, including recording the new source
+	 * version in the metadata, are applied in a single transaction.
+	 * <p>
+	 * The data store must already use the current {@link #DATA_FORMAT_VERSION}.
+	 * 
+	 * @param entries the complete collection of {@link DictionaryEntry} the
+	 *        data store should contain.
+	 * @param sourceVersion the version of the source data that the entries are
+	 *        loaded from (may be <code>null</code>).
+	 * @return a {@link DictionaryDataStoreUpdateSummary} of the changes made.
+	 * @see #startUpdate(String)
+	 */
+	public DictionaryDataStoreUpdateSummary update(final Collection<DictionaryEntry> entries, final String sourceVersion) {
+		LOGGER.debug("Updating dictionary DB with {} entries.", entries.size());
+		final IncrementalUpdate incrementalUpdate = this.startUpdate(sourceVersion);
+		for (final DictionaryEntry entry : entries) {
+			incrementalUpdate.add(entry);
+		}
+		return incrementalUpdate.finish();
+	}
+
+	/**
+	 * Start an incremental update that is given the entries the data store
+	 * should contain one at a time, as they are loaded.
+	 * <p>
+	 * Each entry is compared against the content hashes of the persisted
+	 * entries as it is added, and only the entries that have been added or
+	 * changed are kept until the update is {@link IncrementalUpdate#finish()
+	 * finished}. The update then works as {@link #update(Collection, String)}
+	 * does.
+	 * 
+	 * @param sourceVersion the version of the source data that the entries are
+	 *        loaded from (may be <code>null</code>).
+	 * @return an {@link IncrementalUpdate} to add every entry to.
+	 */
+	public IncrementalUpdate startUpdate(final String sourceVersion) {
+		return new IncrementalUpdate(this.getContentHashes(), sourceVersion);
+	}
+
+	/**
+	 * An update started by {@link DictionaryDataStore#startUpdate(String)}.
+	 */
+	public class IncrementalUpdate {
+
+		private final Map<Long, String> storedContentHashes;
+
+		private final String sourceVersion;
+
+		/* the number of entries added so far for each entry key, by the id of its first occurrence */
+		private final Map<Long, Integer> keyOccurrences = new HashMap<Long, Integer>();
+
+		private final List<DictionaryDataStoreEntry> insertedEntries = new ArrayList<DictionaryDataStoreEntry>();
+
+		private final List<DictionaryDataStoreEntry> updatedEntries = new ArrayList<DictionaryDataStoreEntry>();
+
+		private final List<DictionaryDataStoreReference> references = new ArrayList<DictionaryDataStoreReference>();
+
+		private IncrementalUpdate(final Map<Long, String> storedContentHashes, final String sourceVersion) {
+			this.storedContentHashes = storedContentHashes;
+			this.sourceVersion = sourceVersion;
+		}
+
+		/**
+		 * Add the next entry the data store should contain. Entries which
+		 * share a key are given successive ids in the order they are added.
+		 * 
+		 * @param entry a {@link DictionaryEntry}.
+		 */
+		public void add(final DictionaryEntry entry) {
+			final String entryKey = DictionaryDataStore.this.createEntryKey(entry);
+			final Long firstId = createEntryId(entryKey, 0);
+			final Integer previousOccurrences = this.keyOccurrences.get(firstId);
+			final int occurrence = previousOccurrences == null ? 0 : previousOccurrences;
+			this.keyOccurrences.put(firstId, occurrence + 1);
+			final DictionaryDataStoreEntry dbEntry = DictionaryDataStore.this.createDbEntry(entry);
+			dbEntry.setId(occurrence == 0 ? firstId : createEntryId(entryKey, occurrence));
+			final String storedContentHash = this.storedContentHashes.remove(dbEntry.getId());
+			if (storedContentHash == null) {
+				this.insertedEntries.add(dbEntry);
+			} else if (!storedContentHash.equals(dbEntry.getContentHash())) {
+				this.updatedEntries.add(dbEntry);
+			} else {
+				return;
+			}
+			for (final DictionaryEntryReference reference : entry.getReferences()) {
+				this.references.add(DictionaryDataStore.this.createDbReference(dbEntry.getId(), reference));
+			}
+		}
+
+		/**
+		 * Write the changes in a single transaction, deleting the persisted
+		 * entries that were not added to the update.
+		 * 
+		 * @return a {@link DictionaryDataStoreUpdateSummary} of the changes
+		 *         made.
+		 */
+		public DictionaryDataStoreUpdateSummary finish() {
+			final Collection<Long> deletedIds = this.storedContentHashes.keySet();
+			final DictionaryDataStoreMetadata metadata = DictionaryDataStore.this.getMetadata();
+			metadata.setBuildDate(new Date());
+			metadata.setSourceVersion(this.sourceVersion);
+			try {
+				TransactionManager.callInTransaction(DictionaryDataStore.this.getConnectionSource(), new EntryChangesUpdate(
+						this.insertedEntries, this.updatedEntries, deletedIds, this.references, metadata));
+			} catch (final SQLException e) {
+				throw new DictionaryDataStoreException("Failed to update dictionary entries", e);
+			}
+			DictionaryDataStore.this.setCoreTier(metadata);
+			final DictionaryDataStoreUpdateSummary summary = new DictionaryDataStoreUpdateSummary(this.insertedEntries.size(),
+					this.updatedEntries.size(), deletedIds.size());
+			LOGGER.info("Updated dictionary DB to source version {}: {}", this.sourceVersion, summary);
+			return summary;
+		}
+
+	}
+
+	private Map<Long, String> getContentHashes() {
+		final List<DictionaryDataStoreEntry> storedEntries;
+		try {
+			storedEntries = this.dictionaryEntryDao.queryBuilder()
+					.selectColumns(DictionaryDataStoreEntry.COLUMN_ID, DictionaryDataStoreEntry.COLUMN_CONTENT_HASH)
+					.query();
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to load entry content hashes", e);
+		}
+		final Map<Long, String> contentHashes = new HashMap<Long, String>(storedEntries.size() * 2);
+		for (final DictionaryDataStoreEntry storedEntry : storedEntries) {
+			contentHashes.put(storedEntry.getId(), storedEntry.getContentHash());
+		}
+		return contentHashes;
+	}
+
+	/**
+	 * Get a digest of the content of every entry in the data store, and of
+	 * the entries that their references are linked to.
+	 * <p>
+	 * Data stores that contain the same entries with the same content have the
+	 * same digest, regardless of when or how the entries were written.
+	 * 
+	 * @return a hex encoded SHA-1 digest.
+	 */
+	public String getContentDigest() {
+		final List<DictionaryDataStoreEntry> storedEntries;
+		final List<String[]> storedReferences;
+		try {
+			storedEntries = this.dictionaryEntryDao.queryBuilder()
+					.selectColumns(DictionaryDataStoreEntry.COLUMN_ID, DictionaryDataStoreEntry.COLUMN_CONTENT_HASH)
+					.orderBy(DictionaryDataStoreEntry.COLUMN_ID, true).query();
+			storedReferences = this.dictionaryReferenceDao.queryRaw(
+					"select " + DictionaryDataStoreReference.COLUMN_ENTRY_ID + ", " + DictionaryDataStoreReference.COLUMN_REFERENCED_ENTRY_ID
+							+ " from " + DictionaryDataStoreReference.TABLE_NAME + " order by "
+							+ DictionaryDataStoreReference.COLUMN_ENTRY_ID + ", " + DictionaryDataStoreReference.COLUMN_REFERENCED_ENTRY_ID)
+					.getResults();
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to load entry content hashes", e);
+		}
+		final StringBuilder content = new StringBuilder(storedEntries.size() * 64 + storedReferences.size() * 40);
+		for (final DictionaryDataStoreEntry storedEntry : storedEntries) {
+			content.append(storedEntry.getId()).append(" ").append(storedEntry.getContentHash()).append("\n");
+		}
+		for (final String[] storedReference : storedReferences) {
+			content.append(storedReference[0]).append(" -> ").append(storedReference[1]).append("\n");
+		}
+		return HexUtil.bytesToHex(sha1(content.toString()));
+	}
+
+	/**
+	 * Create a patch that turns a data store with the content of the given
+	 * base data store into a data store with the content of this data store.
+	 * <p>
+	 * Both data stores must use the current {@link #DATA_FORMAT_VERSION} and
+	 * should have their references resolved.
+	 * 
+	 * @param base the data store built from the earlier source version.
+	 * @return a {@link DictionaryDataStorePatch} from the source version of the
+	 *         base data store to the source version of this data store.
+	 */
+	public DictionaryDataStorePatch createPatch(final DictionaryDataStore base) {
+		final Map<Long, String> baseContentHashes = base.getContentHashes();
+		final Map<Long, String> contentHashes = this.getContentHashes();
+		final List<Long> changedIds = new ArrayList<Long>();
+		for (final Map.Entry<Long, String> contentHash : contentHashes.entrySet()) {
+			final String baseContentHash = baseContentHashes.remove(contentHash.getKey());
+			if (!contentHash.getValue().equals(baseContentHash)) {
+				changedIds.add(contentHash.getKey());
+			}
+		}
+		final List<Long> deletedIds = new ArrayList<Long>(baseContentHashes.keySet());
+		Collections.sort(changedIds);
+		Collections.sort(deletedIds);
+		final List<DictionaryDataStoreEntry> entries = new ArrayList<DictionaryDataStoreEntry>(changedIds.size());
+		final List<DictionaryDataStoreReference> references = new ArrayList<DictionaryDataStoreReference>();
+		try {
+			for (int i = 0; i < changedIds.size(); i += MAX_DELETE_BATCH_SIZE) {
+				final List<Long> batchIds = changedIds.subList(i, Math.min(i + MAX_DELETE_BATCH_SIZE, changedIds.size()));
+				entries.addAll(this.dictionaryEntryDao.queryBuilder().orderBy(DictionaryDataStoreEntry.COLUMN_ID, true).where()
+						.in(DictionaryDataStoreEntry.COLUMN_ID, batchIds).query());
+				references.addAll(this.dictionaryReferenceDao.queryBuilder().orderBy(DictionaryDataStoreReference.COLUMN_ID, true).where()
+						.in(DictionaryDataStoreReference.COLUMN_ENTRY_ID, batchIds).query());
+			}
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to load changed entries", e);
+		}
+		for (final DictionaryDataStoreReference reference : references) {
+			reference.setId(null);
+			/* references without pinyin tones are resolved against the patched data store */
+			if (reference.getPinyin() == null || hasAnyTone(this.unformatPinyin(reference.getPinyin()))) {
+				reference.setReferencedEntryId(null);
+			}
+		}
+		final DictionaryDataStorePatch patch = new DictionaryDataStorePatch(DATA_FORMAT_VERSION, base.getSourceVersion(),
+				this.getSourceVersion(), this.getContentDigest(), entries, references, deletedIds);
+		LOGGER.info("Created dictionary DB patch: {}", patch);
+		return patch;
+	}
+
+	/**
+	 * Apply a patch created by {@link #createPatch(DictionaryDataStore)}.
+	 * <p>
+	 * All changes, including recording the new source version in the
+	 * metadata, are applied in a single transaction. The transaction is rolled
+	 * back if the content of the patched data store does not match the
+	 * {@link DictionaryDataStorePatch#getContentDigest() digest} of the patch.
+	 * 
+	 * @param patch a {@link DictionaryDataStorePatch} whose source version is
+	 *        the current source version of this data store.
+	 * @return a {@link DictionaryDataStoreUpdateSummary} of the changes made.
+	 * @throws DictionaryDataStoreException if the patch does not apply to this
+	 *         data store, or applying it fails.
+	 */
+	public DictionaryDataStoreUpdateSummary applyPatch(final DictionaryDataStorePatch patch) {
+		final int dataFormatVersion = this.getCurrentDataFormatVersion();
+		final String sourceVersion = this.getSourceVersion();
+		if (patch.getDataFormatVersion() != dataFormatVersion || sourceVersion == null || !sourceVersion.equals(patch.getFromSourceVersion())) {
+			throw new DictionaryDataStoreException("Patch " + patch + " does not apply to data format version " + dataFormatVersion
+					+ ", source version " + sourceVersion, null);
+		}
+		final Map<Long, String> storedContentHashes = this.getContentHashes();
+		final List<DictionaryDataStoreEntry> insertedEntries = new ArrayList<DictionaryDataStoreEntry>();
+		final List<DictionaryDataStoreEntry> updatedEntries = new ArrayList<DictionaryDataStoreEntry>();
+		for (final DictionaryDataStoreEntry entry : patch.getEntries()) {
+			if (storedContentHashes.containsKey(entry.getId())) {
+				updatedEntries.add(entry);
+			} else {
+				insertedEntries.add(entry);
+			}
+		}
+		final List<Long> deletedIds = new ArrayList<Long>();
+		for (final Long deletedId : patch.getDeletedIds()) {
+			if (storedContentHashes.containsKey(deletedId)) {
+				deletedIds.add(deletedId);
+			}
+		}
+		final DictionaryDataStoreMetadata metadata = this.getMetadata();
+		metadata.setBuildDate(new Date());
+		metadata.setSourceVersion(patch.getToSourceVersion());
+		final EntryChangesUpdate entryChangesUpdate = new EntryChangesUpdate(insertedEntries, updatedEntries, deletedIds,
+				patch.getReferences(), metadata);
+		try {
+			TransactionManager.callInTransaction(this.getConnectionSource(), new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					entryChangesUpdate.call();
+					final String contentDigest = DictionaryDataStore.this.getContentDigest();
+					if (!contentDigest.equals(patch.getContentDigest())) {
+						throw new DictionaryDataStoreException("Patched content digest " + contentDigest + " does not match expected digest "
+								+ patch.getContentDigest(), null);
+					}
+					return null;
+				}
+
+			});
+		} catch (final SQLException e) {
+			if (e.getCause() instanceof DictionaryDataStoreException) {
+				throw (DictionaryDataStoreException) e.getCause();
+			}
+			throw new DictionaryDataStoreException("Failed to apply patch " + patch, e);
+		}
+		this.setCoreTier(metadata);
+		final DictionaryDataStoreUpdateSummary summary = new DictionaryDataStoreUpdateSummary(insertedEntries.size(), updatedEntries.size(),
+				deletedIds.size());
+		LOGGER.info("Patched dictionary DB to source version {}: {}", patch.getToSourceVersion(), summary);
+		return summary;
+	}
+
+	/**
+	 * Reduce the data store to the core tier of the dictionary: the entries
+	 * with short headwords that are not flagged with any of the given flags.
+	 * <p>
+	 * The source version of the data store is marked with
+	 * {@link #CORE_TIER_SOURCE_VERSION_SUFFIX}. The removed entries can be
+	 * restored with a patch {@link #createPatch(DictionaryDataStore) created}
+	 * from the core tier to the full data store.
+	 * 
+	 * @param maxHeadwordLength the maximum number of characters in the
+	 *        simplified headword of a core tier entry.
+	 * @param excludedFlags the flags of entries that are never in the core
+	 *        tier.
+	 * @return the number of entries removed.
+	 */
+	public int reduceToCoreTier(final int maxHeadwordLength, final Collection<DictionaryEntryFlag> excludedFlags) {
+		final String sourceVersion = this.getSourceVersion();
+		final DictionaryDataStoreMetadata metadata = this.getMetadata();
+		metadata.setSourceVersion((sourceVersion == null ? "" : sourceVersion) + CORE_TIER_SOURCE_VERSION_SUFFIX);
+		final int removedCount;
+		try {
+			removedCount = TransactionManager.callInTransaction(this.getConnectionSource(), new Callable<Integer>() {
+
+				@Override
+				public Integer call() throws Exception {
+					final int removedCount = DictionaryDataStore.this.dictionaryEntryDao.executeRaw("delete from "
+							+ DictionaryDataStoreEntry.TABLE_NAME + " where length(" + DictionaryDataStoreEntry.COLUMN_HANZI_SIMPLIFIED + ") > "
+							+ maxHeadwordLength + " or (" + DictionaryDataStoreEntry.COLUMN_FLAGS + " & "
+							+ DictionaryEntryFlag.toMask(excludedFlags) + ") != 0");
+					DictionaryDataStore.this.dictionaryReferenceDao.executeRaw("delete from " + DictionaryDataStoreReference.TABLE_NAME
+							+ " where " + DictionaryDataStoreReference.COLUMN_ENTRY_ID + " not in (select " + DictionaryDataStoreEntry.COLUMN_ID
+							+ " from " + DictionaryDataStoreEntry.TABLE_NAME + ")");
+					DictionaryDataStore.this.saveMetadata(metadata);
+					return removedCount;
+				}
+
+			});
+			this.setCoreTier(metadata);
+			/* reclaim the space of removed rows so the core tier artifact is small */
+			this.dictionaryEntryDao.executeRaw("vacuum");
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to reduce dictionary to core tier", e);
+		}
+		LOGGER.info("Reduced dictionary DB to core tier by removing {} entries.", removedCount);
+		return removedCount;
+	}
+
+	private DictionaryDataStoreMetadata getMetadata() {
+		try {
+			return this.dictionaryMetadataDao.queryForId(METADATA_ROW_ID);
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to load datastore metadata", e);
+		}
+	}
+
+	private class EntryChangesUpdate implements Callable<Void> {
+
+		private final Collection<DictionaryDataStoreEntry> insertedEntries;
+
+		private final Collection<DictionaryDataStoreEntry> updatedEntries;
+
+		private final Collection<Long> deletedIds;
+
+		private final Collection<DictionaryDataStoreReference> references;
+
+		private final DictionaryDataStoreMetadata metadata;
+
+		public EntryChangesUpdate(final Collection<DictionaryDataStoreEntry> insertedEntries,
+				final Collection<DictionaryDataStoreEntry> updatedEntries, final Collection<Long> deletedIds,
+				final Collection<DictionaryDataStoreReference> references, final DictionaryDataStoreMetadata metadata) {
+			this.insertedEntries = insertedEntries;
+			this.updatedEntries = updatedEntries;
+			this.deletedIds = deletedIds;
+			this.references = references;
+			this.metadata = metadata;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			final Dao<DictionaryDataStoreEntry, Long> dao = DictionaryDataStore.this.dictionaryEntryDao;
+			final List<Long> deletedIds = new ArrayList<Long>(this.deletedIds);
+			final List<Long> changedIds = new ArrayList<Long>(deletedIds);
+			for (final DictionaryDataStoreEntry updatedEntry : this.updatedEntries) {
+				changedIds.add(updatedEntry.getId());
+			}
+			for (int i = 0; i < changedIds.size(); i += MAX_DELETE_BATCH_SIZE) {
+				final DeleteBuilder<DictionaryDataStoreReference, Long> referenceDelete = DictionaryDataStore.this.dictionaryReferenceDao
+						.deleteBuilder();
+				referenceDelete.where().in(DictionaryDataStoreReference.COLUMN_ENTRY_ID,
+						changedIds.subList(i, Math.min(i + MAX_DELETE_BATCH_SIZE, changedIds.size())));
+				referenceDelete.delete();
+			}
+			for (int i = 0; i < deletedIds.size(); i += MAX_DELETE_BATCH_SIZE) {
+				dao.deleteIds(deletedIds.subList(i, Math.min(i + MAX_DELETE_BATCH_SIZE, deletedIds.size())));
+			}
+			for (final DictionaryDataStoreEntry updatedEntry : this.updatedEntries) {
+				dao.update(updatedEntry);
+			}
+			for (final DictionaryDataStoreEntry insertedEntry : this.insertedEntries) {
+				dao.create(insertedEntry);
+			}
+			for (final DictionaryDataStoreReference reference : this.references) {
+				DictionaryDataStore.this.dictionaryReferenceDao.create(reference);
+			}
+			DictionaryDataStore.this.resolveReferences();
+			DictionaryDataStore.this.saveMetadata(this.metadata);
+			return null;
+		}
+
+	}
+
 	private String formatPinyin(final List<PinyinSyllable> list) {
 		final StringBuilder sb = new StringBuilder();
 		for (final PinyinSyllable pinyinSyllable : list) {
@@ -193,7 +973,7 @@ public class DictionaryDataStore {
 			 * false matches on similar pinyin syllables. For example, '*hao*'
 			 * should not match 'zhao'.
 			 */
-			sb.append(" ").append(pinyinSyllable.getLetters()).append(pinyinSyllable.getTone().getNumber());
+			sb.append(" ").append(pinyinSyllable.getLetters()).append(pinyinSyllable.getTone().getDisplayValue());
 		}
 		/*
 		 * Add trailing space so that exact pinyin syllables can be
@@ -205,6 +985,15 @@ public class DictionaryDataStore {
 		return sb.toString();
 	}
 
+	private static boolean hasAnyTone(final List<PinyinSyllable> pinyin) {
+		for (final PinyinSyllable syllable : pinyin) {
+			if (Tone.ANY.equals(syllable.getTone())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private String formatPinyinQuery(final List<PinyinSyllable> pinyinSyllables) {
 		final StringBuilder sb = new StringBuilder();
 		for (final PinyinSyllable pinyinSyllable : pinyinSyllables) {
@@ -227,6 +1016,10 @@ public class DictionaryDataStore {
 	}
 
 	private PinyinSyllable parseSyllable(final String formattedPinyinSyllable) {
+		if (!Character.isDigit(formattedPinyinSyllable.charAt(formattedPinyinSyllable.length() - 1))) {
+			/* syllables of any tone are formatted without a tone number */
+			return new PinyinSyllable(formattedPinyinSyllable, Tone.ANY);
+		}
 		final String pinyinLetters = formattedPinyinSyllable.substring(0, formattedPinyinSyllable.length() - 1);
 		final int pinyinToneNumber = Integer.parseInt(formattedPinyinSyllable.substring(formattedPinyinSyllable.length() - 1));
 		return new PinyinSyllable(pinyinLetters, Tone.valueOf(pinyinToneNumber));
@@ -241,6 +1034,9 @@ public class DictionaryDataStore {
 	}
 
 	private List<String> unformatDefinitions(final String english) {
+		if (english.length() < 4) {
+			return Collections.emptyList();
+		}
 		final String[] definitions = english.substring(2, english.length() - 2).split(" / ");
 		return Arrays.asList(definitions);
 	}
@@ -257,6 +1053,18 @@ public class DictionaryDataStore {
 	 * @throws IllegalArgumentException if limit or offset are negative.
 	 */
 	public List<DictionaryEntry> findPinyin(final List<PinyinSyllable> pinyin, final long limit, final long offset, final SearchCanceller canceller) {
+		return this.findPinyin(pinyin, SearchFilter.NONE, limit, offset, canceller);
+	}
+
+	/**
+	 * Find dictionary entries as {@link #findPinyin(List, long, long, SearchCanceller)} does,
+	 * considering only entries accepted by the given filter.
+	 * 
+	 * @param filter a {@link SearchFilter}, applied before the pagination
+	 *        bounds.
+	 */
+	public List<DictionaryEntry> findPinyin(final List<PinyinSyllable> pinyin, final SearchFilter filter, final long limit, final long offset,
+			final SearchCanceller canceller) {
 		if (limit < 0) {
 			throw new IllegalArgumentException("Invalid limit: " + limit);
 		}
@@ -267,7 +1075,7 @@ public class DictionaryDataStore {
 		final String pinyinQueryString = this.formatPinyinQuery(pinyin);
 		final PreparedQuery<DictionaryDataStoreEntry> query;
 		try {
-			query = this.dictionaryEntryDao.queryBuilder()
+			final Where<DictionaryDataStoreEntry, Long> where = this.dictionaryEntryDao.queryBuilder()
 					.orderByRaw("case when like (?, " + DictionaryDataStoreEntry.COLUMN_PINYIN + ") " +
 							"then 1 else 0 end desc, " +
 							"length(" + DictionaryDataStoreEntry.COLUMN_HANZI_SIMPLIFIED + "), " +
@@ -275,17 +1083,57 @@ public class DictionaryDataStore {
 							new SelectArg(SqlType.STRING, "" + pinyinQueryString + " %"))
 							.limit(limit)
 							.offset(offset)
-							.where().like(DictionaryDataStoreEntry.COLUMN_PINYIN, new SelectArg(pinyinQueryString + "%"))
-							.prepare();
+							.where();
+			this.checkInterrupt(where, canceller).like(DictionaryDataStoreEntry.COLUMN_PINYIN, new SelectArg(pinyinQueryString + "%"));
+			query = this.applyFilter(where, filter).prepare();
 		} catch (final SQLException e) {
 			throw new DictionaryDataStoreException("Failed to create query", e);
 		}
-		return this.transformEntries(this.doQuery(query, canceller, pinyinQueryString));
+		return this.transformEntries(this.doQuery(query, canceller, pinyinQueryString), canceller);
+	}
+
+	/*
+	 * The check comes first so that it is evaluated for every row scanned,
+	 * not only for rows that match the search terms.
+	 */
+	private Where<DictionaryDataStoreEntry, Long> checkInterrupt(final Where<DictionaryDataStoreEntry, Long> where, final SearchCanceller canceller) {
+		final String interruptCheck = this.getInterruptCheck();
+		if (canceller == null || interruptCheck == null) {
+			return where;
+		}
+		return where.raw(interruptCheck).and();
 	}
 
-	private List<DictionaryEntry> transformEntries(final List<DictionaryDataStoreEntry> dbEntries) {
+	private String getInterruptCheck() {
+		final ConnectionSource connectionSource = this.getConnectionSource();
+		if (connectionSource instanceof InterruptibleConnectionSource) {
+			return ((InterruptibleConnectionSource) connectionSource).getInterruptCheck();
+		}
+		return null;
+	}
+
+	/*
+	 * The filter is part of the where clause rather than being applied to the
+	 * results, so that the limit and offset count only accepted entries.
+	 */
+	private Where<DictionaryDataStoreEntry, Long> applyFilter(final Where<DictionaryDataStoreEntry, Long> where, final SearchFilter filter) {
+		if (!filter.getRequiredFlags().isEmpty()) {
+			final int requiredMask = DictionaryEntryFlag.toMask(filter.getRequiredFlags());
+			where.and().raw("(" + DictionaryDataStoreEntry.COLUMN_FLAGS + " & " + requiredMask + ") = " + requiredMask);
+		}
+		if (!filter.getExcludedFlags().isEmpty()) {
+			final int excludedMask = DictionaryEntryFlag.toMask(filter.getExcludedFlags());
+			where.and().raw("(" + DictionaryDataStoreEntry.COLUMN_FLAGS + " & " + excludedMask + ") = 0");
+		}
+		return where;
+	}
+
+	private List<DictionaryEntry> transformEntries(final List<DictionaryDataStoreEntry> dbEntries, final SearchCanceller canceller) {
 		final List<DictionaryEntry> entries = new LinkedList<DictionaryEntry>();
 		for (final DictionaryDataStoreEntry dbEntry : dbEntries) {
+			if (canceller != null) {
+				canceller.checkCancelled("decoding entries");
+			}
 			entries.add(this.createEntry(dbEntry));
 		}
 		return entries;
@@ -296,7 +1144,8 @@ public class DictionaryDataStore {
 		final String simplified = dbEntry.getSimplified();
 		final String pinyin = dbEntry.getPinyin();
 		final String english = dbEntry.getEnglish();
-		return new DictionaryEntry(traditional, simplified, this.unformatPinyin(pinyin), this.unformatDefinitions(english));
+		return new DictionaryEntry(traditional, simplified, this.unformatPinyin(pinyin), this.unformatDefinitions(english),
+				Collections.<DictionaryEntryReference> emptyList(), DictionaryEntryFlag.fromMask(dbEntry.getFlags()));
 	}
 
 	/**
@@ -311,6 +1160,33 @@ public class DictionaryDataStore {
 	 * @throws IllegalArgumentException if limit or offset are negative.
 	 */
 	public List<DictionaryEntry> findChinese(final String chineseCharacters, final long limit, final long offset, final SearchCanceller canceller) {
+		return this.findChinese(chineseCharacters, SearchFilter.NONE, limit, offset, canceller);
+	}
+
+	/**
+	 * Find dictionary entries as {@link #findChinese(String, long, long, SearchCanceller)} does,
+	 * considering only entries accepted by the given filter.
+	 * 
+	 * @param filter a {@link SearchFilter}, applied before the pagination
+	 *        bounds.
+	 */
+	public List<DictionaryEntry> findChinese(final String chineseCharacters, final SearchFilter filter, final long limit, final long offset,
+			final SearchCanceller canceller) {
+		return this.findChinese(chineseCharacters, filter, MatchScope.ALL, limit, offset, canceller);
+	}
+
+	/**
+	 * Find dictionary entries as
+	 * {@link #findChinese(String, SearchFilter, long, long, SearchCanceller)}
+	 * does, considering only the matches within the given scope. The entries
+	 * of the {@link MatchScope#PREFIX PREFIX} scope followed by those of the
+	 * {@link MatchScope#NON_PREFIX NON_PREFIX} scope are in the same order as
+	 * the entries of the {@link MatchScope#ALL ALL} scope.
+	 * 
+	 * @param scope a {@link MatchScope}, applied before the pagination bounds.
+	 */
+	public List<DictionaryEntry> findChinese(final String chineseCharacters, final SearchFilter filter, final MatchScope scope, final long limit,
+			final long offset, final SearchCanceller canceller) {
 		if (limit < 0) {
 			throw new IllegalArgumentException("Invalid limit: " + limit);
 		}
@@ -320,7 +1196,7 @@ public class DictionaryDataStore {
 		LOGGER.debug("Finding Chinese characters: " + chineseCharacters);
 		final PreparedQuery<DictionaryDataStoreEntry> query;
 		try {
-			query = this.dictionaryEntryDao.queryBuilder()
+			final Where<DictionaryDataStoreEntry, Long> where = this.dictionaryEntryDao.queryBuilder()
 					.orderByRaw("case " +
 							"when like (?, " + DictionaryDataStoreEntry.COLUMN_HANZI_SIMPLIFIED + ") then 0 " +
 							"else 1 end, " +
@@ -329,12 +1205,53 @@ public class DictionaryDataStore {
 							new SelectArg(SqlType.STRING, chineseCharacters + "%"))
 							.limit(limit)
 							.offset(offset)
-							.where().like(DictionaryDataStoreEntry.COLUMN_HANZI_SIMPLIFIED, new SelectArg("%" + chineseCharacters + "%"))
-							.prepare();
+							.where();
+			query = this.applyFilter(this.matchChinese(this.checkInterrupt(where, canceller), chineseCharacters, scope), filter).prepare();
 		} catch (final SQLException e) {
 			throw new DictionaryDataStoreException("Failed to prepare query", e);
 		}
-		return this.transformEntries(this.doQuery(query, canceller, chineseCharacters));
+		return this.transformEntries(this.doQuery(query, canceller, chineseCharacters), canceller);
+	}
+
+	/**
+	 * Count the dictionary entries that
+	 * {@link #findChinese(String, SearchFilter, MatchScope, long, long, SearchCanceller)}
+	 * would find without pagination bounds.
+	 * 
+	 * @param chineseCharacters Chinese character text to find.
+	 * @param filter a {@link SearchFilter}.
+	 * @param scope a {@link MatchScope}.
+	 * @return the number of matching entries.
+	 */
+	public long countChinese(final String chineseCharacters, final SearchFilter filter, final MatchScope scope) {
+		try {
+			final QueryBuilder<DictionaryDataStoreEntry, Long> queryBuilder = this.dictionaryEntryDao.queryBuilder().setCountOf(true);
+			this.applyFilter(this.matchChinese(queryBuilder.where(), chineseCharacters, scope), filter);
+			return this.dictionaryEntryDao.countOf(queryBuilder.prepare());
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to count entries", e);
+		}
+	}
+
+	private Where<DictionaryDataStoreEntry, Long> matchChinese(final Where<DictionaryDataStoreEntry, Long> where, final String chineseCharacters,
+			final MatchScope scope) throws SQLException {
+		return this.matchScope(where, DictionaryDataStoreEntry.COLUMN_HANZI_SIMPLIFIED, "%" + chineseCharacters + "%", chineseCharacters + "%", scope);
+	}
+
+	/*
+	 * Prefix patterns have no leading wildcard, so they are cheaper to match
+	 * and match far fewer rows to sort than the full pattern.
+	 */
+	private Where<DictionaryDataStoreEntry, Long> matchScope(final Where<DictionaryDataStoreEntry, Long> where, final String column,
+			final String pattern, final String prefixPattern, final MatchScope scope) throws SQLException {
+		switch (scope) {
+		case PREFIX:
+			return where.like(column, new SelectArg(prefixPattern));
+		case NON_PREFIX:
+			return where.like(column, new SelectArg(pattern)).and().not().like(column, new SelectArg(prefixPattern));
+		default:
+			return where.like(column, new SelectArg(pattern));
+		}
 	}
 
 	/**
@@ -349,6 +1266,32 @@ public class DictionaryDataStore {
 	 * @throws IllegalArgumentException if limit or offset are negative.
 	 */
 	public List<DictionaryEntry> findDefinitions(final String englishWords, final long limit, final long offset, final SearchCanceller canceller) {
+		return this.findDefinitions(englishWords, SearchFilter.NONE, limit, offset, canceller);
+	}
+
+	/**
+	 * Find dictionary entries as {@link #findDefinitions(String, long, long, SearchCanceller)} does,
+	 * considering only entries accepted by the given filter.
+	 * 
+	 * @param filter a {@link SearchFilter}, applied before the pagination
+	 *        bounds.
+	 */
+	public List<DictionaryEntry> findDefinitions(final String englishWords, final SearchFilter filter, final long limit, final long offset,
+			final SearchCanceller canceller) {
+		return this.findDefinitions(englishWords, filter, MatchScope.ALL, limit, offset, canceller);
+	}
+
+	/**
+	 * Find dictionary entries as
+	 * {@link #findDefinitions(String, SearchFilter, long, long, SearchCanceller)}
+	 * does, considering only the matches within the given scope. The
+	 * {@link MatchScope#PREFIX PREFIX} scope holds the entries whose first
+	 * definition is exactly the given text.
+	 * 
+	 * @param scope a {@link MatchScope}, applied before the pagination bounds.
+	 */
+	public List<DictionaryEntry> findDefinitions(final String englishWords, final SearchFilter filter, final MatchScope scope, final long limit,
+			final long offset, final SearchCanceller canceller) {
 		if (limit < 0) {
 			throw new IllegalArgumentException("Invalid limit: " + limit);
 		}
@@ -358,7 +1301,7 @@ public class DictionaryDataStore {
 		LOGGER.debug("Finding definitions: " + englishWords);
 		final PreparedQuery<DictionaryDataStoreEntry> query;
 		try {
-			query = this.dictionaryEntryDao.queryBuilder()
+			final Where<DictionaryDataStoreEntry, Long> where = this.dictionaryEntryDao.queryBuilder()
 					.orderByRaw("case " +
 							"when like (?, " + DictionaryDataStoreEntry.COLUMN_ENGLISH + ") then 0 " +
 							"when like (?, " + DictionaryDataStoreEntry.COLUMN_ENGLISH + ") then 1 " +
@@ -373,26 +1316,196 @@ public class DictionaryDataStore {
 							new SelectArg(SqlType.STRING, "% " + englishWords + " %"))
 							.limit(limit)
 							.offset(offset)
-							.where().like(DictionaryDataStoreEntry.COLUMN_ENGLISH, new SelectArg("%" + englishWords + "%"))
+							.where();
+			query = this.applyFilter(this.matchDefinitions(this.checkInterrupt(where, canceller), englishWords, scope), filter).prepare();
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to create query", e);
+		}
+		return this.transformEntries(this.doQuery(query, canceller, englishWords), canceller);
+	}
+
+	/**
+	 * Count the dictionary entries that
+	 * {@link #findDefinitions(String, SearchFilter, MatchScope, long, long, SearchCanceller)}
+	 * would find without pagination bounds.
+	 * 
+	 * @param englishWords English definition text to find.
+	 * @param filter a {@link SearchFilter}.
+	 * @param scope a {@link MatchScope}.
+	 * @return the number of matching entries.
+	 */
+	public long countDefinitions(final String englishWords, final SearchFilter filter, final MatchScope scope) {
+		try {
+			final QueryBuilder<DictionaryDataStoreEntry, Long> queryBuilder = this.dictionaryEntryDao.queryBuilder().setCountOf(true);
+			this.applyFilter(this.matchDefinitions(queryBuilder.where(), englishWords, scope), filter);
+			return this.dictionaryEntryDao.countOf(queryBuilder.prepare());
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to count entries", e);
+		}
+	}
+
+	private Where<DictionaryDataStoreEntry, Long> matchDefinitions(final Where<DictionaryDataStoreEntry, Long> where, final String englishWords,
+			final MatchScope scope) throws SQLException {
+		return this.matchScope(where, DictionaryDataStoreEntry.COLUMN_ENGLISH, "%" + englishWords + "%", "/ " + englishWords + " /%", scope);
+	}
+
+	/**
+	 * Get the references made by the given entry.
+	 * 
+	 * @param entry a {@link DictionaryEntry}.
+	 * @return the entry's {@link DictionaryEntryReference}s in the order they
+	 *         appear in its definitions.
+	 */
+	public List<DictionaryEntryReference> getReferences(final DictionaryEntry entry) {
+		final List<DictionaryDataStoreReference> dbReferences;
+		try {
+			dbReferences = this.dictionaryReferenceDao.queryBuilder()
+					.orderBy(DictionaryDataStoreReference.COLUMN_ID, true)
+					.where().eq(DictionaryDataStoreReference.COLUMN_ENTRY_ID, this.getEntryId(entry))
+					.query();
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to load references of " + entry, e);
+		}
+		final List<DictionaryEntryReference> references = new ArrayList<DictionaryEntryReference>(dbReferences.size());
+		for (final DictionaryDataStoreReference dbReference : dbReferences) {
+			final String pinyin = dbReference.getPinyin();
+			final List<PinyinSyllable> pinyinSyllables = pinyin == null ? Collections.<PinyinSyllable> emptyList() : this.unformatPinyin(pinyin);
+			references.add(new DictionaryEntryReference(dbReference.getType(), dbReference.getTraditional(), dbReference.getSimplified(),
+					pinyinSyllables));
+		}
+		return references;
+	}
+
+	/**
+	 * Find dictionary entries that make a reference of the given type to the
+	 * given entry. For example, find the nouns that use a classifier.
+	 * 
+	 * @param referencedEntry the referenced {@link DictionaryEntry}.
+	 * @param type the {@link DictionaryEntryReference.Type} of reference.
+	 * @param limit the maximum number of entries to return.
+	 * @param offset the number of search results to skip.
+	 * @param canceller a {@link SearchCanceller} (may be {@code null}).
+	 * @return a list of {@link DictionaryEntry}.
+	 * @throws IllegalArgumentException if limit or offset are negative.
+	 */
+	public List<DictionaryEntry> findReferringEntries(final DictionaryEntry referencedEntry, final DictionaryEntryReference.Type type,
+			final long limit, final long offset, final SearchCanceller canceller) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("Invalid limit: " + limit);
+		}
+		if (offset < 0) {
+			throw new IllegalArgumentException("Invalid offset: " + offset);
+		}
+		LOGGER.debug("Finding entries with {} reference to {}", type, referencedEntry);
+		final PreparedQuery<DictionaryDataStoreEntry> query;
+		try {
+			final QueryBuilder<DictionaryDataStoreReference, Long> referringIds = this.dictionaryReferenceDao.queryBuilder()
+					.selectColumns(DictionaryDataStoreReference.COLUMN_ENTRY_ID);
+			referringIds.where().eq(DictionaryDataStoreReference.COLUMN_REFERENCED_ENTRY_ID, this.getEntryId(referencedEntry))
+					.and().eq(DictionaryDataStoreReference.COLUMN_TYPE, type);
+			query = this.dictionaryEntryDao.queryBuilder()
+					.orderByRaw("length(" + DictionaryDataStoreEntry.COLUMN_HANZI_SIMPLIFIED + "), " +
+							DictionaryDataStoreEntry.COLUMN_PINYIN)
+							.limit(limit)
+							.offset(offset)
+							.where().in(DictionaryDataStoreEntry.COLUMN_ID, referringIds)
 							.prepare();
 		} catch (final SQLException e) {
 			throw new DictionaryDataStoreException("Failed to create query", e);
 		}
-		return this.transformEntries(this.doQuery(query, canceller, englishWords));
+		return this.transformEntries(this.doQuery(query, canceller, referencedEntry.getSimplified()), canceller);
+	}
+
+	/**
+	 * Get the entries referenced by the given entry.
+	 * <p>
+	 * References to words that are not in the data store are omitted.
+	 * 
+	 * @param entry a {@link DictionaryEntry}.
+	 * @param types the {@link DictionaryEntryReference.Type}s of reference to
+	 *        follow.
+	 * @return a list of {@link DictionaryEntry}.
+	 */
+	public List<DictionaryEntry> getReferencedEntries(final DictionaryEntry entry, final Collection<DictionaryEntryReference.Type> types) {
+		LOGGER.debug("Finding entries referenced by {}", entry);
+		final PreparedQuery<DictionaryDataStoreEntry> query;
+		try {
+			final QueryBuilder<DictionaryDataStoreReference, Long> referencedIds = this.dictionaryReferenceDao.queryBuilder()
+					.selectColumns(DictionaryDataStoreReference.COLUMN_REFERENCED_ENTRY_ID);
+			referencedIds.where().eq(DictionaryDataStoreReference.COLUMN_ENTRY_ID, this.getEntryId(entry))
+					.and().in(DictionaryDataStoreReference.COLUMN_TYPE, types);
+			query = this.dictionaryEntryDao.queryBuilder()
+					.where().in(DictionaryDataStoreEntry.COLUMN_ID, referencedIds)
+					.prepare();
+		} catch (final SQLException e) {
+			throw new DictionaryDataStoreException("Failed to create query", e);
+		}
+		return this.transformEntries(this.doQuery(query, null, entry.getSimplified()), null);
 	}
 
 	private List<DictionaryDataStoreEntry> doQuery(final PreparedQuery<DictionaryDataStoreEntry> query, final SearchCanceller canceller, final String queryInput) {
 		try {
 			if (canceller != null) {
+				canceller.checkCancelled("before querying " + queryInput);
+				if (this.getInterruptCheck() != null) {
+					return this.doInterruptibleQuery(query, canceller, (InterruptibleConnectionSource) this.getConnectionSource());
+				}
 				return this.dictionaryEntryDao.query(query, createOrmliteSignaller(canceller));
 			}
 			return this.dictionaryEntryDao.query(query);
 		} catch (final SQLException e) {
-			if ("ORMLITE: query cancelled".equals(e.getMessage())) {
+			if ("ORMLITE: query cancelled".equals(e.getMessage()) || (canceller != null && canceller.isCancelled())) {
 				throw new DictionaryDataStoreQueryCancelledException("Query cancelled: " + queryInput, e);
 			}
 			throw new DictionaryDataStoreException("Failed to execute query", e);
 		}
 	}
 
+	/*
+	 * The connection is saved so that the DAO runs the query on the connection
+	 * that holds the canceller.
+	 */
+	private List<DictionaryDataStoreEntry> doInterruptibleQuery(final PreparedQuery<DictionaryDataStoreEntry> query, final SearchCanceller canceller,
+			final InterruptibleConnectionSource connectionSource) throws SQLException {
+		final DatabaseConnection connection = connectionSource.getReadOnlyConnection();
+		try {
+			connectionSource.saveSpecialConnection(connection);
+			try {
+				connectionSource.setCanceller(connection, canceller);
+				try {
+					return this.dictionaryEntryDao.query(query);
+				} finally {
+					connectionSource.setCanceller(connection, null);
+				}
+			} finally {
+				connectionSource.clearSpecialConnection(connection);
+			}
+		} finally {
+			connectionSource.releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * The part of the matches of a Chinese or definition search to consider.
+	 */
+	public static enum MatchScope {
+
+		/**
+		 * All matching entries.
+		 */
+		ALL,
+
+		/**
+		 * The matching entries that start with the search text, which are
+		 * ranked before all other matches.
+		 */
+		PREFIX,
+
+		/**
+		 * The matching entries that are not {@link #PREFIX} matches.
+		 */
+		NON_PREFIX;
+
+	}
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright Nathan Jones 2013
+ * 
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+/**
+ * Timings for a batch of entries {@link DictionaryDataStore#add(java.util.Collection) added}
+ * to a data store in a single transaction.
+ */
+public class DictionaryDataStoreBatchStatistics {
+
+	private final int entryCount;
+
+	private final long insertTimeNanos;
+
+	private final long commitTimeNanos;
+
+	public DictionaryDataStoreBatchStatistics(final int entryCount, final long insertTimeNanos, final long commitTimeNanos) {
+		this.entryCount = entryCount;
+		this.insertTimeNanos = insertTimeNanos;
+		this.commitTimeNanos = commitTimeNanos;
+	}
+
+	/**
+	 * @return the number of entries in the batch.
+	 */
+	public int getEntryCount() {
+		return this.entryCount;
+	}
+
+	/**
+	 * @return the time spent inserting entries within the transaction.
+	 */
+	public long getInsertTimeNanos() {
+		return this.insertTimeNanos;
+	}
+
+	/**
+	 * @return the time spent starting and committing the transaction.
+	 */
+	public long getCommitTimeNanos() {
+		return this.commitTimeNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "DictionaryDataStoreBatchStatistics [entryCount=" + this.entryCount + ", insertTimeNanos=" + this.insertTimeNanos
+				+ ", commitTimeNanos=" + this.commitTimeNanos + "]";
+	}
+
+}
@@ -24,9 +24,13 @@ import com.j256.ormlite.table.DatabaseTable;
 /**
  * A dictionary entry persisted to a database.
  */
-@DatabaseTable(tableName = "dictionary_entry")
+@DatabaseTable(tableName = DictionaryDataStoreEntry.TABLE_NAME)
 public class DictionaryDataStoreEntry {
 
+	static final String TABLE_NAME = "dictionary_entry";
+
+	static final String COLUMN_ID = "id";
+
 	static final String COLUMN_HANZI_TRADITIONAL = "hanzi_traditional";
 
 	static final String COLUMN_HANZI_SIMPLIFIED = "hanzi_simplified";
@@ -35,13 +39,17 @@ public class DictionaryDataStoreEntry {
 
 	static final String COLUMN_ENGLISH = "english";
 
-	@DatabaseField(id = true)
+	static final String COLUMN_CONTENT_HASH = "content_hash";
+
+	static final String COLUMN_FLAGS = "flags";
+
+	@DatabaseField(columnName = COLUMN_ID, id = true)
 	private Long id;
 
 	@DatabaseField(columnName = COLUMN_HANZI_TRADITIONAL, canBeNull = false)
 	private String traditional;
 
-	@DatabaseField(columnName = COLUMN_HANZI_SIMPLIFIED, canBeNull = false)
+	@DatabaseField(columnName = COLUMN_HANZI_SIMPLIFIED, canBeNull = false, index = true)
 	private String simplified;
 
 	@DatabaseField(columnName = COLUMN_PINYIN, canBeNull = false)
@@ -50,6 +58,12 @@ public class DictionaryDataStoreEntry {
 	@DatabaseField(columnName = COLUMN_ENGLISH, canBeNull = false)
 	private String english;
 
+	@DatabaseField(columnName = COLUMN_CONTENT_HASH, canBeNull = false)
+	private String contentHash;
+
+	@DatabaseField(columnName = COLUMN_FLAGS, canBeNull = false)
+	private int flags;
+
 	public Long getId() {
 		return this.id;
 	}
@@ -90,6 +104,29 @@ public class DictionaryDataStoreEntry {
 		this.english = english;
 	}
 
+	/**
+	 * @return the SHA-1 hash of the entry's persisted content, used to detect
+	 *         changed entries when applying incremental updates.
+	 */
+	public String getContentHash() {
+		return this.contentHash;
+	}
+
+	public void setContentHash(final String contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	/**
+	 * @return the bitmask of the entry's {@link DictionaryEntryFlag}s.
+	 */
+	public int getFlags() {
+		return this.flags;
+	}
+
+	public void setFlags(final int flags) {
+		this.flags = flags;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
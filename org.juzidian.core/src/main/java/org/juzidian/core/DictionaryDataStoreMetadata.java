@@ -26,18 +26,27 @@ import com.j256.ormlite.table.DatabaseTable;
 /**
  * The metadata for the dictionary data base.
  */
-@DatabaseTable(tableName = "dictionary_metadata")
+@DatabaseTable(tableName = DictionaryDataStoreMetadata.TABLE_NAME)
 public class DictionaryDataStoreMetadata {
 
-	@DatabaseField(id = true)
+	static final String TABLE_NAME = "dictionary_metadata";
+
+	static final String COLUMN_ID = "id";
+
+	static final String COLUMN_VERSION = "version";
+
+	@DatabaseField(columnName = COLUMN_ID, id = true)
 	private Long id;
 
 	@DatabaseField(columnName = "build_date", canBeNull = false)
 	private Date buildDate;
 
-	@DatabaseField(columnName = "version", canBeNull = false)
+	@DatabaseField(columnName = COLUMN_VERSION, canBeNull = false)
 	private int version;
 
+	@DatabaseField(columnName = "source_version")
+	private String sourceVersion;
+
 	public Long getId() {
 		return this.id;
 	}
@@ -62,9 +71,22 @@ public class DictionaryDataStoreMetadata {
 		this.version = version;
 	}
 
+	/**
+	 * @return the version of the source data (such as a CEDict release) that
+	 *         the dictionary data was loaded from, or <code>null</code> if
+	 *         unknown.
+	 */
+	public String getSourceVersion() {
+		return this.sourceVersion;
+	}
+
+	public void setSourceVersion(final String sourceVersion) {
+		this.sourceVersion = sourceVersion;
+	}
+
 	@Override
 	public String toString() {
-		return "DbDictionaryMetadata [buildDate=" + this.buildDate + ", version=" + this.version + "]";
+		return "DbDictionaryMetadata [buildDate=" + this.buildDate + ", version=" + this.version + ", sourceVersion=" + this.sourceVersion + "]";
 	}
 
 }
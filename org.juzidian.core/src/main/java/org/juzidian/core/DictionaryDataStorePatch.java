@@ -0,0 +1,259 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The row-level changes that turn a data store built from one source version
+ * into a data store built from a later source version.
+ * <p>
+ * A patch holds the complete rows of added and changed entries with their
+ * references, and the ids of removed entries. It also holds the
+ * {@link DictionaryDataStore#getContentDigest() content digest} of the later
+ * data store, so that the result of applying it can be verified.
+ * <p>
+ * Patches are created with {@link DictionaryDataStore#createPatch} and
+ * applied with {@link DictionaryDataStore#applyPatch}.
+ */
+public class DictionaryDataStorePatch {
+
+	private static final int MAGIC = 0x4a5a4450;
+
+	private final int dataFormatVersion;
+
+	private final String fromSourceVersion;
+
+	private final String toSourceVersion;
+
+	private final String contentDigest;
+
+	private final List<DictionaryDataStoreEntry> entries;
+
+	private final List<DictionaryDataStoreReference> references;
+
+	private final List<Long> deletedIds;
+
+	public DictionaryDataStorePatch(final int dataFormatVersion, final String fromSourceVersion, final String toSourceVersion,
+			final String contentDigest, final List<DictionaryDataStoreEntry> entries, final List<DictionaryDataStoreReference> references,
+			final List<Long> deletedIds) {
+		this.dataFormatVersion = dataFormatVersion;
+		this.fromSourceVersion = fromSourceVersion;
+		this.toSourceVersion = toSourceVersion;
+		this.contentDigest = contentDigest;
+		this.entries = new ArrayList<DictionaryDataStoreEntry>(entries);
+		this.references = new ArrayList<DictionaryDataStoreReference>(references);
+		this.deletedIds = new ArrayList<Long>(deletedIds);
+	}
+
+	/**
+	 * @return the data format version of the data stores the patch applies
+	 *         to.
+	 */
+	public int getDataFormatVersion() {
+		return this.dataFormatVersion;
+	}
+
+	/**
+	 * @return the source version of the data store the patch applies to.
+	 */
+	public String getFromSourceVersion() {
+		return this.fromSourceVersion;
+	}
+
+	/**
+	 * @return the source version of the data store the patch produces.
+	 */
+	public String getToSourceVersion() {
+		return this.toSourceVersion;
+	}
+
+	/**
+	 * @return the content digest of the data store the patch produces.
+	 */
+	public String getContentDigest() {
+		return this.contentDigest;
+	}
+
+	/**
+	 * @return the rows of entries that are added or changed.
+	 */
+	public List<DictionaryDataStoreEntry> getEntries() {
+		return Collections.unmodifiableList(this.entries);
+	}
+
+	/**
+	 * @return the references of entries that are added or changed. References
+	 *         that do not specify pinyin are unresolved, and are resolved
+	 *         against the patched data store.
+	 */
+	public List<DictionaryDataStoreReference> getReferences() {
+		return Collections.unmodifiableList(this.references);
+	}
+
+	/**
+	 * @return the ids of entries that are removed.
+	 */
+	public List<Long> getDeletedIds() {
+		return Collections.unmodifiableList(this.deletedIds);
+	}
+
+	/**
+	 * Write the patch in its binary format.
+	 *
+	 * @param outputStream the stream to write to. It is flushed but not
+	 *        closed.
+	 * @throws IOException if writing fails.
+	 */
+	public void writeTo(final OutputStream outputStream) throws IOException {
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+		out.writeInt(MAGIC);
+		out.writeInt(this.dataFormatVersion);
+		writeString(out, this.fromSourceVersion);
+		writeString(out, this.toSourceVersion);
+		writeString(out, this.contentDigest);
+		out.writeInt(this.entries.size());
+		for (final DictionaryDataStoreEntry entry : this.entries) {
+			out.writeLong(entry.getId());
+			writeString(out, entry.getTraditional());
+			writeString(out, entry.getSimplified());
+			writeString(out, entry.getPinyin());
+			writeString(out, entry.getEnglish());
+			writeString(out, entry.getContentHash());
+			out.writeInt(entry.getFlags());
+		}
+		out.writeInt(this.references.size());
+		for (final DictionaryDataStoreReference reference : this.references) {
+			out.writeLong(reference.getEntryId());
+			writeString(out, reference.getType().name());
+			writeString(out, reference.getTraditional());
+			writeString(out, reference.getSimplified());
+			writeString(out, reference.getPinyin());
+			out.writeBoolean(reference.getReferencedEntryId() != null);
+			if (reference.getReferencedEntryId() != null) {
+				out.writeLong(reference.getReferencedEntryId());
+			}
+		}
+		out.writeInt(this.deletedIds.size());
+		for (final Long deletedId : this.deletedIds) {
+			out.writeLong(deletedId);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a patch written by {@link #writeTo(OutputStream)}.
+	 *
+	 * @param inputStream the stream to read from. It is not closed.
+	 * @return the patch.
+	 * @throws IOException if reading fails or the data is not a patch.
+	 */
+	public static DictionaryDataStorePatch readFrom(final InputStream inputStream) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a dictionary patch");
+		}
+		final int dataFormatVersion = in.readInt();
+		final String fromSourceVersion = readString(in);
+		final String toSourceVersion = readString(in);
+		final String contentDigest = readString(in);
+		final int entryCount = in.readInt();
+		final List<DictionaryDataStoreEntry> entries = new ArrayList<DictionaryDataStoreEntry>(entryCount);
+		for (int i = 0; i < entryCount; i++) {
+			final DictionaryDataStoreEntry entry = new DictionaryDataStoreEntry();
+			entry.setId(in.readLong());
+			entry.setTraditional(readString(in));
+			entry.setSimplified(readString(in));
+			entry.setPinyin(readString(in));
+			entry.setEnglish(readString(in));
+			entry.setContentHash(readString(in));
+			entry.setFlags(in.readInt());
+			entries.add(entry);
+		}
+		final int referenceCount = in.readInt();
+		final List<DictionaryDataStoreReference> references = new ArrayList<DictionaryDataStoreReference>(referenceCount);
+		for (int i = 0; i < referenceCount; i++) {
+			final DictionaryDataStoreReference reference = new DictionaryDataStoreReference();
+			reference.setEntryId(in.readLong());
+			reference.setType(parseReferenceType(readString(in)));
+			reference.setTraditional(readString(in));
+			reference.setSimplified(readString(in));
+			reference.setPinyin(readString(in));
+			if (in.readBoolean()) {
+				reference.setReferencedEntryId(in.readLong());
+			}
+			references.add(reference);
+		}
+		final int deletedCount = in.readInt();
+		final List<Long> deletedIds = new ArrayList<Long>(deletedCount);
+		for (int i = 0; i < deletedCount; i++) {
+			deletedIds.add(in.readLong());
+		}
+		return new DictionaryDataStorePatch(dataFormatVersion, fromSourceVersion, toSourceVersion, contentDigest, entries, references,
+				deletedIds);
+	}
+
+	private static DictionaryEntryReference.Type parseReferenceType(final String name) throws IOException {
+		try {
+			return DictionaryEntryReference.Type.valueOf(name);
+		} catch (final IllegalArgumentException e) {
+			throw new IOException("Unknown reference type: " + name);
+		}
+	}
+
+	/*
+	 * Strings are written as UTF-8 with an int length, as writeUTF() is
+	 * limited to 64 KiB and can not write null.
+	 */
+	private static void writeString(final DataOutputStream out, final String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		final byte[] bytes = value.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	@Override
+	public String toString() {
+		return "DictionaryDataStorePatch [fromSourceVersion=" + this.fromSourceVersion + ", toSourceVersion=" + this.toSourceVersion
+				+ ", entries=" + this.entries.size() + ", deletedIds=" + this.deletedIds.size() + "]";
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright Nathan Jones 2013
+ * 
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+/**
+ * A {@link DictionaryEntryReference} persisted to a database, linking the
+ * referring entry to the referenced entry.
+ */
+@DatabaseTable(tableName = DictionaryDataStoreReference.TABLE_NAME)
+public class DictionaryDataStoreReference {
+
+	static final String TABLE_NAME = "dictionary_reference";
+
+	static final String COLUMN_ID = "id";
+
+	static final String COLUMN_ENTRY_ID = "entry_id";
+
+	static final String COLUMN_TYPE = "type";
+
+	static final String COLUMN_HANZI_TRADITIONAL = "hanzi_traditional";
+
+	static final String COLUMN_HANZI_SIMPLIFIED = "hanzi_simplified";
+
+	static final String COLUMN_PINYIN = "pinyin";
+
+	static final String COLUMN_REFERENCED_ENTRY_ID = "referenced_entry_id";
+
+	@DatabaseField(columnName = COLUMN_ID, generatedId = true)
+	private Long id;
+
+	@DatabaseField(columnName = COLUMN_ENTRY_ID, canBeNull = false, index = true)
+	private Long entryId;
+
+	@DatabaseField(columnName = COLUMN_TYPE, canBeNull = false)
+	private DictionaryEntryReference.Type type;
+
+	@DatabaseField(columnName = COLUMN_HANZI_TRADITIONAL, canBeNull = false)
+	private String traditional;
+
+	@DatabaseField(columnName = COLUMN_HANZI_SIMPLIFIED, canBeNull = false)
+	private String simplified;
+
+	@DatabaseField(columnName = COLUMN_PINYIN)
+	private String pinyin;
+
+	@DatabaseField(columnName = COLUMN_REFERENCED_ENTRY_ID, index = true)
+	private Long referencedEntryId;
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public void setId(final Long id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the id of the entry that makes the reference.
+	 */
+	public Long getEntryId() {
+		return this.entryId;
+	}
+
+	public void setEntryId(final Long entryId) {
+		this.entryId = entryId;
+	}
+
+	public DictionaryEntryReference.Type getType() {
+		return this.type;
+	}
+
+	public void setType(final DictionaryEntryReference.Type type) {
+		this.type = type;
+	}
+
+	public String getTraditional() {
+		return this.traditional;
+	}
+
+	public void setTraditional(final String traditional) {
+		this.traditional = traditional;
+	}
+
+	public String getSimplified() {
+		return this.simplified;
+	}
+
+	public void setSimplified(final String simplified) {
+		this.simplified = simplified;
+	}
+
+	/**
+	 * @return the formatted Pinyin of the referenced word, or
+	 *         <code>null</code> if the reference does not specify it.
+	 */
+	public String getPinyin() {
+		return this.pinyin;
+	}
+
+	public void setPinyin(final String pinyin) {
+		this.pinyin = pinyin;
+	}
+
+	/**
+	 * @return the id of the referenced entry, or <code>null</code> if the
+	 *         reference has not been resolved.
+	 */
+	public Long getReferencedEntryId() {
+		return this.referencedEntryId;
+	}
+
+	public void setReferencedEntryId(final Long referencedEntryId) {
+		this.referencedEntryId = referencedEntryId;
+	}
+
+}
@@ -36,6 +36,7 @@ public class DictionaryDataStoreSchemaCreator {
 	static {
 		DICTIONARY_ENTITY_CLASSES.add(DictionaryDataStoreEntry.class);
 		DICTIONARY_ENTITY_CLASSES.add(DictionaryDataStoreMetadata.class);
+		DICTIONARY_ENTITY_CLASSES.add(DictionaryDataStoreReference.class);
 	}
 
 	/**
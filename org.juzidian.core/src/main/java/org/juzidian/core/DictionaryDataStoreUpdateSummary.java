@@ -0,0 +1,67 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+/**
+ * The number of entries changed by an incremental
+ * {@link DictionaryDataStore#update(java.util.Collection, String) update}.
+ */
+public class DictionaryDataStoreUpdateSummary {
+
+	private final int insertedCount;
+
+	private final int updatedCount;
+
+	private final int deletedCount;
+
+	public DictionaryDataStoreUpdateSummary(final int insertedCount, final int updatedCount, final int deletedCount) {
+		this.insertedCount = insertedCount;
+		this.updatedCount = updatedCount;
+		this.deletedCount = deletedCount;
+	}
+
+	/**
+	 * @return the number of entries that were not previously in the data
+	 *         store.
+	 */
+	public int getInsertedCount() {
+		return this.insertedCount;
+	}
+
+	/**
+	 * @return the number of existing entries whose content changed.
+	 */
+	public int getUpdatedCount() {
+		return this.updatedCount;
+	}
+
+	/**
+	 * @return the number of existing entries that were removed.
+	 */
+	public int getDeletedCount() {
+		return this.deletedCount;
+	}
+
+	@Override
+	public String toString() {
+		return "DictionaryDataStoreUpdateSummary [insertedCount=" + this.insertedCount + ", updatedCount=" + this.updatedCount
+				+ ", deletedCount=" + this.deletedCount + "]";
+	}
+
+}
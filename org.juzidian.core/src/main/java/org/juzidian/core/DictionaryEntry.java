@@ -20,7 +20,9 @@ package org.juzidian.core;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import org.juzidian.pinyin.PinyinSyllable;
 
@@ -37,12 +39,28 @@ public class DictionaryEntry {
 
 	private final List<String> definitions;
 
+	private final List<DictionaryEntryReference> references;
+
+	private final Set<DictionaryEntryFlag> flags;
+
 	public DictionaryEntry(final String traditional, final String simplified, final List<PinyinSyllable> pinyin,
 			final List<String> definitions) {
+		this(traditional, simplified, pinyin, definitions, Collections.<DictionaryEntryReference> emptyList());
+	}
+
+	public DictionaryEntry(final String traditional, final String simplified, final List<PinyinSyllable> pinyin,
+			final List<String> definitions, final List<DictionaryEntryReference> references) {
+		this(traditional, simplified, pinyin, definitions, references, EnumSet.noneOf(DictionaryEntryFlag.class));
+	}
+
+	public DictionaryEntry(final String traditional, final String simplified, final List<PinyinSyllable> pinyin,
+			final List<String> definitions, final List<DictionaryEntryReference> references, final Set<DictionaryEntryFlag> flags) {
 		this.traditional = traditional;
 		this.simplified = simplified;
 		this.pinyin = pinyin;
 		this.definitions = definitions;
+		this.references = references;
+		this.flags = flags;
 	}
 
 	/**
@@ -73,6 +91,27 @@ public class DictionaryEntry {
 		return Collections.unmodifiableList(this.definitions);
 	}
 
+	/**
+	 * Get the classifiers and cross-references extracted from the word's
+	 * source data.
+	 * <p>
+	 * Entries found by searching a dictionary do not carry their references;
+	 * use {@link Dictionary#getClassifiers(DictionaryEntry)} and
+	 * {@link Dictionary#getCrossReferences(DictionaryEntry)} to look them up.
+	 * 
+	 * @return a list of {@link DictionaryEntryReference}.
+	 */
+	public List<DictionaryEntryReference> getReferences() {
+		return Collections.unmodifiableList(this.references);
+	}
+
+	/**
+	 * @return the {@link DictionaryEntryFlag}s describing the kind of word.
+	 */
+	public Set<DictionaryEntryFlag> getFlags() {
+		return Collections.unmodifiableSet(this.flags);
+	}
+
 	/**
 	 * @param pinyinSyllables a list of {@link PinyinSyllable}.
 	 * @return <code>true</code> if this word starts with the given syllables.
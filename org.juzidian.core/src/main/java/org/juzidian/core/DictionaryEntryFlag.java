@@ -0,0 +1,103 @@
+/*
+ * Copyright Nathan Jones 2012
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A property of a dictionary entry that searches can be filtered by.
+ * <p>
+ * Each flag has a fixed bit so that a set of flags can be persisted as a
+ * single bitmask; bits must not be reassigned once released.
+ */
+public enum DictionaryEntryFlag {
+
+	/**
+	 * The name of a person, place or organisation (capitalised pinyin).
+	 */
+	PROPER_NOUN(1 << 0),
+
+	/**
+	 * A character used as a surname.
+	 */
+	SURNAME(1 << 1),
+
+	/**
+	 * A variant form of another word.
+	 */
+	VARIANT(1 << 2),
+
+	/**
+	 * An abbreviation of another word.
+	 */
+	ABBREVIATION(1 << 3),
+
+	/**
+	 * An old or archaic form of a word.
+	 */
+	OLD_FORM(1 << 4),
+
+	/**
+	 * An erhua (儿化) form of a word.
+	 */
+	ERHUA(1 << 5);
+
+	private final int bit;
+
+	private DictionaryEntryFlag(final int bit) {
+		this.bit = bit;
+	}
+
+	/**
+	 * @return the bit representing this flag in a flags bitmask.
+	 */
+	public int getBit() {
+		return this.bit;
+	}
+
+	/**
+	 * @param flags a collection of {@link DictionaryEntryFlag}.
+	 * @return a bitmask with the bits of the given flags set.
+	 */
+	public static int toMask(final Collection<DictionaryEntryFlag> flags) {
+		int mask = 0;
+		for (final DictionaryEntryFlag flag : flags) {
+			mask |= flag.getBit();
+		}
+		return mask;
+	}
+
+	/**
+	 * @param mask a flags bitmask.
+	 * @return the set of {@link DictionaryEntryFlag} whose bits are set in the
+	 *         mask. Unknown bits are ignored.
+	 */
+	public static Set<DictionaryEntryFlag> fromMask(final int mask) {
+		final Set<DictionaryEntryFlag> flags = EnumSet.noneOf(DictionaryEntryFlag.class);
+		for (final DictionaryEntryFlag flag : values()) {
+			if ((mask & flag.getBit()) != 0) {
+				flags.add(flag);
+			}
+		}
+		return flags;
+	}
+
+}
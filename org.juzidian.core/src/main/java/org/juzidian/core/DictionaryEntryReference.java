@@ -0,0 +1,138 @@
+/*
+ * Copyright Nathan Jones 2013
+ * 
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.juzidian.pinyin.PinyinSyllable;
+
+/**
+ * A reference from a {@link DictionaryEntry} to another Chinese word, such as
+ * a measure word (classifier) used with a noun or the word that an entry is a
+ * variant of.
+ * <p>
+ * A reference that specifies pinyin points at the entry with the same
+ * characters and pinyin. If the dictionary has several such entries, the
+ * reference resolves to the first of them. A reference without pinyin points
+ * at the first loaded entry with the same characters.
+ */
+public class DictionaryEntryReference {
+
+	/**
+	 * The relationship between an entry and the word it references.
+	 */
+	public enum Type {
+
+		/** The referenced word is a classifier (measure word) for the entry. */
+		CLASSIFIER,
+
+		/** The entry is a variant form of the referenced word. */
+		VARIANT,
+
+		/** The entry refers the reader to the referenced word. */
+		SEE;
+
+	}
+
+	private final Type type;
+
+	private final String traditional;
+
+	private final String simplified;
+
+	private final List<PinyinSyllable> pinyin;
+
+	/**
+	 * @param type the {@link Type} of reference.
+	 * @param traditional the traditional characters of the referenced word.
+	 * @param simplified the simplified characters of the referenced word.
+	 * @param pinyin the Pinyin of the referenced word, or an empty list if the
+	 *        reference does not specify it.
+	 */
+	public DictionaryEntryReference(final Type type, final String traditional, final String simplified, final List<PinyinSyllable> pinyin) {
+		this.type = type;
+		this.traditional = traditional;
+		this.simplified = simplified;
+		this.pinyin = pinyin;
+	}
+
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * @return the traditional Chinese representation of the referenced word.
+	 */
+	public String getTraditional() {
+		return this.traditional;
+	}
+
+	/**
+	 * @return the simplified Chinese representation of the referenced word.
+	 */
+	public String getSimplified() {
+		return this.simplified;
+	}
+
+	/**
+	 * @return the Pinyin of the referenced word, or an empty list if the
+	 *         reference does not specify it.
+	 */
+	public List<PinyinSyllable> getPinyin() {
+		return Collections.unmodifiableList(this.pinyin);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((this.type == null) ? 0 : this.type.hashCode());
+		result = prime * result + ((this.traditional == null) ? 0 : this.traditional.hashCode());
+		result = prime * result + ((this.simplified == null) ? 0 : this.simplified.hashCode());
+		result = prime * result + ((this.pinyin == null) ? 0 : this.pinyin.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (this.getClass() != obj.getClass()) {
+			return false;
+		}
+		final DictionaryEntryReference other = (DictionaryEntryReference) obj;
+		return this.type == other.type && equal(this.traditional, other.traditional) && equal(this.simplified, other.simplified)
+				&& equal(this.pinyin, other.pinyin);
+	}
+
+	private static boolean equal(final Object o1, final Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + " [" + this.type + ", " + this.traditional + ", " + this.simplified + ", " + this.pinyin + "]";
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.sql.SQLException;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+/**
+ * A {@link ConnectionSource} whose connections can abandon a running query
+ * when its search is cancelled.
+ * <p>
+ * The {@link DictionaryDataStore} adds the {@link #getInterruptCheck()
+ * interrupt check} to the where clause of each cancellable query, ahead of
+ * the search terms, so that it is evaluated for every row the query scans.
+ * The query runs on a connection that has been given the search's
+ * {@link SearchCanceller}, and the check fails the query once the search is
+ * cancelled.
+ */
+public interface InterruptibleConnectionSource extends ConnectionSource {
+
+	/**
+	 * @return an SQL expression that is true until the search of the
+	 *         connection it is evaluated on is cancelled, and which fails the
+	 *         query afterwards, or <code>null</code> if queries can not be
+	 *         interrupted.
+	 */
+	String getInterruptCheck();
+
+	/**
+	 * Set the canceller of the search that queries on a connection belong to.
+	 * 
+	 * @param connection a connection of this connection source.
+	 * @param canceller a {@link SearchCanceller}, or <code>null</code> once
+	 *        the query is complete.
+	 * @throws SQLException if the interrupt check can not be installed on the
+	 *         connection.
+	 */
+	void setCanceller(DatabaseConnection connection, SearchCanceller canceller) throws SQLException;
+
+}
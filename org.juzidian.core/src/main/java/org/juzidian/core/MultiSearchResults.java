@@ -0,0 +1,112 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The first page of results of a search of the same text with several
+ * {@link SearchType}s.
+ */
+public class MultiSearchResults {
+
+	private final Map<SearchType, SearchResults> results;
+
+	private final List<DictionaryEntry> entries;
+
+	MultiSearchResults(final Map<SearchType, SearchResults> results) {
+		this.results = new EnumMap<SearchType, SearchResults>(SearchType.class);
+		this.results.putAll(results);
+		this.entries = merge(this.results.values());
+	}
+
+	/*
+	 * Each type ranks its own matches, so the merged ranking takes the best
+	 * remaining match of each type in turn. An entry found by more than one
+	 * type is kept at its best rank.
+	 */
+	private static List<DictionaryEntry> merge(final Collection<SearchResults> results) {
+		final List<DictionaryEntry> merged = new ArrayList<DictionaryEntry>();
+		final Set<List<Object>> seen = new HashSet<List<Object>>();
+		int maxSize = 0;
+		for (final SearchResults searchResults : results) {
+			maxSize = Math.max(maxSize, searchResults.getEntries().size());
+		}
+		for (int rank = 0; rank < maxSize; rank++) {
+			for (final SearchResults searchResults : results) {
+				final List<DictionaryEntry> entries = searchResults.getEntries();
+				if (rank < entries.size() && seen.add(key(entries.get(rank)))) {
+					merged.add(entries.get(rank));
+				}
+			}
+		}
+		return merged;
+	}
+
+	private static List<Object> key(final DictionaryEntry entry) {
+		return Arrays.<Object> asList(entry.getTraditional(), entry.getSimplified(), entry.getPinyin(), entry.getDefinitions());
+	}
+
+	/**
+	 * @return the search types that were searched, in {@link SearchType}
+	 *         order.
+	 */
+	public Set<SearchType> getSearchTypes() {
+		return Collections.unmodifiableSet(this.results.keySet());
+	}
+
+	/**
+	 * @param searchType a {@link SearchType}.
+	 * @return the {@link SearchResults} of the search type, or
+	 *         <code>null</code> if it was not searched.
+	 */
+	public SearchResults getResults(final SearchType searchType) {
+		return this.results.get(searchType);
+	}
+
+	/**
+	 * @return the entries found by all search types, interleaved by their rank
+	 *         within each type and without duplicates.
+	 */
+	public List<DictionaryEntry> getEntries() {
+		return Collections.unmodifiableList(this.entries);
+	}
+
+	/**
+	 * @return <code>true</code> if no search type expects results on
+	 *         subsequent pages.
+	 */
+	public boolean isLastPage() {
+		for (final SearchResults searchResults : this.results.values()) {
+			if (!searchResults.isLastPage()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A cancellable, pending {@link MultiSearchResults}, made of one
+ * {@link SearchResultsFuture} per {@link SearchType}.
+ * <p>
+ * The searches run concurrently. Cancelling this future cancels all of them,
+ * and a search that fails cancels the others.
+ */
+public class MultiSearchResultsFuture {
+
+	private final Map<SearchType, SearchResultsFuture> branches;
+
+	MultiSearchResultsFuture(final Map<SearchType, SearchResultsFuture> branches) {
+		this.branches = new EnumMap<SearchType, SearchResultsFuture>(SearchType.class);
+		this.branches.putAll(branches);
+	}
+
+	/**
+	 * @return the search types being searched, in {@link SearchType} order.
+	 */
+	public Set<SearchType> getSearchTypes() {
+		return Collections.unmodifiableSet(this.branches.keySet());
+	}
+
+	/**
+	 * @param searchType a {@link SearchType}.
+	 * @return the {@link SearchResultsFuture} of the search type, which may be
+	 *         done before the others, or <code>null</code> if it is not being
+	 *         searched.
+	 */
+	public SearchResultsFuture getFuture(final SearchType searchType) {
+		return this.branches.get(searchType);
+	}
+
+	/**
+	 * Get the {@link MultiSearchResults} for this future.
+	 * <p>
+	 * This operation will block until the results of every search type become
+	 * available.
+	 * 
+	 * @return a {@link MultiSearchResults}.
+	 * @throws SearchCancelledException if any of the searches is cancelled.
+	 */
+	public MultiSearchResults getResults() throws SearchCancelledException {
+		final Map<SearchType, SearchResults> results = new EnumMap<SearchType, SearchResults>(SearchType.class);
+		boolean complete = false;
+		try {
+			for (final Map.Entry<SearchType, SearchResultsFuture> branch : this.branches.entrySet()) {
+				results.put(branch.getKey(), branch.getValue().getResults());
+			}
+			complete = true;
+		} finally {
+			if (!complete) {
+				this.cancel();
+			}
+		}
+		return new MultiSearchResults(results);
+	}
+
+	/**
+	 * @return <code>true</code> if the search of every search type is done.
+	 */
+	public boolean isDone() {
+		for (final SearchResultsFuture branch : this.branches.values()) {
+			if (!branch.isDone()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Cancel the searches of all search types.
+	 */
+	public void cancel() {
+		for (final SearchResultsFuture branch : this.branches.values()) {
+			branch.cancel();
+		}
+	}
+
+	/**
+	 * Deliver the outcome of the searches to a callback once all of them are
+	 * done, or straight away if they are already done.
+	 * 
+	 * @param callback the {@link Callback} to deliver the outcome to.
+	 * @param executor the {@link Executor} to run the callback with.
+	 */
+	public void addCallback(final Callback callback, final Executor executor) {
+		final Map<SearchType, SearchResults> results = Collections.synchronizedMap(new EnumMap<SearchType, SearchResults>(SearchType.class));
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Runnable delivery = new Runnable() {
+
+			@Override
+			public void run() {
+				if (failure.get() != null) {
+					callback.onFailure(failure.get());
+				} else if (cancelled.get()) {
+					callback.onCancelled();
+				} else {
+					callback.onResults(new MultiSearchResults(results));
+				}
+			}
+
+		};
+		if (this.branches.isEmpty()) {
+			executor.execute(delivery);
+			return;
+		}
+		final AtomicInteger remaining = new AtomicInteger(this.branches.size());
+		for (final Map.Entry<SearchType, SearchResultsFuture> branch : this.branches.entrySet()) {
+			branch.getValue().addCallback(new SearchResultsFuture.Callback() {
+
+				@Override
+				public void onResults(final SearchResults searchResults) {
+					results.put(branch.getKey(), searchResults);
+					this.arrived();
+				}
+
+				@Override
+				public void onCancelled() {
+					cancelled.set(true);
+					this.arrived();
+				}
+
+				@Override
+				public void onFailure(final Throwable cause) {
+					failure.compareAndSet(null, cause);
+					MultiSearchResultsFuture.this.cancel();
+					this.arrived();
+				}
+
+				private void arrived() {
+					if (remaining.decrementAndGet() == 0) {
+						executor.execute(delivery);
+					}
+				}
+
+			}, SearchResultsFuture.DIRECT_EXECUTOR);
+		}
+	}
+
+	/**
+	 * Receives the outcome of the searches of several search types.
+	 */
+	public static interface Callback {
+
+		/**
+		 * Invoked when the searches of all search types complete.
+		 * 
+		 * @param searchResults the {@link MultiSearchResults} of the searches.
+		 */
+		public void onResults(MultiSearchResults searchResults);
+
+		/**
+		 * Invoked when any of the searches is cancelled.
+		 */
+		public void onCancelled();
+
+		/**
+		 * Invoked when any of the searches fails.
+		 * 
+		 * @param cause the cause of the first failure.
+		 */
+		public void onFailure(Throwable cause);
+
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An executor for asynchronous queries that runs queued work in order of
+ * {@link SearchPriority} rather than first-in first-out.
+ * <p>
+ * To prevent starvation, queued work ages: each priority class below
+ * {@link SearchPriority#INTERACTIVE} is treated as though it was queued one
+ * aging interval later per class. Work that has waited longer than that is
+ * run ahead of newer work of a higher class. Work of the same class runs in
+ * the order it was queued.
+ * <p>
+ * Work submitted without a priority is treated as
+ * {@link SearchPriority#INTERACTIVE}. The queue depth and the time spent
+ * waiting are recorded for each class.
+ */
+public class PriorityQueryExecutor extends ThreadPoolExecutor {
+
+	/**
+	 * The default number of milliseconds of waiting that outweighs one
+	 * priority class.
+	 */
+	public static final long DEFAULT_AGING_MILLIS = 250;
+
+	private static final int CLASS_COUNT = SearchPriority.values().length;
+
+	private final long agingNanos;
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicInteger[] queueDepths = new AtomicInteger[CLASS_COUNT];
+
+	private final AtomicLong[] startedCounts = new AtomicLong[CLASS_COUNT];
+
+	private final AtomicLong[] totalWaitNanos = new AtomicLong[CLASS_COUNT];
+
+	private final AtomicLong[] maxWaitNanos = new AtomicLong[CLASS_COUNT];
+
+	/**
+	 * @param threadCount the number of threads that run queries.
+	 * @param agingMillis the number of milliseconds of waiting that outweighs
+	 *        one priority class.
+	 */
+	public PriorityQueryExecutor(final int threadCount, final long agingMillis) {
+		super(threadCount, threadCount, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>());
+		if (agingMillis < 0) {
+			throw new IllegalArgumentException("agingMillis must be non-negative");
+		}
+		this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+		for (int i = 0; i < CLASS_COUNT; i++) {
+			this.queueDepths[i] = new AtomicInteger();
+			this.startedCounts[i] = new AtomicLong();
+			this.totalWaitNanos[i] = new AtomicLong();
+			this.maxWaitNanos[i] = new AtomicLong();
+		}
+	}
+
+	/**
+	 * Execute a task with a priority.
+	 * 
+	 * @param command the task to execute.
+	 * @param priority the {@link SearchPriority} of the task.
+	 */
+	public void execute(final Runnable command, final SearchPriority priority) {
+		final long now = System.nanoTime();
+		final PrioritizedTask task = new PrioritizedTask(command, priority, now, now + priority.ordinal() * this.agingNanos,
+				this.sequence.getAndIncrement());
+		/* counted before it is queued, so a worker can not start it first */
+		this.queueDepths[priority.ordinal()].incrementAndGet();
+		try {
+			super.execute(task);
+		} catch (final RejectedExecutionException e) {
+			this.queueDepths[priority.ordinal()].decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Submit a task with a priority.
+	 * 
+	 * @param task the task to submit.
+	 * @param priority the {@link SearchPriority} of the task.
+	 * @return a {@link FutureTask} of the result of the task.
+	 */
+	public <T> FutureTask<T> submit(final Callable<T> task, final SearchPriority priority) {
+		final FutureTask<T> future = new FutureTask<T>(task);
+		this.execute(future, priority);
+		return future;
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		if (command instanceof PrioritizedTask) {
+			super.execute(command);
+		} else {
+			this.execute(command, SearchPriority.INTERACTIVE);
+		}
+	}
+
+	@Override
+	protected void beforeExecute(final Thread thread, final Runnable runnable) {
+		super.beforeExecute(thread, runnable);
+		final PrioritizedTask task = (PrioritizedTask) runnable;
+		final int index = task.priority.ordinal();
+		final long waitNanos = System.nanoTime() - task.queuedNanos;
+		this.queueDepths[index].decrementAndGet();
+		this.startedCounts[index].incrementAndGet();
+		this.totalWaitNanos[index].addAndGet(waitNanos);
+		long max;
+		while (waitNanos > (max = this.maxWaitNanos[index].get()) && !this.maxWaitNanos[index].compareAndSet(max, waitNanos)) {
+			/* retry until the maximum is recorded */
+		}
+	}
+
+	/**
+	 * @param priority a {@link SearchPriority}.
+	 * @return the number of tasks of the class that are waiting to run.
+	 */
+	public int getQueueDepth(final SearchPriority priority) {
+		return this.queueDepths[priority.ordinal()].get();
+	}
+
+	/**
+	 * @param priority a {@link SearchPriority}.
+	 * @return the number of tasks of the class that have started.
+	 */
+	public long getStartedCount(final SearchPriority priority) {
+		return this.startedCounts[priority.ordinal()].get();
+	}
+
+	/**
+	 * @param priority a {@link SearchPriority}.
+	 * @return the mean time that started tasks of the class waited, in
+	 *         milliseconds, or zero if none have started.
+	 */
+	public double getMeanWaitMillis(final SearchPriority priority) {
+		final long started = this.startedCounts[priority.ordinal()].get();
+		if (started == 0) {
+			return 0;
+		}
+		return this.totalWaitNanos[priority.ordinal()].get() / (double) started / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @param priority a {@link SearchPriority}.
+	 * @return the longest time that a started task of the class waited, in
+	 *         milliseconds.
+	 */
+	public double getMaxWaitMillis(final SearchPriority priority) {
+		return this.maxWaitNanos[priority.ordinal()].get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * A task ordered by the time at which it would have been queued had it
+	 * been {@link SearchPriority#INTERACTIVE}, which does not change while it
+	 * is queued.
+	 */
+	private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+		private final Runnable delegate;
+
+		private final SearchPriority priority;
+
+		private final long queuedNanos;
+
+		private final long virtualQueuedNanos;
+
+		private final long sequence;
+
+		public PrioritizedTask(final Runnable delegate, final SearchPriority priority, final long queuedNanos,
+				final long virtualQueuedNanos, final long sequence) {
+			this.delegate = delegate;
+			this.priority = priority;
+			this.queuedNanos = queuedNanos;
+			this.virtualQueuedNanos = virtualQueuedNanos;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			this.delegate.run();
+		}
+
+		@Override
+		public int compareTo(final PrioritizedTask other) {
+			/* nanoTime values may only be compared by their difference */
+			final long difference = this.virtualQueuedNanos - other.virtualQueuedNanos;
+			if (difference != 0) {
+				return difference < 0 ? -1 : 1;
+			}
+			return this.sequence < other.sequence ? -1 : this.sequence == other.sequence ? 0 : 1;
+		}
+
+	}
+
+}
@@ -18,31 +18,94 @@
  */
 package org.juzidian.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An event source for triggering and notifying search cancellation events.
+ * <p>
+ * Cancellation is sticky: once {@link #cancel()} is called the canceller
+ * stays cancelled, and a {@link Listener} registered afterwards is notified
+ * immediately. Each listener is notified at most once. Stages of a search
+ * that do not register a listener poll {@link #isCancelled()} or call
+ * {@link #checkCancelled(String)}.
+ * <p>
+ * This class is thread safe.
  */
 public class SearchCanceller {
 
-	private volatile Listener listener;
+	private final List<Listener> listeners = new ArrayList<Listener>();
+
+	private volatile boolean cancelled;
 
 	/**
-	 * Notify any registered {@link Listener} that search cancellation has been
-	 * triggered.
+	 * Mark the search as cancelled and notify every registered
+	 * {@link Listener}. Calls after the first have no effect.
 	 */
 	public void cancel() {
-		if (listener != null) {
+		final List<Listener> notifiedListeners;
+		synchronized (this.listeners) {
+			if (this.cancelled) {
+				return;
+			}
+			this.cancelled = true;
+			notifiedListeners = new ArrayList<Listener>(this.listeners);
+			this.listeners.clear();
+		}
+		for (final Listener listener : notifiedListeners) {
 			listener.onCancel();
 		}
 	}
 
+	/**
+	 * @return <code>true</code> if {@link #cancel()} has been called.
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Stop a search stage if the search has been cancelled.
+	 * 
+	 * @param stage a description of the stage, for the exception message.
+	 * @throws DictionaryDataStoreQueryCancelledException if {@link #cancel()}
+	 *         has been called.
+	 */
+	public void checkCancelled(final String stage) {
+		if (this.cancelled) {
+			throw new DictionaryDataStoreQueryCancelledException("Search cancelled: " + stage, null);
+		}
+	}
+
 	/**
 	 * Register a {@link Listener} to be notified when cancellation is
-	 * triggered.
+	 * triggered, in addition to any already registered. If cancellation has
+	 * already been triggered, the listener is notified before this method
+	 * returns.
 	 * 
-	 * @param cancellationListener a {@link Listener}.
+	 * @param listener a {@link Listener}.
 	 */
 	public void register(final Listener listener) {
-		this.listener = listener;
+		synchronized (this.listeners) {
+			if (!this.cancelled) {
+				this.listeners.add(listener);
+				return;
+			}
+		}
+		listener.onCancel();
+	}
+
+	/**
+	 * Stop notifying a {@link Listener} registered with
+	 * {@link #register(Listener)}, so that the canceller does not keep it
+	 * after the stage it belongs to has finished.
+	 * 
+	 * @param listener a {@link Listener}.
+	 */
+	public void unregister(final Listener listener) {
+		synchronized (this.listeners) {
+			this.listeners.remove(listener);
+		}
 	}
 
 	/**
@@ -0,0 +1,137 @@
+/*
+ * Copyright Nathan Jones 2012
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Restricts dictionary search results to entries with or without particular
+ * {@link DictionaryEntryFlag}s.
+ * <p>
+ * Filters are applied by the data store as part of the search query, so
+ * pagination bounds apply to the filtered results.
+ */
+public class SearchFilter {
+
+	/**
+	 * A filter that accepts all entries.
+	 */
+	public static final SearchFilter NONE = new SearchFilter(Collections.<DictionaryEntryFlag> emptySet(),
+			Collections.<DictionaryEntryFlag> emptySet());
+
+	private final Set<DictionaryEntryFlag> requiredFlags;
+
+	private final Set<DictionaryEntryFlag> excludedFlags;
+
+	/**
+	 * @param requiredFlags flags that every matching entry must have.
+	 * @param excludedFlags flags that no matching entry may have.
+	 * @throws IllegalArgumentException if a flag is both required and
+	 *         excluded.
+	 */
+	public SearchFilter(final Collection<DictionaryEntryFlag> requiredFlags, final Collection<DictionaryEntryFlag> excludedFlags) {
+		this.requiredFlags = copyOf(requiredFlags);
+		this.excludedFlags = copyOf(excludedFlags);
+		if (!Collections.disjoint(this.requiredFlags, this.excludedFlags)) {
+			throw new IllegalArgumentException("Flags both required and excluded: " + requiredFlags + ", " + excludedFlags);
+		}
+	}
+
+	private static Set<DictionaryEntryFlag> copyOf(final Collection<DictionaryEntryFlag> flags) {
+		final Set<DictionaryEntryFlag> copy = EnumSet.noneOf(DictionaryEntryFlag.class);
+		copy.addAll(flags);
+		return Collections.unmodifiableSet(copy);
+	}
+
+	/**
+	 * @param flags flags that matching entries must not have.
+	 * @return a {@link SearchFilter} that excludes entries with any of the
+	 *         given flags.
+	 */
+	public static SearchFilter excluding(final DictionaryEntryFlag... flags) {
+		return new SearchFilter(Collections.<DictionaryEntryFlag> emptySet(), Arrays.asList(flags));
+	}
+
+	/**
+	 * @param flags flags that matching entries must have.
+	 * @return a {@link SearchFilter} that only accepts entries with all of the
+	 *         given flags.
+	 */
+	public static SearchFilter requiring(final DictionaryEntryFlag... flags) {
+		return new SearchFilter(Arrays.asList(flags), Collections.<DictionaryEntryFlag> emptySet());
+	}
+
+	public Set<DictionaryEntryFlag> getRequiredFlags() {
+		return this.requiredFlags;
+	}
+
+	public Set<DictionaryEntryFlag> getExcludedFlags() {
+		return this.excludedFlags;
+	}
+
+	/**
+	 * @return <code>true</code> if this filter accepts all entries.
+	 */
+	public boolean isEmpty() {
+		return this.requiredFlags.isEmpty() && this.excludedFlags.isEmpty();
+	}
+
+	/**
+	 * @param flags the flags of an entry.
+	 * @return <code>true</code> if an entry with the given flags is accepted by
+	 *         this filter.
+	 */
+	public boolean accepts(final Set<DictionaryEntryFlag> flags) {
+		return flags.containsAll(this.requiredFlags) && Collections.disjoint(flags, this.excludedFlags);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + this.excludedFlags.hashCode();
+		result = prime * result + this.requiredFlags.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (this.getClass() != obj.getClass()) {
+			return false;
+		}
+		final SearchFilter other = (SearchFilter) obj;
+		return this.requiredFlags.equals(other.requiredFlags) && this.excludedFlags.equals(other.excludedFlags);
+	}
+
+	@Override
+	public String toString() {
+		return "SearchFilter [requiredFlags=" + this.requiredFlags + ", excludedFlags=" + this.excludedFlags + "]";
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+/**
+ * Scheduling classes for asynchronous searches, in order of decreasing
+ * priority.
+ * 
+ * @see PriorityQueryExecutor
+ */
+public enum SearchPriority {
+
+	/**
+	 * A search the user is waiting on, such as the first page of results for
+	 * new input.
+	 */
+	INTERACTIVE,
+
+	/**
+	 * A search for further pages of results, requested or prefetched.
+	 */
+	PAGING,
+
+	/**
+	 * Batch work that no user is waiting on.
+	 */
+	BULK;
+
+	/**
+	 * @param query a {@link SearchQuery}.
+	 * @return {@link #INTERACTIVE} for the first page of results and
+	 *         {@link #PAGING} for later pages.
+	 */
+	public static SearchPriority forQuery(final SearchQuery query) {
+		return query.getPageIndex() == 0 ? INTERACTIVE : PAGING;
+	}
+
+}
@@ -19,8 +19,8 @@
 package org.juzidian.core;
 
 /**
- * A dictionary search query including search type, search text and pagination
- * bounds.
+ * A dictionary search query including search type, search text, entry filter,
+ * pagination bounds and an optional latency budget.
  */
 public class SearchQuery {
 
@@ -32,6 +32,10 @@ public class SearchQuery {
 
 	private final int pageIndex;
 
+	private final SearchFilter filter;
+
+	private final long latencyBudgetMillis;
+
 	/**
 	 * Create a dictionary search query.
 	 * 
@@ -44,6 +48,45 @@ public class SearchQuery {
 	 *         or page size or page number are negative.
 	 */
 	public SearchQuery(final SearchType searchType, final String searchText, final int pageSize, final int pageIndex) {
+		this(searchType, searchText, pageSize, pageIndex, SearchFilter.NONE);
+	}
+
+	/**
+	 * Create a dictionary search query for entries accepted by a filter.
+	 * 
+	 * @param queryString Chinese characters, Pinyin syllables or English words.
+	 * @param searchType the {@link SearchType} indicating how to interpret the
+	 *        query string.
+	 * @param pageSize the number of entries included in each page of results.
+	 * @param pageIndex the index of the page of results to get.
+	 * @param filter the {@link SearchFilter} that entries must be accepted by.
+	 * @throws IllegalArgumentException if search type, search text or filter
+	 *         are null or page size or page number are negative.
+	 */
+	public SearchQuery(final SearchType searchType, final String searchText, final int pageSize, final int pageIndex,
+			final SearchFilter filter) {
+		this(searchType, searchText, pageSize, pageIndex, filter, 0);
+	}
+
+	/**
+	 * Create a dictionary search query for entries accepted by a filter, to be
+	 * answered within a latency budget.
+	 * 
+	 * @param queryString Chinese characters, Pinyin syllables or English words.
+	 * @param searchType the {@link SearchType} indicating how to interpret the
+	 *        query string.
+	 * @param pageSize the number of entries included in each page of results.
+	 * @param pageIndex the index of the page of results to get.
+	 * @param filter the {@link SearchFilter} that entries must be accepted by.
+	 * @param latencyBudgetMillis the number of milliseconds after which the
+	 *        search should return the results found so far, or zero to always
+	 *        complete the page. Pinyin searches always complete the page.
+	 * @throws IllegalArgumentException if search type, search text or filter
+	 *         are null or page size, page number or latency budget are
+	 *         negative.
+	 */
+	public SearchQuery(final SearchType searchType, final String searchText, final int pageSize, final int pageIndex,
+			final SearchFilter filter, final long latencyBudgetMillis) {
 		if (searchType == null) {
 			throw new IllegalArgumentException("searchType is null");
 		}
@@ -56,10 +99,18 @@ public class SearchQuery {
 		if (pageIndex < 0) {
 			throw new IllegalArgumentException("pageIndex is negative");
 		}
+		if (filter == null) {
+			throw new IllegalArgumentException("filter is null");
+		}
+		if (latencyBudgetMillis < 0) {
+			throw new IllegalArgumentException("latencyBudgetMillis is negative");
+		}
 		this.searchType = searchType;
 		this.searchText = searchText;
 		this.pageSize = pageSize;
 		this.pageIndex = pageIndex;
+		this.filter = filter;
+		this.latencyBudgetMillis = latencyBudgetMillis;
 	}
 
 	public SearchType getSearchType() {
@@ -84,20 +135,81 @@ public class SearchQuery {
 		return this.pageIndex;
 	}
 
+	/**
+	 * @return the {@link SearchFilter} that entries must be accepted by.
+	 */
+	public SearchFilter getFilter() {
+		return this.filter;
+	}
+
+	/**
+	 * @return the number of milliseconds after which the search should return
+	 *         the results found so far, or zero if the page is always
+	 *         completed.
+	 */
+	public long getLatencyBudgetMillis() {
+		return this.latencyBudgetMillis;
+	}
+
 	/**
 	 * Get the search query for the next page after this search query.
+	 * <p>
+	 * Later pages are not fetched while the user waits on them, so the next
+	 * page has no latency budget.
 	 * 
 	 * @return a {@link SearchQuery} identical to this one but with the page
-	 *         index incremented.
+	 *         index incremented and no latency budget.
 	 */
 	public SearchQuery nextPage() {
-		return new SearchQuery(this.searchType, this.searchText, this.pageSize, this.pageIndex + 1);
+		return new SearchQuery(this.searchType, this.searchText, this.pageSize, this.pageIndex + 1, this.filter);
+	}
+
+	/**
+	 * Get this search query with a different latency budget.
+	 * 
+	 * @param latencyBudgetMillis the number of milliseconds after which the
+	 *        search should return the results found so far, or zero to always
+	 *        complete the page. Pinyin searches always complete the page.
+	 * @return a {@link SearchQuery} identical to this one but with the given
+	 *         latency budget.
+	 */
+	public SearchQuery withLatencyBudget(final long latencyBudgetMillis) {
+		return new SearchQuery(this.searchType, this.searchText, this.pageSize, this.pageIndex, this.filter, latencyBudgetMillis);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + this.searchType.hashCode();
+		result = prime * result + this.searchText.hashCode();
+		result = prime * result + this.pageSize;
+		result = prime * result + this.pageIndex;
+		result = prime * result + this.filter.hashCode();
+		result = prime * result + (int) (this.latencyBudgetMillis ^ (this.latencyBudgetMillis >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (this.getClass() != obj.getClass()) {
+			return false;
+		}
+		final SearchQuery other = (SearchQuery) obj;
+		return this.searchType == other.searchType && this.searchText.equals(other.searchText) && this.pageSize == other.pageSize
+				&& this.pageIndex == other.pageIndex && this.filter.equals(other.filter) && this.latencyBudgetMillis == other.latencyBudgetMillis;
 	}
 
 	@Override
 	public String toString() {
 		return "SearchQuery [searchType=" + this.searchType + ", searchText=" + this.searchText + ", pageSize=" + this.pageSize
-				+ ", pageIndex=" + this.pageIndex + "]";
+				+ ", pageIndex=" + this.pageIndex + ", filter=" + this.filter + ", latencyBudgetMillis=" + this.latencyBudgetMillis + "]";
 	}
 
 }
@@ -30,9 +30,23 @@ public class SearchResults {
 
 	private final List<DictionaryEntry> entries;
 
+	private final boolean partial;
+
+	private final SearchQuery continuation;
+
 	SearchResults(final SearchQuery searchQuery, final List<DictionaryEntry> entries) {
+		this(searchQuery, entries, false);
+	}
+
+	SearchResults(final SearchQuery searchQuery, final List<DictionaryEntry> entries, final boolean partial) {
+		this(searchQuery, entries, partial, null);
+	}
+
+	SearchResults(final SearchQuery searchQuery, final List<DictionaryEntry> entries, final boolean partial, final SearchQuery continuation) {
 		this.searchQuery = searchQuery;
 		this.entries = entries;
+		this.partial = partial || continuation != null;
+		this.continuation = continuation;
 	}
 
 	/**
@@ -55,7 +69,25 @@ public class SearchResults {
 	 *         subsequent pages for the same search criteria.
 	 */
 	public boolean isLastPage() {
-		return this.entries.size() < this.searchQuery.getPageSize();
+		return this.continuation == null && this.entries.size() < this.searchQuery.getPageSize();
+	}
+
+	/**
+	 * @return <code>true</code> if some matching entries may be missing,
+	 *         either because the search was made while only the core tier of
+	 *         the dictionary was installed or because the latency budget of
+	 *         the query was spent before the page was complete.
+	 */
+	public boolean isPartial() {
+		return this.partial;
+	}
+
+	/**
+	 * @return a {@link SearchQuery} without a latency budget that completes
+	 *         this page, or <code>null</code> if the page is complete.
+	 */
+	public SearchQuery getContinuation() {
+		return this.continuation;
 	}
 
 }
@@ -18,14 +18,39 @@
  */
 package org.juzidian.core;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A cancellable, pending {@link SearchResults}.
+ * <p>
+ * The results can be waited for with {@link #getResults()}, or delivered to a
+ * {@link Callback} once the search is done, so that no thread has to wait for
+ * them. Futures returned by a {@link Dictionary} or a {@link SearchSession}
+ * support callbacks; a future created from any other {@link Future} supports
+ * only waiting.
  */
 public class SearchResultsFuture {
 
+	/**
+	 * Runs tasks on the thread that completes a search. Used only for tasks
+	 * that do not block.
+	 */
+	static final Executor DIRECT_EXECUTOR = new Executor() {
+
+		@Override
+		public void execute(final Runnable command) {
+			command.run();
+		}
+
+	};
+
 	private final Future<SearchResults> results;
 
 	private final SearchCanceller canceller;
@@ -47,6 +72,8 @@ public class SearchResultsFuture {
 	public SearchResults getResults() throws SearchCancelledException {
 		try {
 			return results.get();
+		} catch (CancellationException e) {
+			throw new SearchCancelledException(e);
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
@@ -60,10 +87,259 @@ public class SearchResultsFuture {
 	}
 
 	/**
-	 * Cancel the search.
+	 * Cancel the search. A search that has not yet started is discarded
+	 * without running.
 	 */
 	public void cancel() {
+		results.cancel(false);
 		canceller.cancel();
 	}
 
+	/**
+	 * @return <code>true</code> if the search completed, failed or was
+	 *         cancelled.
+	 */
+	public boolean isDone() {
+		return results.isDone();
+	}
+
+	/**
+	 * Deliver the outcome of the search to a callback once the search is done,
+	 * or straight away if it is already done.
+	 * 
+	 * @param callback the {@link Callback} to deliver the outcome to.
+	 * @param executor the {@link Executor} to run the callback with.
+	 * @throws UnsupportedOperationException if this future was created from a
+	 *         {@link Future} that does not support callbacks.
+	 */
+	public void addCallback(final Callback callback, final Executor executor) {
+		this.getTask().addListener(new Runnable() {
+
+			@Override
+			public void run() {
+				executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						SearchResultsFuture.this.deliver(callback);
+					}
+
+				});
+			}
+
+		});
+	}
+
+	private void deliver(final Callback callback) {
+		final SearchResults searchResults;
+		try {
+			searchResults = results.get();
+		} catch (CancellationException e) {
+			callback.onCancelled();
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			callback.onFailure(e);
+			return;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof DictionaryDataStoreQueryCancelledException) {
+				callback.onCancelled();
+			} else {
+				callback.onFailure(cause);
+			}
+			return;
+		}
+		callback.onResults(searchResults);
+	}
+
+	/**
+	 * Chain a search that depends on the results of this search.
+	 * <p>
+	 * Cancelling the returned future cancels this search and the follow-up
+	 * search. If this search fails or is cancelled, so is the returned future,
+	 * and the follow-up is not started.
+	 * 
+	 * @param followUp the {@link FollowUp} that starts the next search. It is
+	 *        invoked on the thread that completes this search, so it must not
+	 *        block.
+	 * @return a {@link SearchResultsFuture} for the results of the follow-up
+	 *         search.
+	 * @throws UnsupportedOperationException if this future was created from a
+	 *         {@link Future} that does not support callbacks.
+	 */
+	public SearchResultsFuture thenSearch(final FollowUp followUp) {
+		final SearchTask chainedTask = new SearchTask();
+		final SearchCanceller chainedCanceller = new SearchCanceller();
+		final AtomicReference<SearchResultsFuture> followUpFuture = new AtomicReference<SearchResultsFuture>();
+		chainedCanceller.register(new SearchCanceller.Listener() {
+
+			@Override
+			public void onCancel() {
+				chainedTask.cancel(false);
+				SearchResultsFuture.this.cancel();
+				final SearchResultsFuture next = followUpFuture.get();
+				if (next != null) {
+					next.cancel();
+				}
+			}
+
+		});
+		this.addCallback(new Callback() {
+
+			@Override
+			public void onResults(final SearchResults searchResults) {
+				final SearchResultsFuture next;
+				try {
+					next = followUp.search(searchResults);
+				} catch (final RuntimeException e) {
+					chainedTask.fail(e);
+					return;
+				}
+				if (next == null) {
+					chainedTask.complete(searchResults);
+					return;
+				}
+				followUpFuture.set(next);
+				if (chainedCanceller.isCancelled()) {
+					next.cancel();
+				}
+				next.addCallback(new Callback() {
+
+					@Override
+					public void onResults(final SearchResults followUpResults) {
+						chainedTask.complete(followUpResults);
+					}
+
+					@Override
+					public void onCancelled() {
+						chainedTask.cancel(false);
+					}
+
+					@Override
+					public void onFailure(final Throwable cause) {
+						chainedTask.fail(cause);
+					}
+
+				}, DIRECT_EXECUTOR);
+			}
+
+			@Override
+			public void onCancelled() {
+				chainedTask.cancel(false);
+			}
+
+			@Override
+			public void onFailure(final Throwable cause) {
+				chainedTask.fail(cause);
+			}
+
+		}, DIRECT_EXECUTOR);
+		return new SearchResultsFuture(chainedTask, chainedCanceller);
+	}
+
+	/**
+	 * Invoke a callback once all of several searches are done, whether they
+	 * completed, failed or were cancelled.
+	 * 
+	 * @param futures the {@link SearchResultsFuture}s of the searches.
+	 * @param callback the {@link GroupCallback} to invoke.
+	 * @param executor the {@link Executor} to run the callback with.
+	 * @throws UnsupportedOperationException if any of the futures does not
+	 *         support callbacks.
+	 */
+	public static void whenAll(final List<SearchResultsFuture> futures, final GroupCallback callback, final Executor executor) {
+		final Runnable completion = new Runnable() {
+
+			@Override
+			public void run() {
+				callback.onComplete(futures);
+			}
+
+		};
+		if (futures.isEmpty()) {
+			executor.execute(completion);
+			return;
+		}
+		final AtomicInteger remaining = new AtomicInteger(futures.size());
+		final Runnable countDown = new Runnable() {
+
+			@Override
+			public void run() {
+				if (remaining.decrementAndGet() == 0) {
+					executor.execute(completion);
+				}
+			}
+
+		};
+		final List<SearchTask> tasks = new ArrayList<SearchTask>(futures.size());
+		for (final SearchResultsFuture future : futures) {
+			tasks.add(future.getTask());
+		}
+		for (final SearchTask task : tasks) {
+			task.addListener(countDown);
+		}
+	}
+
+	private SearchTask getTask() {
+		if (!(results instanceof SearchTask)) {
+			throw new UnsupportedOperationException("Search results future does not support callbacks");
+		}
+		return (SearchTask) results;
+	}
+
+	/**
+	 * Receives the outcome of a search.
+	 */
+	public static interface Callback {
+
+		/**
+		 * Invoked when the search completes.
+		 * 
+		 * @param searchResults the {@link SearchResults} of the search.
+		 */
+		public void onResults(SearchResults searchResults);
+
+		/**
+		 * Invoked when the search is cancelled.
+		 */
+		public void onCancelled();
+
+		/**
+		 * Invoked when the search fails.
+		 * 
+		 * @param cause the cause of the failure.
+		 */
+		public void onFailure(Throwable cause);
+
+	}
+
+	/**
+	 * Starts a search that depends on the results of a previous search.
+	 */
+	public static interface FollowUp {
+
+		/**
+		 * @param searchResults the {@link SearchResults} of the previous
+		 *        search.
+		 * @return a {@link SearchResultsFuture} for the next search, or
+		 *         <code>null</code> to keep the results of the previous search.
+		 */
+		public SearchResultsFuture search(SearchResults searchResults);
+
+	}
+
+	/**
+	 * Receives a group of searches once all of them are done.
+	 */
+	public static interface GroupCallback {
+
+		/**
+		 * @param futures the {@link SearchResultsFuture}s of the searches,
+		 *        each of which is {@link SearchResultsFuture#isDone() done}.
+		 */
+		public void onComplete(List<SearchResultsFuture> futures);
+
+	}
+
 }
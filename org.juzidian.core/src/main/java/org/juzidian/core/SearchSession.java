@@ -0,0 +1,301 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A sequence of related asynchronous searches, such as the searches made as a
+ * user types into a search box, of which only the latest is of interest.
+ * <p>
+ * A session holds at most one query that is waiting to run. A query that is
+ * superseded by a newer one before it starts is discarded immediately, and
+ * its {@link SearchResultsFuture} reports that it was cancelled. Queries that
+ * have already started are not affected.
+ * <p>
+ * Optionally, a query may be held back until no newer query has arrived for
+ * a debounce window, so that a burst of queries runs only the last one. The
+ * window is timed by the dictionary's timer, and the query is only submitted
+ * to the query executor once the window has passed.
+ * <p>
+ * Optionally, once the results of a query are delivered, the next page of
+ * results is prefetched behind any work already queued. A request for that
+ * page is answered by the prefetch; any other query drops it, as does a
+ * {@link DictionaryDataStore#swapDatabase swap} of the dictionary database.
+ * The number of prefetches used and dropped is counted.
+ * <p>
+ * This class is thread safe. Sessions are created with
+ * {@link Dictionary#createSearchSession(long, boolean)}.
+ */
+public class SearchSession {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SearchSession.class);
+
+	private final Dictionary dictionary;
+
+	private final long debounceNanos;
+
+	private final boolean prefetchEnabled;
+
+	private SearchTask pendingSearch;
+
+	private SearchQuery pendingQuery;
+
+	private long lastSubmittedNanos;
+
+	private boolean drainScheduled;
+
+	private boolean debounceScheduled;
+
+	/**
+	 * The query most recently requested by the caller.
+	 */
+	private SearchQuery latestQuery;
+
+	private SearchTask prefetchSearch;
+
+	private SearchQuery prefetchQuery;
+
+	private SearchCanceller prefetchCanceller;
+
+	private SearchResults prefetchResults;
+
+	/**
+	 * The data generation the prefetched page was requested in; a page from a
+	 * swapped out database is not served.
+	 */
+	private long prefetchGeneration;
+
+	private long prefetchHits;
+
+	private long prefetchWastes;
+
+	SearchSession(final Dictionary dictionary, final long debounceMillis, final boolean prefetchEnabled) {
+		if (debounceMillis < 0) {
+			throw new IllegalArgumentException("debounceMillis must be non-negative");
+		}
+		this.dictionary = dictionary;
+		this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+		this.prefetchEnabled = prefetchEnabled;
+	}
+
+	/**
+	 * Asynchronously find all Chinese words that match the search criteria and
+	 * pagination bounds, discarding any query of this session that has not yet
+	 * started.
+	 * 
+	 * @param query the {@link SearchQuery} to find entries for.
+	 * @return a {@link SearchResultsFuture}.
+	 */
+	public synchronized SearchResultsFuture findAsync(final SearchQuery query) {
+		LOGGER.debug("Find entries in session: {}", query);
+		this.latestQuery = query;
+		if (this.prefetchQuery != null) {
+			if (this.prefetchQuery.equals(query) && this.prefetchGeneration == this.dictionary.getDataGeneration()) {
+				return this.claimPrefetch();
+			}
+			this.dropPrefetch();
+		}
+		this.discardPendingSearch();
+		final SearchCanceller canceller = new SearchCanceller();
+		this.pendingSearch = this.createSearch(query, canceller);
+		this.pendingQuery = query;
+		this.lastSubmittedNanos = System.nanoTime();
+		final SearchResultsFuture searchResultsFuture = new SearchResultsFuture(this.pendingSearch, canceller);
+		if (this.debounceNanos == 0) {
+			this.scheduleDrain();
+		} else if (!this.debounceScheduled) {
+			this.scheduleDebounce(this.debounceNanos);
+		}
+		return searchResultsFuture;
+	}
+
+	private void scheduleDrain() {
+		if (this.drainScheduled) {
+			return;
+		}
+		this.drainScheduled = true;
+		try {
+			this.dictionary.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					SearchSession.this.runPendingSearch();
+				}
+
+			}, SearchPriority.forQuery(this.pendingQuery));
+		} catch (final RejectedExecutionException e) {
+			this.drainScheduled = false;
+			this.pendingSearch = null;
+			this.pendingQuery = null;
+			throw e;
+		}
+	}
+
+	private void scheduleDebounce(final long delayNanos) {
+		this.debounceScheduled = true;
+		this.dictionary.schedule(new TimerTask() {
+
+			@Override
+			public void run() {
+				SearchSession.this.debounceElapsed();
+			}
+
+		}, Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos)));
+	}
+
+	/*
+	 * Each newer query restarts the window, so the timer is rescheduled until
+	 * the latest query has been left alone for the whole of it.
+	 */
+	private synchronized void debounceElapsed() {
+		final long remainingNanos = this.lastSubmittedNanos + this.debounceNanos - System.nanoTime();
+		if (remainingNanos > 0) {
+			this.scheduleDebounce(remainingNanos);
+			return;
+		}
+		this.debounceScheduled = false;
+		final SearchTask search = this.pendingSearch;
+		final SearchQuery query = this.pendingQuery;
+		if (search == null) {
+			return;
+		}
+		try {
+			this.scheduleDrain();
+		} catch (final RejectedExecutionException e) {
+			LOGGER.debug("Debounced query rejected: {}", query);
+			search.fail(e);
+		}
+	}
+
+	/**
+	 * @return the number of prefetched pages that were requested.
+	 */
+	public synchronized long getPrefetchHits() {
+		return this.prefetchHits;
+	}
+
+	/**
+	 * @return the number of prefetched pages that were dropped without being
+	 *         requested.
+	 */
+	public synchronized long getPrefetchWastes() {
+		return this.prefetchWastes;
+	}
+
+	private SearchTask createSearch(final SearchQuery query, final SearchCanceller canceller) {
+		return new SearchTask(new Callable<SearchResults>() {
+
+			@Override
+			public SearchResults call() throws Exception {
+				final SearchResults results = SearchSession.this.dictionary.find(query, canceller);
+				SearchSession.this.searchCompleted(query, results);
+				return results;
+			}
+
+		});
+	}
+
+	private void discardPendingSearch() {
+		if (this.pendingSearch != null) {
+			LOGGER.debug("Discarding superseded query: {}", this.pendingQuery);
+			this.pendingSearch.cancel(false);
+			this.pendingSearch = null;
+			this.pendingQuery = null;
+		}
+	}
+
+	private void runPendingSearch() {
+		final SearchTask search;
+		synchronized (this) {
+			this.drainScheduled = false;
+			if (this.debounceScheduled) {
+				/* a newer query is still in its window; the timer drains it */
+				return;
+			}
+			search = this.pendingSearch;
+			this.pendingSearch = null;
+			this.pendingQuery = null;
+		}
+		if (search != null) {
+			search.run();
+		}
+	}
+
+	private synchronized void searchCompleted(final SearchQuery query, final SearchResults results) {
+		if (query == this.prefetchQuery) {
+			this.prefetchResults = results;
+		} else if (query.equals(this.latestQuery)) {
+			this.prefetchNextPage(results);
+		}
+	}
+
+	private SearchResultsFuture claimPrefetch() {
+		this.prefetchHits++;
+		LOGGER.debug("Prefetch hit ({} hits, {} wasted): {}", new Object[] { this.prefetchHits, this.prefetchWastes, this.prefetchQuery });
+		final SearchResultsFuture searchResultsFuture = new SearchResultsFuture(this.prefetchSearch, this.prefetchCanceller);
+		final SearchResults results = this.prefetchResults;
+		this.clearPrefetch();
+		this.discardPendingSearch();
+		if (results != null) {
+			this.prefetchNextPage(results);
+		}
+		return searchResultsFuture;
+	}
+
+	private void prefetchNextPage(final SearchResults results) {
+		if (!this.prefetchEnabled || results.isLastPage() || this.pendingSearch != null) {
+			return;
+		}
+		final SearchQuery query = results.getSearchQuery().nextPage();
+		this.prefetchGeneration = this.dictionary.getDataGeneration();
+		this.prefetchCanceller = new SearchCanceller();
+		this.prefetchSearch = this.createSearch(query, this.prefetchCanceller);
+		this.prefetchQuery = query;
+		try {
+			/* a dropped prefetch is cancelled and does nothing when it is run */
+			this.dictionary.execute(this.prefetchSearch, SearchPriority.PAGING);
+		} catch (final RejectedExecutionException e) {
+			LOGGER.debug("Prefetch rejected: {}", query);
+			this.clearPrefetch();
+		}
+	}
+
+	private void dropPrefetch() {
+		this.prefetchSearch.cancel(false);
+		this.prefetchCanceller.cancel();
+		this.prefetchWastes++;
+		LOGGER.debug("Prefetch dropped ({} hits, {} wasted): {}", new Object[] { this.prefetchHits, this.prefetchWastes, this.prefetchQuery });
+		this.clearPrefetch();
+	}
+
+	private void clearPrefetch() {
+		this.prefetchSearch = null;
+		this.prefetchQuery = null;
+		this.prefetchCanceller = null;
+		this.prefetchResults = null;
+	}
+
+}
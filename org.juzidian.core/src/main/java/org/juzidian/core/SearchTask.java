@@ -0,0 +1,96 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A search that notifies listeners once it is done, whether it completed,
+ * failed or was cancelled, so that no thread has to wait on its result.
+ */
+class SearchTask extends FutureTask<SearchResults> {
+
+	private static final Callable<SearchResults> NOT_RUNNABLE = new Callable<SearchResults>() {
+
+		@Override
+		public SearchResults call() {
+			throw new IllegalStateException("Search outcome is set, not run");
+		}
+
+	};
+
+	private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+	private boolean finished;
+
+	/**
+	 * @param search the search to run.
+	 */
+	SearchTask(final Callable<SearchResults> search) {
+		super(search);
+	}
+
+	/**
+	 * Create a task whose outcome is given with {@link #complete} or
+	 * {@link #fail} instead of being computed by running it.
+	 */
+	SearchTask() {
+		super(NOT_RUNNABLE);
+	}
+
+	/**
+	 * Run a listener once the task is done, or now if it is already done.
+	 * 
+	 * @param listener a listener, which must not block.
+	 */
+	void addListener(final Runnable listener) {
+		synchronized (this.listeners) {
+			if (!this.finished) {
+				this.listeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	void complete(final SearchResults results) {
+		this.set(results);
+	}
+
+	void fail(final Throwable cause) {
+		this.setException(cause);
+	}
+
+	@Override
+	protected void done() {
+		final List<Runnable> notifiedListeners;
+		synchronized (this.listeners) {
+			this.finished = true;
+			notifiedListeners = new ArrayList<Runnable>(this.listeners);
+			this.listeners.clear();
+		}
+		for (final Runnable listener : notifiedListeners) {
+			listener.run();
+		}
+	}
+
+}
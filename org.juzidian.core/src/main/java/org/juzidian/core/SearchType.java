@@ -20,6 +20,8 @@ package org.juzidian.core;
 
 import java.util.List;
 
+import org.juzidian.core.DictionaryDataStore.MatchScope;
+
 /**
  * A type of dictionary search: {@link #HANZI}, {@link #PINYIN} or
  * {@link #REVERSE}.
@@ -31,8 +33,23 @@ public enum SearchType {
 	 */
 	HANZI {
 		@Override
-		public List<DictionaryEntry> doSearch(final Dictionary dictionary, final String query, final long limit, final long offset, final SearchCanceller canceller) {
-			return dictionary.findChinese(query, limit, offset, canceller);
+		public List<DictionaryEntry> doSearch(final Dictionary dictionary, final String query, final SearchFilter filter, final long limit, final long offset, final SearchCanceller canceller) {
+			return dictionary.findChinese(query, filter, limit, offset, canceller);
+		}
+
+		@Override
+		boolean isScoped() {
+			return true;
+		}
+
+		@Override
+		List<DictionaryEntry> doSearch(final Dictionary dictionary, final String query, final SearchFilter filter, final MatchScope scope, final long limit, final long offset, final SearchCanceller canceller) {
+			return dictionary.findChinese(query, filter, scope, limit, offset, canceller);
+		}
+
+		@Override
+		long countMatches(final Dictionary dictionary, final String query, final SearchFilter filter, final MatchScope scope) {
+			return dictionary.countChinese(query, filter, scope);
 		}
 	},
 
@@ -41,8 +58,8 @@ public enum SearchType {
 	 */
 	PINYIN {
 		@Override
-		public List<DictionaryEntry> doSearch(final Dictionary dictionary, final String query, final long limit, final long offset, final SearchCanceller canceller) {
-			return dictionary.findPinyin(query, limit, offset, canceller);
+		public List<DictionaryEntry> doSearch(final Dictionary dictionary, final String query, final SearchFilter filter, final long limit, final long offset, final SearchCanceller canceller) {
+			return dictionary.findPinyin(query, filter, limit, offset, canceller);
 		}
 	},
 
@@ -51,8 +68,23 @@ public enum SearchType {
 	 */
 	REVERSE {
 		@Override
-		public List<DictionaryEntry> doSearch(final Dictionary dictionary, final String query, final long limit, final long offset, final SearchCanceller canceller) {
-			return dictionary.findDefinitions(query, limit, offset, canceller);
+		public List<DictionaryEntry> doSearch(final Dictionary dictionary, final String query, final SearchFilter filter, final long limit, final long offset, final SearchCanceller canceller) {
+			return dictionary.findDefinitions(query, filter, limit, offset, canceller);
+		}
+
+		@Override
+		boolean isScoped() {
+			return true;
+		}
+
+		@Override
+		List<DictionaryEntry> doSearch(final Dictionary dictionary, final String query, final SearchFilter filter, final MatchScope scope, final long limit, final long offset, final SearchCanceller canceller) {
+			return dictionary.findDefinitions(query, filter, scope, limit, offset, canceller);
+		}
+
+		@Override
+		long countMatches(final Dictionary dictionary, final String query, final SearchFilter filter, final MatchScope scope) {
+			return dictionary.countDefinitions(query, filter, scope);
 		}
 	};
 
@@ -61,10 +93,45 @@ public enum SearchType {
 	 * 
 	 * @param dictionary a dictionary to search.
 	 * @param query the query string to search for.
+	 * @param filter the {@link SearchFilter} results must be accepted by.
 	 * @param limit the maximum number of results to find.
 	 * @param offset the result index to start searching from.
 	 * @return the dictionary's search result.
 	 */
-	abstract List<DictionaryEntry> doSearch(Dictionary dictionary, String query, long limit, long offset, final SearchCanceller canceller);
+	abstract List<DictionaryEntry> doSearch(Dictionary dictionary, String query, SearchFilter filter, long limit, long offset, final SearchCanceller canceller);
+
+	/**
+	 * @return <code>true</code> if the matches of this search type can be
+	 *         found in {@link MatchScope}s. Pinyin searches only find prefix
+	 *         matches, so they have nothing to widen to.
+	 */
+	boolean isScoped() {
+		return false;
+	}
+
+	/**
+	 * Perform the appropriate search on the dictionary for this search type,
+	 * considering only the matches within a scope.
+	 * 
+	 * @param scope the {@link MatchScope} of matches to find.
+	 * @throws UnsupportedOperationException if this search type is not
+	 *         {@link #isScoped() scoped}.
+	 * @see #doSearch(Dictionary, String, SearchFilter, long, long,
+	 *      SearchCanceller)
+	 */
+	List<DictionaryEntry> doSearch(final Dictionary dictionary, final String query, final SearchFilter filter, final MatchScope scope, final long limit, final long offset, final SearchCanceller canceller) {
+		throw new UnsupportedOperationException("Search type is not scoped: " + this);
+	}
+
+	/**
+	 * Count the matches within a scope without pagination bounds.
+	 * 
+	 * @param scope the {@link MatchScope} of matches to count.
+	 * @throws UnsupportedOperationException if this search type is not
+	 *         {@link #isScoped() scoped}.
+	 */
+	long countMatches(final Dictionary dictionary, final String query, final SearchFilter filter, final MatchScope scope) {
+		throw new UnsupportedOperationException("Search type is not scoped: " + this);
+	}
 
 }
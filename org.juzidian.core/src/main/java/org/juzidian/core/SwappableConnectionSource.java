@@ -0,0 +1,336 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+/**
+ * A {@link ConnectionSource} that routes to another connection source, which
+ * can be {@link #swap(ConnectionSource) swapped} while queries are running.
+ * <p>
+ * Connections are taken from the connection source that is current when they
+ * are requested. After a swap, connections that are still in use keep
+ * working, and the replaced connection source is closed once the last of
+ * them is released. A thread that has saved a special connection, for
+ * example in a transaction, keeps using the connection source of that
+ * connection until it is cleared.
+ * <p>
+ * Connections are interruptible if the current connection source is an
+ * {@link InterruptibleConnectionSource}. A replacement must have the same
+ * interrupt check, as queries may be built before a swap and run after it.
+ */
+public class SwappableConnectionSource implements InterruptibleConnectionSource {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SwappableConnectionSource.class);
+
+	private final Map<DatabaseConnection, Lease> leases = new IdentityHashMap<DatabaseConnection, Lease>();
+
+	private final ThreadLocal<Pin> pins = new ThreadLocal<Pin>();
+
+	private Target current;
+
+	/**
+	 * @param connectionSource the connection source to route to until the
+	 *        first swap.
+	 */
+	public SwappableConnectionSource(final ConnectionSource connectionSource) {
+		this.current = new Target(connectionSource);
+	}
+
+	/**
+	 * Route new connections to another connection source. The replaced
+	 * connection source is closed once none of its connections are in use.
+	 * 
+	 * @param replacement the connection source to route to.
+	 * @throws IllegalArgumentException if the replacement does not have the
+	 *         same interrupt check as the current connection source.
+	 */
+	public void swap(final ConnectionSource replacement) {
+		final Target replaced;
+		synchronized (this.leases) {
+			replaced = this.current;
+			if (!equal(interruptCheckOf(replaced.connectionSource), interruptCheckOf(replacement))) {
+				throw new IllegalArgumentException("Replacement connection source has a different interrupt check");
+			}
+			this.current = new Target(replacement);
+			replaced.retired = true;
+			if (replaced.leaseCount > 0) {
+				LOGGER.info("Swapped connection source, draining {} connections of the replaced one", replaced.leaseCount);
+				return;
+			}
+		}
+		LOGGER.info("Swapped connection source");
+		close(replaced);
+	}
+
+	private static String interruptCheckOf(final ConnectionSource connectionSource) {
+		if (connectionSource instanceof InterruptibleConnectionSource) {
+			return ((InterruptibleConnectionSource) connectionSource).getInterruptCheck();
+		}
+		return null;
+	}
+
+	private static boolean equal(final String value1, final String value2) {
+		return value1 == null ? value2 == null : value1.equals(value2);
+	}
+
+	@Override
+	public DatabaseConnection getReadOnlyConnection() throws SQLException {
+		return this.acquire(false);
+	}
+
+	@Override
+	public DatabaseConnection getReadWriteConnection() throws SQLException {
+		return this.acquire(true);
+	}
+
+	/*
+	 * The target is reserved before the connection is requested, so that a
+	 * swap meanwhile does not close it.
+	 */
+	private DatabaseConnection acquire(final boolean readWrite) throws SQLException {
+		final Target target;
+		synchronized (this.leases) {
+			target = this.route();
+			target.leaseCount++;
+		}
+		final DatabaseConnection connection;
+		try {
+			connection = readWrite ? target.connectionSource.getReadWriteConnection() : target.connectionSource.getReadOnlyConnection();
+		} catch (final SQLException e) {
+			this.release(target);
+			throw e;
+		}
+		synchronized (this.leases) {
+			Lease lease = this.leases.get(connection);
+			if (lease == null) {
+				lease = new Lease(target);
+				this.leases.put(connection, lease);
+			}
+			lease.count++;
+		}
+		return connection;
+	}
+
+	private Target route() {
+		final Pin pin = this.pins.get();
+		return pin != null ? pin.target : this.current;
+	}
+
+	@Override
+	public void releaseConnection(final DatabaseConnection connection) throws SQLException {
+		final Lease lease;
+		synchronized (this.leases) {
+			lease = this.leases.get(connection);
+			if (lease == null) {
+				throw new SQLException("Connection was not acquired from this connection source");
+			}
+			if (--lease.count == 0) {
+				this.leases.remove(connection);
+			}
+		}
+		try {
+			lease.target.connectionSource.releaseConnection(connection);
+		} finally {
+			this.release(lease.target);
+		}
+	}
+
+	private void release(final Target target) {
+		final boolean drained;
+		synchronized (this.leases) {
+			drained = --target.leaseCount == 0 && target.retired;
+		}
+		if (drained) {
+			LOGGER.debug("Replaced connection source drained");
+			close(target);
+		}
+	}
+
+	private static void close(final Target target) {
+		try {
+			target.connectionSource.close();
+		} catch (final SQLException e) {
+			LOGGER.warn("Failed to close replaced connection source: {}", e.toString());
+		}
+	}
+
+	@Override
+	public boolean saveSpecialConnection(final DatabaseConnection connection) throws SQLException {
+		final Target target = this.getTarget(connection);
+		final boolean saved = target.connectionSource.saveSpecialConnection(connection);
+		Pin pin = this.pins.get();
+		if (pin == null) {
+			pin = new Pin(target);
+			this.pins.set(pin);
+		}
+		pin.depth++;
+		return saved;
+	}
+
+	@Override
+	public void clearSpecialConnection(final DatabaseConnection connection) {
+		final Pin pin = this.pins.get();
+		if (pin == null) {
+			LOGGER.warn("Special connection cleared without being saved");
+			return;
+		}
+		if (--pin.depth == 0) {
+			this.pins.remove();
+		}
+		pin.target.connectionSource.clearSpecialConnection(connection);
+	}
+
+	@Override
+	public DatabaseConnection getSpecialConnection() {
+		final Pin pin = this.pins.get();
+		return pin != null ? pin.target.connectionSource.getSpecialConnection() : null;
+	}
+
+	@Override
+	public String getInterruptCheck() {
+		synchronized (this.leases) {
+			return interruptCheckOf(this.current.connectionSource);
+		}
+	}
+
+	@Override
+	public void setCanceller(final DatabaseConnection connection, final SearchCanceller canceller) throws SQLException {
+		final ConnectionSource connectionSource = this.getTarget(connection).connectionSource;
+		if (connectionSource instanceof InterruptibleConnectionSource) {
+			((InterruptibleConnectionSource) connectionSource).setCanceller(connection, canceller);
+		}
+	}
+
+	private Target getTarget(final DatabaseConnection connection) throws SQLException {
+		synchronized (this.leases) {
+			final Lease lease = this.leases.get(connection);
+			if (lease == null) {
+				throw new SQLException("Connection was not acquired from this connection source");
+			}
+			return lease.target;
+		}
+	}
+
+	/**
+	 * Close the current connection source, and any replaced connection source
+	 * whose connections are still in use.
+	 */
+	@Override
+	public void close() throws SQLException {
+		final Target[] targets;
+		synchronized (this.leases) {
+			final Map<Target, Boolean> retired = new IdentityHashMap<Target, Boolean>();
+			for (final Lease lease : this.leases.values()) {
+				if (lease.target.retired) {
+					retired.put(lease.target, Boolean.TRUE);
+				}
+			}
+			targets = retired.keySet().toArray(new Target[retired.size()]);
+		}
+		for (final Target target : targets) {
+			close(target);
+		}
+		this.getCurrent().connectionSource.close();
+	}
+
+	@Override
+	public void closeQuietly() {
+		try {
+			this.close();
+		} catch (final SQLException e) {
+			LOGGER.debug("Failed to close connection source: {}", e.toString());
+		}
+	}
+
+	@Override
+	public DatabaseType getDatabaseType() {
+		return this.getCurrent().connectionSource.getDatabaseType();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.getCurrent().connectionSource.isOpen();
+	}
+
+	private Target getCurrent() {
+		synchronized (this.leases) {
+			return this.current;
+		}
+	}
+
+	/**
+	 * A connection source and the number of its connections in use.
+	 */
+	private static class Target {
+
+		private final ConnectionSource connectionSource;
+
+		private int leaseCount;
+
+		private boolean retired;
+
+		public Target(final ConnectionSource connectionSource) {
+			this.connectionSource = connectionSource;
+		}
+
+	}
+
+	/**
+	 * The number of times a connection is in use. A connection source may
+	 * hand out the same connection more than once.
+	 */
+	private static class Lease {
+
+		private final Target target;
+
+		private int count;
+
+		public Lease(final Target target) {
+			this.target = target;
+		}
+
+	}
+
+	/**
+	 * The connection source of the special connection saved by a thread, and
+	 * the number of times it was saved.
+	 */
+	private static class Pin {
+
+		private final Target target;
+
+		private int depth;
+
+		public Pin(final Target target) {
+			this.target = target;
+		}
+
+	}
+
+}
@@ -18,8 +18,12 @@
  */
 package org.juzidian.core.inject;
 
+import javax.inject.Singleton;
+
+import org.juzidian.core.DictionaryDataStore;
 import org.juzidian.core.DictionaryDataStoreEntry;
 import org.juzidian.core.DictionaryDataStoreMetadata;
+import org.juzidian.core.DictionaryDataStoreReference;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.TypeLiteral;
@@ -31,6 +35,9 @@ public class DictionaryModule extends AbstractModule {
 	protected void configure() {
 		this.bind(new TypeLiteral<Dao<DictionaryDataStoreEntry, Long>>() {}).toProvider(DictionaryEntryDaoProvider.class);
 		this.bind(new TypeLiteral<Dao<DictionaryDataStoreMetadata, Long>>() {}).toProvider(DictionaryMetadataDaoProvider.class);
+		this.bind(new TypeLiteral<Dao<DictionaryDataStoreReference, Long>>() {}).toProvider(DictionaryReferenceDaoProvider.class);
+		/* the data store caches state of its database, so it is shared */
+		this.bind(DictionaryDataStore.class).in(Singleton.class);
 	}
 
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.juzidian.pinyin.PinyinParser;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+
+public class DictionaryDataStorePatchTest {
+
+	private DictionaryDataStore baseDataStore;
+
+	private DictionaryDataStore targetDataStore;
+
+	private PinyinParser pinyinParser;
+
+	@Before
+	public void setUp() throws Exception {
+		this.baseDataStore = createDataStore("1");
+		this.targetDataStore = createDataStore("2");
+		this.pinyinParser = new PinyinParser();
+	}
+
+	private static DictionaryDataStore createDataStore(final String sourceVersion) throws Exception {
+		final JdbcConnectionSource connectionSource = new JdbcConnectionSource("jdbc:sqlite::memory:");
+		final Dao<DictionaryDataStoreEntry, Long> dictionaryEntryDao = DaoManager
+				.<Dao<DictionaryDataStoreEntry, Long>, DictionaryDataStoreEntry> createDao(connectionSource, DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> dictionaryMetadataDao = DaoManager
+				.<Dao<DictionaryDataStoreMetadata, Long>, DictionaryDataStoreMetadata> createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> dictionaryReferenceDao = DaoManager
+				.<Dao<DictionaryDataStoreReference, Long>, DictionaryDataStoreReference> createDao(connectionSource, DictionaryDataStoreReference.class);
+		final DictionaryDataStore dataStore = new DictionaryDataStore(dictionaryEntryDao, dictionaryMetadataDao, dictionaryReferenceDao);
+		dataStore.createSchema();
+		dataStore.populateMetadata(sourceVersion);
+		return dataStore;
+	}
+
+	private DictionaryEntry createEntry(final String chinese, final String pinyin, final String english) {
+		return new DictionaryEntry(chinese, chinese, this.pinyinParser.parse(pinyin), Arrays.asList(english.split(";")));
+	}
+
+	private DictionaryEntry createEntry(final String chinese, final String pinyin, final String english,
+			final DictionaryEntryReference reference) {
+		return new DictionaryEntry(chinese, chinese, this.pinyinParser.parse(pinyin), Arrays.asList(english.split(";")),
+				Arrays.asList(reference));
+	}
+
+	private void populate(final DictionaryDataStore dataStore, final DictionaryEntry... entries) {
+		dataStore.add(Arrays.asList(entries));
+		dataStore.resolveReferences();
+	}
+
+	@Test
+	public void contentDigestShouldMatchForSameEntries() {
+		this.populate(this.baseDataStore, this.createEntry("好", "hao3", "good"), this.createEntry("看", "kan4", "to look"));
+		this.populate(this.targetDataStore, this.createEntry("看", "kan4", "to look"), this.createEntry("好", "hao3", "good"));
+		assertThat(this.targetDataStore.getContentDigest(), equalTo(this.baseDataStore.getContentDigest()));
+	}
+
+	@Test
+	public void contentDigestShouldDependOnContent() {
+		this.populate(this.baseDataStore, this.createEntry("好", "hao3", "good"));
+		this.populate(this.targetDataStore, this.createEntry("好", "hao3", "okay"));
+		assertThat(this.targetDataStore.getContentDigest(), not(equalTo(this.baseDataStore.getContentDigest())));
+	}
+
+	@Test
+	public void createPatchShouldContainOnlyChangedEntries() {
+		this.populate(this.baseDataStore, this.createEntry("好", "hao3", "good"), this.createEntry("看", "kan4", "to look"),
+				this.createEntry("人", "ren2", "person"));
+		this.populate(this.targetDataStore, this.createEntry("好", "hao3", "good"), this.createEntry("看", "kan4", "to see"),
+				this.createEntry("大", "da4", "big"));
+		final DictionaryDataStorePatch patch = this.targetDataStore.createPatch(this.baseDataStore);
+		assertThat(patch.getFromSourceVersion(), equalTo("1"));
+		assertThat(patch.getToSourceVersion(), equalTo("2"));
+		assertThat(patch.getEntries(), hasSize(2));
+		assertThat(patch.getDeletedIds(), contains(this.baseDataStore.getEntryId(this.createEntry("人", "ren2", "person"))));
+	}
+
+	@Test
+	public void applyPatchShouldProduceTargetContent() {
+		this.populate(this.baseDataStore, this.createEntry("好", "hao3", "good"), this.createEntry("看", "kan4", "to look"),
+				this.createEntry("人", "ren2", "person"));
+		this.populate(this.targetDataStore, this.createEntry("好", "hao3", "good"), this.createEntry("看", "kan4", "to see"),
+				this.createEntry("大", "da4", "big"));
+		final DictionaryDataStoreUpdateSummary summary = this.baseDataStore.applyPatch(this.targetDataStore.createPatch(this.baseDataStore));
+		assertThat(summary.getInsertedCount(), equalTo(1));
+		assertThat(summary.getUpdatedCount(), equalTo(1));
+		assertThat(summary.getDeletedCount(), equalTo(1));
+		assertThat(this.baseDataStore.getContentDigest(), equalTo(this.targetDataStore.getContentDigest()));
+		assertThat(this.baseDataStore.getSourceVersion(), equalTo("2"));
+		assertThat(this.baseDataStore.findChinese("看", 25, 0, null).get(0).getDefinitions(), contains("to see"));
+		assertThat(this.baseDataStore.findChinese("人", 25, 0, null), hasSize(0));
+	}
+
+	@Test
+	public void applyPatchShouldReplaceReferencesOfChangedEntries() {
+		final DictionaryEntryReference reference = new DictionaryEntryReference(DictionaryEntryReference.Type.VARIANT, "看", "看",
+				this.pinyinParser.parse("kan4"));
+		this.populate(this.baseDataStore, this.createEntry("看", "kan4", "to look"), this.createEntry("睇", "di4", "to look"));
+		this.populate(this.targetDataStore, this.createEntry("看", "kan4", "to look"),
+				this.createEntry("睇", "di4", "to look (Cantonese)", reference));
+		this.baseDataStore.applyPatch(this.targetDataStore.createPatch(this.baseDataStore));
+		final DictionaryEntry patchedEntry = this.baseDataStore.findChinese("睇", 25, 0, null).get(0);
+		assertThat(this.baseDataStore.getReferences(patchedEntry), hasSize(1));
+		assertThat(this.baseDataStore.getContentDigest(), equalTo(this.targetDataStore.getContentDigest()));
+	}
+
+	@Test
+	public void applyPatchShouldRejectPatchFromOtherSourceVersion() {
+		this.populate(this.baseDataStore, this.createEntry("好", "hao3", "good"));
+		this.populate(this.targetDataStore, this.createEntry("好", "hao3", "okay"));
+		final DictionaryDataStorePatch patch = this.targetDataStore.createPatch(this.baseDataStore);
+		this.baseDataStore.populateMetadata("0");
+		try {
+			this.baseDataStore.applyPatch(patch);
+			fail("patch should not apply");
+		} catch (final DictionaryDataStoreException e) {
+			/* expected */
+		}
+		assertThat(this.baseDataStore.findChinese("好", 25, 0, null).get(0).getDefinitions(), contains("good"));
+	}
+
+	@Test
+	public void applyPatchShouldRollBackWhenDigestDoesNotMatch() {
+		this.populate(this.baseDataStore, this.createEntry("好", "hao3", "good"));
+		this.populate(this.targetDataStore, this.createEntry("好", "hao3", "okay"));
+		final DictionaryDataStorePatch patch = this.targetDataStore.createPatch(this.baseDataStore);
+		final DictionaryDataStorePatch corruptPatch = new DictionaryDataStorePatch(patch.getDataFormatVersion(), patch.getFromSourceVersion(),
+				patch.getToSourceVersion(), this.baseDataStore.getContentDigest(), patch.getEntries(), patch.getReferences(),
+				patch.getDeletedIds());
+		try {
+			this.baseDataStore.applyPatch(corruptPatch);
+			fail("patch should not apply");
+		} catch (final DictionaryDataStoreException e) {
+			/* expected */
+		}
+		assertThat(this.baseDataStore.getSourceVersion(), equalTo("1"));
+		assertThat(this.baseDataStore.findChinese("好", 25, 0, null).get(0).getDefinitions(), contains("good"));
+	}
+
+	@Test
+	public void patchShouldSurviveSerialization() throws Exception {
+		final DictionaryEntryReference reference = new DictionaryEntryReference(DictionaryEntryReference.Type.VARIANT, "看", "看",
+				this.pinyinParser.parse("kan4"));
+		this.populate(this.baseDataStore, this.createEntry("好", "hao3", "good"));
+		this.populate(this.targetDataStore, this.createEntry("看", "kan4", "to look"), this.createEntry("睇", "di4", "to look", reference));
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		this.targetDataStore.createPatch(this.baseDataStore).writeTo(baos);
+		final DictionaryDataStorePatch patch = DictionaryDataStorePatch.readFrom(new ByteArrayInputStream(baos.toByteArray()));
+		this.baseDataStore.applyPatch(patch);
+		assertThat(this.baseDataStore.getContentDigest(), equalTo(this.targetDataStore.getContentDigest()));
+		final List<DictionaryEntry> entries = this.baseDataStore.findChinese("睇", 25, 0, null);
+		assertThat(this.baseDataStore.getReferences(entries.get(0)), hasSize(1));
+	}
+
+	@Test
+	public void reduceToCoreTierShouldRemoveLongAndExcludedEntries() {
+		this.populate(this.baseDataStore, this.createEntry("好", "hao3", "good"), this.createEntry("看", "kan4", "to look"),
+				this.createEntry("看不起", "kan4bu4qi3", "to look down upon"), new DictionaryEntry("北京", "北京", this.pinyinParser.parse("bei3jing1"),
+						Arrays.asList("Beijing"), Collections.<DictionaryEntryReference> emptyList(), EnumSet.of(DictionaryEntryFlag.PROPER_NOUN)));
+		final int removedCount = this.baseDataStore.reduceToCoreTier(2, EnumSet.of(DictionaryEntryFlag.PROPER_NOUN));
+		assertThat(removedCount, equalTo(2));
+		assertThat(this.baseDataStore.isCoreTier(), is(true));
+		assertThat(this.baseDataStore.getSourceVersion(), equalTo("1" + DictionaryDataStore.CORE_TIER_SOURCE_VERSION_SUFFIX));
+		assertThat(this.baseDataStore.findChinese("看", 25, 0, null), hasSize(1));
+		assertThat(this.baseDataStore.findChinese("北京", 25, 0, null), hasSize(0));
+	}
+
+	@Test
+	public void remainderPatchShouldRestoreFullDictionaryToCoreTier() {
+		final DictionaryEntryReference reference = new DictionaryEntryReference(DictionaryEntryReference.Type.VARIANT, "看", "看",
+				this.pinyinParser.parse("kan4"));
+		final DictionaryEntry[] entries = { this.createEntry("看", "kan4", "to look"), this.createEntry("看不起", "kan4bu4qi3", "to look down upon"),
+				this.createEntry("睇", "di4", "to look", reference) };
+		this.populate(this.baseDataStore, entries);
+		this.baseDataStore.populateMetadata("2");
+		this.populate(this.targetDataStore, entries);
+		this.baseDataStore.reduceToCoreTier(2, EnumSet.noneOf(DictionaryEntryFlag.class));
+		final DictionaryDataStorePatch remainder = this.targetDataStore.createPatch(this.baseDataStore);
+		assertThat(remainder.getEntries(), hasSize(1));
+		assertThat(remainder.getDeletedIds(), hasSize(0));
+		this.baseDataStore.applyPatch(remainder);
+		assertThat(this.baseDataStore.isCoreTier(), is(false));
+		assertThat(this.baseDataStore.getContentDigest(), equalTo(this.targetDataStore.getContentDigest()));
+		assertThat(this.baseDataStore.findChinese("看不起", 25, 0, null), hasSize(1));
+	}
+
+}
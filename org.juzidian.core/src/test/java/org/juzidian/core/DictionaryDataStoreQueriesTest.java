@@ -27,8 +27,11 @@ import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.FeatureMatcher;
@@ -37,6 +40,7 @@ import org.hamcrest.collection.IsIterableContainingInOrder;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.juzidian.core.DictionaryDataStore.MatchScope;
 import org.juzidian.pinyin.PinyinParser;
 import org.juzidian.pinyin.PinyinSyllable;
 import org.juzidian.pinyin.Tone;
@@ -53,6 +57,8 @@ public class DictionaryDataStoreQueriesTest {
 
 	private Dao<DictionaryDataStoreMetadata, Long> dictionaryMetadataDao;
 
+	private Dao<DictionaryDataStoreReference, Long> dictionaryReferenceDao;
+
 	private DictionaryDataStore dbDictionaryDataStore;
 
 	private PinyinParser pinyinParser;
@@ -64,7 +70,9 @@ public class DictionaryDataStoreQueriesTest {
 				DictionaryDataStoreEntry.class);
 		this.dictionaryMetadataDao = DaoManager.<Dao<DictionaryDataStoreMetadata, Long>, DictionaryDataStoreMetadata> createDao(this.connectionSource,
 				DictionaryDataStoreMetadata.class);
-		this.dbDictionaryDataStore = new DictionaryDataStore(this.dictionaryEntryDao, this.dictionaryMetadataDao);
+		this.dictionaryReferenceDao = DaoManager.<Dao<DictionaryDataStoreReference, Long>, DictionaryDataStoreReference> createDao(
+				this.connectionSource, DictionaryDataStoreReference.class);
+		this.dbDictionaryDataStore = new DictionaryDataStore(this.dictionaryEntryDao, this.dictionaryMetadataDao, this.dictionaryReferenceDao);
 		this.dbDictionaryDataStore.createSchema();
 		this.pinyinParser = new PinyinParser();
 	}
@@ -389,6 +397,50 @@ public class DictionaryDataStoreQueriesTest {
 		assertThat(entries, containsSimplified("不好", "你好"));
 	}
 
+	@Test
+	public void findHanziInPrefixScopeShouldFindOnlyStartsWithMatches() {
+		this.persistEntry("你好", "ni3hao3", "hello (greeting)");
+		this.persistEntry("好看", "hao3kan4", "attractive; good looking");
+		final List<DictionaryEntry> entries = this.dbDictionaryDataStore.findChinese("好", SearchFilter.NONE, MatchScope.PREFIX, 25, 0, null);
+		assertThat(entries, containsSimplified("好看"));
+	}
+
+	@Test
+	public void findHanziInNonPrefixScopeShouldFindOnlyContainsMatches() {
+		this.persistEntry("你好", "ni3hao3", "hello (greeting)");
+		this.persistEntry("好看", "hao3kan4", "attractive; good looking");
+		final List<DictionaryEntry> entries = this.dbDictionaryDataStore.findChinese("好", SearchFilter.NONE, MatchScope.NON_PREFIX, 25, 0, null);
+		assertThat(entries, containsSimplified("你好"));
+	}
+
+	@Test
+	public void countHanziShouldCountMatchesInScope() {
+		this.persistEntry("你好", "ni3hao3", "hello (greeting)");
+		this.persistEntry("好看", "hao3kan4", "attractive; good looking");
+		this.persistEntry("好久不见", "hao3jiu3bu4jian4", "long time no see");
+		assertThat(this.dbDictionaryDataStore.countChinese("好", SearchFilter.NONE, MatchScope.PREFIX), is(2L));
+		assertThat(this.dbDictionaryDataStore.countChinese("好", SearchFilter.NONE, MatchScope.NON_PREFIX), is(1L));
+		assertThat(this.dbDictionaryDataStore.countChinese("好", SearchFilter.NONE, MatchScope.ALL), is(3L));
+	}
+
+	@Test
+	public void findDefinitionsInPrefixScopeShouldFindOnlyExactFirstMatches() {
+		this.persistEntry("愉", "yu2", "joyful; happy");
+		this.persistEntry("高兴", "gao1xing4", "happy; excited");
+		final List<DictionaryEntry> entries = this.dbDictionaryDataStore.findDefinitions("happy", SearchFilter.NONE, MatchScope.PREFIX, 25, 0,
+				null);
+		assertThat(entries, containsSimplified("高兴"));
+	}
+
+	@Test
+	public void findDefinitionsInNonPrefixScopeShouldFindOtherMatches() {
+		this.persistEntry("愉", "yu2", "joyful; happy");
+		this.persistEntry("高兴", "gao1xing4", "happy; excited");
+		final List<DictionaryEntry> entries = this.dbDictionaryDataStore.findDefinitions("happy", SearchFilter.NONE, MatchScope.NON_PREFIX, 25,
+				0, null);
+		assertThat(entries, containsSimplified("愉"));
+	}
+
 	@Test
 	public void findHanziShouldLimitEntriesToAmountSpecified() {
 		this.persistEntry("你好", "ni3hao3", "hello (greeting)");
@@ -422,6 +474,55 @@ public class DictionaryDataStoreQueriesTest {
 		assertThat(entries, hasSize(0));
 	}
 
+	private void persistFlaggedEntry(final String chinese, final String pinyin, final String english, final DictionaryEntryFlag... flags) {
+		final Set<DictionaryEntryFlag> flagSet = EnumSet.noneOf(DictionaryEntryFlag.class);
+		flagSet.addAll(Arrays.asList(flags));
+		this.dbDictionaryDataStore.add(new DictionaryEntry(chinese, chinese, this.pinyinParser.parse(pinyin), Arrays.asList(english.split(";")),
+				Collections.<DictionaryEntryReference> emptyList(), flagSet));
+	}
+
+	private void persistFlaggedTestEntries() {
+		this.persistFlaggedEntry("李", "li3", "plum");
+		this.persistFlaggedEntry("李", "Li3", "surname Li", DictionaryEntryFlag.PROPER_NOUN, DictionaryEntryFlag.SURNAME);
+		this.persistFlaggedEntry("李白", "Li3 Bai2", "Li Bai, poet", DictionaryEntryFlag.PROPER_NOUN);
+		this.persistFlaggedEntry("李子", "li3zi5", "plum");
+		this.persistFlaggedEntry("李樹", "li3shu4", "plum tree; old variant of 李树", DictionaryEntryFlag.VARIANT, DictionaryEntryFlag.OLD_FORM);
+	}
+
+	@Test
+	public void findShouldReturnEntryFlags() {
+		this.persistFlaggedEntry("李白", "Li3 Bai2", "Li Bai, poet", DictionaryEntryFlag.PROPER_NOUN);
+		final List<DictionaryEntry> entries = this.dbDictionaryDataStore.findChinese("李白", 25, 0, null);
+		assertThat(entries.get(0).getFlags(), contains(DictionaryEntryFlag.PROPER_NOUN));
+	}
+
+	@Test
+	public void findHanziShouldExcludeEntriesWithExcludedFlags() {
+		this.persistFlaggedTestEntries();
+		final List<DictionaryEntry> entries = this.dbDictionaryDataStore.findChinese("李",
+				SearchFilter.excluding(DictionaryEntryFlag.PROPER_NOUN, DictionaryEntryFlag.OLD_FORM), 25, 0, null);
+		assertThat(entries, containsSimplified("李", "李子"));
+	}
+
+	@Test
+	public void findPinyinShouldOnlyFindEntriesWithRequiredFlags() {
+		this.persistFlaggedTestEntries();
+		final List<DictionaryEntry> entries = this.dbDictionaryDataStore.findPinyin(this.pinyinParser.parse("li"),
+				SearchFilter.requiring(DictionaryEntryFlag.PROPER_NOUN, DictionaryEntryFlag.SURNAME), 25, 0, null);
+		assertThat(entries, hasSize(1));
+		assertThat(entries.get(0).getDefinitions(), contains("surname Li"));
+	}
+
+	@Test
+	public void findDefinitionsShouldApplyFilterBeforePagination() {
+		this.persistFlaggedTestEntries();
+		final SearchFilter filter = SearchFilter.excluding(DictionaryEntryFlag.PROPER_NOUN);
+		final List<DictionaryEntry> firstPage = this.dbDictionaryDataStore.findDefinitions("plum", filter, 2, 0, null);
+		final List<DictionaryEntry> secondPage = this.dbDictionaryDataStore.findDefinitions("plum", filter, 2, 2, null);
+		assertThat(firstPage, containsSimplified("李", "李子"));
+		assertThat(secondPage, containsSimplified("李樹"));
+	}
+
 	@Test
 	public void currentFormatVersionShouldRetrieveVersionFromMetadataTable() throws Exception {
 		final DictionaryDataStoreMetadata metadata = new DictionaryDataStoreMetadata();
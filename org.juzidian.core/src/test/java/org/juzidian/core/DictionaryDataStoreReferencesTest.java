@@ -0,0 +1,194 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.juzidian.core.DictionaryEntryReference.Type;
+import org.juzidian.pinyin.PinyinParser;
+import org.juzidian.pinyin.PinyinSyllable;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+
+public class DictionaryDataStoreReferencesTest {
+
+	private DictionaryDataStore dictionaryDataStore;
+
+	private PinyinParser pinyinParser;
+
+	@Before
+	public void setUp() throws Exception {
+		final JdbcConnectionSource connectionSource = new JdbcConnectionSource("jdbc:sqlite::memory:");
+		final Dao<DictionaryDataStoreEntry, Long> dictionaryEntryDao = DaoManager
+				.<Dao<DictionaryDataStoreEntry, Long>, DictionaryDataStoreEntry> createDao(connectionSource, DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> dictionaryMetadataDao = DaoManager
+				.<Dao<DictionaryDataStoreMetadata, Long>, DictionaryDataStoreMetadata> createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> dictionaryReferenceDao = DaoManager
+				.<Dao<DictionaryDataStoreReference, Long>, DictionaryDataStoreReference> createDao(connectionSource, DictionaryDataStoreReference.class);
+		this.dictionaryDataStore = new DictionaryDataStore(dictionaryEntryDao, dictionaryMetadataDao, dictionaryReferenceDao);
+		this.dictionaryDataStore.createSchema();
+		this.dictionaryDataStore.populateMetadata("1");
+		this.pinyinParser = new PinyinParser();
+	}
+
+	private DictionaryEntry createEntry(final String chinese, final String pinyin, final String english,
+			final DictionaryEntryReference... references) {
+		return new DictionaryEntry(chinese, chinese, this.pinyinParser.parse(pinyin), Arrays.asList(english.split(";")),
+				Arrays.asList(references));
+	}
+
+	private DictionaryEntryReference createReference(final Type type, final String chinese, final String pinyin) {
+		final List<PinyinSyllable> pinyinSyllables = pinyin == null ? Collections.<PinyinSyllable> emptyList() : this.pinyinParser
+				.parse(pinyin);
+		return new DictionaryEntryReference(type, chinese, chinese, pinyinSyllables);
+	}
+
+	private static List<String> getSimplified(final List<DictionaryEntry> entries) {
+		final List<String> simplified = new ArrayList<String>();
+		for (final DictionaryEntry entry : entries) {
+			simplified.add(entry.getSimplified());
+		}
+		return simplified;
+	}
+
+	@Test
+	public void getReferencesShouldReturnReferencesInOrder() {
+		final DictionaryEntryReference classifier = this.createReference(Type.CLASSIFIER, "本", "ben3");
+		final DictionaryEntryReference see = this.createReference(Type.SEE, "书本", null);
+		final DictionaryEntry entry = this.createEntry("书", "shu1", "book", classifier, see);
+		this.dictionaryDataStore.add(entry);
+		assertThat(this.dictionaryDataStore.getReferences(entry), contains(classifier, see));
+	}
+
+	@Test
+	public void findReferringEntriesShouldFindEntriesUsingClassifier() {
+		final DictionaryEntry classifier = this.createEntry("本", "ben3", "classifier for books");
+		this.dictionaryDataStore.add(classifier);
+		this.dictionaryDataStore.add(this.createEntry("书", "shu1", "book", this.createReference(Type.CLASSIFIER, "本", "ben3")));
+		this.dictionaryDataStore.add(this.createEntry("词典", "ci2dian3", "dictionary", this.createReference(Type.CLASSIFIER, "本", "ben3")));
+		this.dictionaryDataStore.add(this.createEntry("人", "ren2", "person", this.createReference(Type.CLASSIFIER, "个", "ge4")));
+		final List<DictionaryEntry> entries = this.dictionaryDataStore.findReferringEntries(classifier, Type.CLASSIFIER, 25, 0, null);
+		assertThat(getSimplified(entries), contains("书", "词典"));
+	}
+
+	@Test
+	public void getReferencedEntriesShouldFollowReferencesWithPinyin() {
+		this.dictionaryDataStore.add(this.createEntry("够", "gou4", "enough"));
+		final DictionaryEntry variant = this.createEntry("夠", "gou4", "variant of 够[gou4]", this.createReference(Type.VARIANT, "够", "gou4"));
+		this.dictionaryDataStore.add(variant);
+		final List<DictionaryEntry> entries = this.dictionaryDataStore.getReferencedEntries(variant, Arrays.asList(Type.VARIANT));
+		assertThat(getSimplified(entries), contains("够"));
+	}
+
+	@Test
+	public void getReferencedEntriesShouldFollowResolvedReferencesWithoutPinyin() {
+		final DictionaryEntry entry = this.createEntry("书", "shu1", "book; see also 书本", this.createReference(Type.SEE, "书本", null));
+		this.dictionaryDataStore.add(entry);
+		this.dictionaryDataStore.add(this.createEntry("书本", "shu1ben3", "book"));
+		this.dictionaryDataStore.resolveReferences();
+		final List<DictionaryEntry> entries = this.dictionaryDataStore.getReferencedEntries(entry, Arrays.asList(Type.SEE));
+		assertThat(getSimplified(entries), contains("书本"));
+	}
+
+	@Test
+	public void resolveReferencesShouldLinkToHomographWithFirstPinyin() {
+		this.assertResolvedReferencePinyin("hang2", "hang2", "xing2");
+	}
+
+	@Test
+	public void resolveReferencesShouldLinkToHomographWithFirstPinyinInReverseOrder() {
+		this.assertResolvedReferencePinyin("hang2", "xing2", "hang2");
+	}
+
+	@Test
+	public void resolveReferencesShouldPreferLowerCaseHomograph() {
+		this.assertResolvedReferencePinyin("hang2", "Hang2", "hang2");
+	}
+
+	@Test
+	public void updateShouldRelinkReferencesToNewHomographWithFirstPinyin() {
+		final DictionaryEntry entry = this.createEntry("银", "yin2", "silver", this.createReference(Type.SEE, "行", null));
+		final DictionaryEntry xing = this.createEntry("行", "xing2", "to walk");
+		this.dictionaryDataStore.add(entry);
+		this.dictionaryDataStore.add(xing);
+		this.dictionaryDataStore.resolveReferences();
+		this.dictionaryDataStore.update(Arrays.asList(entry, xing, this.createEntry("行", "hang2", "row")), "2");
+		final List<DictionaryEntry> entries = this.dictionaryDataStore.getReferencedEntries(entry, Arrays.asList(Type.SEE));
+		assertThat(entries, hasSize(1));
+		assertThat(entries.get(0).getPinyin(), equalTo(this.pinyinParser.parse("hang2")));
+	}
+
+	private void assertResolvedReferencePinyin(final String expectedPinyin, final String firstPinyin, final String secondPinyin) {
+		final DictionaryEntry entry = this.createEntry("银", "yin2", "silver", this.createReference(Type.SEE, "行", null));
+		this.dictionaryDataStore.add(entry);
+		this.dictionaryDataStore.add(this.createEntry("行", firstPinyin, "first"));
+		this.dictionaryDataStore.add(this.createEntry("行", secondPinyin, "second"));
+		this.dictionaryDataStore.resolveReferences();
+		final List<DictionaryEntry> entries = this.dictionaryDataStore.getReferencedEntries(entry, Arrays.asList(Type.SEE));
+		assertThat(entries, hasSize(1));
+		assertThat(entries.get(0).getPinyin(), equalTo(this.pinyinParser.parse(expectedPinyin)));
+	}
+
+	@Test
+	public void getReferencedEntriesShouldOmitUnknownWords() {
+		final DictionaryEntry entry = this.createEntry("书", "shu1", "book; see also 书本", this.createReference(Type.SEE, "书本", null));
+		this.dictionaryDataStore.add(entry);
+		this.dictionaryDataStore.resolveReferences();
+		assertThat(this.dictionaryDataStore.getReferencedEntries(entry, Arrays.asList(Type.SEE)), hasSize(0));
+	}
+
+	@Test
+	public void getReferencedEntriesShouldOnlyFollowGivenTypes() {
+		this.dictionaryDataStore.add(this.createEntry("本", "ben3", "classifier for books"));
+		final DictionaryEntry entry = this.createEntry("书", "shu1", "book", this.createReference(Type.CLASSIFIER, "本", "ben3"));
+		this.dictionaryDataStore.add(entry);
+		assertThat(this.dictionaryDataStore.getReferencedEntries(entry, Arrays.asList(Type.VARIANT, Type.SEE)), hasSize(0));
+	}
+
+	@Test
+	public void updateShouldReplaceReferencesOfChangedEntries() {
+		this.dictionaryDataStore.add(this.createEntry("书", "shu1", "book", this.createReference(Type.CLASSIFIER, "本", "ben3")));
+		final DictionaryEntryReference classifier = this.createReference(Type.CLASSIFIER, "册", "ce4");
+		final DictionaryEntry updatedEntry = this.createEntry("书", "shu1", "book", classifier);
+		final DictionaryDataStoreUpdateSummary summary = this.dictionaryDataStore.update(Arrays.asList(updatedEntry), "2");
+		assertThat(summary.getUpdatedCount(), equalTo(1));
+		assertThat(this.dictionaryDataStore.getReferences(updatedEntry), contains(classifier));
+	}
+
+	@Test
+	public void updateShouldResolveReferencesToInsertedEntries() {
+		final DictionaryEntry entry = this.createEntry("书", "shu1", "book; see also 书本", this.createReference(Type.SEE, "书本", null));
+		this.dictionaryDataStore.add(entry);
+		this.dictionaryDataStore.update(Arrays.asList(entry, this.createEntry("书本", "shu1ben3", "book")), "2");
+		assertThat(getSimplified(this.dictionaryDataStore.getReferencedEntries(entry, Arrays.asList(Type.SEE))), contains("书本"));
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright Nathan Jones 2012
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.juzidian.pinyin.PinyinSyllable;
+import org.juzidian.pinyin.Tone;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+
+public class DictionaryDataStoreSwapTest {
+
+	private JdbcConnectionSource originalConnectionSource;
+
+	private DictionaryDataStore dictionaryDataStore;
+
+	@Before
+	public void setUp() throws Exception {
+		this.originalConnectionSource = createDatabase("好", "good");
+		this.dictionaryDataStore = createDataStore(new SwappableConnectionSource(this.originalConnectionSource));
+	}
+
+	private static DictionaryDataStore createDataStore(final ConnectionSource connectionSource) throws SQLException {
+		final Dao<DictionaryDataStoreEntry, Long> entryDao = DaoManager.createDao(connectionSource, DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> metadataDao = DaoManager.createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> referenceDao = DaoManager.createDao(connectionSource, DictionaryDataStoreReference.class);
+		return new DictionaryDataStore(entryDao, metadataDao, referenceDao);
+	}
+
+	private static JdbcConnectionSource createDatabase(final String chinese, final String english) throws SQLException {
+		final JdbcConnectionSource connectionSource = new JdbcConnectionSource("jdbc:sqlite::memory:");
+		final DictionaryDataStore dataStore = createDataStore(connectionSource);
+		dataStore.createSchema();
+		dataStore.populateMetadata();
+		dataStore.add(new DictionaryEntry(chinese, chinese, Arrays.asList(new PinyinSyllable("hao", Tone.THIRD)), Arrays.asList(english)));
+		return connectionSource;
+	}
+
+	private int countChinese(final String chinese) {
+		return this.dictionaryDataStore.findChinese(chinese, 25, 0, null).size();
+	}
+
+	@Test
+	public void swapDatabaseShouldRouteQueriesToReplacement() throws Exception {
+		assertThat(this.countChinese("好"), is(1));
+		this.dictionaryDataStore.swapDatabase(createDatabase("看", "to look"));
+		assertThat(this.countChinese("好"), is(0));
+		assertThat(this.countChinese("看"), is(1));
+	}
+
+	@Test
+	public void swapDatabaseShouldChangeGeneration() throws Exception {
+		final long generation = this.dictionaryDataStore.getGeneration();
+		this.dictionaryDataStore.swapDatabase(createDatabase("看", "to look"));
+		assertThat(this.dictionaryDataStore.getGeneration() == generation, is(false));
+	}
+
+	@Test
+	public void swapDatabaseShouldReloadCoreTierState() throws Exception {
+		assertThat(this.dictionaryDataStore.isCoreTier(), is(false));
+		final JdbcConnectionSource replacement = createDatabase("看", "to look");
+		createDataStore(replacement).populateMetadata("1" + DictionaryDataStore.CORE_TIER_SOURCE_VERSION_SUFFIX);
+		this.dictionaryDataStore.swapDatabase(replacement);
+		assertThat(this.dictionaryDataStore.isCoreTier(), is(true));
+	}
+
+	@Test
+	public void isCoreTierShouldKeepStateUntilMetadataIsReloaded() throws Exception {
+		assertThat(this.dictionaryDataStore.isCoreTier(), is(false));
+		createDataStore(this.originalConnectionSource).populateMetadata("1" + DictionaryDataStore.CORE_TIER_SOURCE_VERSION_SUFFIX);
+		assertThat(this.dictionaryDataStore.isCoreTier(), is(false));
+		this.dictionaryDataStore.reloadMetadata();
+		assertThat(this.dictionaryDataStore.isCoreTier(), is(true));
+	}
+
+	@Test
+	public void swapDatabaseShouldRejectIncompatibleDatabase() throws Exception {
+		final JdbcConnectionSource replacement = createDatabase("看", "to look");
+		createDataStore(replacement).dictionaryMetadataDao.executeRaw("update " + DictionaryDataStoreMetadata.TABLE_NAME + " set "
+				+ DictionaryDataStoreMetadata.COLUMN_VERSION + " = " + (DictionaryDataStore.DATA_FORMAT_VERSION - 1));
+		try {
+			this.dictionaryDataStore.swapDatabase(replacement);
+		} catch (final DictionaryDataStoreException e) {
+		}
+		assertThat(this.countChinese("好"), is(1));
+	}
+
+	@Test(expected = DictionaryDataStoreException.class)
+	public void swapDatabaseShouldRejectDatabaseWithoutMetadata() throws Exception {
+		this.dictionaryDataStore.swapDatabase(new JdbcConnectionSource("jdbc:sqlite::memory:"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void swapDatabaseShouldRequireSwappableConnectionSource() throws Exception {
+		createDataStore(createDatabase("看", "to look")).swapDatabase(createDatabase("好", "good"));
+	}
+
+}
@@ -58,13 +58,16 @@ public class DictionaryDataStoreTest {
 	@Mock
 	private Dao<DictionaryDataStoreMetadata, Long> dictionaryMetadataDao;
 
+	@Mock
+	private Dao<DictionaryDataStoreReference, Long> dictionaryReferenceDao;
+
 	private DictionaryDataStore dictionaryDataStore;
 
 	@Before
 	@SuppressWarnings("unchecked")
 	public void setUp() throws Exception {
 		MockitoAnnotations.initMocks(this);
-		this.dictionaryDataStore = new DictionaryDataStore(this.dictionaryEntryDao, dictionaryMetadataDao);
+		this.dictionaryDataStore = new DictionaryDataStore(this.dictionaryEntryDao, this.dictionaryMetadataDao, this.dictionaryReferenceDao);
 		QueryBuilder<DictionaryDataStoreEntry, Long> mockQueryBuilder = Mockito.mock(QueryBuilder.class);
 		Where<DictionaryDataStoreEntry, Long> mockWhere = Mockito.mock(Where.class);
 		when(mockQueryBuilder.limit(anyLong())).thenReturn(mockQueryBuilder);
@@ -139,6 +142,19 @@ public class DictionaryDataStoreTest {
 		dictionaryDataStore.findPinyin(pinyinSyllables("bang"), 25, 0, new SearchCanceller());
 	}
 
+	@Test
+	public void findPinyinShouldNotQueryWhenAlreadyCancelled() throws Exception {
+		final SearchCanceller canceller = new SearchCanceller();
+		canceller.cancel();
+		try {
+			dictionaryDataStore.findPinyin(pinyinSyllables("bang"), 25, 0, canceller);
+		} catch (final DictionaryDataStoreQueryCancelledException e) {
+			verify(this.dictionaryEntryDao, Mockito.never()).query(anyDictionaryEntryPreparedQuery(), isA(CancellationSignaller.class));
+			return;
+		}
+		throw new AssertionError("Expected query to be cancelled");
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void findDefinitionsShouldRejectNegativeLimit() {
 		this.dictionaryDataStore.findDefinitions("good", -1, 0, null);
@@ -261,9 +277,7 @@ public class DictionaryDataStoreTest {
 
 	@Test
 	public void currentFormatVersionShouldRetrieveVersionFromMetadataTable() throws Exception {
-		final DictionaryDataStoreMetadata metadata = Mockito.mock(DictionaryDataStoreMetadata.class);
-		when(metadata.getVersion()).thenReturn(5);
-		when(dictionaryMetadataDao.queryForId(1L)).thenReturn(metadata);
+		when(dictionaryMetadataDao.queryRawValue("select version from dictionary_metadata where id = 1")).thenReturn(5L);
 		assertThat(this.dictionaryDataStore.getCurrentDataFormatVersion(), equalTo(5));
 	}
 
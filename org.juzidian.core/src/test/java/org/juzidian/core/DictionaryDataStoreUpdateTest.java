@@ -0,0 +1,169 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.juzidian.pinyin.PinyinParser;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+
+public class DictionaryDataStoreUpdateTest {
+
+	private Dao<DictionaryDataStoreEntry, Long> dictionaryEntryDao;
+
+	private DictionaryDataStore dictionaryDataStore;
+
+	private PinyinParser pinyinParser;
+
+	@Before
+	public void setUp() throws Exception {
+		final JdbcConnectionSource connectionSource = new JdbcConnectionSource("jdbc:sqlite::memory:");
+		this.dictionaryEntryDao = DaoManager.<Dao<DictionaryDataStoreEntry, Long>, DictionaryDataStoreEntry> createDao(connectionSource,
+				DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> dictionaryMetadataDao = DaoManager
+				.<Dao<DictionaryDataStoreMetadata, Long>, DictionaryDataStoreMetadata> createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> dictionaryReferenceDao = DaoManager
+				.<Dao<DictionaryDataStoreReference, Long>, DictionaryDataStoreReference> createDao(connectionSource, DictionaryDataStoreReference.class);
+		this.dictionaryDataStore = new DictionaryDataStore(this.dictionaryEntryDao, dictionaryMetadataDao, dictionaryReferenceDao);
+		this.dictionaryDataStore.createSchema();
+		this.dictionaryDataStore.populateMetadata("1");
+		this.pinyinParser = new PinyinParser();
+	}
+
+	private DictionaryEntry createEntry(final String chinese, final String pinyin, final String english) {
+		return new DictionaryEntry(chinese, chinese, this.pinyinParser.parse(pinyin), Arrays.asList(english.split(";")));
+	}
+
+	@Test
+	public void addShouldStoreEntryWithStableId() throws Exception {
+		final DictionaryEntry entry = this.createEntry("你好", "ni3hao3", "hello");
+		this.dictionaryDataStore.add(entry);
+		final List<DictionaryDataStoreEntry> dbEntries = this.dictionaryEntryDao.queryForAll();
+		assertThat(dbEntries.get(0).getId(), equalTo(this.dictionaryDataStore.getEntryId(entry)));
+	}
+
+	@Test
+	public void entryIdShouldNotDependOnDefinitions() {
+		final long id = this.dictionaryDataStore.getEntryId(this.createEntry("你好", "ni3hao3", "hello"));
+		assertThat(this.dictionaryDataStore.getEntryId(this.createEntry("你好", "ni3hao3", "hi")), equalTo(id));
+	}
+
+	@Test
+	public void entryIdShouldDependOnPinyin() {
+		final long id = this.dictionaryDataStore.getEntryId(this.createEntry("好", "hao3", "good"));
+		assertThat(this.dictionaryDataStore.getEntryId(this.createEntry("好", "hao4", "good")), not(equalTo(id)));
+	}
+
+	@Test
+	public void addShouldStoreDuplicateEntriesWithDistinctIds() throws Exception {
+		this.dictionaryDataStore.add(this.createEntry("好", "hao3", "good"));
+		this.dictionaryDataStore.add(this.createEntry("好", "hao3", "okay"));
+		assertThat(this.dictionaryEntryDao.queryForAll(), hasSize(2));
+	}
+
+	@Test
+	public void addCollectionShouldAssignDuplicateEntriesTheIdsUsedByUpdate() throws Exception {
+		final List<DictionaryEntry> entries = Arrays.asList(this.createEntry("好", "hao3", "good"), this.createEntry("看", "kan4", "to look"),
+				this.createEntry("好", "hao3", "okay"));
+		this.dictionaryDataStore.add(entries);
+		final DictionaryDataStoreUpdateSummary summary = this.dictionaryDataStore.update(entries, "2");
+		assertThat(this.dictionaryEntryDao.queryForAll(), hasSize(3));
+		assertThat(summary.getInsertedCount() + summary.getUpdatedCount() + summary.getDeletedCount(), equalTo(0));
+	}
+
+	@Test
+	public void incrementalUpdateShouldApplyChangesWhenFinished() throws Exception {
+		this.dictionaryDataStore.add(Arrays.asList(this.createEntry("好", "hao3", "good"), this.createEntry("好", "hao3", "okay"),
+				this.createEntry("看", "kan4", "to look")));
+		final DictionaryDataStore.IncrementalUpdate incrementalUpdate = this.dictionaryDataStore.startUpdate("2");
+		incrementalUpdate.add(this.createEntry("好", "hao3", "good"));
+		incrementalUpdate.add(this.createEntry("好", "hao3", "fine"));
+		assertThat(this.dictionaryDataStore.getSourceVersion(), equalTo("1"));
+		final DictionaryDataStoreUpdateSummary summary = incrementalUpdate.finish();
+		assertThat(summary.getInsertedCount(), equalTo(0));
+		assertThat(summary.getUpdatedCount(), equalTo(1));
+		assertThat(summary.getDeletedCount(), equalTo(1));
+		assertThat(this.dictionaryDataStore.getSourceVersion(), equalTo("2"));
+	}
+
+	@Test
+	public void updateShouldInsertNewEntries() throws Exception {
+		this.dictionaryDataStore.add(this.createEntry("好", "hao3", "good"));
+		final DictionaryDataStoreUpdateSummary summary = this.dictionaryDataStore.update(
+				Arrays.asList(this.createEntry("好", "hao3", "good"), this.createEntry("看", "kan4", "to look")), "2");
+		assertThat(summary.getInsertedCount(), equalTo(1));
+		assertThat(this.dictionaryEntryDao.queryForAll(), hasSize(2));
+	}
+
+	@Test
+	public void updateShouldRewriteChangedEntriesInPlace() throws Exception {
+		this.dictionaryDataStore.add(this.createEntry("好", "hao3", "good"));
+		final DictionaryDataStoreUpdateSummary summary = this.dictionaryDataStore.update(
+				Arrays.asList(this.createEntry("好", "hao3", "good; okay")), "2");
+		assertThat(summary.getUpdatedCount(), equalTo(1));
+		assertThat(this.dictionaryEntryDao.queryForAll(), hasSize(1));
+		final List<DictionaryEntry> entries = this.dictionaryDataStore.findChinese("好", 25, 0, null);
+		assertThat(entries.get(0).getDefinitions(), contains("good", "okay"));
+	}
+
+	@Test
+	public void updateShouldDeleteRemovedEntries() throws Exception {
+		this.dictionaryDataStore.add(this.createEntry("好", "hao3", "good"));
+		this.dictionaryDataStore.add(this.createEntry("看", "kan4", "to look"));
+		final DictionaryDataStoreUpdateSummary summary = this.dictionaryDataStore.update(
+				Arrays.asList(this.createEntry("好", "hao3", "good")), "2");
+		assertThat(summary.getDeletedCount(), equalTo(1));
+		assertThat(this.dictionaryDataStore.findChinese("看", 25, 0, null), hasSize(0));
+	}
+
+	@Test
+	public void updateShouldNotTouchUnchangedEntries() {
+		this.dictionaryDataStore.add(this.createEntry("好", "hao3", "good"));
+		final DictionaryDataStoreUpdateSummary summary = this.dictionaryDataStore.update(
+				Arrays.asList(this.createEntry("好", "hao3", "good")), "2");
+		assertThat(summary.getInsertedCount() + summary.getUpdatedCount() + summary.getDeletedCount(), equalTo(0));
+	}
+
+	@Test
+	public void updateShouldRecordSourceVersion() {
+		this.dictionaryDataStore.update(Arrays.asList(this.createEntry("好", "hao3", "good")), "2");
+		assertThat(this.dictionaryDataStore.getSourceVersion(), equalTo("2"));
+	}
+
+	@Test
+	public void updateShouldLeaveEntriesSearchable() {
+		this.dictionaryDataStore.add(this.createEntry("好", "hao3", "good"));
+		this.dictionaryDataStore.update(Arrays.asList(this.createEntry("好", "hao3", "good; fine")), "2");
+		final List<DictionaryEntry> entries = this.dictionaryDataStore.findDefinitions("fine", 25, 0, null);
+		assertThat(entries.get(0).getDefinitions(), contains("good", "fine"));
+	}
+
+}
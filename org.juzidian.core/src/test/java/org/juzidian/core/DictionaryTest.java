@@ -18,7 +18,9 @@
  */
 package org.juzidian.core;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.juzidian.core.SearchType.HANZI;
@@ -32,16 +34,22 @@ import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.verify;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.juzidian.core.DictionaryDataStore.MatchScope;
 import org.juzidian.core.SearchCanceller.Listener;
 import org.juzidian.pinyin.PinyinParser;
 import org.juzidian.pinyin.PinyinSyllable;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class DictionaryTest {
 
@@ -72,68 +80,86 @@ public class DictionaryTest {
 	@Test
 	public void findPinyinShouldInvokeDataStoreFindPinyin() {
 		this.dictionary.find(new SearchQuery(PINYIN, "han", 5, 0));
-		verify(this.dataStore).findPinyin(pinyinSyllables("han"), 5, 0, null);
+		verify(this.dataStore).findPinyin(pinyinSyllables("han"), SearchFilter.NONE, 5, 0, null);
+	}
+
+	@Test
+	public void findShouldFlagResultsAsPartialWhileOnlyCoreTierIsInstalled() {
+		Mockito.when(this.dataStore.isCoreTier()).thenReturn(true);
+		assertThat(this.dictionary.find(new SearchQuery(PINYIN, "han", 5, 0)).isPartial(), is(true));
+	}
+
+	@Test
+	public void findShouldNotFlagResultsAsPartialForFullDictionary() {
+		assertThat(this.dictionary.find(new SearchQuery(PINYIN, "han", 5, 0)).isPartial(), is(false));
 	}
 
 	@Test
 	public void findHanziShouldInvokeDataStoreFindChinese() {
 		this.dictionary.find(new SearchQuery(HANZI, "汉", 5, 0));
-		verify(this.dataStore).findChinese("汉", 5, 0, null);
+		verify(this.dataStore).findChinese("汉", SearchFilter.NONE, 5, 0, null);
 	}
 
 	@Test
 	public void findReverseShouldInvokeDataStoreFindDefinitions() {
 		this.dictionary.find(new SearchQuery(REVERSE, "foo", 5, 0));
-		verify(this.dataStore).findDefinitions("foo", 5, 0, null);
+		verify(this.dataStore).findDefinitions("foo", SearchFilter.NONE, 5, 0, null);
 	}
 
 	@Test
 	public void findShouldTrimPinyinSearchQueryString() {
 		this.dictionary.find(new SearchQuery(PINYIN, " han ", 5, 0));
-		verify(this.dataStore).findPinyin(pinyinSyllables("han"), 5, 0, null);
+		verify(this.dataStore).findPinyin(pinyinSyllables("han"), SearchFilter.NONE, 5, 0, null);
 	}
 
 	@Test
 	public void findShouldTrimHanziSearchQueryString() {
 		this.dictionary.find(new SearchQuery(HANZI, " 汉 ", 5, 0));
-		verify(this.dataStore).findChinese("汉", 5, 0, null);
+		verify(this.dataStore).findChinese("汉", SearchFilter.NONE, 5, 0, null);
 	}
 
 	@Test
 	public void findShouldTrimReverseSearchQueryString() {
 		this.dictionary.find(new SearchQuery(REVERSE, " foo ", 5, 0));
-		verify(this.dataStore).findDefinitions("foo", 5, 0, null);
+		verify(this.dataStore).findDefinitions("foo", SearchFilter.NONE, 5, 0, null);
 	}
 
 	@Test
 	public void findPinyinShouldInvokeDataStoreFindPinyinWithPageOffset() {
 		this.dictionary.find(new SearchQuery(PINYIN, "han", 5, 2));
-		verify(this.dataStore).findPinyin(Matchers.<List<PinyinSyllable>> any(), eq(5L), eq(10L), (SearchCanceller) isNull());
+		verify(this.dataStore).findPinyin(Matchers.<List<PinyinSyllable>> any(), eq(SearchFilter.NONE), eq(5L), eq(10L), (SearchCanceller) isNull());
 	}
 
 	@Test
 	public void findHanziShouldInvokeDataStoreFindChineseWithPageOffset() {
 		this.dictionary.find(new SearchQuery(HANZI, "汉", 5, 2));
-		verify(this.dataStore).findChinese(anyString(), eq(5L), eq(10L), (SearchCanceller) isNull());
+		verify(this.dataStore).findChinese(anyString(), eq(SearchFilter.NONE), eq(5L), eq(10L), (SearchCanceller) isNull());
 	}
 
 	@Test
 	public void findReverseShouldInvokeDataStoreFindDefinitionsWithPageOffset() {
 		this.dictionary.find(new SearchQuery(REVERSE, "foo", 5, 2));
-		verify(this.dataStore).findDefinitions(anyString(), eq(5L), eq(10L), (SearchCanceller) isNull());
+		verify(this.dataStore).findDefinitions(anyString(), eq(SearchFilter.NONE), eq(5L), eq(10L), (SearchCanceller) isNull());
 	}
 
 	@Test
 	public void findPinyinShouldChangeVToUmlaut() {
 		this.dictionary.find(new SearchQuery(PINYIN, "nv", 5, 0));
 		final List<PinyinSyllable> pinyin = pinyinSyllables("nü");
-		verify(this.dataStore).findPinyin(eq(pinyin), anyLong(), anyLong(), (SearchCanceller) isNull());
+		verify(this.dataStore).findPinyin(eq(pinyin), eq(SearchFilter.NONE), anyLong(), anyLong(), (SearchCanceller) isNull());
+	}
+
+	@Test
+	public void findShouldInvokeDataStoreWithQueryFilter() {
+		final SearchFilter filter = SearchFilter.excluding(DictionaryEntryFlag.PROPER_NOUN);
+		this.dictionary.find(new SearchQuery(HANZI, "汉", 5, 0, filter));
+		verify(this.dataStore).findChinese("汉", filter, 5, 0, null);
 	}
 
 	@Test
 	public void findShouldReturnSearchResultsWithDataStoreEntries() {
 		final List<DictionaryEntry> entries = Arrays.asList(Mockito.mock(DictionaryEntry.class), Mockito.mock(DictionaryEntry.class));
-		Mockito.when(this.dataStore.findDefinitions(anyString(), anyLong(), anyLong(), (SearchCanceller) isNull())).thenReturn(entries);
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), anyLong(), anyLong(), (SearchCanceller) isNull())).thenReturn(entries);
 		final SearchQuery query = new SearchQuery(REVERSE, "foo", 20, 0);
 		final SearchResults searchResults = this.dictionary.find(query);
 		assertThat(searchResults.getEntries(), is(equalTo(entries)));
@@ -146,28 +172,167 @@ public class DictionaryTest {
 		assertThat(searchResults.getSearchQuery(), is(query));
 	}
 
+	@Test(expected = DictionaryDataStoreQueryCancelledException.class)
+	public void findShouldNotSearchWhenAlreadyCancelled() {
+		final SearchCanceller canceller = new SearchCanceller();
+		canceller.cancel();
+		try {
+			this.dictionary.find(new SearchQuery(PINYIN, "han", 5, 0), canceller);
+		} finally {
+			Mockito.verifyZeroInteractions(this.dataStore);
+		}
+	}
+
+	@Test(expected = DictionaryDataStoreQueryCancelledException.class)
+	public void findShouldDiscardResultsWhenCancelledDuringSearch() {
+		final SearchCanceller canceller = new SearchCanceller();
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class))).thenAnswer(
+				new Answer<List<DictionaryEntry>>() {
+
+					@Override
+					public List<DictionaryEntry> answer(final InvocationOnMock invocation) {
+						canceller.cancel();
+						return Arrays.asList(Mockito.mock(DictionaryEntry.class));
+					}
+
+				});
+		this.dictionary.find(new SearchQuery(REVERSE, "foo", 5, 0), canceller);
+	}
+
+	@Test
+	public void findWithLatencyBudgetShouldNotWidenSearchWhenPrefixMatchesFillPage() {
+		final List<DictionaryEntry> entries = Arrays.asList(Mockito.mock(DictionaryEntry.class), Mockito.mock(DictionaryEntry.class));
+		Mockito.when(this.dataStore.findChinese(anyString(), eq(SearchFilter.NONE), eq(MatchScope.PREFIX), eq(2L), eq(0L), isA(SearchCanceller.class)))
+				.thenReturn(entries);
+		final SearchResults searchResults = this.dictionary.find(new SearchQuery(HANZI, "汉", 2, 0).withLatencyBudget(1000));
+		assertThat(searchResults.getEntries(), is(equalTo(entries)));
+		assertThat(searchResults.isPartial(), is(false));
+		verify(this.dataStore, Mockito.never()).findChinese(anyString(), eq(SearchFilter.NONE), eq(MatchScope.NON_PREFIX), anyLong(), anyLong(),
+				isA(SearchCanceller.class));
+	}
+
+	@Test
+	public void findWithLatencyBudgetShouldWidenSearchToFillPage() {
+		final DictionaryEntry prefixEntry = Mockito.mock(DictionaryEntry.class);
+		final DictionaryEntry infixEntry = Mockito.mock(DictionaryEntry.class);
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), eq(MatchScope.PREFIX), eq(5L), eq(0L), isA(SearchCanceller.class)))
+				.thenReturn(Arrays.asList(prefixEntry));
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), eq(MatchScope.NON_PREFIX), eq(4L), eq(0L),
+				isA(SearchCanceller.class))).thenReturn(Arrays.asList(infixEntry));
+		final SearchResults searchResults = this.dictionary.find(new SearchQuery(REVERSE, "foo", 5, 0).withLatencyBudget(1000));
+		assertThat(searchResults.getEntries(), is(equalTo(Arrays.asList(prefixEntry, infixEntry))));
+		assertThat(searchResults.getContinuation(), is((SearchQuery) null));
+	}
+
+	@Test
+	public void findWithLatencyBudgetShouldOffsetWidenedSearchByCountOfPrefixMatches() {
+		Mockito.when(this.dataStore.countChinese("汉", SearchFilter.NONE, MatchScope.PREFIX)).thenReturn(7L);
+		this.dictionary.find(new SearchQuery(HANZI, "汉", 5, 2).withLatencyBudget(1000));
+		verify(this.dataStore).findChinese(eq("汉"), eq(SearchFilter.NONE), eq(MatchScope.NON_PREFIX), eq(5L), eq(3L), isA(SearchCanceller.class));
+	}
+
+	@Test
+	public void findWithLatencyBudgetShouldReturnPartialResultsWhenBudgetIsSpentWhileWidening() {
+		final DictionaryEntry prefixEntry = Mockito.mock(DictionaryEntry.class);
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), eq(MatchScope.PREFIX), eq(5L), eq(0L), isA(SearchCanceller.class)))
+				.thenReturn(Arrays.asList(prefixEntry));
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), eq(MatchScope.NON_PREFIX), eq(4L), eq(0L),
+				isA(SearchCanceller.class))).thenThrow(new DictionaryDataStoreQueryCancelledException("Query cancelled", null));
+		final SearchQuery query = new SearchQuery(REVERSE, "foo", 5, 0).withLatencyBudget(1000);
+		final SearchResults searchResults = this.dictionary.find(query);
+		assertThat(searchResults.getEntries(), is(equalTo(Arrays.asList(prefixEntry))));
+		assertThat(searchResults.isPartial(), is(true));
+		assertThat(searchResults.getContinuation(), is(query.withLatencyBudget(0)));
+	}
+
+	@Test
+	public void findWithLatencyBudgetShouldReturnPartialResultsWhenBudgetIsSpentOnPrefixMatches() {
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), eq(MatchScope.PREFIX), eq(5L), eq(0L),
+				isA(SearchCanceller.class))).thenThrow(new DictionaryDataStoreQueryCancelledException("Query cancelled", null));
+		final SearchQuery query = new SearchQuery(REVERSE, "foo", 5, 0).withLatencyBudget(1000);
+		final SearchResults searchResults = this.dictionary.find(query);
+		assertThat(searchResults.getEntries(), hasSize(0));
+		assertThat(searchResults.isPartial(), is(true));
+		assertThat(searchResults.getContinuation(), is(query.withLatencyBudget(0)));
+		verify(this.dataStore, Mockito.never()).findDefinitions(anyString(), eq(SearchFilter.NONE), eq(MatchScope.NON_PREFIX), anyLong(),
+				anyLong(), isA(SearchCanceller.class));
+	}
+
+	@Test
+	public void findWithLatencyBudgetShouldCancelPrefixSearchAtDeadline() {
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), eq(MatchScope.PREFIX), eq(5L), eq(0L),
+				isA(SearchCanceller.class))).thenAnswer(new Answer<List<DictionaryEntry>>() {
+
+			@Override
+			public List<DictionaryEntry> answer(final InvocationOnMock invocation) throws InterruptedException {
+				final SearchCanceller deadlineCanceller = (SearchCanceller) invocation.getArguments()[5];
+				final long giveUp = System.currentTimeMillis() + 5000;
+				while (!deadlineCanceller.isCancelled() && System.currentTimeMillis() < giveUp) {
+					Thread.sleep(5);
+				}
+				deadlineCanceller.checkCancelled("test");
+				return Arrays.<DictionaryEntry> asList();
+			}
+
+		});
+		final SearchResults searchResults = this.dictionary.find(new SearchQuery(REVERSE, "foo", 5, 0).withLatencyBudget(10));
+		assertThat(searchResults.isPartial(), is(true));
+	}
+
+	@Test
+	public void findWithLatencyBudgetShouldUnregisterFromSearchCanceller() {
+		final SearchCanceller canceller = Mockito.mock(SearchCanceller.class);
+		this.dictionary.find(new SearchQuery(REVERSE, "foo", 5, 0).withLatencyBudget(1000), canceller);
+		final ArgumentCaptor<Listener> listenerCaptor = ArgumentCaptor.forClass(Listener.class);
+		verify(canceller).register(listenerCaptor.capture());
+		verify(canceller).unregister(listenerCaptor.getValue());
+	}
+
+	@Test(expected = DictionaryDataStoreQueryCancelledException.class)
+	public void findWithLatencyBudgetShouldThrowWhenSearchIsCancelledWhileWidening() {
+		final SearchCanceller canceller = new SearchCanceller();
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), eq(MatchScope.NON_PREFIX), anyLong(), anyLong(),
+				isA(SearchCanceller.class))).thenAnswer(new Answer<List<DictionaryEntry>>() {
+
+			@Override
+			public List<DictionaryEntry> answer(final InvocationOnMock invocation) {
+				canceller.cancel();
+				((SearchCanceller) invocation.getArguments()[5]).checkCancelled("test");
+				return Arrays.<DictionaryEntry> asList();
+			}
+
+		});
+		this.dictionary.find(new SearchQuery(REVERSE, "foo", 5, 0).withLatencyBudget(1000), canceller);
+	}
+
+	@Test
+	public void findWithLatencyBudgetShouldSearchPinyinInFull() {
+		this.dictionary.find(new SearchQuery(PINYIN, "han", 5, 0).withLatencyBudget(1000));
+		verify(this.dataStore).findPinyin(pinyinSyllables("han"), SearchFilter.NONE, 5, 0, null);
+	}
+
 	@Test
 	public void findAsyncPinyinShouldInvokeDataStoreFindPinyin() {
 		this.dictionary.findAsync(new SearchQuery(PINYIN, "han", 5, 0));
-		verify(this.dataStore).findPinyin(eq(pinyinSyllables("han")), eq(5L), eq(0L), isA(SearchCanceller.class));
+		verify(this.dataStore).findPinyin(eq(pinyinSyllables("han")), eq(SearchFilter.NONE), eq(5L), eq(0L), isA(SearchCanceller.class));
 	}
 
 	@Test
 	public void findAsyncHanziShouldInvokeDataStoreFindChinese() {
 		this.dictionary.findAsync(new SearchQuery(HANZI, "汉", 5, 0));
-		verify(this.dataStore).findChinese(eq("汉"), eq(5L), eq(0L), isA(SearchCanceller.class));
+		verify(this.dataStore).findChinese(eq("汉"), eq(SearchFilter.NONE), eq(5L), eq(0L), isA(SearchCanceller.class));
 	}
 
 	@Test
 	public void findAsyncReverseShouldInvokeDataStoreFindDefinitions() {
 		this.dictionary.findAsync(new SearchQuery(REVERSE, "foo", 5, 0));
-		verify(this.dataStore).findDefinitions(eq("foo"), eq(5L), eq(0L), isA(SearchCanceller.class));
+		verify(this.dataStore).findDefinitions(eq("foo"), eq(SearchFilter.NONE), eq(5L), eq(0L), isA(SearchCanceller.class));
 	}
 
 	@Test
 	public void findAsyncShouldReturnSearchResultsFutureWhichProvidesSearchResultsWithEntries() throws Exception {
 		final List<DictionaryEntry> entries = Arrays.asList(Mockito.mock(DictionaryEntry.class), Mockito.mock(DictionaryEntry.class));
-		Mockito.when(this.dataStore.findDefinitions(anyString(), anyLong(), anyLong(), isA(SearchCanceller.class))).thenReturn(entries);
+		Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class))).thenReturn(entries);
 		final SearchQuery query = new SearchQuery(REVERSE, "foo", 20, 0);
 		final SearchResultsFuture searchResultsFuture = this.dictionary.findAsync(query);
 		assertThat(searchResultsFuture.getResults().getEntries(), is(equalTo(entries)));
@@ -179,11 +344,51 @@ public class DictionaryTest {
 		final ArgumentCaptor<SearchCanceller> cancellerCaptor = ArgumentCaptor.forClass(SearchCanceller.class);
 		final SearchQuery query = new SearchQuery(REVERSE, "foo", 20, 0);
 		final SearchResultsFuture searchResultsFuture = this.dictionary.findAsync(query);
-		verify(this.dataStore).findDefinitions(anyString(), anyLong(), anyLong(), cancellerCaptor.capture());
+		verify(this.dataStore).findDefinitions(anyString(), eq(SearchFilter.NONE), anyLong(), anyLong(), cancellerCaptor.capture());
 		final SearchCanceller canceller = cancellerCaptor.getValue();
 		canceller.register(mockListener);
 		searchResultsFuture.cancel();
 		verify(mockListener).onCancel();
 	}
 
+	@Test
+	public void findAllShouldSearchEachApplicableType() throws Exception {
+		final MultiSearchResults multiResults = this.dictionary.findAll("man", 10).getResults();
+		verify(this.dataStore).findPinyin(eq(pinyinSyllables("man")), eq(SearchFilter.NONE), eq(10L), eq(0L), isA(SearchCanceller.class));
+		verify(this.dataStore).findDefinitions(eq("man"), eq(SearchFilter.NONE), eq(10L), eq(0L), isA(SearchCanceller.class));
+		assertThat(multiResults.getSearchTypes(), contains(PINYIN, REVERSE));
+	}
+
+	@Test
+	public void findAllShouldHaveNoTypesForBlankText() throws Exception {
+		assertThat(this.dictionary.findAll(" ", 10).getSearchTypes().isEmpty(), is(true));
+	}
+
+	@Test
+	public void findAllShouldRunTypesConcurrently() throws Exception {
+		final PriorityQueryExecutor executor = new PriorityQueryExecutor(2, PriorityQueryExecutor.DEFAULT_AGING_MILLIS);
+		try {
+			final CyclicBarrier barrier = new CyclicBarrier(2);
+			final Answer<List<DictionaryEntry>> awaitOtherType = new Answer<List<DictionaryEntry>>() {
+
+				@Override
+				public List<DictionaryEntry> answer(final InvocationOnMock invocation) throws Throwable {
+					/* only completes if both types are searched at once */
+					barrier.await(5, TimeUnit.SECONDS);
+					return Collections.emptyList();
+				}
+
+			};
+			Mockito.when(this.dataStore.findPinyin(Matchers.<List<PinyinSyllable>> any(), eq(SearchFilter.NONE), anyLong(), anyLong(),
+					isA(SearchCanceller.class))).thenAnswer(awaitOtherType);
+			Mockito.when(this.dataStore.findDefinitions(anyString(), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class)))
+					.thenAnswer(awaitOtherType);
+			final Dictionary dictionary = new Dictionary(this.dataStore, new PinyinParser(), executor);
+			final MultiSearchResults multiResults = dictionary.findAll("man", 10).getResults();
+			assertThat(multiResults.getEntries().isEmpty(), is(true));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 }
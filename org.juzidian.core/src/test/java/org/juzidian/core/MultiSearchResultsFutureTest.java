@@ -0,0 +1,161 @@
+/*
+ * Copyright Nathan Jones 2012
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class MultiSearchResultsFutureTest {
+
+	private final Executor directExecutor = new Executor() {
+
+		@Override
+		public void execute(final Runnable command) {
+			command.run();
+		}
+
+	};
+
+	private SearchTask pinyinTask;
+
+	private SearchTask reverseTask;
+
+	private MultiSearchResultsFuture future;
+
+	@Before
+	public void setUp() {
+		this.pinyinTask = new SearchTask();
+		this.reverseTask = new SearchTask();
+		final Map<SearchType, SearchResultsFuture> branches = new EnumMap<SearchType, SearchResultsFuture>(SearchType.class);
+		branches.put(SearchType.PINYIN, new SearchResultsFuture(this.pinyinTask, new SearchCanceller()));
+		branches.put(SearchType.REVERSE, new SearchResultsFuture(this.reverseTask, new SearchCanceller()));
+		this.future = new MultiSearchResultsFuture(branches);
+	}
+
+	private static SearchResults results(final SearchType searchType) {
+		return new SearchResults(new SearchQuery(searchType, "man", 5, 0), Collections.<DictionaryEntry> emptyList());
+	}
+
+	@Test
+	public void getResultsShouldProvideResultsOfEachType() throws Exception {
+		final SearchResults pinyinResults = results(SearchType.PINYIN);
+		final SearchResults reverseResults = results(SearchType.REVERSE);
+		this.pinyinTask.complete(pinyinResults);
+		this.reverseTask.complete(reverseResults);
+		final MultiSearchResults multiResults = this.future.getResults();
+		assertThat(multiResults.getResults(SearchType.PINYIN), is(pinyinResults));
+		assertThat(multiResults.getResults(SearchType.REVERSE), is(reverseResults));
+	}
+
+	@Test
+	public void cancelShouldCancelAllTypes() {
+		this.future.cancel();
+		assertThat(this.pinyinTask.isCancelled(), is(true));
+		assertThat(this.reverseTask.isCancelled(), is(true));
+	}
+
+	@Test
+	public void getResultsShouldCancelOtherTypesWhenOneFails() throws Exception {
+		this.pinyinTask.fail(new NullPointerException());
+		try {
+			this.future.getResults();
+		} catch (final RuntimeException e) {
+		}
+		assertThat(this.reverseTask.isCancelled(), is(true));
+	}
+
+	@Test
+	public void addCallbackShouldDeliverResultsOnceAllTypesComplete() {
+		final RecordingCallback callback = new RecordingCallback();
+		this.future.addCallback(callback, this.directExecutor);
+		this.pinyinTask.complete(results(SearchType.PINYIN));
+		assertThat(callback.outcome, nullValue());
+		this.reverseTask.complete(results(SearchType.REVERSE));
+		assertThat(callback.outcome, equalTo("results"));
+		assertThat(callback.results.getSearchTypes().size(), equalTo(2));
+	}
+
+	@Test
+	public void addCallbackShouldReportFailureAndCancelOtherTypes() {
+		final RecordingCallback callback = new RecordingCallback();
+		this.future.addCallback(callback, this.directExecutor);
+		this.reverseTask.fail(new NullPointerException());
+		assertThat(this.pinyinTask.isCancelled(), is(true));
+		assertThat(callback.outcome, equalTo("failure"));
+	}
+
+	@Test
+	public void addCallbackShouldReportCancelWhenCancelled() {
+		final RecordingCallback callback = new RecordingCallback();
+		this.future.addCallback(callback, this.directExecutor);
+		this.future.cancel();
+		assertThat(callback.outcome, equalTo("cancelled"));
+	}
+
+	@Test
+	public void addCallbackShouldDeliverEmptyResultsForNoTypes() {
+		final RecordingCallback callback = new RecordingCallback();
+		new MultiSearchResultsFuture(Collections.<SearchType, SearchResultsFuture> emptyMap()).addCallback(callback, this.directExecutor);
+		assertThat(callback.outcome, equalTo("results"));
+	}
+
+	@Test
+	public void isDoneShouldBeFalseUntilAllTypesAreDone() {
+		this.pinyinTask.complete(Mockito.mock(SearchResults.class));
+		assertThat(this.future.isDone(), is(false));
+		this.reverseTask.complete(Mockito.mock(SearchResults.class));
+		assertThat(this.future.isDone(), is(true));
+	}
+
+	private static class RecordingCallback implements MultiSearchResultsFuture.Callback {
+
+		private String outcome;
+
+		private MultiSearchResults results;
+
+		@Override
+		public void onResults(final MultiSearchResults searchResults) {
+			this.outcome = "results";
+			this.results = searchResults;
+		}
+
+		@Override
+		public void onCancelled() {
+			this.outcome = "cancelled";
+		}
+
+		@Override
+		public void onFailure(final Throwable cause) {
+			this.outcome = "failure";
+		}
+
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright Nathan Jones 2012
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.juzidian.pinyin.PinyinSyllable;
+
+public class MultiSearchResultsTest {
+
+	private static DictionaryEntry entry(final String hanzi, final String pinyin, final String definition) {
+		return new DictionaryEntry(hanzi, hanzi, Arrays.asList(new PinyinSyllable(pinyin)), Arrays.asList(definition));
+	}
+
+	private static SearchResults results(final SearchType searchType, final int pageSize, final DictionaryEntry... entries) {
+		return new SearchResults(new SearchQuery(searchType, "man", pageSize, 0), Arrays.asList(entries));
+	}
+
+	private static MultiSearchResults multiResults(final SearchResults pinyinResults, final SearchResults reverseResults) {
+		final Map<SearchType, SearchResults> results = new EnumMap<SearchType, SearchResults>(SearchType.class);
+		results.put(SearchType.REVERSE, reverseResults);
+		results.put(SearchType.PINYIN, pinyinResults);
+		return new MultiSearchResults(results);
+	}
+
+	@Test
+	public void getEntriesShouldInterleaveEntriesByRank() {
+		final DictionaryEntry man = entry("慢", "man4", "slow");
+		final DictionaryEntry full = entry("满", "man3", "full");
+		final DictionaryEntry ren = entry("人", "ren2", "man");
+		final MultiSearchResults multiResults = multiResults(results(SearchType.PINYIN, 5, man, full), results(SearchType.REVERSE, 5, ren));
+		assertThat(multiResults.getEntries(), contains(man, ren, full));
+	}
+
+	@Test
+	public void getEntriesShouldKeepEntryFoundByTwoTypesAtBestRank() {
+		final DictionaryEntry man = entry("慢", "man4", "slow");
+		final DictionaryEntry ren = entry("人", "ren2", "man");
+		final DictionaryEntry nan = entry("男", "nan2", "man");
+		final MultiSearchResults multiResults = multiResults(results(SearchType.PINYIN, 5, man, entry("男", "nan2", "man")),
+				results(SearchType.REVERSE, 5, nan, ren));
+		assertThat(multiResults.getEntries(), contains(man, nan, ren));
+	}
+
+	@Test
+	public void getResultsShouldProvideResultsOfEachType() {
+		final SearchResults pinyinResults = results(SearchType.PINYIN, 5);
+		final SearchResults reverseResults = results(SearchType.REVERSE, 5);
+		final MultiSearchResults multiResults = multiResults(pinyinResults, reverseResults);
+		assertThat(multiResults.getResults(SearchType.PINYIN), is(pinyinResults));
+		assertThat(multiResults.getResults(SearchType.REVERSE), is(reverseResults));
+		assertThat(multiResults.getResults(SearchType.HANZI), nullValue());
+	}
+
+	@Test
+	public void getSearchTypesShouldBeInSearchTypeOrder() {
+		final MultiSearchResults multiResults = multiResults(results(SearchType.PINYIN, 5), results(SearchType.REVERSE, 5));
+		assertThat(multiResults.getSearchTypes(), contains(SearchType.PINYIN, SearchType.REVERSE));
+	}
+
+	@Test
+	public void isLastPageShouldBeFalseWhenAnyTypeHasMoreResults() {
+		final MultiSearchResults multiResults = multiResults(results(SearchType.PINYIN, 1, entry("慢", "man4", "slow")),
+				results(SearchType.REVERSE, 5));
+		assertThat(multiResults.isLastPage(), is(false));
+	}
+
+	@Test
+	public void isLastPageShouldBeTrueWhenNoTypeHasMoreResults() {
+		final MultiSearchResults multiResults = multiResults(results(SearchType.PINYIN, 5, entry("慢", "man4", "slow")),
+				results(SearchType.REVERSE, 5));
+		assertThat(multiResults.isLastPage(), is(true));
+	}
+
+	@Test
+	public void getEntriesShouldBeEmptyForNoTypes() {
+		final List<DictionaryEntry> entries = new MultiSearchResults(Collections.<SearchType, SearchResults> emptyMap()).getEntries();
+		assertThat(entries.isEmpty(), is(true));
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PriorityQueryExecutorTest {
+
+	private PriorityQueryExecutor executor;
+
+	private final CountDownLatch blockerReleased = new CountDownLatch(1);
+
+	private final List<String> runOrder = new CopyOnWriteArrayList<String>();
+
+	@After
+	public void tearDown() {
+		this.blockerReleased.countDown();
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Occupies the only thread so that later tasks are queued.
+	 */
+	private void blockExecutor() throws InterruptedException {
+		final CountDownLatch blockerStarted = new CountDownLatch(1);
+		this.executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				blockerStarted.countDown();
+				try {
+					PriorityQueryExecutorTest.this.blockerReleased.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+		}, SearchPriority.BULK);
+		blockerStarted.await();
+	}
+
+	private void queue(final String name, final SearchPriority priority) {
+		this.executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				PriorityQueryExecutorTest.this.runOrder.add(name);
+			}
+
+		}, priority);
+	}
+
+	private void runQueued() throws InterruptedException {
+		this.blockerReleased.countDown();
+		this.executor.shutdown();
+		this.executor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void queuedTasksShouldRunInPriorityOrder() throws Exception {
+		this.executor = new PriorityQueryExecutor(1, 60000);
+		this.blockExecutor();
+		this.queue("bulk", SearchPriority.BULK);
+		this.queue("paging", SearchPriority.PAGING);
+		this.queue("interactive", SearchPriority.INTERACTIVE);
+		this.runQueued();
+		assertThat(this.runOrder, is(equalTo(Arrays.asList("interactive", "paging", "bulk"))));
+	}
+
+	@Test
+	public void queuedTasksOfSamePriorityShouldRunInQueuedOrder() throws Exception {
+		this.executor = new PriorityQueryExecutor(1, 60000);
+		this.blockExecutor();
+		this.queue("first", SearchPriority.PAGING);
+		this.queue("second", SearchPriority.PAGING);
+		this.queue("third", SearchPriority.PAGING);
+		this.runQueued();
+		assertThat(this.runOrder, is(equalTo(Arrays.asList("first", "second", "third"))));
+	}
+
+	@Test
+	public void agedTaskShouldRunBeforeNewerTaskOfHigherPriority() throws Exception {
+		this.executor = new PriorityQueryExecutor(1, 5);
+		this.blockExecutor();
+		this.queue("bulk", SearchPriority.BULK);
+		Thread.sleep(50);
+		this.queue("interactive", SearchPriority.INTERACTIVE);
+		this.runQueued();
+		assertThat(this.runOrder, is(equalTo(Arrays.asList("bulk", "interactive"))));
+	}
+
+	@Test
+	public void getQueueDepthShouldCountQueuedTasksByPriority() throws Exception {
+		this.executor = new PriorityQueryExecutor(1, 60000);
+		this.blockExecutor();
+		this.queue("bulk", SearchPriority.BULK);
+		this.queue("paging", SearchPriority.PAGING);
+		this.queue("paging", SearchPriority.PAGING);
+		assertThat(this.executor.getQueueDepth(SearchPriority.INTERACTIVE), is(0));
+		assertThat(this.executor.getQueueDepth(SearchPriority.PAGING), is(2));
+		assertThat(this.executor.getQueueDepth(SearchPriority.BULK), is(1));
+		this.runQueued();
+		assertThat(this.executor.getQueueDepth(SearchPriority.PAGING), is(0));
+	}
+
+	@Test
+	public void rejectedTaskShouldNotBeCountedAsQueued() throws Exception {
+		this.executor = new PriorityQueryExecutor(1, 60000);
+		this.executor.shutdown();
+		try {
+			this.queue("paging", SearchPriority.PAGING);
+		} catch (final RejectedExecutionException e) {
+		}
+		assertThat(this.executor.getQueueDepth(SearchPriority.PAGING), is(0));
+	}
+
+	@Test
+	public void waitTimeShouldBeRecordedByPriority() throws Exception {
+		this.executor = new PriorityQueryExecutor(1, 60000);
+		this.blockExecutor();
+		this.queue("paging", SearchPriority.PAGING);
+		Thread.sleep(50);
+		this.runQueued();
+		assertThat(this.executor.getStartedCount(SearchPriority.PAGING), is(1L));
+		assertThat(this.executor.getMeanWaitMillis(SearchPriority.PAGING), is(greaterThanOrEqualTo(40.0)));
+		assertThat(this.executor.getMaxWaitMillis(SearchPriority.PAGING), is(greaterThanOrEqualTo(40.0)));
+		assertThat(this.executor.getMeanWaitMillis(SearchPriority.INTERACTIVE), is(0.0));
+	}
+
+	@Test
+	public void submitWithoutPriorityShouldBeInteractive() throws Exception {
+		this.executor = new PriorityQueryExecutor(1, 60000);
+		this.blockExecutor();
+		this.queue("paging", SearchPriority.PAGING);
+		this.executor.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				PriorityQueryExecutorTest.this.runOrder.add("unprioritized");
+			}
+
+		});
+		this.runQueued();
+		assertThat(this.runOrder, is(equalTo(Arrays.asList("unprioritized", "paging"))));
+	}
+
+}
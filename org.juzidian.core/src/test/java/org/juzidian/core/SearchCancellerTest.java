@@ -0,0 +1,111 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.juzidian.core.SearchCanceller.Listener;
+import org.mockito.Mockito;
+
+public class SearchCancellerTest {
+
+	private SearchCanceller canceller;
+
+	@Before
+	public void setUp() {
+		this.canceller = new SearchCanceller();
+	}
+
+	@Test
+	public void cancelShouldNotifyAllRegisteredListeners() {
+		final Listener listener1 = Mockito.mock(Listener.class);
+		final Listener listener2 = Mockito.mock(Listener.class);
+		this.canceller.register(listener1);
+		this.canceller.register(listener2);
+		this.canceller.cancel();
+		verify(listener1).onCancel();
+		verify(listener2).onCancel();
+	}
+
+	@Test
+	public void cancelShouldNotifyListenersOnlyOnce() {
+		final Listener listener = Mockito.mock(Listener.class);
+		this.canceller.register(listener);
+		this.canceller.cancel();
+		this.canceller.cancel();
+		verify(listener, times(1)).onCancel();
+	}
+
+	@Test
+	public void registerShouldNotifyListenerImmediatelyWhenAlreadyCancelled() {
+		final Listener listener = Mockito.mock(Listener.class);
+		this.canceller.cancel();
+		this.canceller.register(listener);
+		verify(listener).onCancel();
+	}
+
+	@Test
+	public void registerShouldNotNotifyListenerBeforeCancel() {
+		final Listener listener = Mockito.mock(Listener.class);
+		this.canceller.register(listener);
+		verify(listener, never()).onCancel();
+	}
+
+	@Test
+	public void cancelShouldNotNotifyUnregisteredListener() {
+		final Listener listener = Mockito.mock(Listener.class);
+		final Listener otherListener = Mockito.mock(Listener.class);
+		this.canceller.register(listener);
+		this.canceller.register(otherListener);
+		this.canceller.unregister(listener);
+		this.canceller.cancel();
+		verify(listener, never()).onCancel();
+		verify(otherListener).onCancel();
+	}
+
+	@Test
+	public void isCancelledShouldBeFalseBeforeCancel() {
+		assertThat(this.canceller.isCancelled(), is(false));
+	}
+
+	@Test
+	public void isCancelledShouldBeTrueAfterCancel() {
+		this.canceller.cancel();
+		assertThat(this.canceller.isCancelled(), is(true));
+	}
+
+	@Test
+	public void checkCancelledShouldPassBeforeCancel() {
+		this.canceller.checkCancelled("test");
+	}
+
+	@Test(expected = DictionaryDataStoreQueryCancelledException.class)
+	public void checkCancelledShouldThrowAfterCancel() {
+		this.canceller.cancel();
+		this.canceller.checkCancelled("test");
+	}
+
+}
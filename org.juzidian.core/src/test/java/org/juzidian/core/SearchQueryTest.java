@@ -30,6 +30,21 @@ import org.junit.Test;
 public class SearchQueryTest {
 
 	@SuppressWarnings("unused")
+	@Test
+	public void equalsShouldBeTrueForQueriesWithSameCriteria() {
+		assertThat(new SearchQuery(REVERSE, "foo", 15, 1).equals(new SearchQuery(REVERSE, "foo", 15, 0).nextPage()), is(true));
+	}
+
+	@Test
+	public void equalsShouldBeFalseForQueriesForDifferentPages() {
+		assertThat(new SearchQuery(REVERSE, "foo", 15, 0).equals(new SearchQuery(REVERSE, "foo", 15, 1)), is(false));
+	}
+
+	@Test
+	public void hashCodeShouldBeEqualForQueriesWithSameCriteria() {
+		assertThat(new SearchQuery(REVERSE, "foo", 15, 0).hashCode(), is(new SearchQuery(REVERSE, "foo", 15, 0).hashCode()));
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void constructorShouldRejectNullSearchType() {
 		new SearchQuery(null, "foo", 15, 0);
@@ -53,6 +68,44 @@ public class SearchQueryTest {
 		new SearchQuery(REVERSE, "foo", 15, -1);
 	}
 
+	@SuppressWarnings("unused")
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorShouldRejectNullFilter() {
+		new SearchQuery(REVERSE, "foo", 15, 0, null);
+	}
+
+	@SuppressWarnings("unused")
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorShouldRejectNegativeLatencyBudget() {
+		new SearchQuery(REVERSE, "foo", 15, 0, SearchFilter.NONE, -1);
+	}
+
+	@Test
+	public void constructorShouldDefaultToNoLatencyBudget() {
+		assertThat(new SearchQuery(REVERSE, "foo", 15, 0).getLatencyBudgetMillis(), is(0L));
+	}
+
+	@Test
+	public void equalsShouldBeFalseForQueriesWithDifferentLatencyBudgets() {
+		assertThat(new SearchQuery(REVERSE, "foo", 15, 0).equals(new SearchQuery(REVERSE, "foo", 15, 0).withLatencyBudget(30)), is(false));
+	}
+
+	@Test
+	public void nextPageShouldDropLatencyBudget() {
+		assertThat(new SearchQuery(REVERSE, "foo", 15, 0).withLatencyBudget(30).nextPage().getLatencyBudgetMillis(), is(0L));
+	}
+
+	@Test
+	public void constructorShouldDefaultToNoFilter() {
+		assertThat(new SearchQuery(REVERSE, "foo", 15, 0).getFilter(), is(SearchFilter.NONE));
+	}
+
+	@Test
+	public void nextPageShouldKeepFilter() {
+		final SearchFilter filter = SearchFilter.excluding(DictionaryEntryFlag.PROPER_NOUN);
+		assertThat(new SearchQuery(REVERSE, "foo", 15, 0, filter).nextPage().getFilter(), is(filter));
+	}
+
 	@Test
 	public void nextPageShouldProduceQueryWithPageIndexIncremented() {
 		final SearchQuery searchQuery = new SearchQuery(REVERSE, "foo", 15, 0);
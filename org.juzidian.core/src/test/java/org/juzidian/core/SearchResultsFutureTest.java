@@ -18,12 +18,19 @@
  */
 package org.juzidian.core;
 
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 
 import org.junit.Before;
@@ -42,6 +49,15 @@ public class SearchResultsFutureTest {
 
 	private SearchResultsFuture searchResultsFuture;
 
+	private final Executor directExecutor = new Executor() {
+
+		@Override
+		public void execute(final Runnable command) {
+			command.run();
+		}
+
+	};
+
 	@Before
 	public void setUp() {
 		MockitoAnnotations.initMocks(this);
@@ -59,7 +75,12 @@ public class SearchResultsFutureTest {
 	@Test(expected = RuntimeException.class)
 	public void getResultsShouldThrowRuntimeExceptionWhenFutureThrowsInterruptedException() throws Exception {
 		when(mockResultsFuture.get()).thenThrow(new InterruptedException());
-		searchResultsFuture.getResults();
+		try {
+			searchResultsFuture.getResults();
+		} finally {
+			/* clear the restored interrupt so that it does not leak into later tests */
+			Thread.interrupted();
+		}
 	}
 
 	@Test
@@ -69,7 +90,7 @@ public class SearchResultsFutureTest {
 			searchResultsFuture.getResults();
 		} catch (RuntimeException e) {
 		}
-		assertThat(Thread.currentThread().isInterrupted(), is(true));
+		assertThat(Thread.interrupted(), is(true));
 	}
 
 	@Test(expected = SearchCancelledException.class)
@@ -90,4 +111,233 @@ public class SearchResultsFutureTest {
 		verify(mockCanceller).cancel();
 	}
 
+	@Test
+	public void addCallbackShouldDeliverResultsWhenSearchCompletes() throws Exception {
+		final SearchTask task = new SearchTask();
+		final RecordingCallback callback = new RecordingCallback();
+		new SearchResultsFuture(task, new SearchCanceller()).addCallback(callback, this.directExecutor);
+		assertThat(callback.outcome, nullValue());
+		final SearchResults results = Mockito.mock(SearchResults.class);
+		task.complete(results);
+		assertThat(callback.outcome, equalTo("results"));
+		assertThat(callback.results, is(results));
+	}
+
+	@Test
+	public void addCallbackShouldDeliverResultsWhenSearchAlreadyCompleted() throws Exception {
+		final SearchTask task = new SearchTask();
+		final SearchResults results = Mockito.mock(SearchResults.class);
+		task.complete(results);
+		final RecordingCallback callback = new RecordingCallback();
+		new SearchResultsFuture(task, new SearchCanceller()).addCallback(callback, this.directExecutor);
+		assertThat(callback.results, is(results));
+	}
+
+	@Test
+	public void addCallbackShouldRunCallbackWithExecutor() throws Exception {
+		final SearchTask task = new SearchTask();
+		final List<Runnable> queued = new ArrayList<Runnable>();
+		final RecordingCallback callback = new RecordingCallback();
+		new SearchResultsFuture(task, new SearchCanceller()).addCallback(callback, new Executor() {
+
+			@Override
+			public void execute(final Runnable command) {
+				queued.add(command);
+			}
+
+		});
+		task.complete(Mockito.mock(SearchResults.class));
+		assertThat(callback.outcome, nullValue());
+		queued.get(0).run();
+		assertThat(callback.outcome, equalTo("results"));
+	}
+
+	@Test
+	public void addCallbackShouldReportCancelWhenFutureCancelled() throws Exception {
+		final SearchTask task = new SearchTask();
+		final SearchResultsFuture future = new SearchResultsFuture(task, new SearchCanceller());
+		final RecordingCallback callback = new RecordingCallback();
+		future.addCallback(callback, this.directExecutor);
+		future.cancel();
+		assertThat(callback.outcome, equalTo("cancelled"));
+	}
+
+	@Test
+	public void addCallbackShouldReportCancelWhenQueryCancelled() throws Exception {
+		final SearchTask task = new SearchTask();
+		final RecordingCallback callback = new RecordingCallback();
+		new SearchResultsFuture(task, new SearchCanceller()).addCallback(callback, this.directExecutor);
+		task.fail(new DictionaryDataStoreQueryCancelledException("", null));
+		assertThat(callback.outcome, equalTo("cancelled"));
+	}
+
+	@Test
+	public void addCallbackShouldReportFailureCause() throws Exception {
+		final SearchTask task = new SearchTask();
+		final RecordingCallback callback = new RecordingCallback();
+		new SearchResultsFuture(task, new SearchCanceller()).addCallback(callback, this.directExecutor);
+		final NullPointerException cause = new NullPointerException();
+		task.fail(cause);
+		assertThat(callback.outcome, equalTo("failure"));
+		assertThat(callback.cause, is((Throwable) cause));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void addCallbackShouldFailWhenFutureDoesNotSupportCallbacks() throws Exception {
+		searchResultsFuture.addCallback(new RecordingCallback(), this.directExecutor);
+	}
+
+	@Test
+	public void thenSearchShouldProvideResultsOfFollowUpSearch() throws Exception {
+		final SearchTask first = new SearchTask();
+		final SearchTask second = new SearchTask();
+		final SearchResults firstResults = Mockito.mock(SearchResults.class);
+		final SearchResults secondResults = Mockito.mock(SearchResults.class);
+		final SearchResultsFuture chained = new SearchResultsFuture(first, new SearchCanceller()).thenSearch(new SearchResultsFuture.FollowUp() {
+
+			@Override
+			public SearchResultsFuture search(final SearchResults searchResults) {
+				assertThat(searchResults, is(firstResults));
+				return new SearchResultsFuture(second, new SearchCanceller());
+			}
+
+		});
+		first.complete(firstResults);
+		assertThat(chained.isDone(), is(false));
+		second.complete(secondResults);
+		assertThat(chained.getResults(), is(secondResults));
+	}
+
+	@Test
+	public void thenSearchShouldKeepResultsWhenNoFollowUpSearch() throws Exception {
+		final SearchTask first = new SearchTask();
+		final SearchResults firstResults = Mockito.mock(SearchResults.class);
+		final SearchResultsFuture chained = new SearchResultsFuture(first, new SearchCanceller()).thenSearch(new SearchResultsFuture.FollowUp() {
+
+			@Override
+			public SearchResultsFuture search(final SearchResults searchResults) {
+				return null;
+			}
+
+		});
+		first.complete(firstResults);
+		assertThat(chained.getResults(), is(firstResults));
+	}
+
+	@Test
+	public void thenSearchShouldCancelPendingSearchWhenChainCancelled() throws Exception {
+		final SearchTask first = new SearchTask();
+		final SearchCanceller firstCanceller = new SearchCanceller();
+		final SearchResultsFuture chained = new SearchResultsFuture(first, firstCanceller).thenSearch(new SearchResultsFuture.FollowUp() {
+
+			@Override
+			public SearchResultsFuture search(final SearchResults searchResults) {
+				throw new AssertionError("Follow-up search should not start");
+			}
+
+		});
+		chained.cancel();
+		assertThat(first.isCancelled(), is(true));
+		assertThat(firstCanceller.isCancelled(), is(true));
+		assertThat(chained.isDone(), is(true));
+	}
+
+	@Test
+	public void thenSearchShouldCancelFollowUpSearchWhenChainCancelled() throws Exception {
+		final SearchTask first = new SearchTask();
+		final SearchTask second = new SearchTask();
+		final SearchCanceller secondCanceller = new SearchCanceller();
+		final SearchResultsFuture chained = new SearchResultsFuture(first, new SearchCanceller()).thenSearch(new SearchResultsFuture.FollowUp() {
+
+			@Override
+			public SearchResultsFuture search(final SearchResults searchResults) {
+				return new SearchResultsFuture(second, secondCanceller);
+			}
+
+		});
+		first.complete(Mockito.mock(SearchResults.class));
+		chained.cancel();
+		assertThat(second.isCancelled(), is(true));
+		assertThat(secondCanceller.isCancelled(), is(true));
+	}
+
+	@Test(expected = SearchCancelledException.class)
+	public void thenSearchShouldBeCancelledWhenFirstSearchCancelled() throws Exception {
+		final SearchTask first = new SearchTask();
+		final SearchResultsFuture firstFuture = new SearchResultsFuture(first, new SearchCanceller());
+		final SearchResultsFuture chained = firstFuture.thenSearch(new SearchResultsFuture.FollowUp() {
+
+			@Override
+			public SearchResultsFuture search(final SearchResults searchResults) {
+				throw new AssertionError("Follow-up search should not start");
+			}
+
+		});
+		firstFuture.cancel();
+		chained.getResults();
+	}
+
+	@Test
+	public void whenAllShouldInvokeCallbackOnceAllSearchesAreDone() throws Exception {
+		final SearchTask first = new SearchTask();
+		final SearchTask second = new SearchTask();
+		final List<SearchResultsFuture> futures = Arrays.asList(new SearchResultsFuture(first, new SearchCanceller()), new SearchResultsFuture(
+				second, new SearchCanceller()));
+		final RecordingGroupCallback callback = new RecordingGroupCallback();
+		SearchResultsFuture.whenAll(futures, callback, this.directExecutor);
+		first.complete(Mockito.mock(SearchResults.class));
+		assertThat(callback.completions, equalTo(0));
+		futures.get(1).cancel();
+		assertThat(callback.completions, equalTo(1));
+		assertThat(callback.futures, is(futures));
+	}
+
+	@Test
+	public void whenAllShouldInvokeCallbackForNoSearches() throws Exception {
+		final RecordingGroupCallback callback = new RecordingGroupCallback();
+		SearchResultsFuture.whenAll(Collections.<SearchResultsFuture> emptyList(), callback, this.directExecutor);
+		assertThat(callback.completions, equalTo(1));
+	}
+
+	private static class RecordingCallback implements SearchResultsFuture.Callback {
+
+		private String outcome;
+
+		private SearchResults results;
+
+		private Throwable cause;
+
+		@Override
+		public void onResults(final SearchResults searchResults) {
+			this.outcome = "results";
+			this.results = searchResults;
+		}
+
+		@Override
+		public void onCancelled() {
+			this.outcome = "cancelled";
+		}
+
+		@Override
+		public void onFailure(final Throwable cause) {
+			this.outcome = "failure";
+			this.cause = cause;
+		}
+
+	}
+
+	private static class RecordingGroupCallback implements SearchResultsFuture.GroupCallback {
+
+		private int completions;
+
+		private List<SearchResultsFuture> futures;
+
+		@Override
+		public void onComplete(final List<SearchResultsFuture> futures) {
+			this.completions++;
+			this.futures = futures;
+		}
+
+	}
+
 }
@@ -51,6 +51,20 @@ public class SearchResultsTest {
 		assertThat(searchResults.isLastPage(), is(false));
 	}
 
+	@Test
+	public void isLastPageShouldBeFalseWhenResultsHaveContinuation() {
+		final List<DictionaryEntry> entries = new ArrayList<DictionaryEntry>();
+		entries.add(this.createMockEntry());
+		final SearchResults searchResults = new SearchResults(query(3, 0), entries, false, query(3, 0));
+		assertThat(searchResults.isLastPage(), is(false));
+	}
+
+	@Test
+	public void isPartialShouldBeTrueWhenResultsHaveContinuation() {
+		final SearchResults searchResults = new SearchResults(query(3, 0), new ArrayList<DictionaryEntry>(), false, query(3, 0));
+		assertThat(searchResults.isPartial(), is(true));
+	}
+
 	private DictionaryEntry createMockEntry() {
 		return Mockito.mock(DictionaryEntry.class);
 	}
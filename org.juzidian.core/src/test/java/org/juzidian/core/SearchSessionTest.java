@@ -0,0 +1,254 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.juzidian.core.SearchType.REVERSE;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.juzidian.pinyin.PinyinParser;
+import org.mockito.Mockito;
+
+public class SearchSessionTest {
+
+	private DictionaryDataStore dataStore;
+
+	private QueueingExecutor executor;
+
+	private SearchSession searchSession;
+
+	@Before
+	public void setUp() {
+		this.dataStore = Mockito.mock(DictionaryDataStore.class);
+		this.executor = new QueueingExecutor();
+		final Dictionary dictionary = new Dictionary(this.dataStore, new PinyinParser(), this.executor);
+		this.searchSession = dictionary.createSearchSession();
+	}
+
+	private static SearchQuery query(final String searchText) {
+		return new SearchQuery(REVERSE, searchText, 20, 0);
+	}
+
+	private SearchSession createPrefetchingSession() {
+		final List<DictionaryEntry> fullPage = Collections.nCopies(20, Mockito.mock(DictionaryEntry.class));
+		when(this.dataStore.findDefinitions(eq("foo"), eq(SearchFilter.NONE), eq(20L), anyLong(), isA(SearchCanceller.class)))
+				.thenReturn(fullPage);
+		return new Dictionary(this.dataStore, new PinyinParser(), this.executor).createSearchSession(0, true);
+	}
+
+	@Test
+	public void findAsyncShouldRunOnlyLatestOfQueuedQueries() throws Exception {
+		this.searchSession.findAsync(query("f"));
+		this.searchSession.findAsync(query("fo"));
+		this.searchSession.findAsync(query("foo"));
+		this.executor.runAll();
+		verify(this.dataStore, never()).findDefinitions(eq("f"), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class));
+		verify(this.dataStore, never()).findDefinitions(eq("fo"), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class));
+		verify(this.dataStore).findDefinitions(eq("foo"), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class));
+	}
+
+	@Test
+	public void findAsyncShouldQueueSingleTaskForSupersededQueries() {
+		this.searchSession.findAsync(query("f"));
+		this.searchSession.findAsync(query("fo"));
+		this.searchSession.findAsync(query("foo"));
+		assertThat(this.executor.tasks.size(), is(1));
+	}
+
+	@Test(expected = SearchCancelledException.class)
+	public void supersededQueryShouldBeCancelledImmediately() throws Exception {
+		final SearchResultsFuture superseded = this.searchSession.findAsync(query("f"));
+		this.searchSession.findAsync(query("fo"));
+		superseded.getResults();
+	}
+
+	@Test
+	public void latestQueryShouldProvideSearchResults() throws Exception {
+		this.searchSession.findAsync(query("f"));
+		final SearchResultsFuture latest = this.searchSession.findAsync(query("foo"));
+		this.executor.runAll();
+		assertThat(latest.getResults().getSearchQuery().getSearchText(), is(equalTo("foo")));
+	}
+
+	@Test
+	public void findAsyncShouldRunQueryArrivingAfterPreviousQueryStarted() throws Exception {
+		this.searchSession.findAsync(query("f"));
+		this.executor.runAll();
+		this.searchSession.findAsync(query("foo"));
+		this.executor.runAll();
+		verify(this.dataStore).findDefinitions(eq("f"), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class));
+		verify(this.dataStore).findDefinitions(eq("foo"), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class));
+	}
+
+	@Test
+	public void findAsyncShouldRunOnlyLatestQueryWithinDebounceWindow() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Dictionary dictionary = new Dictionary(this.dataStore, new PinyinParser(), executor);
+			final SearchSession searchSession = dictionary.createSearchSession(200);
+			searchSession.findAsync(query("f"));
+			Thread.sleep(20);
+			final SearchResultsFuture latest = searchSession.findAsync(query("foo"));
+			latest.getResults();
+			verify(this.dataStore, never()).findDefinitions(eq("f"), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class));
+			verify(this.dataStore).findDefinitions(eq("foo"), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void debounceWindowShouldNotOccupyQueryThread() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Dictionary dictionary = new Dictionary(this.dataStore, new PinyinParser(), executor);
+			dictionary.createSearchSession(5000).findAsync(query("foo"));
+			final Future<?> otherWork = executor.submit(new Runnable() {
+
+				@Override
+				public void run() {
+				}
+
+			});
+			otherWork.get(1, TimeUnit.SECONDS);
+			verify(this.dataStore, never()).findDefinitions(eq("foo"), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(expected = SearchCancelledException.class)
+	public void cancelShouldDiscardQueryThatHasNotStarted() throws Exception {
+		final SearchResultsFuture future = this.searchSession.findAsync(query("foo"));
+		future.cancel();
+		this.executor.runAll();
+		verify(this.dataStore, never()).findDefinitions(eq("foo"), eq(SearchFilter.NONE), anyLong(), anyLong(), isA(SearchCanceller.class));
+		future.getResults();
+	}
+
+	@Test
+	public void deliveredResultsShouldTriggerPrefetchOfNextPage() throws Exception {
+		final SearchSession searchSession = this.createPrefetchingSession();
+		searchSession.findAsync(query("foo"));
+		this.executor.runAll();
+		verify(this.dataStore).findDefinitions(eq("foo"), eq(SearchFilter.NONE), eq(20L), eq(20L), isA(SearchCanceller.class));
+	}
+
+	@Test
+	public void nextPageShouldBeServedByPrefetch() throws Exception {
+		final SearchSession searchSession = this.createPrefetchingSession();
+		searchSession.findAsync(query("foo"));
+		this.executor.runAll();
+		final SearchResultsFuture nextPage = searchSession.findAsync(query("foo").nextPage());
+		assertThat(nextPage.getResults().getSearchQuery().getPageIndex(), is(1));
+		verify(this.dataStore, times(1)).findDefinitions(eq("foo"), eq(SearchFilter.NONE), eq(20L), eq(20L), isA(SearchCanceller.class));
+		assertThat(searchSession.getPrefetchHits(), is(1L));
+		assertThat(searchSession.getPrefetchWastes(), is(0L));
+	}
+
+	@Test
+	public void servedPrefetchShouldTriggerPrefetchOfFollowingPage() throws Exception {
+		final SearchSession searchSession = this.createPrefetchingSession();
+		searchSession.findAsync(query("foo"));
+		this.executor.runAll();
+		searchSession.findAsync(query("foo").nextPage());
+		this.executor.runAll();
+		verify(this.dataStore).findDefinitions(eq("foo"), eq(SearchFilter.NONE), eq(20L), eq(40L), isA(SearchCanceller.class));
+	}
+
+	@Test
+	public void changedQueryShouldDropPrefetch() throws Exception {
+		final SearchSession searchSession = this.createPrefetchingSession();
+		searchSession.findAsync(query("foo"));
+		this.executor.tasks.remove(0).run();
+		searchSession.findAsync(query("bar"));
+		this.executor.runAll();
+		verify(this.dataStore, never()).findDefinitions(eq("foo"), eq(SearchFilter.NONE), eq(20L), eq(20L), isA(SearchCanceller.class));
+		assertThat(searchSession.getPrefetchHits(), is(0L));
+		assertThat(searchSession.getPrefetchWastes(), is(1L));
+	}
+
+	@Test
+	public void swappedDatabaseShouldDropPrefetch() throws Exception {
+		final SearchSession searchSession = this.createPrefetchingSession();
+		searchSession.findAsync(query("foo"));
+		this.executor.runAll();
+		when(this.dataStore.getGeneration()).thenReturn(1L);
+		searchSession.findAsync(query("foo").nextPage());
+		this.executor.runAll();
+		verify(this.dataStore, times(2)).findDefinitions(eq("foo"), eq(SearchFilter.NONE), eq(20L), eq(20L), isA(SearchCanceller.class));
+		assertThat(searchSession.getPrefetchHits(), is(0L));
+		assertThat(searchSession.getPrefetchWastes(), is(1L));
+	}
+
+	@Test
+	public void lastPageShouldNotTriggerPrefetch() throws Exception {
+		final SearchSession searchSession = this.createPrefetchingSession();
+		searchSession.findAsync(query("bar"));
+		this.executor.runAll();
+		verify(this.dataStore, never()).findDefinitions(eq("bar"), eq(SearchFilter.NONE), eq(20L), eq(20L), isA(SearchCanceller.class));
+	}
+
+	@Test
+	public void sessionWithoutPrefetchShouldNotPrefetch() throws Exception {
+		this.createPrefetchingSession();
+		this.searchSession.findAsync(query("foo"));
+		this.executor.runAll();
+		verify(this.dataStore, never()).findDefinitions(eq("foo"), eq(SearchFilter.NONE), eq(20L), eq(20L), isA(SearchCanceller.class));
+	}
+
+	/**
+	 * Holds tasks until they are explicitly run.
+	 */
+	private static class QueueingExecutor extends CurrentThreadExecutor {
+
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(final Runnable command) {
+			this.tasks.add(command);
+		}
+
+		public void runAll() {
+			while (!this.tasks.isEmpty()) {
+				this.tasks.remove(0).run();
+			}
+		}
+
+	}
+
+}
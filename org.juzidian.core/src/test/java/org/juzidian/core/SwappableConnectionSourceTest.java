@@ -0,0 +1,157 @@
+/*
+ * Copyright Nathan Jones 2012
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.core;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+public class SwappableConnectionSourceTest {
+
+	private InterruptibleConnectionSource original;
+
+	private InterruptibleConnectionSource replacement;
+
+	private DatabaseConnection originalConnection;
+
+	private DatabaseConnection replacementConnection;
+
+	private SwappableConnectionSource connectionSource;
+
+	@Before
+	public void setUp() throws Exception {
+		this.original = Mockito.mock(InterruptibleConnectionSource.class);
+		this.replacement = Mockito.mock(InterruptibleConnectionSource.class);
+		this.originalConnection = Mockito.mock(DatabaseConnection.class);
+		this.replacementConnection = Mockito.mock(DatabaseConnection.class);
+		when(this.original.getReadOnlyConnection()).thenReturn(this.originalConnection);
+		when(this.original.getInterruptCheck()).thenReturn("check()");
+		when(this.replacement.getReadOnlyConnection()).thenReturn(this.replacementConnection);
+		when(this.replacement.getInterruptCheck()).thenReturn("check()");
+		this.connectionSource = new SwappableConnectionSource(this.original);
+	}
+
+	@Test
+	public void getReadOnlyConnectionShouldUseReplacementAfterSwap() throws Exception {
+		this.connectionSource.swap(this.replacement);
+		assertThat(this.connectionSource.getReadOnlyConnection(), is(this.replacementConnection));
+	}
+
+	@Test
+	public void swapShouldCloseIdleReplacedSource() throws Exception {
+		this.connectionSource.releaseConnection(this.connectionSource.getReadOnlyConnection());
+		this.connectionSource.swap(this.replacement);
+		verify(this.original).close();
+	}
+
+	@Test
+	public void swapShouldCloseReplacedSourceOnceItsConnectionsAreReleased() throws Exception {
+		final DatabaseConnection connection = this.connectionSource.getReadOnlyConnection();
+		this.connectionSource.swap(this.replacement);
+		verify(this.original, never()).close();
+		this.connectionSource.releaseConnection(connection);
+		verify(this.original).releaseConnection(connection);
+		verify(this.original).close();
+	}
+
+	@Test
+	public void swapShouldKeepReplacedSourceOpenWhileConnectionIsInUseMoreThanOnce() throws Exception {
+		final DatabaseConnection connection = this.connectionSource.getReadOnlyConnection();
+		this.connectionSource.getReadOnlyConnection();
+		this.connectionSource.swap(this.replacement);
+		this.connectionSource.releaseConnection(connection);
+		verify(this.original, never()).close();
+		this.connectionSource.releaseConnection(connection);
+		verify(this.original).close();
+	}
+
+	@Test
+	public void savedConnectionShouldKeepThreadOnItsSource() throws Exception {
+		final DatabaseConnection connection = this.connectionSource.getReadOnlyConnection();
+		this.connectionSource.saveSpecialConnection(connection);
+		this.connectionSource.swap(this.replacement);
+		assertThat(this.connectionSource.getReadOnlyConnection(), is(this.originalConnection));
+		this.connectionSource.releaseConnection(connection);
+		this.connectionSource.clearSpecialConnection(connection);
+		verify(this.original).clearSpecialConnection(connection);
+		assertThat(this.connectionSource.getReadOnlyConnection(), is(this.replacementConnection));
+	}
+
+	@Test
+	public void getSpecialConnectionShouldBeNullWithoutSavedConnection() throws Exception {
+		assertThat(this.connectionSource.getSpecialConnection(), nullValue());
+	}
+
+	@Test
+	public void setCancellerShouldUseSourceOfConnection() throws Exception {
+		final DatabaseConnection connection = this.connectionSource.getReadOnlyConnection();
+		this.connectionSource.swap(this.replacement);
+		final SearchCanceller canceller = new SearchCanceller();
+		this.connectionSource.setCanceller(connection, canceller);
+		verify(this.original).setCanceller(connection, canceller);
+	}
+
+	@Test
+	public void getInterruptCheckShouldBeCheckOfCurrentSource() throws Exception {
+		assertThat(this.connectionSource.getInterruptCheck(), is("check()"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void swapShouldRejectReplacementWithDifferentInterruptCheck() throws Exception {
+		this.connectionSource.swap(Mockito.mock(ConnectionSource.class));
+	}
+
+	@Test(expected = SQLException.class)
+	public void releaseConnectionShouldRejectUnknownConnection() throws Exception {
+		this.connectionSource.releaseConnection(this.replacementConnection);
+	}
+
+	@Test
+	public void getReadOnlyConnectionShouldNotKeepReservationWhenSourceFails() throws Exception {
+		when(this.original.getReadOnlyConnection()).thenThrow(new SQLException("failed"));
+		try {
+			this.connectionSource.getReadOnlyConnection();
+		} catch (final SQLException e) {
+		}
+		this.connectionSource.swap(this.replacement);
+		verify(this.original).close();
+	}
+
+	@Test
+	public void closeShouldCloseReplacedSourceInUse() throws Exception {
+		this.connectionSource.getReadOnlyConnection();
+		this.connectionSource.swap(this.replacement);
+		this.connectionSource.close();
+		verify(this.original).close();
+		verify(this.replacement).close();
+	}
+
+}
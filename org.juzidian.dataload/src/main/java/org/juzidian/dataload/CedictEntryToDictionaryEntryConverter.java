@@ -19,22 +19,63 @@
 package org.juzidian.dataload;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.juzidian.cedict.CedictEntry;
 import org.juzidian.cedict.CedictPinyinSyllable;
 import org.juzidian.core.DictionaryEntry;
+import org.juzidian.core.DictionaryEntryFlag;
+import org.juzidian.core.DictionaryEntryReference;
 import org.juzidian.pinyin.PinyinSyllable;
 import org.juzidian.pinyin.Tone;
 
 /**
  * Creates {@link DictionaryEntry} instances from {@link CedictEntry} instances.
+ * <p>
+ * Classifiers ("CL:個|个[ge4]") and cross-references ("variant of X[...]",
+ * "see X[...]") embedded in CEDict definitions are extracted as
+ * {@link DictionaryEntryReference}s. Classifier definitions are removed from
+ * the entry's definitions since they are not English meanings of the word;
+ * cross-reference definitions are kept as they are often the only definition
+ * of an entry.
+ * <p>
+ * {@link DictionaryEntryFlag}s are derived from CEDict conventions:
+ * capitalised pinyin marks a proper noun, and definitions such as "surname
+ * Li", "old variant of X" or "abbr. for X" mark the kind of entry.
  */
 class CedictEntryToDictionaryEntryConverter {
 
+	private static final String CLASSIFIER_PREFIX = "CL:";
+
+	/**
+	 * Matches a CEDict word reference such as "個|个[ge4]", "窗[chuang1]" or
+	 * "什麼|什么". The characters must start with a non-ASCII character so that
+	 * English text such as "see above" is not treated as a reference.
+	 */
+	private static final Pattern WORD_REFERENCE = Pattern.compile("([^\\x00-\\x7F][^\\s\\[|,;]*)(?:\\|([^\\s\\[,;]+))?(?:\\[([^\\]]*)\\])?");
+
+	private static final Pattern VARIANT_DEFINITION = Pattern.compile("^[A-Za-z() -]*variant of (.*)$");
+
+	private static final Pattern SEE_DEFINITION = Pattern.compile("^see (?:also )?(.*)$");
+
+	private static final Pattern SURNAME_DEFINITION = Pattern.compile("^surname\\b.*");
+
+	private static final Pattern ABBREVIATION_DEFINITION = Pattern.compile("^abbr\\..*");
+
+	private static final Pattern OLD_FORM_DEFINITION = Pattern.compile("^(?:\\(old\\)|(?:old|archaic) variant of).*");
+
+	private static final Pattern ERHUA_DEFINITION = Pattern.compile("^erhua variant of.*");
+
 	public DictionaryEntry convert(final CedictEntry cedictEntry) {
-		return new DictionaryEntry(getTraditional(cedictEntry), getSimplified(cedictEntry), getPinyin(cedictEntry),
-				getDefinitions(cedictEntry));
+		final List<String> definitions = new ArrayList<String>();
+		final List<DictionaryEntryReference> references = new ArrayList<DictionaryEntryReference>();
+		this.extractReferences(cedictEntry.getDefinitions(), definitions, references);
+		return new DictionaryEntry(getTraditional(cedictEntry), getSimplified(cedictEntry), getPinyin(cedictEntry), definitions, references,
+				this.getFlags(cedictEntry));
 	}
 
 	private String getTraditional(final CedictEntry cedictEntry) {
@@ -49,8 +90,102 @@ class CedictEntryToDictionaryEntryConverter {
 		return this.createPinyinSyllables(cedictEntry.getPinyinSyllables());
 	}
 
-	private List<String> getDefinitions(final CedictEntry cedictEntry) {
-		return cedictEntry.getDefinitions();
+	private Set<DictionaryEntryFlag> getFlags(final CedictEntry cedictEntry) {
+		final Set<DictionaryEntryFlag> flags = EnumSet.noneOf(DictionaryEntryFlag.class);
+		for (final CedictPinyinSyllable syllable : cedictEntry.getPinyinSyllables()) {
+			final String letters = syllable.getLetters();
+			if (letters.length() > 0 && Character.isUpperCase(letters.charAt(0))) {
+				flags.add(DictionaryEntryFlag.PROPER_NOUN);
+			}
+		}
+		if (cedictEntry.getDefinitions() == null) {
+			return flags;
+		}
+		for (final String definition : cedictEntry.getDefinitions()) {
+			final String trimmedDefinition = definition.trim();
+			addFlagIfMatches(flags, DictionaryEntryFlag.SURNAME, SURNAME_DEFINITION, trimmedDefinition);
+			addFlagIfMatches(flags, DictionaryEntryFlag.VARIANT, VARIANT_DEFINITION, trimmedDefinition);
+			addFlagIfMatches(flags, DictionaryEntryFlag.ABBREVIATION, ABBREVIATION_DEFINITION, trimmedDefinition);
+			addFlagIfMatches(flags, DictionaryEntryFlag.OLD_FORM, OLD_FORM_DEFINITION, trimmedDefinition);
+			addFlagIfMatches(flags, DictionaryEntryFlag.ERHUA, ERHUA_DEFINITION, trimmedDefinition);
+		}
+		return flags;
+	}
+
+	private static void addFlagIfMatches(final Set<DictionaryEntryFlag> flags, final DictionaryEntryFlag flag, final Pattern pattern,
+			final String definition) {
+		if (pattern.matcher(definition).matches()) {
+			flags.add(flag);
+		}
+	}
+
+	private void extractReferences(final List<String> cedictDefinitions, final List<String> definitions,
+			final List<DictionaryEntryReference> references) {
+		if (cedictDefinitions == null) {
+			return;
+		}
+		for (final String definition : cedictDefinitions) {
+			final String trimmedDefinition = definition.trim();
+			if (trimmedDefinition.startsWith(CLASSIFIER_PREFIX)) {
+				this.addClassifiers(trimmedDefinition.substring(CLASSIFIER_PREFIX.length()), references);
+				continue;
+			}
+			this.addCrossReference(trimmedDefinition, VARIANT_DEFINITION, DictionaryEntryReference.Type.VARIANT, references);
+			this.addCrossReference(trimmedDefinition, SEE_DEFINITION, DictionaryEntryReference.Type.SEE, references);
+			definitions.add(definition);
+		}
+	}
+
+	private void addClassifiers(final String classifiers, final List<DictionaryEntryReference> references) {
+		for (final String classifier : classifiers.split(",")) {
+			final DictionaryEntryReference reference = this.parseReference(classifier.trim(), DictionaryEntryReference.Type.CLASSIFIER);
+			if (reference != null) {
+				references.add(reference);
+			}
+		}
+	}
+
+	private void addCrossReference(final String definition, final Pattern definitionPattern, final DictionaryEntryReference.Type type,
+			final List<DictionaryEntryReference> references) {
+		final Matcher matcher = definitionPattern.matcher(definition);
+		if (matcher.matches()) {
+			final DictionaryEntryReference reference = this.parseReference(matcher.group(1), type);
+			if (reference != null) {
+				references.add(reference);
+			}
+		}
+	}
+
+	private DictionaryEntryReference parseReference(final String text, final DictionaryEntryReference.Type type) {
+		final Matcher matcher = WORD_REFERENCE.matcher(text);
+		if (!matcher.lookingAt()) {
+			return null;
+		}
+		final String traditional = matcher.group(1);
+		final String simplified = matcher.group(2) == null ? traditional : matcher.group(2);
+		final String pinyin = matcher.group(3);
+		return new DictionaryEntryReference(type, traditional, simplified, this.parseReferencePinyin(pinyin));
+	}
+
+	private List<PinyinSyllable> parseReferencePinyin(final String pinyin) {
+		final List<PinyinSyllable> syllables = new ArrayList<PinyinSyllable>();
+		if (pinyin == null) {
+			return syllables;
+		}
+		for (final String rawSyllable : pinyin.trim().split("\\s+")) {
+			if (rawSyllable.length() <= 1) {
+				/* skip punctuation, as CedictLoader does for entry pinyin */
+				continue;
+			}
+			final char lastChar = rawSyllable.charAt(rawSyllable.length() - 1);
+			if (lastChar >= '1' && lastChar <= '5') {
+				final String letters = rawSyllable.substring(0, rawSyllable.length() - 1).replace("u:", "ü");
+				syllables.add(new PinyinSyllable(letters, Tone.valueOf(lastChar - '0')));
+			} else {
+				syllables.add(new PinyinSyllable(rawSyllable.replace("u:", "ü"), Tone.ANY));
+			}
+		}
+		return syllables;
 	}
 
 	private List<PinyinSyllable> createPinyinSyllables(final List<CedictPinyinSyllable> pinyinSyllables) {
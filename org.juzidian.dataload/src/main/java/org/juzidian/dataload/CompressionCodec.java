@@ -0,0 +1,204 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * A compression format for dictionary artifacts.
+ * <p>
+ * The codec of compressed data can be {@link #detect(byte[], int) detected}
+ * from its leading magic bytes, so clients do not depend on a registry or file
+ * name to know how to uncompress an artifact.
+ */
+public enum CompressionCodec {
+
+	/**
+	 * Gzip compression, as used by all artifacts published before codecs were
+	 * advertised.
+	 */
+	GZIP("gzip", ".gz", new byte[] { 0x1f, (byte) 0x8b }) {
+
+		@Override
+		public InputStream decompress(final InputStream in) throws IOException {
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		}
+
+		@Override
+		public OutputStream compress(final OutputStream out) throws IOException {
+			return new GZIPOutputStream(out, BUFFER_SIZE);
+		}
+
+	},
+
+	/**
+	 * XZ (LZMA2) compression, which compresses mostly-CJK text considerably
+	 * better than gzip at the default preset.
+	 */
+	XZ("xz", ".xz", new byte[] { (byte) 0xfd, '7', 'z', 'X', 'Z', 0x00 }) {
+
+		@Override
+		public InputStream decompress(final InputStream in) throws IOException {
+			return new XZInputStream(in);
+		}
+
+		@Override
+		public OutputStream compress(final OutputStream out) throws IOException {
+			return new XZOutputStream(out, new LZMA2Options());
+		}
+
+	},
+
+	/**
+	 * No compression, for local builds where transfer size does not matter.
+	 * Data without a recognised magic number is assumed to be stored.
+	 */
+	STORED("stored", "", new byte[0]) {
+
+		@Override
+		public InputStream decompress(final InputStream in) {
+			return in;
+		}
+
+		@Override
+		public OutputStream compress(final OutputStream out) {
+			return out;
+		}
+
+	};
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * The number of leading bytes needed to detect any codec.
+	 */
+	public static final int MAGIC_LENGTH = 6;
+
+	private final String name;
+
+	private final String fileSuffix;
+
+	private final byte[] magic;
+
+	private CompressionCodec(final String name, final String fileSuffix, final byte[] magic) {
+		this.name = name;
+		this.fileSuffix = fileSuffix;
+		this.magic = magic;
+	}
+
+	/**
+	 * @return the name of the codec as advertised in a dictionary registry.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return the suffix conventionally appended to the name of a file
+	 *         compressed with this codec.
+	 */
+	public String getFileSuffix() {
+		return this.fileSuffix;
+	}
+
+	/**
+	 * @param in a stream of compressed data.
+	 * @return a stream of the uncompressed data.
+	 * @throws IOException if the compressed data header can not be read.
+	 */
+	public abstract InputStream decompress(InputStream in) throws IOException;
+
+	/**
+	 * @param out a stream to write compressed data to.
+	 * @return a stream that compresses data written to it. It must be closed
+	 *         to complete the compressed data.
+	 * @throws IOException if the compressed data header can not be written.
+	 */
+	public abstract OutputStream compress(OutputStream out) throws IOException;
+
+	private boolean matches(final byte[] header, final int length) {
+		if (length < this.magic.length) {
+			return false;
+		}
+		for (int i = 0; i < this.magic.length; i++) {
+			if (header[i] != this.magic[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param header the leading bytes of compressed data.
+	 * @param length the number of bytes of the header that are valid.
+	 * @return the codec with a matching magic number, or {@link #STORED} if
+	 *         there is none.
+	 */
+	public static CompressionCodec detect(final byte[] header, final int length) {
+		for (final CompressionCodec codec : values()) {
+			if (codec != STORED && codec.matches(header, length)) {
+				return codec;
+			}
+		}
+		return STORED;
+	}
+
+	/**
+	 * Detect the codec of a compressed stream and uncompress it.
+	 *
+	 * @param in a stream of compressed data.
+	 * @return a stream of the uncompressed data.
+	 * @throws IOException if the compressed data header can not be read.
+	 */
+	public static InputStream detectAndDecompress(final InputStream in) throws IOException {
+		final PushbackInputStream pushbackInputStream = new PushbackInputStream(in, MAGIC_LENGTH);
+		final byte[] header = new byte[MAGIC_LENGTH];
+		int length = 0;
+		int bytesRead;
+		while (length < MAGIC_LENGTH && (bytesRead = pushbackInputStream.read(header, length, MAGIC_LENGTH - length)) != -1) {
+			length += bytesRead;
+		}
+		pushbackInputStream.unread(header, 0, length);
+		return detect(header, length).decompress(pushbackInputStream);
+	}
+
+	/**
+	 * @param name a codec name as advertised in a dictionary registry.
+	 * @return the codec with the given name, or <code>null</code> if it is not
+	 *         supported.
+	 */
+	public static CompressionCodec forName(final String name) {
+		for (final CompressionCodec codec : values()) {
+			if (codec.name.equals(name)) {
+				return codec;
+			}
+		}
+		return null;
+	}
+
+}
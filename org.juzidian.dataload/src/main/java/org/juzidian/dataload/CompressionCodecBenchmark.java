@@ -0,0 +1,112 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.juzidian.util.AtomicFileOutputStream;
+import org.juzidian.util.IoUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares {@link CompressionCodec}s on a dictionary database: the size of
+ * the compressed artifact that clients download, the time taken to compress
+ * it, and the time taken to install it by uncompressing it into place as a
+ * client does.
+ */
+public class CompressionCodecBenchmark {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CompressionCodecBenchmark.class);
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File tempDirectory;
+
+	/**
+	 * @param tempDirectory the directory to write compressed and installed
+	 *        files to.
+	 */
+	public CompressionCodecBenchmark(final File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * @param databaseFile the uncompressed dictionary database.
+	 * @return the compressed size, compression time and install time for each
+	 *         codec, keyed by codec name.
+	 * @throws IOException if the database could not be compressed or
+	 *         installed.
+	 */
+	public Properties run(final File databaseFile) throws IOException {
+		final Properties properties = new Properties();
+		properties.setProperty("uncompressed.bytes", Long.toString(databaseFile.length()));
+		for (final CompressionCodec codec : CompressionCodec.values()) {
+			final File compressedFile = File.createTempFile("juzidian-benchmark-", ".db" + codec.getFileSuffix(), this.tempDirectory);
+			try {
+				final long compressNanos = this.compress(codec, databaseFile, compressedFile);
+				final long installNanos = this.install(compressedFile);
+				properties.setProperty(codec.getName() + ".compressedBytes", Long.toString(compressedFile.length()));
+				properties.setProperty(codec.getName() + ".compressMillis", formatMillis(compressNanos));
+				properties.setProperty(codec.getName() + ".installMillis", formatMillis(installNanos));
+				LOGGER.info("{}: {} bytes, installed in {} ms", new Object[] { codec.getName(), compressedFile.length(),
+						formatMillis(installNanos) });
+			} finally {
+				compressedFile.delete();
+			}
+		}
+		return properties;
+	}
+
+	private long compress(final CompressionCodec codec, final File databaseFile, final File compressedFile) throws IOException {
+		final long startTime = System.nanoTime();
+		IoUtil.copy(new FileInputStream(databaseFile),
+				codec.compress(new BufferedOutputStream(new FileOutputStream(compressedFile), BUFFER_SIZE)));
+		return System.nanoTime() - startTime;
+	}
+
+	private long install(final File compressedFile) throws IOException {
+		final File installedFile = new File(this.tempDirectory, "juzidian-benchmark.db");
+		final long startTime = System.nanoTime();
+		final AtomicFileOutputStream installedOutputStream = new AtomicFileOutputStream(installedFile);
+		try {
+			IoUtil.copy(CompressionCodec.detectAndDecompress(new BufferedInputStream(new FileInputStream(compressedFile), BUFFER_SIZE)),
+					installedOutputStream);
+			installedOutputStream.commit();
+		} finally {
+			installedOutputStream.discard();
+		}
+		final long installNanos = System.nanoTime() - startTime;
+		installedFile.delete();
+		return installNanos;
+	}
+
+	private static String formatMillis(final long nanos) {
+		return Long.toString(Math.round(nanos / NANOS_PER_MILLI));
+	}
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.juzidian.util.AtomicFileOutputStream;
+import org.juzidian.util.IoUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local cache of compressed dictionary artifacts, keyed by their SHA-1 hash
+ * so that any installation on the host can reuse an artifact that was
+ * already downloaded.
+ * <p>
+ * The total size of cached artifacts is bounded; the least recently used
+ * artifacts are evicted first. An artifact is {@link #lock(String) locked}
+ * while it is being downloaded or read, using a file lock that is honoured by
+ * other processes sharing the cache directory as well as by other threads.
+ */
+public class DictionaryArtifactCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryArtifactCache.class);
+
+	private static final String ARTIFACT_SUFFIX = ".artifact";
+
+	private static final String LOCK_SUFFIX = ".lock";
+
+	/*
+	 * A JVM may hold only one lock on a file, so threads in this process
+	 * queue for the in-process lock before taking the file lock.
+	 */
+	private static final ConcurrentMap<String, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<String, ReentrantLock>();
+
+	private final File directory;
+
+	private final long maxBytes;
+
+	/**
+	 * @param directory the directory to keep cached artifacts in.
+	 * @param maxBytes the maximum total size of cached artifacts.
+	 */
+	public DictionaryArtifactCache(final File directory, final long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Lock an artifact, waiting for any other thread or process that holds the
+	 * lock to release it.
+	 *
+	 * @param sha1 the SHA-1 hash of the artifact.
+	 * @return the lock, which must be {@link ArtifactLock#release() released}.
+	 * @throws IOException if the lock file can not be created or locked.
+	 */
+	public ArtifactLock lock(final String sha1) throws IOException {
+		final ArtifactLock lock = this.createLock(sha1);
+		lock.processLock.lock();
+		try {
+			lock.acquire(false);
+		} catch (final IOException e) {
+			lock.processLock.unlock();
+			throw e;
+		}
+		return lock;
+	}
+
+	/**
+	 * @param sha1 the SHA-1 hash of the artifact.
+	 * @return the lock if it was free, or <code>null</code> if it is held by
+	 *         another thread or process.
+	 */
+	private ArtifactLock tryLock(final String sha1) throws IOException {
+		final ArtifactLock lock = this.createLock(sha1);
+		if (!lock.processLock.tryLock()) {
+			return null;
+		}
+		try {
+			if (!lock.acquire(true)) {
+				lock.processLock.unlock();
+				return null;
+			}
+		} catch (final IOException e) {
+			lock.processLock.unlock();
+			throw e;
+		}
+		return lock;
+	}
+
+	private ArtifactLock createLock(final String sha1) throws IOException {
+		this.createDirectory();
+		final File lockFile = new File(this.directory, sha1 + LOCK_SUFFIX);
+		final String key = lockFile.getCanonicalPath();
+		ReentrantLock processLock = PROCESS_LOCKS.get(key);
+		if (processLock == null) {
+			final ReentrantLock newLock = new ReentrantLock();
+			processLock = PROCESS_LOCKS.putIfAbsent(key, newLock);
+			if (processLock == null) {
+				processLock = newLock;
+			}
+		}
+		return new ArtifactLock(lockFile, processLock);
+	}
+
+	/**
+	 * Get a cached artifact, marking it as the most recently used. The caller
+	 * should hold the {@link #lock(String) lock} for the artifact.
+	 *
+	 * @param sha1 the SHA-1 hash of the artifact.
+	 * @return the cached artifact file, or <code>null</code> if it is not
+	 *         cached.
+	 */
+	public File get(final String sha1) {
+		final File artifactFile = this.getArtifactFile(sha1);
+		if (!artifactFile.isFile()) {
+			return null;
+		}
+		if (!artifactFile.setLastModified(System.currentTimeMillis())) {
+			LOGGER.debug("Failed to update last use of cached artifact: {}", artifactFile);
+		}
+		return artifactFile;
+	}
+
+	/**
+	 * Add a verified artifact to the cache and evict the least recently used
+	 * artifacts beyond the size limit. The file is moved into the cache, or
+	 * copied if it can not be moved, and is deleted either way. The caller
+	 * should hold the {@link #lock(String) lock} for the artifact.
+	 *
+	 * @param sha1 the SHA-1 hash of the artifact.
+	 * @param file the artifact file.
+	 */
+	public void put(final String sha1, final File file) {
+		try {
+			if (file.length() > this.maxBytes) {
+				LOGGER.debug("Artifact {} is larger than the cache", sha1);
+				return;
+			}
+			this.createDirectory();
+			final File artifactFile = this.getArtifactFile(sha1);
+			if (!file.renameTo(artifactFile)) {
+				final AtomicFileOutputStream outputStream = new AtomicFileOutputStream(artifactFile);
+				try {
+					IoUtil.copy(new FileInputStream(file), outputStream);
+					outputStream.commit();
+				} finally {
+					outputStream.discard();
+				}
+			}
+			if (!artifactFile.setLastModified(System.currentTimeMillis())) {
+				LOGGER.debug("Failed to update last use of cached artifact: {}", artifactFile);
+			}
+			LOGGER.debug("Cached artifact {}", sha1);
+			this.evict(sha1);
+		} catch (final IOException e) {
+			LOGGER.warn("Failed to cache artifact {}: {}", sha1, e.toString());
+		} finally {
+			if (file.exists() && !file.delete()) {
+				LOGGER.warn("Failed to delete artifact file: {}", file);
+			}
+		}
+	}
+
+	/**
+	 * Remove an artifact from the cache. The caller should hold the
+	 * {@link #lock(String) lock} for the artifact.
+	 *
+	 * @param sha1 the SHA-1 hash of the artifact.
+	 */
+	public void remove(final String sha1) {
+		final File artifactFile = this.getArtifactFile(sha1);
+		if (artifactFile.exists() && !artifactFile.delete()) {
+			LOGGER.warn("Failed to delete cached artifact: {}", artifactFile);
+		}
+	}
+
+	/*
+	 * Artifacts locked by another installation are in use and are skipped.
+	 */
+	private void evict(final String keptSha1) throws IOException {
+		final File[] artifactFiles = this.directory.listFiles(new FileFilter() {
+
+			@Override
+			public boolean accept(final File file) {
+				return file.isFile() && file.getName().endsWith(ARTIFACT_SUFFIX);
+			}
+
+		});
+		if (artifactFiles == null) {
+			return;
+		}
+		long totalBytes = 0;
+		for (final File artifactFile : artifactFiles) {
+			totalBytes += artifactFile.length();
+		}
+		Arrays.sort(artifactFiles, new Comparator<File>() {
+
+			@Override
+			public int compare(final File file1, final File file2) {
+				final long lastModified1 = file1.lastModified();
+				final long lastModified2 = file2.lastModified();
+				return lastModified1 < lastModified2 ? -1 : lastModified1 == lastModified2 ? 0 : 1;
+			}
+
+		});
+		for (int i = 0; i < artifactFiles.length && totalBytes > this.maxBytes; i++) {
+			final String name = artifactFiles[i].getName();
+			final String sha1 = name.substring(0, name.length() - ARTIFACT_SUFFIX.length());
+			if (sha1.equals(keptSha1)) {
+				continue;
+			}
+			final ArtifactLock lock = this.tryLock(sha1);
+			if (lock == null) {
+				continue;
+			}
+			try {
+				final long length = artifactFiles[i].length();
+				if (artifactFiles[i].delete()) {
+					LOGGER.debug("Evicted cached artifact {}", sha1);
+					totalBytes -= length;
+				}
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	private File getArtifactFile(final String sha1) {
+		return new File(this.directory, sha1 + ARTIFACT_SUFFIX);
+	}
+
+	private void createDirectory() throws IOException {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Failed to create directory: " + this.directory);
+		}
+	}
+
+	/**
+	 * An exclusive lock on a cached artifact.
+	 */
+	public static class ArtifactLock {
+
+		private final File lockFile;
+
+		private final ReentrantLock processLock;
+
+		private RandomAccessFile file;
+
+		private FileLock fileLock;
+
+		ArtifactLock(final File lockFile, final ReentrantLock processLock) {
+			this.lockFile = lockFile;
+			this.processLock = processLock;
+		}
+
+		private boolean acquire(final boolean tryOnly) throws IOException {
+			this.file = new RandomAccessFile(this.lockFile, "rw");
+			try {
+				final FileChannel channel = this.file.getChannel();
+				this.fileLock = tryOnly ? channel.tryLock() : channel.lock();
+			} finally {
+				if (this.fileLock == null) {
+					this.file.close();
+				}
+			}
+			return this.fileLock != null;
+		}
+
+		/**
+		 * Release the lock for other threads and processes.
+		 */
+		public void release() {
+			try {
+				this.fileLock.release();
+				this.file.close();
+			} catch (final IOException e) {
+				LOGGER.warn("Failed to release artifact lock {}: {}", this.lockFile, e.toString());
+			} finally {
+				this.processLock.unlock();
+			}
+		}
+
+	}
+
+}
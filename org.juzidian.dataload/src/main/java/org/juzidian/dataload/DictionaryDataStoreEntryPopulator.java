@@ -18,37 +18,186 @@
  */
 package org.juzidian.dataload;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.inject.Inject;
 
+import org.juzidian.cedict.CedictEntry;
+import org.juzidian.cedict.CedictLoadHandler;
+import org.juzidian.cedict.CedictLoadStatistics;
 import org.juzidian.cedict.CedictLoader;
 import org.juzidian.core.DictionaryDataStore;
+import org.juzidian.core.DictionaryDataStoreUpdateSummary;
+import org.juzidian.core.DictionaryEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Populates entries into a {@link DictionaryDataStore} from a
  * {@link CedictLoader}.
+ * <p>
+ * New data stores are populated through an {@link ExternalEntrySorter}, so the
+ * number of entries held in memory is bounded regardless of the size of the
+ * CEDict data. Existing data stores are updated as entries are loaded, so
+ * only the entries that have changed are held in memory.
  */
 public class DictionaryDataStoreEntryPopulator {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryDataStoreEntryPopulator.class);
+
+	/**
+	 * The default maximum number of entries held in memory while populating a
+	 * data store.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES_IN_MEMORY = 50000;
+
 	private final CedictLoader cedictLoader;
 
 	private final CedictEntryToDictionaryEntryConverter entryConverter;
 
+	private final int maxEntriesInMemory;
+
+	private final File tempDirectory;
+
 	@Inject
 	public DictionaryDataStoreEntryPopulator(final CedictLoader cedictLoader, final CedictEntryToDictionaryEntryConverter entryConverter) {
+		this(cedictLoader, entryConverter, DEFAULT_MAX_ENTRIES_IN_MEMORY, null);
+	}
+
+	/**
+	 * @param cedictLoader the source of CEDict entries.
+	 * @param entryConverter converts CEDict entries to dictionary entries.
+	 * @param maxEntriesInMemory the maximum number of entries to hold in memory
+	 *        while populating a data store; entries beyond this are sorted on
+	 *        disk.
+	 * @param tempDirectory the directory for sorted entry runs, or
+	 *        <code>null</code> to use the default temporary file directory.
+	 */
+	public DictionaryDataStoreEntryPopulator(final CedictLoader cedictLoader, final CedictEntryToDictionaryEntryConverter entryConverter,
+			final int maxEntriesInMemory, final File tempDirectory) {
+		if (maxEntriesInMemory < 1) {
+			throw new IllegalArgumentException("Invalid maximum entries in memory: " + maxEntriesInMemory);
+		}
 		this.cedictLoader = cedictLoader;
 		this.entryConverter = entryConverter;
+		this.maxEntriesInMemory = maxEntriesInMemory;
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Add all CEDict entries to an empty data store.
+	 * 
+	 * @param dictionaryDataStore the {@link DictionaryDataStore} to populate.
+	 * @return {@link DictionaryLoadStatistics} for each stage of the load.
+	 */
+	public DictionaryLoadStatistics populateEntries(final DictionaryDataStore dictionaryDataStore) {
+		final DictionaryLoadStatistics statistics = new DictionaryLoadStatistics();
+		final ExternalEntrySorter entrySorter = new ExternalEntrySorter(dictionaryDataStore, this.maxEntriesInMemory, this.tempDirectory,
+				statistics);
+		statistics.loadingStarted();
+		try {
+			this.cedictLoader.loadEntries(new SortingLoadHandler(entrySorter, statistics));
+			entrySorter.addSortedEntries();
+			dictionaryDataStore.resolveReferences();
+		} catch (final IOException e) {
+			throw new RuntimeException("Failed to load entries", e);
+		} finally {
+			entrySorter.close();
+		}
+		statistics.loadingFinished();
+		LOGGER.info("Populated dictionary entries: {}", statistics);
+		return statistics;
 	}
 
-	public void populateEntries(final DictionaryDataStore dictionaryDataStore) {
-		final EntryCollector entryCollector = new EntryCollector(entryConverter);
+	/**
+	 * Apply the differences between the CEDict entries and the entries already
+	 * in the data store.
+	 * 
+	 * @param dictionaryDataStore a populated {@link DictionaryDataStore}.
+	 * @param sourceVersion the version of the CEDict data.
+	 * @return a {@link DictionaryDataStoreUpdateSummary} of the changes made.
+	 */
+	public DictionaryDataStoreUpdateSummary updateEntries(final DictionaryDataStore dictionaryDataStore, final String sourceVersion) {
+		final DictionaryDataStore.IncrementalUpdate incrementalUpdate = dictionaryDataStore.startUpdate(sourceVersion);
 		try {
-			this.cedictLoader.loadEntries(entryCollector);
+			this.cedictLoader.loadEntries(new UpdatingLoadHandler(incrementalUpdate));
 		} catch (final IOException e) {
 			throw new RuntimeException("Failed to load entries", e);
 		}
-		dictionaryDataStore.add(entryCollector.getEntries());
+		return incrementalUpdate.finish();
+	}
+
+	private class UpdatingLoadHandler implements CedictLoadHandler {
+
+		private final DictionaryDataStore.IncrementalUpdate incrementalUpdate;
+
+		private int entryCount;
+
+		public UpdatingLoadHandler(final DictionaryDataStore.IncrementalUpdate incrementalUpdate) {
+			this.incrementalUpdate = incrementalUpdate;
+		}
+
+		@Override
+		public void loadingStarted() {
+
+		}
+
+		@Override
+		public void entryLoaded(final CedictEntry cedictEntry) {
+			this.incrementalUpdate.add(DictionaryDataStoreEntryPopulator.this.entryConverter.convert(cedictEntry));
+			this.entryCount += 1;
+		}
+
+		@Override
+		public void loadingFinished(final CedictLoadStatistics cedictLoadStatistics) {
+			LOGGER.info("Loaded {} entries from CEDict data: {}", this.entryCount, cedictLoadStatistics);
+		}
+
+	}
+
+	private class SortingLoadHandler implements CedictLoadHandler {
+
+		private static final int HEAP_SAMPLE_INTERVAL = 1000;
+
+		private final ExternalEntrySorter entrySorter;
+
+		private final DictionaryLoadStatistics statistics;
+
+		private int entryCount;
+
+		public SortingLoadHandler(final ExternalEntrySorter entrySorter, final DictionaryLoadStatistics statistics) {
+			this.entrySorter = entrySorter;
+			this.statistics = statistics;
+		}
+
+		@Override
+		public void loadingStarted() {
+
+		}
+
+		@Override
+		public void entryLoaded(final CedictEntry cedictEntry) {
+			final long startTime = System.nanoTime();
+			final DictionaryEntry entry = DictionaryDataStoreEntryPopulator.this.entryConverter.convert(cedictEntry);
+			this.statistics.entryConverted(System.nanoTime() - startTime);
+			try {
+				this.entrySorter.add(entry);
+			} catch (final IOException e) {
+				throw new RuntimeException("Failed to sort entries", e);
+			}
+			this.entryCount += 1;
+			if (this.entryCount % HEAP_SAMPLE_INTERVAL == 0) {
+				this.statistics.sampleHeap();
+			}
+		}
+
+		@Override
+		public void loadingFinished(final CedictLoadStatistics cedictLoadStatistics) {
+			this.statistics.cedictLoaded(cedictLoadStatistics);
+			LOGGER.info("Loaded {} entries from CEDict data, spilling {} sorted runs to disk.", this.entryCount, this.entrySorter.getRunCount());
+		}
+
 	}
 
 }
@@ -21,9 +21,13 @@ package org.juzidian.dataload;
 import javax.inject.Inject;
 
 import org.juzidian.core.DictionaryDataStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class DictionaryDataStoreInitializer {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryDataStoreInitializer.class);
+
 	private final DictionaryDataStoreEntryPopulator entryPopulator;
 
 	@Inject
@@ -31,10 +35,43 @@ public class DictionaryDataStoreInitializer {
 		this.entryPopulator = entryPopulator;
 	}
 
-	public void initializeDb(final DictionaryDataStore dictionaryDataStore) {
+	public DictionaryLoadStatistics initializeDb(final DictionaryDataStore dictionaryDataStore) {
+		return this.initializeDb(dictionaryDataStore, null);
+	}
+
+	/**
+	 * Re-create the data store schema and populate it with all entries.
+	 * 
+	 * @param dictionaryDataStore the {@link DictionaryDataStore} to initialize.
+	 * @param sourceVersion the version of the CEDict data (may be
+	 *        <code>null</code>).
+	 * @return {@link DictionaryLoadStatistics} for the entries loaded.
+	 */
+	public DictionaryLoadStatistics initializeDb(final DictionaryDataStore dictionaryDataStore, final String sourceVersion) {
 		dictionaryDataStore.createSchema();
-		dictionaryDataStore.populateMetadata();
-		this.entryPopulator.populateEntries(dictionaryDataStore);
+		dictionaryDataStore.populateMetadata(sourceVersion);
+		return this.entryPopulator.populateEntries(dictionaryDataStore);
+	}
+
+	/**
+	 * Bring an existing data store up to date with the CEDict data by applying
+	 * only the entries that were added, changed or removed.
+	 * <p>
+	 * If the data store uses an older data format it is fully re-initialized
+	 * instead.
+	 * 
+	 * @param dictionaryDataStore the {@link DictionaryDataStore} to update.
+	 * @param sourceVersion the version of the CEDict data (may be
+	 *        <code>null</code>).
+	 */
+	public void updateDb(final DictionaryDataStore dictionaryDataStore, final String sourceVersion) {
+		final int currentDataFormatVersion = dictionaryDataStore.getCurrentDataFormatVersion();
+		if (currentDataFormatVersion != DictionaryDataStore.DATA_FORMAT_VERSION) {
+			LOGGER.info("Data format version {} is not current; re-initializing DB.", currentDataFormatVersion);
+			this.initializeDb(dictionaryDataStore, sourceVersion);
+		} else {
+			this.entryPopulator.updateEntries(dictionaryDataStore, sourceVersion);
+		}
 	}
 
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright Nathan Jones 2013
+ * 
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.juzidian.cedict.CedictLoadStatistics;
+import org.juzidian.core.DictionaryDataStoreBatchStatistics;
+
+/**
+ * Per-stage measurements of a {@link DictionaryDataStoreEntryPopulator} load:
+ * reading and parsing CEDict data, converting entries, and inserting them into
+ * the data store.
+ * <p>
+ * A summary can be written in {@link Properties} format so that builds can
+ * track and compare load performance.
+ */
+public class DictionaryLoadStatistics {
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final Runtime runtime = Runtime.getRuntime();
+
+	private long startTime;
+
+	private long totalTimeNanos;
+
+	private CedictLoadStatistics cedictLoadStatistics = new CedictLoadStatistics(0, 0, 0, 0, 0);
+
+	private long conversionCount;
+
+	private long conversionTimeNanos;
+
+	private long insertBatchCount;
+
+	private long insertedEntryCount;
+
+	private long insertTimeNanos;
+
+	private long commitTimeNanos;
+
+	private long maxCommitTimeNanos;
+
+	private long heapHighWaterMark;
+
+	void loadingStarted() {
+		this.startTime = System.nanoTime();
+		this.sampleHeap();
+	}
+
+	void loadingFinished() {
+		this.totalTimeNanos = System.nanoTime() - this.startTime;
+		this.sampleHeap();
+	}
+
+	void cedictLoaded(final CedictLoadStatistics statistics) {
+		this.cedictLoadStatistics = statistics;
+	}
+
+	void entryConverted(final long timeNanos) {
+		this.conversionCount += 1;
+		this.conversionTimeNanos += timeNanos;
+	}
+
+	void batchAdded(final DictionaryDataStoreBatchStatistics statistics) {
+		this.insertBatchCount += 1;
+		this.insertedEntryCount += statistics.getEntryCount();
+		this.insertTimeNanos += statistics.getInsertTimeNanos() + statistics.getCommitTimeNanos();
+		this.commitTimeNanos += statistics.getCommitTimeNanos();
+		this.maxCommitTimeNanos = Math.max(this.maxCommitTimeNanos, statistics.getCommitTimeNanos());
+		this.sampleHeap();
+	}
+
+	/**
+	 * Record the current heap usage if it is the highest seen so far.
+	 */
+	void sampleHeap() {
+		final long usedHeap = this.runtime.totalMemory() - this.runtime.freeMemory();
+		this.heapHighWaterMark = Math.max(this.heapHighWaterMark, usedHeap);
+	}
+
+	public CedictLoadStatistics getCedictLoadStatistics() {
+		return this.cedictLoadStatistics;
+	}
+
+	/**
+	 * @return the number of CEDict lines read and parsed per second.
+	 */
+	public double getLinesPerSecond() {
+		return this.cedictLoadStatistics.getLinesPerSecond();
+	}
+
+	/**
+	 * @return the number of CEDict entries converted to dictionary entries per
+	 *         second of conversion time.
+	 */
+	public double getConversionsPerSecond() {
+		return ratePerSecond(this.conversionCount, this.conversionTimeNanos);
+	}
+
+	/**
+	 * @return the number of insert transactions completed per second of
+	 *         insert time.
+	 */
+	public double getInsertBatchesPerSecond() {
+		return ratePerSecond(this.insertBatchCount, this.insertTimeNanos);
+	}
+
+	/**
+	 * @return the mean time taken to start and commit an insert transaction.
+	 */
+	public double getMeanCommitMillis() {
+		if (this.insertBatchCount == 0) {
+			return 0;
+		}
+		return this.commitTimeNanos / NANOS_PER_MILLI / this.insertBatchCount;
+	}
+
+	/**
+	 * @return the longest time taken to start and commit an insert
+	 *         transaction.
+	 */
+	public double getMaxCommitMillis() {
+		return this.maxCommitTimeNanos / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * @return the highest heap usage sampled during the load, in bytes.
+	 */
+	public long getHeapHighWaterMark() {
+		return this.heapHighWaterMark;
+	}
+
+	public long getInsertedEntryCount() {
+		return this.insertedEntryCount;
+	}
+
+	/**
+	 * @return the number of entries inserted per second over the whole load.
+	 */
+	public double getEntriesPerSecond() {
+		return ratePerSecond(this.insertedEntryCount, this.totalTimeNanos);
+	}
+
+	private static double ratePerSecond(final long count, final long nanos) {
+		if (nanos <= 0) {
+			return 0;
+		}
+		return count * 1000000000.0 / nanos;
+	}
+
+	public Properties toProperties() {
+		final Properties properties = new Properties();
+		properties.setProperty("cedict.bytesRead", Long.toString(this.cedictLoadStatistics.getBytesRead()));
+		properties.setProperty("cedict.linesRead", Long.toString(this.cedictLoadStatistics.getLinesRead()));
+		properties.setProperty("cedict.linesPerSecond", formatRate(this.getLinesPerSecond()));
+		properties.setProperty("convert.entries", Long.toString(this.conversionCount));
+		properties.setProperty("convert.entriesPerSecond", formatRate(this.getConversionsPerSecond()));
+		properties.setProperty("insert.batches", Long.toString(this.insertBatchCount));
+		properties.setProperty("insert.entries", Long.toString(this.insertedEntryCount));
+		properties.setProperty("insert.batchesPerSecond", formatRate(this.getInsertBatchesPerSecond()));
+		properties.setProperty("commit.meanMillis", formatRate(this.getMeanCommitMillis()));
+		properties.setProperty("commit.maxMillis", formatRate(this.getMaxCommitMillis()));
+		properties.setProperty("heap.highWaterMarkBytes", Long.toString(this.heapHighWaterMark));
+		properties.setProperty("total.timeMillis", Long.toString(Math.round(this.totalTimeNanos / NANOS_PER_MILLI)));
+		properties.setProperty("total.entriesPerSecond", formatRate(this.getEntriesPerSecond()));
+		return properties;
+	}
+
+	private static String formatRate(final double rate) {
+		return String.format(Locale.US, "%.2f", rate);
+	}
+
+	/**
+	 * Write a summary of these statistics in {@link Properties} format.
+	 * 
+	 * @param outputStream the stream to write to (not closed).
+	 * @throws IOException if the summary could not be written.
+	 */
+	public void store(final OutputStream outputStream) throws IOException {
+		this.toProperties().store(outputStream, "Juzidian dictionary load statistics");
+	}
+
+	@Override
+	public String toString() {
+		return "DictionaryLoadStatistics " + this.toProperties();
+	}
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Orders the mirrors of a {@link DictionaryResource} by how quickly they
+ * respond.
+ * <p>
+ * Mirrors are probed concurrently by fetching a small range from the start of
+ * the resource. Mirrors that fail or time out are kept, after all responsive
+ * mirrors, so that a download can still fail over to them. Measured latencies
+ * are reused until the probe interval has passed.
+ */
+public class DictionaryMirrorSelector {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryMirrorSelector.class);
+
+	/**
+	 * The number of bytes fetched from each mirror by a probe.
+	 */
+	static final int PROBE_SIZE = 4 * 1024;
+
+	/**
+	 * The default time to wait for all probes to complete.
+	 */
+	public static final int DEFAULT_PROBE_TIMEOUT_MILLIS = 5000;
+
+	private static final long UNREACHABLE = Long.MAX_VALUE;
+
+	private final long probeIntervalMillis;
+
+	private final int probeTimeoutMillis;
+
+	private final Map<String, Probe> probes = new HashMap<String, Probe>();
+
+	@Inject
+	public DictionaryMirrorSelector(@DictionaryMirrorProbeInterval final long probeIntervalMillis) {
+		this(probeIntervalMillis, DEFAULT_PROBE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param probeIntervalMillis the number of milliseconds that a measured
+	 *        mirror latency is used before the mirror is probed again.
+	 * @param probeTimeoutMillis the number of milliseconds to wait for all
+	 *        probes to complete.
+	 */
+	public DictionaryMirrorSelector(final long probeIntervalMillis, final int probeTimeoutMillis) {
+		this.probeIntervalMillis = probeIntervalMillis;
+		this.probeTimeoutMillis = probeTimeoutMillis;
+	}
+
+	/**
+	 * @param resource a {@link DictionaryResource}.
+	 * @return the resource with its mirror URLs ordered fastest first. A
+	 *         resource with a single URL is returned unchanged.
+	 */
+	public DictionaryResource selectMirror(final DictionaryResource resource) {
+		final List<String> urls = resource.getUrls();
+		if (urls.size() < 2) {
+			return resource;
+		}
+		final List<String> rankedUrls = this.rank(urls);
+		LOGGER.info("Selected mirror {}", rankedUrls.get(0));
+		return new RankedDictionaryResource(resource, rankedUrls);
+	}
+
+	private List<String> rank(final List<String> urls) {
+		final Map<String, Long> latencies = this.getLatencies(urls);
+		final List<String> rankedUrls = new ArrayList<String>(urls);
+		/* the sort is stable, so unreachable mirrors keep their registry order */
+		Collections.sort(rankedUrls, new Comparator<String>() {
+
+			@Override
+			public int compare(final String url1, final String url2) {
+				final long latency1 = latencies.get(url1);
+				final long latency2 = latencies.get(url2);
+				return latency1 < latency2 ? -1 : latency1 == latency2 ? 0 : 1;
+			}
+
+		});
+		return rankedUrls;
+	}
+
+	private Map<String, Long> getLatencies(final List<String> urls) {
+		final long now = System.currentTimeMillis();
+		final Map<String, Long> latencies = new HashMap<String, Long>();
+		final List<String> unprobedUrls = new ArrayList<String>();
+		synchronized (this.probes) {
+			for (final String url : urls) {
+				final Probe probe = this.probes.get(url);
+				if (probe != null && probe.isCurrent(now, this.probeIntervalMillis)) {
+					latencies.put(url, probe.latencyNanos);
+				} else {
+					unprobedUrls.add(url);
+				}
+			}
+		}
+		if (!unprobedUrls.isEmpty()) {
+			final Map<String, Long> probedLatencies = this.probe(unprobedUrls);
+			synchronized (this.probes) {
+				for (final Map.Entry<String, Long> entry : probedLatencies.entrySet()) {
+					this.probes.put(entry.getKey(), new Probe(entry.getValue(), now));
+				}
+			}
+			latencies.putAll(probedLatencies);
+		}
+		return latencies;
+	}
+
+	private Map<String, Long> probe(final List<String> urls) {
+		final ExecutorService executor = Executors.newFixedThreadPool(urls.size());
+		try {
+			final List<Future<Long>> futures = new ArrayList<Future<Long>>(urls.size());
+			for (final String url : urls) {
+				futures.add(executor.submit(new MirrorProbe(url, this.probeTimeoutMillis)));
+			}
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.probeTimeoutMillis);
+			final Map<String, Long> latencies = new HashMap<String, Long>();
+			for (int i = 0; i < urls.size(); i++) {
+				final long latency = awaitProbe(urls.get(i), futures.get(i), deadline);
+				LOGGER.debug("Mirror {} latency: {} ns", urls.get(i), latency == UNREACHABLE ? "unreachable" : latency);
+				latencies.put(urls.get(i), latency);
+			}
+			return latencies;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static long awaitProbe(final String url, final Future<Long> future, final long deadline) {
+		try {
+			return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return UNREACHABLE;
+		} catch (final ExecutionException e) {
+			LOGGER.info("Mirror {} is unreachable: {}", url, e.getCause().toString());
+			return UNREACHABLE;
+		} catch (final TimeoutException e) {
+			LOGGER.info("Mirror {} did not respond in time", url);
+			return UNREACHABLE;
+		}
+	}
+
+	/**
+	 * Measures the time taken to fetch the start of a resource from a mirror.
+	 */
+	private static class MirrorProbe implements Callable<Long> {
+
+		private final String url;
+
+		private final int timeoutMillis;
+
+		public MirrorProbe(final String url, final int timeoutMillis) {
+			this.url = url;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		@Override
+		public Long call() throws IOException {
+			final long startTime = System.nanoTime();
+			final URLConnection connection = new URL(this.url).openConnection();
+			connection.setConnectTimeout(this.timeoutMillis);
+			connection.setReadTimeout(this.timeoutMillis);
+			connection.setRequestProperty("Range", "bytes=0-" + (PROBE_SIZE - 1));
+			if (connection instanceof HttpURLConnection) {
+				final int responseCode = ((HttpURLConnection) connection).getResponseCode();
+				if (responseCode != HttpURLConnection.HTTP_OK && responseCode != HttpURLConnection.HTTP_PARTIAL) {
+					throw new IOException("Unexpected response code: " + responseCode);
+				}
+			}
+			final InputStream inputStream = connection.getInputStream();
+			try {
+				final byte[] buffer = new byte[PROBE_SIZE];
+				int bytesReceived = 0;
+				int bytesRead;
+				while (bytesReceived < PROBE_SIZE && (bytesRead = inputStream.read(buffer, bytesReceived, PROBE_SIZE - bytesReceived)) != -1) {
+					bytesReceived += bytesRead;
+				}
+			} finally {
+				inputStream.close();
+			}
+			return System.nanoTime() - startTime;
+		}
+
+	}
+
+	private static class Probe {
+
+		private final long latencyNanos;
+
+		private final long probedMillis;
+
+		public Probe(final long latencyNanos, final long probedMillis) {
+			this.latencyNanos = latencyNanos;
+			this.probedMillis = probedMillis;
+		}
+
+		public boolean isCurrent(final long now, final long probeIntervalMillis) {
+			final long ageMillis = now - this.probedMillis;
+			return ageMillis >= 0 && ageMillis < probeIntervalMillis;
+		}
+
+	}
+
+	/**
+	 * A {@link DictionaryResource} with its mirror URLs reordered.
+	 */
+	private static class RankedDictionaryResource implements DictionaryResource {
+
+		private final DictionaryResource resource;
+
+		private final List<String> urls;
+
+		public RankedDictionaryResource(final DictionaryResource resource, final List<String> urls) {
+			this.resource = resource;
+			this.urls = Collections.unmodifiableList(urls);
+		}
+
+		@Override
+		public String getUrl() {
+			return this.urls.get(0);
+		}
+
+		@Override
+		public List<String> getUrls() {
+			return this.urls;
+		}
+
+		@Override
+		public int getSize() {
+			return this.resource.getSize();
+		}
+
+		@Override
+		public String getSha1() {
+			return this.resource.getSha1();
+		}
+
+		@Override
+		public CompressionCodec getCodec() {
+			return this.resource.getCodec();
+		}
+
+		@Override
+		public long getUncompressedSize() {
+			return this.resource.getUncompressedSize();
+		}
+
+		@Override
+		public String getSourceVersion() {
+			return this.resource.getSourceVersion();
+		}
+
+		@Override
+		public List<DictionaryPatchResource> getPatches() {
+			return this.resource.getPatches();
+		}
+
+		@Override
+		public DictionaryResource getCoreTier() {
+			return this.resource.getCoreTier();
+		}
+
+		@Override
+		public DictionaryPatchResource getRemainderTier() {
+			return this.resource.getRemainderTier();
+		}
+
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+/**
+ * A remotely hosted patch that updates a dictionary database built from one
+ * source version to a later source version.
+ * <p>
+ * The {@link #getSourceVersion() source version} of a patch is the source
+ * version it updates to.
+ */
+public interface DictionaryPatchResource extends DictionaryResource {
+
+	/**
+	 * @return the source version of the dictionary database the patch applies
+	 *         to.
+	 */
+	String getFromSourceVersion();
+
+	/**
+	 * @return the source version of the dictionary database the patch
+	 *         produces.
+	 */
+	String getToSourceVersion();
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+class DictionaryPatchResourceImpl extends DictionaryResourceImpl implements DictionaryPatchResource {
+
+	private String fromSourceVersion;
+
+	private String toSourceVersion;
+
+	@Override
+	public String getFromSourceVersion() {
+		return this.fromSourceVersion;
+	}
+
+	public void setFromSourceVersion(final String fromSourceVersion) {
+		this.fromSourceVersion = fromSourceVersion;
+	}
+
+	@Override
+	public String getToSourceVersion() {
+		return this.toSourceVersion;
+	}
+
+	public void setToSourceVersion(final String toSourceVersion) {
+		this.toSourceVersion = toSourceVersion;
+	}
+
+	@Override
+	public String getSourceVersion() {
+		return this.toSourceVersion;
+	}
+
+}
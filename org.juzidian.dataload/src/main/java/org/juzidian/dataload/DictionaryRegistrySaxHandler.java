@@ -34,7 +34,7 @@ final class DictionaryRegistrySaxHandler extends DefaultHandler {
 	private static final DictionaryElementTextHandler DICTIONARY_URL_HANDLER = new DictionaryElementTextHandler() {
 		@Override
 		public void handleText(final DictionaryResourceImpl resource, final String text) {
-			resource.setUrl(text);
+			resource.addUrl(text);
 		}
 	};
 
@@ -52,12 +52,59 @@ final class DictionaryRegistrySaxHandler extends DefaultHandler {
 		}
 	};
 
+	private static DictionaryElementTextHandler DICTIONARY_UNCOMPRESSED_SIZE_HANDLER = new DictionaryElementTextHandler() {
+		@Override
+		public void handleText(final DictionaryResourceImpl resource, final String text) {
+			resource.setUncompressedSize(Long.parseLong(text));
+		}
+	};
+
+	private static DictionaryElementTextHandler DICTIONARY_CODEC_HANDLER = new DictionaryElementTextHandler() {
+		@Override
+		public void handleText(final DictionaryResourceImpl resource, final String text) {
+			resource.setCodec(CompressionCodec.forName(text));
+		}
+	};
+
+	private static DictionaryElementTextHandler DICTIONARY_SOURCE_VERSION_HANDLER = new DictionaryElementTextHandler() {
+		@Override
+		public void handleText(final DictionaryResourceImpl resource, final String text) {
+			resource.setSourceVersion(text);
+		}
+	};
+
+	private static DictionaryElementTextHandler PATCH_FROM_VERSION_HANDLER = new DictionaryElementTextHandler() {
+		@Override
+		public void handleText(final DictionaryResourceImpl resource, final String text) {
+			if (resource instanceof DictionaryPatchResourceImpl) {
+				((DictionaryPatchResourceImpl) resource).setFromSourceVersion(text);
+			}
+		}
+	};
+
+	private static DictionaryElementTextHandler PATCH_TO_VERSION_HANDLER = new DictionaryElementTextHandler() {
+		@Override
+		public void handleText(final DictionaryResourceImpl resource, final String text) {
+			if (resource instanceof DictionaryPatchResourceImpl) {
+				((DictionaryPatchResourceImpl) resource).setToSourceVersion(text);
+			}
+		}
+	};
+
 	private final List<DictionaryResource> dictionaryResources = new ArrayList<DictionaryResource>();
 
 	private DictionaryResourceImpl currentDictionaryResource;
 
+	/**
+	 * the patch or tier being parsed, or <code>null</code> outside their
+	 * elements
+	 */
+	private DictionaryResourceImpl currentNestedResource;
+
 	private DictionaryElementTextHandler currentTextHandler;
 
+	private final StringBuilder currentText = new StringBuilder();
+
 	/**
 	 * @return the {@link DictionaryResourceRegistry} that has been parsed.
 	 */
@@ -70,24 +117,58 @@ final class DictionaryRegistrySaxHandler extends DefaultHandler {
 		if ("dictionary".equals(qName)) {
 			this.currentDictionaryResource = new DictionaryResourceImpl();
 			this.dictionaryResources.add(this.currentDictionaryResource);
+		} else if ("patch".equals(qName)) {
+			final DictionaryPatchResourceImpl patch = new DictionaryPatchResourceImpl();
+			this.currentDictionaryResource.addPatch(patch);
+			this.currentNestedResource = patch;
+		} else if ("coreTier".equals(qName)) {
+			final DictionaryResourceImpl coreTier = new DictionaryResourceImpl();
+			this.currentDictionaryResource.setCoreTier(coreTier);
+			this.currentNestedResource = coreTier;
+		} else if ("remainderTier".equals(qName)) {
+			final DictionaryPatchResourceImpl remainderTier = new DictionaryPatchResourceImpl();
+			this.currentDictionaryResource.setRemainderTier(remainderTier);
+			this.currentNestedResource = remainderTier;
+		} else if ("sourceVersion".equals(qName)) {
+			this.currentTextHandler = DICTIONARY_SOURCE_VERSION_HANDLER;
+		} else if ("fromVersion".equals(qName)) {
+			this.currentTextHandler = PATCH_FROM_VERSION_HANDLER;
+		} else if ("toVersion".equals(qName)) {
+			this.currentTextHandler = PATCH_TO_VERSION_HANDLER;
 		} else if ("url".equals(qName)) {
 			this.currentTextHandler = DICTIONARY_URL_HANDLER;
 		}else if ("size".equals(qName)) {
 			this.currentTextHandler = DICTIONARY_SIZE_HANDLER;
 		}else if ("sha1".equals(qName)) {
 			this.currentTextHandler = DICTIONARY_SHA1_HANDLER;
+		} else if ("uncompressedSize".equals(qName)) {
+			this.currentTextHandler = DICTIONARY_UNCOMPRESSED_SIZE_HANDLER;
+		} else if ("codec".equals(qName)) {
+			this.currentTextHandler = DICTIONARY_CODEC_HANDLER;
 		}
+		this.currentText.setLength(0);
 	}
 
+	/*
+	 * Text is handled at the end of the element because a parser may report
+	 * it in several pieces, and each mirror URL must be added only once.
+	 */
 	@Override
 	public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+		if (this.currentTextHandler != null) {
+			final DictionaryResourceImpl resource = this.currentNestedResource != null ? this.currentNestedResource
+					: this.currentDictionaryResource;
+			this.currentTextHandler.handleText(resource, this.currentText.toString());
+		} else if ("patch".equals(qName) || "coreTier".equals(qName) || "remainderTier".equals(qName)) {
+			this.currentNestedResource = null;
+		}
 		this.currentTextHandler = null;
 	}
 
 	@Override
 	public void characters(final char[] ch, final int start, final int length) throws SAXException {
 		if (this.currentTextHandler != null) {
-			this.currentTextHandler.handleText(this.currentDictionaryResource, new String(ch, start, length));
+			this.currentText.append(ch, start, length);
 		}
 	}
 
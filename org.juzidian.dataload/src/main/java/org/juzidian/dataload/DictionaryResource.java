@@ -18,16 +18,25 @@
  */
 package org.juzidian.dataload;
 
+import java.util.List;
+
 /**
  * A description of remotely hosted dictionary database resource.
  */
 public interface DictionaryResource {
 
 	/**
-	 * @return the URL for downloading the remote dictionary resource.
+	 * @return the URL for downloading the remote dictionary resource from its
+	 *         preferred mirror.
 	 */
 	String getUrl();
 
+	/**
+	 * @return the URLs of every mirror of the remote dictionary resource, in
+	 *         order of preference. The first is the same as {@link #getUrl()}.
+	 */
+	List<String> getUrls();
+
 	/**
 	 * @return the size of the dictionary resource in bytes.
 	 */
@@ -38,4 +47,44 @@ public interface DictionaryResource {
 	 */
 	String getSha1();
 
+	/**
+	 * @return the {@link CompressionCodec} the dictionary resource is
+	 *         compressed with, or <code>null</code> if it is not supported by
+	 *         this client.
+	 */
+	CompressionCodec getCodec();
+
+	/**
+	 * @return the size of the uncompressed dictionary database in bytes, or
+	 *         <code>-1</code> if it is not known.
+	 */
+	long getUncompressedSize();
+
+	/**
+	 * @return the version of the source data the dictionary database was
+	 *         built from, or <code>null</code> if it is not known.
+	 */
+	String getSourceVersion();
+
+	/**
+	 * @return the patches that update a dictionary database built from an
+	 *         earlier source version towards this one.
+	 */
+	List<DictionaryPatchResource> getPatches();
+
+	/**
+	 * @return a smaller dictionary database containing only the core tier of
+	 *         the dictionary, which can be searched while the
+	 *         {@link #getRemainderTier() remainder} is merged in, or
+	 *         <code>null</code> if the dictionary is not tiered.
+	 */
+	DictionaryResource getCoreTier();
+
+	/**
+	 * @return the patch that merges the rest of the dictionary into the
+	 *         {@link #getCoreTier() core tier}, or <code>null</code> if the
+	 *         dictionary is not tiered.
+	 */
+	DictionaryPatchResource getRemainderTier();
+
 }
\ No newline at end of file
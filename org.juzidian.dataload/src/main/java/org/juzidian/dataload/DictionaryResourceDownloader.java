@@ -18,48 +18,681 @@
  */
 package org.juzidian.dataload;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.DigestInputStream;
+import java.net.URLConnection;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.zip.GZIPInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.juzidian.util.HexUtil;
-import org.juzidian.util.IoUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Downloads the actual data referred to by a {@link DictionaryResource}.
+ * <p>
+ * Compressed data is saved to a partial download file as it is received. If
+ * the connection fails, the download is resumed from the end of the partial
+ * file with an HTTP <code>Range</code> request, and an interrupted download
+ * can also be resumed by a later call for the same resource. Servers that do
+ * not honour the range are sent the whole resource again.
+ * <p>
+ * A downloader may be configured to fetch resources in several segments
+ * concurrently. Each segment is a byte range of the resource, written in
+ * place into a file preallocated to the resource size. The received prefix
+ * of the file is passed to the pipeline as it grows, so data is verified and
+ * uncompressed while later segments are still downloading. Segmented
+ * downloads fall back to a single connection if the server does not support
+ * ranges.
+ * <p>
+ * Received data is verified, uncompressed and written by a
+ * {@link DownloadPipeline} while the download is still in progress.
+ * <p>
+ * Resources with several mirrors are fetched from the first mirror URL. Each
+ * failed connection fails over to the next mirror, which resumes from the data
+ * already received, so the number of attempts allowed is multiplied by the
+ * number of mirrors.
+ * <p>
+ * A downloader may be given a {@link DictionaryArtifactCache}. Cached
+ * artifacts are installed without any network access, and downloaded
+ * artifacts are added to the cache once verified. The artifact is locked
+ * while it is downloaded, so concurrent installs of the same artifact wait
+ * for the first download and then install it from the cache.
  */
 public class DictionaryResourceDownloader {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryResourceDownloader.class);
+
+	/**
+	 * The default number of connections made before a download is abandoned.
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+	/**
+	 * The default number of segments fetched concurrently.
+	 */
+	public static final int DEFAULT_SEGMENT_COUNT = 1;
+
+	/**
+	 * Resources are not split into segments smaller than this, as the cost
+	 * of another connection would outweigh the gain.
+	 */
+	static final int MIN_SEGMENT_SIZE = 64 * 1024;
+
+	private static final String PARTIAL_FILE_PREFIX = "juzidian-download-";
+
+	private static final String PARTIAL_FILE_SUFFIX = ".part";
+
+	private static final String SEGMENT_FILE_SUFFIX = ".segments";
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	private static final int SEGMENT_CONNECT_TIMEOUT_MILLIS = 15000;
+
+	private static final int SEGMENT_READ_TIMEOUT_MILLIS = 30000;
+
+	private static final long SEGMENT_POLL_MILLIS = 100;
+
+	private final File partialDownloadDirectory;
+
+	private final int maxAttempts;
+
+	private final int segmentCount;
+
+	private final DictionaryArtifactCache artifactCache;
+
+	public DictionaryResourceDownloader() {
+		this(new File(System.getProperty("java.io.tmpdir")), DEFAULT_MAX_ATTEMPTS);
+	}
+
+	/**
+	 * @param partialDownloadDirectory the directory to keep partial downloads
+	 *        in.
+	 * @param maxAttempts the number of connections to make before a download
+	 *        is abandoned.
+	 */
+	public DictionaryResourceDownloader(final File partialDownloadDirectory, final int maxAttempts) {
+		this(partialDownloadDirectory, maxAttempts, DEFAULT_SEGMENT_COUNT);
+	}
+
+	/**
+	 * @param partialDownloadDirectory the directory to keep partial downloads
+	 *        in.
+	 * @param maxAttempts the number of connections to make for each segment
+	 *        before a download is abandoned.
+	 * @param segmentCount the number of byte ranges of a resource to fetch
+	 *        concurrently.
+	 */
+	public DictionaryResourceDownloader(final File partialDownloadDirectory, final int maxAttempts, final int segmentCount) {
+		this(partialDownloadDirectory, maxAttempts, segmentCount, null);
+	}
+
+	/**
+	 * @param partialDownloadDirectory the directory to keep partial downloads
+	 *        in.
+	 * @param maxAttempts the number of connections to make for each segment
+	 *        before a download is abandoned.
+	 * @param segmentCount the number of byte ranges of a resource to fetch
+	 *        concurrently.
+	 * @param artifactCache the cache to install artifacts from and add
+	 *        downloaded artifacts to, or <code>null</code> for none.
+	 */
+	public DictionaryResourceDownloader(final File partialDownloadDirectory, final int maxAttempts, final int segmentCount,
+			final DictionaryArtifactCache artifactCache) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Invalid maximum attempts: " + maxAttempts);
+		}
+		if (segmentCount < 1) {
+			throw new IllegalArgumentException("Invalid segment count: " + segmentCount);
+		}
+		this.partialDownloadDirectory = partialDownloadDirectory;
+		this.maxAttempts = maxAttempts;
+		this.segmentCount = segmentCount;
+		this.artifactCache = artifactCache;
+	}
+
 	/**
 	 * Download a compressed dictionary resource, verify its SHA1 hash code and
 	 * uncompress it into the given output stream.
+	 * <p>
+	 * If an earlier download of the same resource was interrupted, only the
+	 * remaining data is downloaded. If the resource is in the artifact cache,
+	 * nothing is downloaded.
 	 * 
 	 * @param resource a {@link DictionaryResource} to download.
 	 * @param out the output stream to write the downloaded data to.
 	 * @param handler the {@link DownloadProgressHandler} to receive events for
 	 *        download progress.
+	 * @return {@link DownloadStatistics} for each stage of the download.
 	 * @throws DictionaryResourceDownloaderException if download fails or a hash
 	 *         code does not match.
 	 */
-	public void download(final DictionaryResource resource, final OutputStream out, final DownloadProgressHandler handler) throws DictionaryResourceDownloaderException {
-		final URL url = createUrl(resource);
+	public DownloadStatistics download(final DictionaryResource resource, final OutputStream out, final DownloadProgressHandler handler)
+			throws DictionaryResourceDownloaderException {
+		if (this.artifactCache == null) {
+			return this.downloadFromNetwork(resource, out, handler);
+		}
+		final DictionaryArtifactCache.ArtifactLock lock = this.lockArtifact(resource);
 		try {
-			final int contentLength = url.openConnection().getContentLength();
-			final InputStream rawInputStream = url.openStream();
-			final InputStream progressMonitoringInputStream = new ProgressMonitoringInputStream(rawInputStream, contentLength, handler);
-			final MessageDigest messageDigest = getSha1Digest();
-			final InputStream digestInputStream = new DigestInputStream(progressMonitoringInputStream, messageDigest);
-			final InputStream gzipInputStream = new GZIPInputStream(digestInputStream);
-			IoUtil.copy(gzipInputStream, out);
+			final File cachedFile = this.artifactCache.get(resource.getSha1());
+			if (cachedFile != null) {
+				LOGGER.info("Installing cached artifact {}", resource.getSha1());
+				return this.installCached(resource, cachedFile, out, handler);
+			}
+			return this.downloadFromNetwork(resource, out, handler);
+		} finally {
+			lock.release();
+		}
+	}
+
+	private DictionaryArtifactCache.ArtifactLock lockArtifact(final DictionaryResource resource) throws DictionaryResourceDownloaderException {
+		try {
+			return this.artifactCache.lock(resource.getSha1());
+		} catch (final IOException e) {
+			throw new DictionaryResourceDownloaderException(e);
+		}
+	}
+
+	/*
+	 * A cached artifact that fails to install is removed, so that the next
+	 * attempt downloads it again.
+	 */
+	private DownloadStatistics installCached(final DictionaryResource resource, final File cachedFile, final OutputStream out,
+			final DownloadProgressHandler handler) throws DictionaryResourceDownloaderException {
+		final MessageDigest messageDigest = getSha1Digest();
+		final DownloadStatistics statistics = new DownloadStatistics();
+		statistics.downloadStarted();
+		final DownloadPipeline pipeline = new DownloadPipeline(messageDigest, out, statistics);
+		boolean installed = false;
+		try {
+			pipeline.replay(cachedFile);
+			pipeline.finish();
+			statistics.downloadFinished();
+			handler.handleProgress(resource.getSize(), resource.getSize());
 			this.verifyChecksum(resource, messageDigest.digest());
+			installed = true;
 		} catch (final IOException e) {
+			pipeline.abort();
 			throw new DictionaryResourceDownloaderException(e);
+		} finally {
+			if (!installed) {
+				this.artifactCache.remove(resource.getSha1());
+			}
+		}
+		return statistics;
+	}
+
+	private DownloadStatistics downloadFromNetwork(final DictionaryResource resource, final OutputStream out,
+			final DownloadProgressHandler handler) throws DictionaryResourceDownloaderException {
+		final List<URL> urls = createUrls(resource);
+		final File partialFile = this.getPartialFile(resource);
+		final MessageDigest messageDigest = getSha1Digest();
+		final DownloadStatistics statistics = new DownloadStatistics();
+		statistics.downloadStarted();
+		final DownloadPipeline pipeline = new DownloadPipeline(messageDigest, out, statistics);
+		boolean transferred = false;
+		boolean finished = false;
+		try {
+			if (!this.isSegmentable(urls, resource, partialFile)
+					|| !this.transferSegments(urls, resource, partialFile, pipeline, handler, statistics)) {
+				this.transfer(urls, partialFile, resource.getSize(), pipeline, handler);
+			}
+			transferred = true;
+			pipeline.finish();
+			finished = true;
+		} catch (final IOException e) {
+			pipeline.abort();
+			throw new DictionaryResourceDownloaderException(e);
+		} finally {
+			if (!finished && (transferred || pipeline.hasFailed())) {
+				/* the data is complete or corrupt, so it must not be resumed */
+				deletePartialFile(partialFile);
+			}
+		}
+		statistics.downloadFinished();
+		LOGGER.debug("Download finished: {}", statistics);
+		final byte[] digest = messageDigest.digest();
+		this.storeArtifact(resource, partialFile, digest);
+		this.verifyChecksum(resource, digest);
+		return statistics;
+	}
+
+	/*
+	 * The complete partial file is the artifact itself, so a verified one is
+	 * moved into the cache rather than deleted.
+	 */
+	private void storeArtifact(final DictionaryResource resource, final File partialFile, final byte[] digest) {
+		if (this.artifactCache != null && HexUtil.bytesToHex(digest).equals(resource.getSha1())) {
+			this.artifactCache.put(resource.getSha1(), partialFile);
+		} else {
+			deletePartialFile(partialFile);
+		}
+	}
+
+	/**
+	 * @param resource a {@link DictionaryResource}.
+	 * @return the file that partially downloaded data for the resource is kept
+	 *         in.
+	 */
+	File getPartialFile(final DictionaryResource resource) {
+		return new File(this.partialDownloadDirectory, PARTIAL_FILE_PREFIX + resource.getSha1() + PARTIAL_FILE_SUFFIX);
+	}
+
+	/*
+	 * An existing partial file is resumed over a single connection, since
+	 * segments are not recorded.
+	 */
+	private boolean isSegmentable(final List<URL> urls, final DictionaryResource resource, final File partialFile) {
+		if (this.segmentCount < 2 || resource.getSize() < 2 * MIN_SEGMENT_SIZE || partialFile.exists()) {
+			return false;
+		}
+		for (final URL url : urls) {
+			if (!url.getProtocol().startsWith("http")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Download a resource as concurrent segments into a file preallocated to
+	 * the resource size, then move it to the partial file. Each segment is
+	 * submitted to the pipeline once the segments before it are complete,
+	 * and the first incomplete segment is submitted as it is received.
+	 * 
+	 * @return <code>false</code> if the server does not support ranges, in
+	 *         which case the download must be restarted over a single
+	 *         connection.
+	 */
+	private boolean transferSegments(final List<URL> urls, final DictionaryResource resource, final File partialFile,
+			final DownloadPipeline pipeline, final DownloadProgressHandler handler, final DownloadStatistics statistics) throws IOException {
+		final int size = resource.getSize();
+		final int segmentCount = Math.min(this.segmentCount, size / MIN_SEGMENT_SIZE);
+		final File segmentFile = new File(this.partialDownloadDirectory, PARTIAL_FILE_PREFIX + resource.getSha1() + SEGMENT_FILE_SUFFIX);
+		final RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+		try {
+			file.setLength(size);
+		} finally {
+			file.close();
+		}
+		LOGGER.info("Downloading {} bytes in {} segments", size, segmentCount);
+		final long segmentSize = (size + segmentCount - 1) / segmentCount;
+		final SegmentProgress progress = new SegmentProgress(size, segmentSize, handler);
+		final ExecutorService executor = Executors.newFixedThreadPool(segmentCount);
+		final long startTime = System.nanoTime();
+		long replayNanos = 0;
+		boolean complete = false;
+		try {
+			final List<Future<Void>> segments = new ArrayList<Future<Void>>(segmentCount);
+			for (long start = 0; start < size; start += segmentSize) {
+				final long end = Math.min(start + segmentSize, size) - 1;
+				segments.add(executor.submit(new SegmentTransfer(urls, segmentFile, segments.size(), start, end, progress)));
+			}
+			long replayed = 0;
+			while (replayed < size) {
+				final long received = progress.awaitContiguousBytes(replayed);
+				checkFailedSegments(segments);
+				final long replayStartTime = System.nanoTime();
+				pipeline.replay(segmentFile, received);
+				replayNanos += System.nanoTime() - replayStartTime;
+				replayed = received;
+			}
+			for (final Future<Void> segment : segments) {
+				awaitSegment(segment);
+			}
+			complete = true;
+			statistics.networkStageFinished(System.nanoTime() - startTime - replayNanos);
+		} catch (final RangeNotSupportedException e) {
+			LOGGER.info("Server does not support ranges; downloading over a single connection");
+			return false;
+		} finally {
+			executor.shutdownNow();
+			if (!complete) {
+				/* cancelled segments must stop writing before the file is deleted */
+				awaitTermination(executor);
+				deletePartialFile(segmentFile);
+			}
+		}
+		if (!segmentFile.renameTo(partialFile)) {
+			deletePartialFile(segmentFile);
+			throw new IOException("Failed to move " + segmentFile + " to " + partialFile);
+		}
+		return true;
+	}
+
+	/*
+	 * Segment threads blocked on a read do not respond to interruption, but
+	 * give up within the read timeout.
+	 */
+	private static void awaitTermination(final ExecutorService executor) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					if (executor.awaitTermination(SEGMENT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+					LOGGER.warn("Still waiting for cancelled segments to stop");
+				} catch (final InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static void checkFailedSegments(final List<Future<Void>> segments) throws IOException {
+		for (final Future<Void> segment : segments) {
+			if (segment.isDone()) {
+				awaitSegment(segment);
+			}
+		}
+	}
+
+	private static void awaitSegment(final Future<Void> segment) throws IOException {
+		try {
+			segment.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while downloading segment");
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void transfer(final List<URL> urls, final File partialFile, final int resourceSize, final DownloadPipeline pipeline,
+			final DownloadProgressHandler handler) throws IOException {
+		int mirror = 0;
+		for (int attempt = 1;; attempt++) {
+			try {
+				this.transferRemaining(urls.get(mirror), partialFile, resourceSize, pipeline, handler);
+				return;
+			} catch (final DownloadPipeline.StageFailedException e) {
+				throw e;
+			} catch (final IOException e) {
+				if (attempt >= this.maxAttempts * urls.size() || Thread.currentThread().isInterrupted()) {
+					throw e;
+				}
+				LOGGER.warn("Download attempt {} failed with {} bytes received: {}", new Object[] { attempt, partialFile.length(), e.toString() });
+				mirror = nextMirror(urls, mirror);
+			}
+		}
+	}
+
+	private static int nextMirror(final List<URL> urls, final int mirror) {
+		final int next = (mirror + 1) % urls.size();
+		if (next != mirror) {
+			LOGGER.info("Failing over to mirror {}", urls.get(next));
+		}
+		return next;
+	}
+
+	/*
+	 * Data saved by an earlier call is replayed through the pipeline only once
+	 * the server has agreed to resume from the end of it.
+	 */
+	private void transferRemaining(final URL url, final File partialFile, final int resourceSize, final DownloadPipeline pipeline,
+			final DownloadProgressHandler handler) throws IOException {
+		final long offset = partialFile.length();
+		final URLConnection connection = url.openConnection();
+		if (offset > 0) {
+			connection.setRequestProperty("Range", "bytes=" + offset + "-");
+		}
+		final boolean resumed = offset > 0 && isResumed(connection, offset, partialFile);
+		if (resumed) {
+			pipeline.replay(partialFile);
+		}
+		final long startOffset = resumed ? offset : 0;
+		final int contentLength = connection.getContentLength();
+		final int totalLength = contentLength < 0 ? resourceSize : (int) startOffset + contentLength;
+		final InputStream inputStream = new ProgressMonitoringInputStream(connection.getInputStream(), totalLength, (int) startOffset, handler);
+		pipeline.openPartialFile(partialFile, resumed);
+		long bytesReceived = 0;
+		try {
+			int bytesRead;
+			while ((bytesRead = pipeline.receive(inputStream)) != -1) {
+				bytesReceived += bytesRead;
+			}
+		} finally {
+			try {
+				inputStream.close();
+			} finally {
+				pipeline.closePartialFile();
+			}
+		}
+		if (contentLength >= 0 && bytesReceived < contentLength) {
+			throw new IOException("Connection closed after " + bytesReceived + " of " + contentLength + " bytes");
+		}
+	}
+
+	/*
+	 * Only a partial content response starting at the requested offset can be
+	 * appended to the partial file. A server that ignores the range sends the
+	 * whole resource instead, which replaces the partial file.
+	 */
+	private static boolean isResumed(final URLConnection connection, final long offset, final File partialFile) throws IOException {
+		if (!(connection instanceof HttpURLConnection)) {
+			return false;
+		}
+		final int responseCode = ((HttpURLConnection) connection).getResponseCode();
+		if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+			final String contentRange = connection.getHeaderField("Content-Range");
+			if (contentRange == null || !contentRange.startsWith("bytes " + offset + "-")) {
+				deletePartialFile(partialFile);
+				throw new IOException("Unexpected content range for offset " + offset + ": " + contentRange);
+			}
+			return true;
+		}
+		if (responseCode == HTTP_RANGE_NOT_SATISFIABLE) {
+			/* the partial file is not a prefix of the resource */
+			deletePartialFile(partialFile);
+			throw new IOException("Range not satisfiable from offset " + offset);
+		}
+		LOGGER.info("Server ignored range request; restarting download");
+		return false;
+	}
+
+	/**
+	 * Fetches one byte range of a resource and writes it in place, resuming
+	 * from the last byte written if the connection fails.
+	 */
+	private class SegmentTransfer implements Callable<Void> {
+
+		private final List<URL> urls;
+
+		private final File segmentFile;
+
+		private final int segment;
+
+		private final long end;
+
+		private final SegmentProgress progress;
+
+		private long position;
+
+		private int mirror;
+
+		public SegmentTransfer(final List<URL> urls, final File segmentFile, final int segment, final long start, final long end,
+				final SegmentProgress progress) {
+			this.urls = urls;
+			this.segmentFile = segmentFile;
+			this.segment = segment;
+			this.position = start;
+			this.end = end;
+			this.progress = progress;
+		}
+
+		@Override
+		public Void call() throws IOException {
+			for (int attempt = 1;; attempt++) {
+				try {
+					this.transferRemaining();
+					return null;
+				} catch (final RangeNotSupportedException e) {
+					throw e;
+				} catch (final IOException e) {
+					if (attempt >= DictionaryResourceDownloader.this.maxAttempts * this.urls.size() || Thread.currentThread().isInterrupted()) {
+						throw e;
+					}
+					LOGGER.warn("Download attempt {} of segment ending at {} failed at {}: {}", new Object[] { attempt, this.end, this.position,
+							e.toString() });
+					this.mirror = nextMirror(this.urls, this.mirror);
+				}
+			}
+		}
+
+		private void transferRemaining() throws IOException {
+			final HttpURLConnection connection = (HttpURLConnection) this.urls.get(this.mirror).openConnection();
+			connection.setConnectTimeout(SEGMENT_CONNECT_TIMEOUT_MILLIS);
+			connection.setReadTimeout(SEGMENT_READ_TIMEOUT_MILLIS);
+			connection.setRequestProperty("Range", "bytes=" + this.position + "-" + this.end);
+			final int responseCode = connection.getResponseCode();
+			if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+				connection.disconnect();
+				if (responseCode == HttpURLConnection.HTTP_OK) {
+					throw new RangeNotSupportedException();
+				}
+				/* retried like a dropped connection, keeping the other segments */
+				throw new IOException("Unexpected response " + responseCode + " for segment at " + this.position);
+			}
+			final String contentRange = connection.getHeaderField("Content-Range");
+			if (contentRange == null || !contentRange.startsWith("bytes " + this.position + "-")) {
+				throw new IOException("Unexpected content range for offset " + this.position + ": " + contentRange);
+			}
+			final InputStream inputStream = connection.getInputStream();
+			if (Thread.currentThread().isInterrupted()) {
+				/* opening the file after the download is abandoned would recreate it */
+				inputStream.close();
+				throw new InterruptedIOException("Segment at " + this.position + " cancelled");
+			}
+			final RandomAccessFile file = new RandomAccessFile(this.segmentFile, "rw");
+			try {
+				file.seek(this.position);
+				final byte[] buffer = new byte[BUFFER_SIZE];
+				int bytesRead;
+				while (this.position <= this.end && (bytesRead = inputStream.read(buffer)) != -1) {
+					if (Thread.currentThread().isInterrupted()) {
+						throw new InterruptedIOException("Segment at " + this.position + " cancelled");
+					}
+					final int bytesInRange = (int) Math.min(bytesRead, this.end + 1 - this.position);
+					file.write(buffer, 0, bytesInRange);
+					this.position += bytesInRange;
+					this.progress.bytesReceived(this.segment, bytesInRange);
+				}
+			} finally {
+				try {
+					inputStream.close();
+				} finally {
+					file.close();
+				}
+			}
+			if (this.position <= this.end) {
+				throw new IOException("Connection closed at " + this.position + " before end of segment at " + this.end);
+			}
+		}
+
+	}
+
+	/**
+	 * Aggregates the progress of concurrent segments for a single
+	 * {@link DownloadProgressHandler}, and tracks how much of the start of the
+	 * resource has been received.
+	 */
+	private static class SegmentProgress {
+
+		private final int contentLength;
+
+		private final long segmentSize;
+
+		private final DownloadProgressHandler handler;
+
+		private final long[] segmentBytesReceived;
+
+		private int bytesReceived;
+
+		public SegmentProgress(final int contentLength, final long segmentSize, final DownloadProgressHandler handler) {
+			this.contentLength = contentLength;
+			this.segmentSize = segmentSize;
+			this.handler = handler;
+			this.segmentBytesReceived = new long[(int) ((contentLength + segmentSize - 1) / segmentSize)];
+		}
+
+		public synchronized void bytesReceived(final int segment, final int bytes) {
+			this.segmentBytesReceived[segment] += bytes;
+			this.bytesReceived += bytes;
+			this.handler.handleProgress(this.contentLength, this.bytesReceived);
+			this.notifyAll();
+		}
+
+		/**
+		 * Wait briefly for more than the given number of bytes at the start of
+		 * the resource to be received. Waiting is bounded so that the caller
+		 * can check for failed segments.
+		 * 
+		 * @return the number of bytes at the start of the resource that have
+		 *         been received.
+		 */
+		public synchronized long awaitContiguousBytes(final long bytes) throws InterruptedIOException {
+			try {
+				if (this.getContiguousBytes() <= bytes) {
+					this.wait(SEGMENT_POLL_MILLIS);
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while downloading segments");
+			}
+			return this.getContiguousBytes();
+		}
+
+		private long getContiguousBytes() {
+			long contiguousBytes = 0;
+			for (final long segmentBytes : this.segmentBytesReceived) {
+				contiguousBytes += segmentBytes;
+				if (segmentBytes < this.segmentSize) {
+					break;
+				}
+			}
+			return Math.min(contiguousBytes, this.contentLength);
+		}
+
+	}
+
+	/**
+	 * Indicates that a server responded to a range request with the complete
+	 * resource.
+	 */
+	private static class RangeNotSupportedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+	private static void deletePartialFile(final File partialFile) {
+		if (partialFile.exists() && !partialFile.delete()) {
+			LOGGER.warn("Failed to delete partial download: {}", partialFile);
 		}
 	}
 
@@ -78,12 +711,19 @@ public class DictionaryResourceDownloader {
 		}
 	}
 
-	private static URL createUrl(final DictionaryResource resource) throws DictionaryResourceDownloaderException {
+	private static List<URL> createUrls(final DictionaryResource resource) throws DictionaryResourceDownloaderException {
+		final List<URL> urls = new ArrayList<URL>();
 		try {
-			return new URL(resource.getUrl());
+			for (final String url : resource.getUrls()) {
+				urls.add(new URL(url));
+			}
 		} catch (final MalformedURLException e) {
 			throw new DictionaryResourceDownloaderException(e);
 		}
+		if (urls.isEmpty()) {
+			throw new DictionaryResourceDownloaderException("Dictionary resource has no URL");
+		}
+		return urls;
 	}
 
 }
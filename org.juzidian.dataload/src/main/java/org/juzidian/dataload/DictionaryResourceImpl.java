@@ -18,21 +18,42 @@
  */
 package org.juzidian.dataload;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 class DictionaryResourceImpl implements DictionaryResource {
 
-	private String url;
+	private final List<String> urls = new ArrayList<String>();
 
 	private int size;
 
 	private String sha1;
 
+	private CompressionCodec codec = CompressionCodec.GZIP;
+
+	private long uncompressedSize = -1;
+
+	private String sourceVersion;
+
+	private final List<DictionaryPatchResource> patches = new ArrayList<DictionaryPatchResource>();
+
+	private DictionaryResource coreTier;
+
+	private DictionaryPatchResource remainderTier;
+
 	@Override
 	public String getUrl() {
-		return this.url;
+		return this.urls.isEmpty() ? null : this.urls.get(0);
+	}
+
+	@Override
+	public List<String> getUrls() {
+		return Collections.unmodifiableList(this.urls);
 	}
 
-	public void setUrl(final String url) {
-		this.url = url;
+	public void addUrl(final String url) {
+		this.urls.add(url);
 	}
 
 	@Override
@@ -53,4 +74,58 @@ class DictionaryResourceImpl implements DictionaryResource {
 		this.sha1 = sha1;
 	}
 
+	@Override
+	public CompressionCodec getCodec() {
+		return this.codec;
+	}
+
+	public void setCodec(final CompressionCodec codec) {
+		this.codec = codec;
+	}
+
+	@Override
+	public long getUncompressedSize() {
+		return this.uncompressedSize;
+	}
+
+	public void setUncompressedSize(final long uncompressedSize) {
+		this.uncompressedSize = uncompressedSize;
+	}
+
+	@Override
+	public String getSourceVersion() {
+		return this.sourceVersion;
+	}
+
+	public void setSourceVersion(final String sourceVersion) {
+		this.sourceVersion = sourceVersion;
+	}
+
+	@Override
+	public List<DictionaryPatchResource> getPatches() {
+		return Collections.unmodifiableList(this.patches);
+	}
+
+	public void addPatch(final DictionaryPatchResource patch) {
+		this.patches.add(patch);
+	}
+
+	@Override
+	public DictionaryResource getCoreTier() {
+		return this.coreTier;
+	}
+
+	public void setCoreTier(final DictionaryResource coreTier) {
+		this.coreTier = coreTier;
+	}
+
+	@Override
+	public DictionaryPatchResource getRemainderTier() {
+		return this.remainderTier;
+	}
+
+	public void setRemainderTier(final DictionaryPatchResource remainderTier) {
+		this.remainderTier = remainderTier;
+	}
+
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import javax.inject.Inject;
+
+import org.juzidian.util.AtomicFileOutputStream;
+import org.juzidian.util.IoUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An on-disk cache of dictionary registry documents, one per data format
+ * version.
+ * <p>
+ * Each document is kept with the <code>ETag</code> and
+ * <code>Last-Modified</code> validators it was served with, so that it can be
+ * revalidated with a conditional request once it is older than the cache
+ * time-to-live.
+ */
+public class DictionaryResourceRegistryCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryResourceRegistryCache.class);
+
+	private static final String ETAG = "etag";
+
+	private static final String LAST_MODIFIED = "lastModified";
+
+	private static final String FETCHED_MILLIS = "fetchedMillis";
+
+	private final File directory;
+
+	private final long timeToLiveMillis;
+
+	/**
+	 * @param directory the directory to keep cached registries in.
+	 * @param timeToLiveMillis the number of milliseconds after it was last
+	 *        fetched or revalidated that a cached registry is used without
+	 *        revalidating it.
+	 */
+	@Inject
+	public DictionaryResourceRegistryCache(@DictionaryRegistryCacheDirectory final File directory,
+			@DictionaryRegistryCacheTtl final long timeToLiveMillis) {
+		this.directory = directory;
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+
+	/**
+	 * @param dataFormatVersion a dictionary data format version.
+	 * @return the cached registry for the version, or <code>null</code> if
+	 *         there is none.
+	 */
+	public Entry get(final int dataFormatVersion) {
+		final File documentFile = this.getDocumentFile(dataFormatVersion);
+		final File metadataFile = this.getMetadataFile(dataFormatVersion);
+		if (!documentFile.isFile() || !metadataFile.isFile()) {
+			return null;
+		}
+		try {
+			final Properties metadata = new Properties();
+			final InputStream metadataInputStream = new FileInputStream(metadataFile);
+			try {
+				metadata.load(metadataInputStream);
+			} finally {
+				metadataInputStream.close();
+			}
+			final ByteArrayOutputStream document = new ByteArrayOutputStream();
+			IoUtil.copy(new FileInputStream(documentFile), document);
+			final long fetchedMillis = Long.parseLong(metadata.getProperty(FETCHED_MILLIS, "0"));
+			return new Entry(document.toByteArray(), metadata.getProperty(ETAG), metadata.getProperty(LAST_MODIFIED), fetchedMillis);
+		} catch (final IOException e) {
+			LOGGER.warn("Failed to read cached resource registry: {}", e.toString());
+			return null;
+		} catch (final NumberFormatException e) {
+			LOGGER.warn("Invalid cached resource registry metadata: {}", metadataFile);
+			return null;
+		}
+	}
+
+	/**
+	 * Cache a newly fetched registry document. Failing to write the cache is
+	 * logged rather than thrown, as the registry itself was fetched
+	 * successfully.
+	 *
+	 * @param dataFormatVersion the data format version of the registry.
+	 * @param document the registry document.
+	 * @param etag the <code>ETag</code> the document was served with, or
+	 *        <code>null</code>.
+	 * @param lastModified the <code>Last-Modified</code> date the document was
+	 *        served with, or <code>null</code>.
+	 */
+	public void put(final int dataFormatVersion, final byte[] document, final String etag, final String lastModified) {
+		try {
+			this.write(this.getDocumentFile(dataFormatVersion), document);
+			this.writeMetadata(dataFormatVersion, etag, lastModified);
+		} catch (final IOException e) {
+			LOGGER.warn("Failed to cache resource registry: {}", e.toString());
+		}
+	}
+
+	/**
+	 * Record that a cached registry was confirmed to be current, restarting its
+	 * time-to-live.
+	 *
+	 * @param dataFormatVersion the data format version of the registry.
+	 * @param entry the entry that was revalidated.
+	 */
+	public void revalidated(final int dataFormatVersion, final Entry entry) {
+		try {
+			this.writeMetadata(dataFormatVersion, entry.getEtag(), entry.getLastModified());
+		} catch (final IOException e) {
+			LOGGER.warn("Failed to update cached resource registry: {}", e.toString());
+		}
+	}
+
+	/**
+	 * @param entry a cached registry.
+	 * @return <code>true</code> if the entry may be used without revalidating
+	 *         it.
+	 */
+	public boolean isFresh(final Entry entry) {
+		final long ageMillis = System.currentTimeMillis() - entry.getFetchedMillis();
+		return ageMillis >= 0 && ageMillis < this.timeToLiveMillis;
+	}
+
+	private void writeMetadata(final int dataFormatVersion, final String etag, final String lastModified) throws IOException {
+		final Properties metadata = new Properties();
+		if (etag != null) {
+			metadata.setProperty(ETAG, etag);
+		}
+		if (lastModified != null) {
+			metadata.setProperty(LAST_MODIFIED, lastModified);
+		}
+		metadata.setProperty(FETCHED_MILLIS, Long.toString(System.currentTimeMillis()));
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		metadata.store(baos, null);
+		this.write(this.getMetadataFile(dataFormatVersion), baos.toByteArray());
+	}
+
+	private void write(final File file, final byte[] data) throws IOException {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Failed to create directory: " + this.directory);
+		}
+		final AtomicFileOutputStream outputStream = new AtomicFileOutputStream(file);
+		try {
+			outputStream.write(data);
+			outputStream.commit();
+		} finally {
+			outputStream.discard();
+		}
+	}
+
+	private File getDocumentFile(final int dataFormatVersion) {
+		return new File(this.directory, "registry-v" + dataFormatVersion + ".xml");
+	}
+
+	private File getMetadataFile(final int dataFormatVersion) {
+		return new File(this.directory, "registry-v" + dataFormatVersion + ".properties");
+	}
+
+	/**
+	 * A cached registry document and its validators.
+	 */
+	public static class Entry {
+
+		private final byte[] document;
+
+		private final String etag;
+
+		private final String lastModified;
+
+		private final long fetchedMillis;
+
+		Entry(final byte[] document, final String etag, final String lastModified, final long fetchedMillis) {
+			this.document = document;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.fetchedMillis = fetchedMillis;
+		}
+
+		public byte[] getDocument() {
+			return this.document;
+		}
+
+		/**
+		 * @return the <code>ETag</code> of the document, or <code>null</code>.
+		 */
+		public String getEtag() {
+			return this.etag;
+		}
+
+		/**
+		 * @return the <code>Last-Modified</code> date of the document, or
+		 *         <code>null</code>.
+		 */
+		public String getLastModified() {
+			return this.lastModified;
+		}
+
+		/**
+		 * @return the time the document was last fetched or revalidated, in
+		 *         milliseconds since the epoch.
+		 */
+		public long getFetchedMillis() {
+			return this.fetchedMillis;
+		}
+
+	}
+
+}
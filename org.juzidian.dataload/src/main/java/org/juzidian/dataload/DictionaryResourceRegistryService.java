@@ -18,16 +18,26 @@
  */
 package org.juzidian.dataload;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 
 import javax.inject.Inject;
 
+import org.juzidian.util.IoUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A service client for retrieving a remote {@link DictionaryResourceRegistry}.
+ * <p>
+ * When constructed with a {@link DictionaryResourceRegistryCache}, registries
+ * are cached on disk: a fresh cached registry is used without a request, a
+ * stale one is revalidated with a conditional GET, and the cached registry is
+ * used if the service can not be reached.
  */
 public class DictionaryResourceRegistryService {
 
@@ -37,11 +47,21 @@ public class DictionaryResourceRegistryService {
 
 	private final DictionaryResourceRegistryDeserializer deserializer;
 
+	private final DictionaryResourceRegistryCache cache;
+
+	/**
+	 * Create a service client that fetches the registry on every request.
+	 */
+	public DictionaryResourceRegistryService(final URL serviceEndPointUrl, final DictionaryResourceRegistryDeserializer deserializer) {
+		this(serviceEndPointUrl, deserializer, null);
+	}
+
 	@Inject
 	public DictionaryResourceRegistryService(@DictionaryServiceUrl final URL serviceEndPointUrl,
-			final DictionaryResourceRegistryDeserializer deserializer) {
+			final DictionaryResourceRegistryDeserializer deserializer, final DictionaryResourceRegistryCache cache) {
 		this.serviceEndPointUrl = serviceEndPointUrl;
 		this.deserializer = deserializer;
+		this.cache = cache;
 	}
 
 	/**
@@ -54,15 +74,61 @@ public class DictionaryResourceRegistryService {
 	 *         registry fails.
 	 */
 	public DictionaryResourceRegistry getDictionaryResourceRegistry(final int dataFormatVersion) throws DictonaryResourceRegistryServiceException {
+		final DictionaryResourceRegistryCache.Entry cachedEntry = this.cache == null ? null : this.cache.get(dataFormatVersion);
+		final DictionaryResourceRegistry cachedRegistry = cachedEntry == null ? null : this.deserializeCached(cachedEntry);
+		if (cachedRegistry != null && this.cache.isFresh(cachedEntry)) {
+			LOGGER.debug("Using cached resource registry for version {}", dataFormatVersion);
+			return cachedRegistry;
+		}
 		try {
 			final URL url = new URL(this.serviceEndPointUrl, "v" + dataFormatVersion + "/registry.xml");
 			LOGGER.debug("Getting resource registry: {}", url);
-			return this.deserializer.deserialize(url.openStream());
+			final URLConnection connection = url.openConnection();
+			if (cachedRegistry != null) {
+				setValidators(connection, cachedEntry);
+				if (connection instanceof HttpURLConnection
+						&& ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					LOGGER.debug("Cached resource registry for version {} is current", dataFormatVersion);
+					((HttpURLConnection) connection).disconnect();
+					this.cache.revalidated(dataFormatVersion, cachedEntry);
+					return cachedRegistry;
+				}
+			}
+			final ByteArrayOutputStream document = new ByteArrayOutputStream();
+			IoUtil.copy(connection.getInputStream(), document);
+			final DictionaryResourceRegistry registry = this.deserializer.deserialize(new ByteArrayInputStream(document.toByteArray()));
+			if (this.cache != null) {
+				this.cache.put(dataFormatVersion, document.toByteArray(), connection.getHeaderField("ETag"),
+						connection.getHeaderField("Last-Modified"));
+			}
+			return registry;
 		} catch (final DictionaryResourceRegistryDeserializerException e) {
 			throw new DictonaryResourceRegistryServiceException(e);
 		} catch (final IOException e) {
+			if (cachedRegistry != null) {
+				LOGGER.warn("Failed to refresh resource registry, using cached registry: {}", e.toString());
+				return cachedRegistry;
+			}
 			throw new DictonaryResourceRegistryServiceException(e);
 		}
 	}
 
+	private static void setValidators(final URLConnection connection, final DictionaryResourceRegistryCache.Entry cachedEntry) {
+		if (cachedEntry.getEtag() != null) {
+			connection.setRequestProperty("If-None-Match", cachedEntry.getEtag());
+		}
+		if (cachedEntry.getLastModified() != null) {
+			connection.setRequestProperty("If-Modified-Since", cachedEntry.getLastModified());
+		}
+	}
+
+	private DictionaryResourceRegistry deserializeCached(final DictionaryResourceRegistryCache.Entry cachedEntry) {
+		try {
+			return this.deserializer.deserialize(new ByteArrayInputStream(cachedEntry.getDocument()));
+		} catch (final DictionaryResourceRegistryDeserializerException e) {
+			LOGGER.warn("Ignoring invalid cached resource registry", e);
+			return null;
+		}
+	}
+
 }
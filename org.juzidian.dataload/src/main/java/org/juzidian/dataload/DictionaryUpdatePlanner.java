@@ -0,0 +1,142 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses between updating an existing dictionary database with patches and
+ * downloading the full {@link DictionaryResource}.
+ * <p>
+ * Patches form a graph between source versions. The chain of patches with
+ * the smallest total download size is found and is only used if it is
+ * smaller than the full dictionary resource. The remainder tier of a tiered
+ * dictionary is a patch from its core tier, so a database holding only the
+ * core tier is completed by it.
+ */
+public class DictionaryUpdatePlanner {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryUpdatePlanner.class);
+
+	/**
+	 * @param sourceVersion the source version of the existing dictionary
+	 *        database, or <code>null</code> if it is not known.
+	 * @param resource the latest available {@link DictionaryResource}.
+	 * @return the patches to apply in order, which is empty if the database is
+	 *         already up to date or the resource does not advertise its
+	 *         source version, or <code>null</code> if the full resource should
+	 *         be downloaded instead.
+	 */
+	public List<DictionaryPatchResource> plan(final String sourceVersion, final DictionaryResource resource) {
+		final String targetVersion = resource.getSourceVersion();
+		if (targetVersion == null || targetVersion.equals(sourceVersion)) {
+			return Collections.emptyList();
+		}
+		if (sourceVersion == null) {
+			return null;
+		}
+		final List<DictionaryPatchResource> patches = new ArrayList<DictionaryPatchResource>(resource.getPatches());
+		if (resource.getRemainderTier() != null) {
+			patches.add(resource.getRemainderTier());
+		}
+		final List<DictionaryPatchResource> chain = this.findCheapestChain(sourceVersion, targetVersion, patches);
+		if (chain == null) {
+			LOGGER.debug("No patches lead from source version {} to {}", sourceVersion, targetVersion);
+			return null;
+		}
+		final long chainSize = getTotalSize(chain);
+		if (chainSize >= resource.getSize()) {
+			LOGGER.debug("Patches from source version {} total {} bytes, full download is {} bytes", new Object[] { sourceVersion,
+					chainSize, resource.getSize() });
+			return null;
+		}
+		LOGGER.info("Updating from source version {} with {} patches totalling {} bytes", new Object[] { sourceVersion, chain.size(),
+				chainSize });
+		return chain;
+	}
+
+	/*
+	 * Dijkstra's algorithm weighted by patch size; registries list few enough
+	 * versions that a linear scan for the nearest version is sufficient.
+	 */
+	private List<DictionaryPatchResource> findCheapestChain(final String sourceVersion, final String targetVersion,
+			final List<DictionaryPatchResource> patches) {
+		final Map<String, Long> costs = new HashMap<String, Long>();
+		final Map<String, DictionaryPatchResource> previousPatches = new HashMap<String, DictionaryPatchResource>();
+		final Set<String> visited = new HashSet<String>();
+		costs.put(sourceVersion, 0L);
+		String version;
+		while ((version = findNearestUnvisited(costs, visited)) != null) {
+			if (version.equals(targetVersion)) {
+				break;
+			}
+			visited.add(version);
+			final long cost = costs.get(version);
+			for (final DictionaryPatchResource patch : patches) {
+				if (!version.equals(patch.getFromSourceVersion()) || patch.getToSourceVersion() == null || patch.getCodec() == null) {
+					continue;
+				}
+				final Long previousCost = costs.get(patch.getToSourceVersion());
+				if (previousCost == null || cost + patch.getSize() < previousCost) {
+					costs.put(patch.getToSourceVersion(), cost + patch.getSize());
+					previousPatches.put(patch.getToSourceVersion(), patch);
+				}
+			}
+		}
+		if (!costs.containsKey(targetVersion)) {
+			return null;
+		}
+		final List<DictionaryPatchResource> chain = new ArrayList<DictionaryPatchResource>();
+		for (String chainVersion = targetVersion; !chainVersion.equals(sourceVersion);) {
+			final DictionaryPatchResource patch = previousPatches.get(chainVersion);
+			chain.add(patch);
+			chainVersion = patch.getFromSourceVersion();
+		}
+		Collections.reverse(chain);
+		return chain;
+	}
+
+	private static String findNearestUnvisited(final Map<String, Long> costs, final Set<String> visited) {
+		String nearest = null;
+		for (final Map.Entry<String, Long> cost : costs.entrySet()) {
+			if (!visited.contains(cost.getKey()) && (nearest == null || cost.getValue() < costs.get(nearest))) {
+				nearest = cost.getKey();
+			}
+		}
+		return nearest;
+	}
+
+	private static long getTotalSize(final List<DictionaryPatchResource> patches) {
+		long size = 0;
+		for (final DictionaryPatchResource patch : patches) {
+			size += patch.getSize();
+		}
+		return size;
+	}
+
+}
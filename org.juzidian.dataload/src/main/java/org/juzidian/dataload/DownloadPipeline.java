@@ -0,0 +1,670 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves downloaded data through a pipeline of concurrent stages, so that a
+ * slow stage does not stall the others:
+ * <ol>
+ * <li>network: the calling thread reads compressed data into pooled buffers
+ * and {@link #receive(InputStream) submits} them;</li>
+ * <li>verify: compressed data is digested and appended to the partial
+ * download file;</li>
+ * <li>inflate: compressed data is uncompressed into a second pool of
+ * buffers, using the {@link CompressionCodec} detected from its first
+ * bytes;</li>
+ * <li>write: uncompressed data is written to the output stream, which is
+ * closed once the pipeline finishes or fails.</li>
+ * </ol>
+ * Each pool holds a fixed number of buffers, so a stage that falls behind
+ * blocks the stages feeding it rather than letting data pile up in memory.
+ * <p>
+ * A stage failure aborts the other stages and is thrown to the network stage
+ * as a {@link StageFailedException} the next time it submits data.
+ * <p>
+ * A restarted download sends bytes that have already been inflated again.
+ * The inflate stage skips them, so the output is not written twice; if the
+ * resent bytes differ, the checksum of the download will not match.
+ */
+class DownloadPipeline {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DownloadPipeline.class);
+
+	static final int BUFFER_SIZE = 16 * 1024;
+
+	static final int BUFFER_COUNT = 16;
+
+	private static final long POLL_MILLIS = 100;
+
+	private final MessageDigest messageDigest;
+
+	private final OutputStream out;
+
+	private final DownloadStatistics statistics;
+
+	private final BlockingQueue<ByteBuffer> compressedBuffers = createBufferPool();
+
+	private final BlockingQueue<ByteBuffer> inflatedBuffers = createBufferPool();
+
+	private final BlockingQueue<Chunk> verifyQueue = new LinkedBlockingQueue<Chunk>();
+
+	private final BlockingQueue<Chunk> inflateQueue = new LinkedBlockingQueue<Chunk>();
+
+	private final BlockingQueue<Chunk> writeQueue = new LinkedBlockingQueue<Chunk>();
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+	private final List<Future<Void>> stages = new ArrayList<Future<Void>>();
+
+	private volatile boolean aborted;
+
+	private IOException failure;
+
+	private long submittedCount;
+
+	private long verifiedCount;
+
+	/*
+	 * The resource offset of the next byte submitted; only used by the
+	 * network stage.
+	 */
+	private long offset;
+
+	private long networkBusyNanos;
+
+	/**
+	 * Create a pipeline and start its stages.
+	 *
+	 * @param messageDigest the digest to update with compressed data.
+	 * @param out the output stream to write uncompressed data to.
+	 * @param statistics {@link DownloadStatistics} to record the busy time of
+	 *        each stage in.
+	 */
+	public DownloadPipeline(final MessageDigest messageDigest, final OutputStream out, final DownloadStatistics statistics) {
+		this.messageDigest = messageDigest;
+		this.out = out;
+		this.statistics = statistics;
+		this.stages.add(this.executor.submit(new VerifyStage()));
+		this.stages.add(this.executor.submit(new InflateStage()));
+		this.stages.add(this.executor.submit(new WriteStage()));
+	}
+
+	private static BlockingQueue<ByteBuffer> createBufferPool() {
+		final BlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT);
+		for (int i = 0; i < BUFFER_COUNT; i++) {
+			pool.add(ByteBuffer.allocate(BUFFER_SIZE));
+		}
+		return pool;
+	}
+
+	/**
+	 * Start writing received data to the partial download file.
+	 *
+	 * @param partialFile the partial download file.
+	 * @param resumed <code>true</code> to append to the partial file, or
+	 *        <code>false</code> to replace it and restart the digest.
+	 */
+	public void openPartialFile(final File partialFile, final boolean resumed) throws IOException {
+		if (!resumed) {
+			this.offset = 0;
+		}
+		this.submit(Chunk.open(partialFile, resumed));
+	}
+
+	/**
+	 * Close the partial download file once all received data has been
+	 * written to it.
+	 */
+	public void closePartialFile() throws IOException {
+		this.submit(Chunk.CLOSE);
+		this.drain();
+	}
+
+	/**
+	 * Read the next buffer of data from the network and submit it to the
+	 * pipeline.
+	 *
+	 * @param inputStream the stream to read from.
+	 * @return the number of bytes read, or <code>-1</code> at the end of the
+	 *         stream.
+	 */
+	public int receive(final InputStream inputStream) throws IOException {
+		final ByteBuffer buffer = this.acquire();
+		final long startTime = System.nanoTime();
+		final int bytesRead;
+		try {
+			bytesRead = inputStream.read(buffer.array(), 0, buffer.capacity());
+		} catch (final IOException e) {
+			this.compressedBuffers.add(buffer);
+			throw e;
+		}
+		this.networkBusyNanos += System.nanoTime() - startTime;
+		if (bytesRead == -1) {
+			this.compressedBuffers.add(buffer);
+			return -1;
+		}
+		buffer.limit(bytesRead);
+		this.submit(Chunk.data(buffer, this.offset, false));
+		this.offset += bytesRead;
+		return bytesRead;
+	}
+
+	/**
+	 * Submit data already saved in the partial download file that has not yet
+	 * been submitted to the pipeline. The data is verified and inflated, but
+	 * not written to the partial file again.
+	 *
+	 * @param partialFile the partial download file.
+	 */
+	public void replay(final File partialFile) throws IOException {
+		this.replay(partialFile, partialFile.length());
+	}
+
+	/**
+	 * Submit data saved in a file that has not yet been submitted to the
+	 * pipeline, up to the given length. The rest of the file may still be
+	 * being written.
+	 *
+	 * @param partialFile the file holding the data.
+	 * @param length the number of bytes at the start of the file that have
+	 *        been saved.
+	 */
+	public void replay(final File partialFile, final long length) throws IOException {
+		if (this.offset >= length) {
+			return;
+		}
+		LOGGER.debug("Replaying {} bytes of partial download", length - this.offset);
+		final InputStream inputStream = new FileInputStream(partialFile);
+		try {
+			long skipped = 0;
+			while (skipped < this.offset) {
+				skipped += inputStream.skip(this.offset - skipped);
+			}
+			while (this.offset < length) {
+				final ByteBuffer buffer = this.acquire();
+				final int bytesRead = inputStream.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), length - this.offset));
+				if (bytesRead == -1) {
+					this.compressedBuffers.add(buffer);
+					throw new IOException("Partial download truncated at " + this.offset + " bytes");
+				}
+				buffer.limit(bytesRead);
+				this.submit(Chunk.data(buffer, this.offset, true));
+				this.offset += bytesRead;
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Signal the end of the data and wait for all stages to finish.
+	 */
+	public void finish() throws IOException {
+		this.submit(Chunk.END);
+		try {
+			for (final Future<Void> stage : this.stages) {
+				awaitStage(stage);
+			}
+		} finally {
+			this.executor.shutdown();
+		}
+		this.statistics.networkStageFinished(this.networkBusyNanos);
+	}
+
+	private static void awaitStage(final Future<Void> stage) throws IOException {
+		try {
+			stage.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while finishing download");
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Stop all stages without finishing the download.
+	 */
+	public void abort() {
+		this.aborted = true;
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * @return <code>true</code> if a stage failed before the pipeline was
+	 *         aborted.
+	 */
+	public synchronized boolean hasFailed() {
+		return this.failure != null;
+	}
+
+	private ByteBuffer acquire() throws IOException {
+		try {
+			for (;;) {
+				this.checkFailure();
+				final ByteBuffer buffer = this.compressedBuffers.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (buffer != null) {
+					buffer.clear();
+					return buffer;
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a download buffer");
+		}
+	}
+
+	private void submit(final Chunk chunk) throws IOException {
+		this.checkFailure();
+		synchronized (this) {
+			this.submittedCount += 1;
+		}
+		this.verifyQueue.add(chunk);
+	}
+
+	/*
+	 * Wait until the verify stage has processed every submitted chunk, so that
+	 * the partial file is up to date.
+	 */
+	private synchronized void drain() throws IOException {
+		try {
+			while (this.verifiedCount < this.submittedCount) {
+				this.checkFailure();
+				this.wait();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while saving partial download");
+		}
+		this.checkFailure();
+	}
+
+	private synchronized void chunkVerified() {
+		this.verifiedCount += 1;
+		this.notifyAll();
+	}
+
+	private synchronized void checkFailure() throws StageFailedException {
+		if (this.failure != null) {
+			throw new StageFailedException(this.failure);
+		}
+	}
+
+	private void fail(final Exception e) {
+		if (this.aborted) {
+			return;
+		}
+		synchronized (this) {
+			if (this.failure != null) {
+				return;
+			}
+			LOGGER.debug("Download pipeline stage failed", e);
+			this.failure = e instanceof IOException ? (IOException) e : new IOException(e);
+			this.notifyAll();
+		}
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Digests compressed data and appends it to the partial download file.
+	 */
+	private class VerifyStage implements Callable<Void> {
+
+		private OutputStream partialOutput;
+
+		/*
+		 * The resource offset up to which data has been passed on to be
+		 * inflated.
+		 */
+		private long inflatedOffset;
+
+		private long bytesVerified;
+
+		private long busyNanos;
+
+		@Override
+		public Void call() throws Exception {
+			try {
+				for (;;) {
+					final Chunk chunk = DownloadPipeline.this.verifyQueue.take();
+					if (chunk == Chunk.END) {
+						DownloadPipeline.this.inflateQueue.put(chunk);
+						break;
+					}
+					final long startTime = System.nanoTime();
+					this.process(chunk);
+					this.busyNanos += System.nanoTime() - startTime;
+					DownloadPipeline.this.chunkVerified();
+				}
+				DownloadPipeline.this.statistics.verifyStageFinished(this.bytesVerified, this.busyNanos);
+				return null;
+			} catch (final Exception e) {
+				DownloadPipeline.this.fail(e);
+				throw e;
+			} finally {
+				this.closePartialOutput();
+			}
+		}
+
+		private void process(final Chunk chunk) throws IOException, InterruptedException {
+			if (chunk.isOpen()) {
+				if (!chunk.isResumed()) {
+					DownloadPipeline.this.messageDigest.reset();
+					this.bytesVerified = 0;
+				}
+				this.partialOutput = new FileOutputStream(chunk.getFile(), chunk.isResumed());
+			} else if (chunk == Chunk.CLOSE) {
+				this.closePartialOutput();
+			} else {
+				this.verify(chunk);
+			}
+		}
+
+		private void verify(final Chunk chunk) throws IOException, InterruptedException {
+			final ByteBuffer buffer = chunk.getBuffer();
+			if (!chunk.isPersisted()) {
+				this.partialOutput.write(buffer.array(), buffer.position(), buffer.remaining());
+			}
+			DownloadPipeline.this.messageDigest.update(buffer.array(), buffer.position(), buffer.remaining());
+			this.bytesVerified += buffer.remaining();
+			final long endOffset = chunk.getOffset() + buffer.remaining();
+			if (endOffset <= this.inflatedOffset) {
+				DownloadPipeline.this.compressedBuffers.put(buffer);
+				return;
+			}
+			if (chunk.getOffset() < this.inflatedOffset) {
+				buffer.position(buffer.position() + (int) (this.inflatedOffset - chunk.getOffset()));
+			}
+			this.inflatedOffset = endOffset;
+			DownloadPipeline.this.inflateQueue.put(chunk);
+		}
+
+		private void closePartialOutput() throws IOException {
+			if (this.partialOutput != null) {
+				final OutputStream partialOutput = this.partialOutput;
+				this.partialOutput = null;
+				partialOutput.close();
+			}
+		}
+
+	}
+
+	/**
+	 * Inflates compressed data into buffers to be written.
+	 */
+	private class InflateStage implements Callable<Void> {
+
+		private final ChunkInputStream compressedInput = new ChunkInputStream();
+
+		@Override
+		public Void call() throws Exception {
+			try {
+				final long startTime = System.nanoTime();
+				final InputStream inflaterInput = CompressionCodec.detectAndDecompress(this.compressedInput);
+				long busyNanos = System.nanoTime() - startTime;
+				for (;;) {
+					final ByteBuffer buffer = DownloadPipeline.this.inflatedBuffers.take();
+					final long readStartTime = System.nanoTime();
+					final long waitNanos = this.compressedInput.getWaitNanos();
+					final int bytesRead = inflaterInput.read(buffer.array(), 0, buffer.capacity());
+					busyNanos += System.nanoTime() - readStartTime - (this.compressedInput.getWaitNanos() - waitNanos);
+					if (bytesRead == -1) {
+						DownloadPipeline.this.inflatedBuffers.put(buffer);
+						break;
+					}
+					buffer.clear();
+					buffer.limit(bytesRead);
+					DownloadPipeline.this.writeQueue.put(Chunk.data(buffer, 0, false));
+				}
+				this.compressedInput.skipRemaining();
+				DownloadPipeline.this.writeQueue.put(Chunk.END);
+				DownloadPipeline.this.statistics.inflateStageFinished(busyNanos);
+				return null;
+			} catch (final Exception e) {
+				DownloadPipeline.this.fail(e);
+				throw e;
+			}
+		}
+
+	}
+
+	/**
+	 * Presents the chunks queued for the inflate stage as a stream, returning
+	 * each buffer to its pool once it has been read.
+	 */
+	private class ChunkInputStream extends InputStream {
+
+		private ByteBuffer buffer;
+
+		private boolean ended;
+
+		private long waitNanos;
+
+		public long getWaitNanos() {
+			return this.waitNanos;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (!this.nextBuffer()) {
+				return -1;
+			}
+			final int bytesRead = Math.min(len, this.buffer.remaining());
+			this.buffer.get(b, off, bytesRead);
+			return bytesRead;
+		}
+
+		private boolean nextBuffer() throws IOException {
+			while (!this.ended && (this.buffer == null || !this.buffer.hasRemaining())) {
+				this.releaseBuffer();
+				final long startTime = System.nanoTime();
+				final Chunk chunk;
+				try {
+					chunk = DownloadPipeline.this.inflateQueue.take();
+				} catch (final InterruptedException e) {
+					throw new InterruptedIOException("Interrupted while waiting for compressed data");
+				}
+				this.waitNanos += System.nanoTime() - startTime;
+				if (chunk == Chunk.END) {
+					this.ended = true;
+				} else {
+					this.buffer = chunk.getBuffer();
+				}
+			}
+			return !this.ended;
+		}
+
+		/*
+		 * Data after the end of the compressed stream is verified but not
+		 * inflated.
+		 */
+		public void skipRemaining() throws IOException {
+			while (this.nextBuffer()) {
+				this.buffer.position(this.buffer.limit());
+			}
+			this.releaseBuffer();
+		}
+
+		private void releaseBuffer() {
+			if (this.buffer != null) {
+				DownloadPipeline.this.compressedBuffers.add(this.buffer);
+				this.buffer = null;
+			}
+		}
+
+	}
+
+	/**
+	 * Writes uncompressed data to the output stream.
+	 */
+	private class WriteStage implements Callable<Void> {
+
+		@Override
+		public Void call() throws Exception {
+			long bytesWritten = 0;
+			long busyNanos = 0;
+			try {
+				for (;;) {
+					final Chunk chunk = DownloadPipeline.this.writeQueue.take();
+					if (chunk == Chunk.END) {
+						break;
+					}
+					final ByteBuffer buffer = chunk.getBuffer();
+					final long startTime = System.nanoTime();
+					DownloadPipeline.this.out.write(buffer.array(), 0, buffer.limit());
+					busyNanos += System.nanoTime() - startTime;
+					bytesWritten += buffer.limit();
+					DownloadPipeline.this.inflatedBuffers.put(buffer);
+				}
+				final long startTime = System.nanoTime();
+				DownloadPipeline.this.out.close();
+				busyNanos += System.nanoTime() - startTime;
+				DownloadPipeline.this.statistics.writeStageFinished(bytesWritten, busyNanos);
+				return null;
+			} catch (final Exception e) {
+				DownloadPipeline.this.fail(e);
+				closeQuietly(DownloadPipeline.this.out);
+				throw e;
+			}
+		}
+
+	}
+
+	private static void closeQuietly(final OutputStream outputStream) {
+		try {
+			outputStream.close();
+		} catch (final IOException e) {
+			LOGGER.debug("Failed to close download output", e);
+		}
+	}
+
+	/**
+	 * A unit of work passed between stages: a buffer of data or a control
+	 * signal.
+	 */
+	private static class Chunk {
+
+		static final Chunk CLOSE = new Chunk(null, 0, false, null);
+
+		static final Chunk END = new Chunk(null, 0, false, null);
+
+		private final ByteBuffer buffer;
+
+		private final long offset;
+
+		private final boolean flag;
+
+		private final File file;
+
+		private Chunk(final ByteBuffer buffer, final long offset, final boolean flag, final File file) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.flag = flag;
+			this.file = file;
+		}
+
+		static Chunk data(final ByteBuffer buffer, final long offset, final boolean persisted) {
+			return new Chunk(buffer, offset, persisted, null);
+		}
+
+		static Chunk open(final File partialFile, final boolean resumed) {
+			return new Chunk(null, 0, resumed, partialFile);
+		}
+
+		public boolean isOpen() {
+			return this.file != null;
+		}
+
+		public ByteBuffer getBuffer() {
+			return this.buffer;
+		}
+
+		/**
+		 * @return the resource offset of the first byte of data.
+		 */
+		public long getOffset() {
+			return this.offset;
+		}
+
+		/**
+		 * @return <code>true</code> if the data is already saved in the
+		 *         partial file.
+		 */
+		public boolean isPersisted() {
+			return this.flag;
+		}
+
+		public boolean isResumed() {
+			return this.flag;
+		}
+
+		public File getFile() {
+			return this.file;
+		}
+
+	}
+
+	/**
+	 * Thrown to the network stage when another stage has failed. The
+	 * download should not be retried.
+	 */
+	static class StageFailedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public StageFailedException(final IOException cause) {
+			super(cause.getMessage(), cause);
+		}
+
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.util.Properties;
+
+/**
+ * Per-stage measurements of a {@link DictionaryResourceDownloader} download:
+ * receiving compressed data from the network, verifying it, inflating it and
+ * writing the result.
+ * <p>
+ * The stages run concurrently, so the busy time of each stage shows which one
+ * limits the download: a download that keeps up with the network has a
+ * network stage that is busy for most of the total time.
+ */
+public class DownloadStatistics {
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private long startTime;
+
+	private long totalTimeNanos;
+
+	private long compressedBytes;
+
+	private long inflatedBytes;
+
+	private long networkBusyNanos;
+
+	private long verifyBusyNanos;
+
+	private long inflateBusyNanos;
+
+	private long writeBusyNanos;
+
+	void downloadStarted() {
+		this.startTime = System.nanoTime();
+	}
+
+	void downloadFinished() {
+		this.totalTimeNanos = System.nanoTime() - this.startTime;
+	}
+
+	void networkStageFinished(final long busyNanos) {
+		this.networkBusyNanos += busyNanos;
+	}
+
+	void verifyStageFinished(final long compressedBytes, final long busyNanos) {
+		this.compressedBytes = compressedBytes;
+		this.verifyBusyNanos = busyNanos;
+	}
+
+	void inflateStageFinished(final long busyNanos) {
+		this.inflateBusyNanos = busyNanos;
+	}
+
+	void writeStageFinished(final long inflatedBytes, final long busyNanos) {
+		this.inflatedBytes = inflatedBytes;
+		this.writeBusyNanos = busyNanos;
+	}
+
+	/**
+	 * @return the number of compressed bytes verified, including any resumed
+	 *         from an earlier download.
+	 */
+	public long getCompressedBytes() {
+		return this.compressedBytes;
+	}
+
+	/**
+	 * @return the number of uncompressed bytes written.
+	 */
+	public long getInflatedBytes() {
+		return this.inflatedBytes;
+	}
+
+	/**
+	 * @return the time spent reading from the network. For a segmented
+	 *         download this is the time taken to fetch all segments.
+	 */
+	public double getNetworkBusyMillis() {
+		return this.networkBusyNanos / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * @return the time spent digesting compressed data and saving it to the
+	 *         partial download file.
+	 */
+	public double getVerifyBusyMillis() {
+		return this.verifyBusyNanos / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * @return the time spent inflating compressed data.
+	 */
+	public double getInflateBusyMillis() {
+		return this.inflateBusyNanos / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * @return the time spent writing uncompressed data.
+	 */
+	public double getWriteBusyMillis() {
+		return this.writeBusyNanos / NANOS_PER_MILLI;
+	}
+
+	public double getTotalTimeMillis() {
+		return this.totalTimeNanos / NANOS_PER_MILLI;
+	}
+
+	public Properties toProperties() {
+		final Properties properties = new Properties();
+		properties.setProperty("compressed.bytes", Long.toString(this.compressedBytes));
+		properties.setProperty("inflated.bytes", Long.toString(this.inflatedBytes));
+		properties.setProperty("network.busyMillis", formatMillis(this.networkBusyNanos));
+		properties.setProperty("verify.busyMillis", formatMillis(this.verifyBusyNanos));
+		properties.setProperty("inflate.busyMillis", formatMillis(this.inflateBusyNanos));
+		properties.setProperty("write.busyMillis", formatMillis(this.writeBusyNanos));
+		properties.setProperty("total.timeMillis", formatMillis(this.totalTimeNanos));
+		return properties;
+	}
+
+	private static String formatMillis(final long nanos) {
+		return Long.toString(Math.round(nanos / NANOS_PER_MILLI));
+	}
+
+	@Override
+	public String toString() {
+		return "DownloadStatistics " + this.toProperties();
+	}
+
+}
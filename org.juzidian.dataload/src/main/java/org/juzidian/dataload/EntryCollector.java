@@ -26,6 +26,7 @@ import javax.inject.Inject;
 
 import org.juzidian.cedict.CedictEntry;
 import org.juzidian.cedict.CedictLoadHandler;
+import org.juzidian.cedict.CedictLoadStatistics;
 import org.juzidian.core.DictionaryEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,8 +59,8 @@ class EntryCollector implements CedictLoadHandler {
 	}
 
 	@Override
-	public void loadingFinished() {
-		LOGGER.info("Loaded {} entries from CEDict data.", this.entries.size());
+	public void loadingFinished(final CedictLoadStatistics statistics) {
+		LOGGER.info("Loaded {} entries from CEDict data: {}", this.entries.size(), statistics);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.juzidian.core.DictionaryDataStore;
+import org.juzidian.core.DictionaryDataStoreBatchStatistics;
+import org.juzidian.core.DictionaryEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sorts dictionary entries by their {@link DictionaryDataStore#getEntryId(DictionaryEntry) entry id}
+ * using a bounded amount of memory, and adds them to a data store in that
+ * order.
+ * <p>
+ * Entries are buffered until the configured limit is reached, then sorted
+ * and spilled to a temporary run file. Once all entries have been added, the
+ * runs are merged and written to the data store in batches of about the same
+ * limit. Adding entries in key order means the primary key index of the
+ * entry table is built by appending rather than by random inserts. The
+ * secondary indexes, such as those on the characters and flags of entries,
+ * and the reference table are not in key order and are still built by
+ * random inserts.
+ * <p>
+ * Entries with equal keys keep the order in which they were added, and are
+ * always added to the data store in the same batch, so duplicate entries are
+ * assigned the same ids as they would be by an in-memory load.
+ */
+class ExternalEntrySorter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExternalEntrySorter.class);
+
+	private static final Comparator<SortableEntry> KEY_ORDER = new Comparator<SortableEntry>() {
+
+		@Override
+		public int compare(final SortableEntry entry1, final SortableEntry entry2) {
+			if (entry1.getKey() != entry2.getKey()) {
+				return entry1.getKey() < entry2.getKey() ? -1 : 1;
+			}
+			if (entry1.getSequence() != entry2.getSequence()) {
+				return entry1.getSequence() < entry2.getSequence() ? -1 : 1;
+			}
+			return 0;
+		}
+
+	};
+
+	private final DictionaryDataStore dictionaryDataStore;
+
+	private final int maxEntriesInMemory;
+
+	private final File tempDirectory;
+
+	private final DictionaryLoadStatistics statistics;
+
+	private final List<SortableEntry> buffer = new ArrayList<SortableEntry>();
+
+	private final List<SortedEntryRun> runs = new ArrayList<SortedEntryRun>();
+
+	/**
+	 * @param dictionaryDataStore the {@link DictionaryDataStore} that sorted
+	 *        entries will be added to.
+	 * @param maxEntriesInMemory the maximum number of entries to hold in memory
+	 *        at once.
+	 * @param tempDirectory the directory to create run files in, or
+	 *        <code>null</code> to use the default temporary file directory.
+	 * @param statistics {@link DictionaryLoadStatistics} to record inserts in.
+	 */
+	public ExternalEntrySorter(final DictionaryDataStore dictionaryDataStore, final int maxEntriesInMemory, final File tempDirectory,
+			final DictionaryLoadStatistics statistics) {
+		if (maxEntriesInMemory < 1) {
+			throw new IllegalArgumentException("Invalid maximum entries in memory: " + maxEntriesInMemory);
+		}
+		this.dictionaryDataStore = dictionaryDataStore;
+		this.maxEntriesInMemory = maxEntriesInMemory;
+		this.tempDirectory = tempDirectory;
+		this.statistics = statistics;
+	}
+
+	public void add(final DictionaryEntry entry) throws IOException {
+		this.buffer.add(new SortableEntry(this.dictionaryDataStore.getEntryId(entry), this.buffer.size(), entry));
+		if (this.buffer.size() >= this.maxEntriesInMemory) {
+			this.spillBuffer();
+		}
+	}
+
+	/**
+	 * @return the number of run files spilled to disk so far.
+	 */
+	public int getRunCount() {
+		return this.runs.size();
+	}
+
+	private void spillBuffer() throws IOException {
+		this.statistics.sampleHeap();
+		Collections.sort(this.buffer, KEY_ORDER);
+		final File runFile = File.createTempFile("juzidian-entries-", ".run", this.tempDirectory);
+		final SortedEntryRun run = new SortedEntryRun(runFile);
+		this.runs.add(run);
+		run.write(this.buffer);
+		LOGGER.debug("Spilled {} sorted entries to {}", this.buffer.size(), runFile);
+		this.buffer.clear();
+	}
+
+	/**
+	 * Add all entries to the data store in key order.
+	 */
+	public void addSortedEntries() throws IOException {
+		if (this.runs.isEmpty()) {
+			Collections.sort(this.buffer, KEY_ORDER);
+			final List<DictionaryEntry> batch = new ArrayList<DictionaryEntry>(this.buffer.size());
+			for (final SortableEntry sortableEntry : this.buffer) {
+				batch.add(sortableEntry.getEntry());
+			}
+			this.buffer.clear();
+			this.addBatch(batch);
+			return;
+		}
+		if (!this.buffer.isEmpty()) {
+			this.spillBuffer();
+		}
+		LOGGER.info("Merging {} sorted runs of dictionary entries", this.runs.size());
+		this.mergeRuns();
+	}
+
+	private void mergeRuns() throws IOException {
+		final PriorityQueue<SortableEntry> heads = new PriorityQueue<SortableEntry>(this.runs.size(), KEY_ORDER);
+		final List<SortedEntryRun.Reader> readers = new ArrayList<SortedEntryRun.Reader>();
+		try {
+			for (int i = 0; i < this.runs.size(); i++) {
+				final SortedEntryRun.Reader reader = this.runs.get(i).openReader(i);
+				readers.add(reader);
+				this.advance(reader, heads);
+			}
+			List<DictionaryEntry> batch = new ArrayList<DictionaryEntry>(this.maxEntriesInMemory);
+			while (!heads.isEmpty()) {
+				final SortableEntry head = heads.poll();
+				batch.add(head.getEntry());
+				this.advance(readers.get((int) head.getSequence()), heads);
+				/* a batch may exceed the limit to finish the entries with the same key */
+				if (batch.size() >= this.maxEntriesInMemory && (heads.isEmpty() || heads.peek().getKey() != head.getKey())) {
+					this.addBatch(batch);
+					batch = new ArrayList<DictionaryEntry>(this.maxEntriesInMemory);
+				}
+			}
+			this.addBatch(batch);
+		} finally {
+			for (final SortedEntryRun.Reader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/*
+	 * Run heads use the run index as their sequence number, so that equal keys
+	 * from earlier runs are merged first.
+	 */
+	private void advance(final SortedEntryRun.Reader reader, final PriorityQueue<SortableEntry> heads) throws IOException {
+		final SortableEntry next = reader.next();
+		if (next != null) {
+			heads.add(next);
+		}
+	}
+
+	private void addBatch(final List<DictionaryEntry> batch) {
+		if (!batch.isEmpty()) {
+			final DictionaryDataStoreBatchStatistics batchStatistics = this.dictionaryDataStore.add(batch);
+			this.statistics.batchAdded(batchStatistics);
+		}
+	}
+
+	/**
+	 * Delete any run files created by this sorter.
+	 */
+	public void close() {
+		for (final SortedEntryRun run : this.runs) {
+			run.delete();
+		}
+		this.runs.clear();
+		this.buffer.clear();
+	}
+
+	/**
+	 * An entry and the key it is sorted by.
+	 * <p>
+	 * The sequence number breaks ties between equal keys: it is the insertion
+	 * order while entries are buffered, and the run index while runs are
+	 * merged.
+	 */
+	static class SortableEntry {
+
+		private final long key;
+
+		private final long sequence;
+
+		private final DictionaryEntry entry;
+
+		public SortableEntry(final long key, final long sequence, final DictionaryEntry entry) {
+			this.key = key;
+			this.sequence = sequence;
+			this.entry = entry;
+		}
+
+		public long getKey() {
+			return this.key;
+		}
+
+		public long getSequence() {
+			return this.sequence;
+		}
+
+		public DictionaryEntry getEntry() {
+			return this.entry;
+		}
+
+	}
+
+}
@@ -35,11 +35,24 @@ class ProgressMonitoringInputStream extends InputStream {
 
 	private final int contentLength;
 
-	private int bytesRead = 0;
+	private int bytesRead;
 
 	public ProgressMonitoringInputStream(final InputStream delegate, final int contentLength, final DownloadProgressHandler handler) {
+		this(delegate, contentLength, 0, handler);
+	}
+
+	/**
+	 * @param delegate the input stream to monitor.
+	 * @param contentLength the total number of bytes expected.
+	 * @param bytesAlreadyRead the number of bytes received before reading from
+	 *        this stream, such as when resuming a partial download.
+	 * @param handler the {@link DownloadProgressHandler} to notify.
+	 */
+	public ProgressMonitoringInputStream(final InputStream delegate, final int contentLength, final int bytesAlreadyRead,
+			final DownloadProgressHandler handler) {
 		this.delegate = delegate;
 		this.contentLength = contentLength;
+		this.bytesRead = bytesAlreadyRead;
 		this.handler = handler;
 	}
 
@@ -56,4 +69,9 @@ class ProgressMonitoringInputStream extends InputStream {
 		return nextByte;
 	}
 
+	@Override
+	public void close() throws IOException {
+		this.delegate.close();
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,193 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.juzidian.core.DictionaryEntry;
+import org.juzidian.core.DictionaryEntryFlag;
+import org.juzidian.core.DictionaryEntryReference;
+import org.juzidian.dataload.ExternalEntrySorter.SortableEntry;
+import org.juzidian.pinyin.PinyinSyllable;
+import org.juzidian.pinyin.Tone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A temporary file holding a run of sorted dictionary entries.
+ */
+class SortedEntryRun {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SortedEntryRun.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int NO_TONE = 0;
+
+	private final File file;
+
+	public SortedEntryRun(final File file) {
+		this.file = file;
+	}
+
+	public void write(final List<SortableEntry> entries) throws IOException {
+		final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file), BUFFER_SIZE));
+		try {
+			outputStream.writeInt(entries.size());
+			for (final SortableEntry entry : entries) {
+				outputStream.writeLong(entry.getKey());
+				writeEntry(outputStream, entry.getEntry());
+			}
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * @param runIndex the sequence number to give the entries read from this
+	 *        run.
+	 * @return a {@link Reader} positioned at the start of this run.
+	 */
+	public Reader openReader(final int runIndex) throws IOException {
+		return new Reader(new DataInputStream(new BufferedInputStream(new FileInputStream(this.file), BUFFER_SIZE)), runIndex);
+	}
+
+	public void delete() {
+		if (!this.file.delete()) {
+			LOGGER.warn("Failed to delete sorted entry run: {}", this.file);
+		}
+	}
+
+	private static void writeEntry(final DataOutputStream outputStream, final DictionaryEntry entry) throws IOException {
+		writeString(outputStream, entry.getTraditional());
+		writeString(outputStream, entry.getSimplified());
+		writePinyin(outputStream, entry.getPinyin());
+		outputStream.writeInt(entry.getDefinitions().size());
+		for (final String definition : entry.getDefinitions()) {
+			writeString(outputStream, definition);
+		}
+		outputStream.writeInt(entry.getReferences().size());
+		for (final DictionaryEntryReference reference : entry.getReferences()) {
+			outputStream.writeByte(reference.getType().ordinal());
+			writeString(outputStream, reference.getTraditional());
+			writeString(outputStream, reference.getSimplified());
+			writePinyin(outputStream, reference.getPinyin());
+		}
+		outputStream.writeInt(DictionaryEntryFlag.toMask(entry.getFlags()));
+	}
+
+	private static void writePinyin(final DataOutputStream outputStream, final List<PinyinSyllable> pinyin) throws IOException {
+		outputStream.writeInt(pinyin.size());
+		for (final PinyinSyllable syllable : pinyin) {
+			writeString(outputStream, syllable.getLetters());
+			final Integer toneNumber = syllable.getTone().getNumber();
+			outputStream.writeByte(toneNumber == null ? NO_TONE : toneNumber);
+		}
+	}
+
+	private static List<PinyinSyllable> readPinyin(final DataInputStream inputStream) throws IOException {
+		final int syllableCount = inputStream.readInt();
+		final List<PinyinSyllable> pinyin = new ArrayList<PinyinSyllable>(syllableCount);
+		for (int i = 0; i < syllableCount; i++) {
+			final String letters = readString(inputStream);
+			final int toneNumber = inputStream.readByte();
+			pinyin.add(new PinyinSyllable(letters, Tone.valueOf(toneNumber == NO_TONE ? null : toneNumber)));
+		}
+		return pinyin;
+	}
+
+	private static DictionaryEntry readEntry(final DataInputStream inputStream) throws IOException {
+		final String traditional = readString(inputStream);
+		final String simplified = readString(inputStream);
+		final List<PinyinSyllable> pinyin = readPinyin(inputStream);
+		final int definitionCount = inputStream.readInt();
+		final List<String> definitions = new ArrayList<String>(definitionCount);
+		for (int i = 0; i < definitionCount; i++) {
+			definitions.add(readString(inputStream));
+		}
+		final int referenceCount = inputStream.readInt();
+		final List<DictionaryEntryReference> references = new ArrayList<DictionaryEntryReference>(referenceCount);
+		for (int i = 0; i < referenceCount; i++) {
+			final DictionaryEntryReference.Type type = DictionaryEntryReference.Type.values()[inputStream.readByte()];
+			final String referenceTraditional = readString(inputStream);
+			final String referenceSimplified = readString(inputStream);
+			references.add(new DictionaryEntryReference(type, referenceTraditional, referenceSimplified, readPinyin(inputStream)));
+		}
+		final Set<DictionaryEntryFlag> flags = DictionaryEntryFlag.fromMask(inputStream.readInt());
+		return new DictionaryEntry(traditional, simplified, pinyin, definitions, references, flags);
+	}
+
+	private static void writeString(final DataOutputStream outputStream, final String value) throws IOException {
+		outputStream.writeBoolean(value != null);
+		if (value != null) {
+			outputStream.writeUTF(value);
+		}
+	}
+
+	private static String readString(final DataInputStream inputStream) throws IOException {
+		return inputStream.readBoolean() ? inputStream.readUTF() : null;
+	}
+
+	/**
+	 * Reads entries back from a run in the order they were written.
+	 */
+	class Reader {
+
+		private final DataInputStream inputStream;
+
+		private final int runIndex;
+
+		private int remaining;
+
+		private Reader(final DataInputStream inputStream, final int runIndex) throws IOException {
+			this.inputStream = inputStream;
+			this.runIndex = runIndex;
+			this.remaining = inputStream.readInt();
+		}
+
+		/**
+		 * @return the next entry in the run, or <code>null</code> if the run
+		 *         is exhausted.
+		 */
+		public SortableEntry next() throws IOException {
+			if (this.remaining == 0) {
+				return null;
+			}
+			this.remaining -= 1;
+			final long key = this.inputStream.readLong();
+			return new SortableEntry(key, this.runIndex, readEntry(this.inputStream));
+		}
+
+		public void close() throws IOException {
+			this.inputStream.close();
+		}
+
+	}
+
+}
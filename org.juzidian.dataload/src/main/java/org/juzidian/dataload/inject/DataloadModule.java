@@ -26,6 +26,8 @@ import java.util.Properties;
 
 import javax.xml.parsers.SAXParser;
 
+import org.juzidian.dataload.DictionaryMirrorProbeInterval;
+import org.juzidian.dataload.DictionaryRegistryCacheTtl;
 import org.juzidian.dataload.DictionaryServiceUrl;
 
 import com.google.inject.AbstractModule;
@@ -36,6 +38,10 @@ public class DataloadModule extends AbstractModule {
 	protected void configure() {
 		final String dictionaryRegistryServiceUrl = this.getProperty("dictionaryRegistryServiceUrl");
 		this.bind(URL.class).annotatedWith(DictionaryServiceUrl.class).toInstance(this.createUrl(dictionaryRegistryServiceUrl));
+		final String dictionaryRegistryCacheTtlMillis = this.getProperty("dictionaryRegistryCacheTtlMillis");
+		this.bindConstant().annotatedWith(DictionaryRegistryCacheTtl.class).to(this.parseLong(dictionaryRegistryCacheTtlMillis));
+		final String dictionaryMirrorProbeIntervalMillis = this.getProperty("dictionaryMirrorProbeIntervalMillis");
+		this.bindConstant().annotatedWith(DictionaryMirrorProbeInterval.class).to(this.parseLong(dictionaryMirrorProbeIntervalMillis));
 		this.bind(SAXParser.class).toProvider(SaxParserProvider.class);
 	}
 
@@ -53,6 +59,14 @@ public class DataloadModule extends AbstractModule {
 		return properties.getProperty(key);
 	}
 
+	private long parseLong(final String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (final NumberFormatException e) {
+			throw new ModuleConfigurationException(e);
+		}
+	}
+
 	private URL createUrl(final String spec) {
 		try {
 			return new URL(spec);
@@ -25,18 +25,30 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.juzidian.cedict.CedictEntry;
 import org.juzidian.cedict.CedictPinyinSyllable;
+import org.juzidian.core.DictionaryDataStore;
+import org.juzidian.core.DictionaryDataStoreEntry;
+import org.juzidian.core.DictionaryDataStoreMetadata;
+import org.juzidian.core.DictionaryDataStoreReference;
 import org.juzidian.core.DictionaryEntry;
+import org.juzidian.core.DictionaryEntryFlag;
+import org.juzidian.core.DictionaryEntryReference;
+import org.juzidian.core.DictionaryEntryReference.Type;
 import org.juzidian.pinyin.PinyinSyllable;
 import org.juzidian.pinyin.Tone;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+
 public class CedictEntryToDictionaryEntryConverterTest {
 
 	@Mock
@@ -92,4 +104,110 @@ public class CedictEntryToDictionaryEntryConverterTest {
 		assertThat(pinyinSyllable.getLetters(), is("yü"));
 	}
 
+	@Test
+	public void convertShouldExtractClassifiers() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("book", "CL:本[ben3],冊|册[ce4]"));
+		final List<DictionaryEntryReference> references = converter.convert(cedictEntry).getReferences();
+		assertThat(references, contains(
+				new DictionaryEntryReference(Type.CLASSIFIER, "本", "本", Arrays.asList(new PinyinSyllable("ben", Tone.THIRD))),
+				new DictionaryEntryReference(Type.CLASSIFIER, "冊", "册", Arrays.asList(new PinyinSyllable("ce", Tone.FOURTH)))));
+	}
+
+	@Test
+	public void convertShouldRemoveClassifierDefinitions() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("book", "CL:本[ben3]"));
+		assertThat(converter.convert(cedictEntry).getDefinitions(), contains("book"));
+	}
+
+	@Test
+	public void convertShouldExtractVariantReference() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("old variant of 夠|够[gou4]"));
+		final DictionaryEntry entry = converter.convert(cedictEntry);
+		assertThat(entry.getReferences(), contains(new DictionaryEntryReference(Type.VARIANT, "夠", "够", Arrays.asList(new PinyinSyllable(
+				"gou", Tone.FOURTH)))));
+		assertThat(entry.getDefinitions(), contains("old variant of 夠|够[gou4]"));
+	}
+
+	@Test
+	public void convertShouldExtractSeeReferenceWithoutPinyin() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("see also 什麼|什么"));
+		assertThat(converter.convert(cedictEntry).getReferences(), contains(new DictionaryEntryReference(Type.SEE, "什麼", "什么",
+				Collections.<PinyinSyllable> emptyList())));
+	}
+
+	@Test
+	public void convertShouldSubstituteUmlautInReferencePinyin() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("see 綠|绿[lu:4]"));
+		final DictionaryEntryReference reference = converter.convert(cedictEntry).getReferences().get(0);
+		assertThat(reference.getPinyin().get(0).getLetters(), is("lü"));
+	}
+
+	@Test
+	public void tonelessReferencePinyinShouldBeStoredAndReadBack() throws Exception {
+		when(cedictEntry.getTraditionalCharacters()).thenReturn("某");
+		when(cedictEntry.getSimplifiedCharacters()).thenReturn("某");
+		when(cedictEntry.getPinyinSyllables()).thenReturn(Arrays.asList(newCedictPinyin("mou", 3)));
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("some", "see 某某[xx]"));
+		final DictionaryEntry entry = converter.convert(cedictEntry);
+		final DictionaryDataStore dataStore = createDataStore();
+		dataStore.add(entry);
+		dataStore.resolveReferences();
+		assertThat(dataStore.getReferences(entry), contains(new DictionaryEntryReference(Type.SEE, "某某", "某某", Arrays
+				.asList(new PinyinSyllable("xx", Tone.ANY)))));
+	}
+
+	private static DictionaryDataStore createDataStore() throws Exception {
+		final JdbcConnectionSource connectionSource = new JdbcConnectionSource("jdbc:sqlite::memory:");
+		final Dao<DictionaryDataStoreEntry, Long> entryDao = DaoManager.createDao(connectionSource, DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> metadataDao = DaoManager.createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> referenceDao = DaoManager.createDao(connectionSource, DictionaryDataStoreReference.class);
+		final DictionaryDataStore dataStore = new DictionaryDataStore(entryDao, metadataDao, referenceDao);
+		dataStore.createSchema();
+		dataStore.populateMetadata();
+		return dataStore;
+	}
+
+	@Test
+	public void convertShouldNotExtractReferenceToEnglishText() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("see above"));
+		assertThat(converter.convert(cedictEntry).getReferences(), hasSize(0));
+	}
+
+	@Test
+	public void convertShouldFlagCapitalisedPinyinAsProperNoun() {
+		when(cedictEntry.getPinyinSyllables()).thenReturn(Arrays.asList(newCedictPinyin("Guang", 3), newCedictPinyin("zhou", 1)));
+		assertThat(converter.convert(cedictEntry).getFlags(), contains(DictionaryEntryFlag.PROPER_NOUN));
+	}
+
+	@Test
+	public void convertShouldFlagSurnames() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("plum", "surname Li"));
+		assertThat(converter.convert(cedictEntry).getFlags(), contains(DictionaryEntryFlag.SURNAME));
+	}
+
+	@Test
+	public void convertShouldFlagOldVariants() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("old variant of 夠|够[gou4]"));
+		assertThat(converter.convert(cedictEntry).getFlags(), contains(DictionaryEntryFlag.VARIANT, DictionaryEntryFlag.OLD_FORM));
+	}
+
+	@Test
+	public void convertShouldFlagErhuaVariants() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("erhua variant of 一點|一点[yi1 dian3]"));
+		assertThat(converter.convert(cedictEntry).getFlags(), contains(DictionaryEntryFlag.VARIANT, DictionaryEntryFlag.ERHUA));
+	}
+
+	@Test
+	public void convertShouldFlagAbbreviations() {
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("abbr. for 北京大學|北京大学[Bei3 jing1 Da4 xue2]"));
+		assertThat(converter.convert(cedictEntry).getFlags(), contains(DictionaryEntryFlag.ABBREVIATION));
+	}
+
+	@Test
+	public void convertShouldNotFlagOrdinaryEntries() {
+		when(cedictEntry.getPinyinSyllables()).thenReturn(Arrays.asList(newCedictPinyin("hao", 3)));
+		when(cedictEntry.getDefinitions()).thenReturn(Arrays.asList("good", "well"));
+		assertThat(converter.convert(cedictEntry).getFlags(), hasSize(0));
+	}
+
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.juzidian.util.IoUtil;
+
+public class CompressionCodecTest {
+
+	private static final byte[] CONTENT = createContent();
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private static byte[] createContent() {
+		final StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			content.append("你好 ni3 hao3 /hello/hi/ ").append(i).append('\n');
+		}
+		try {
+			return content.toString().getBytes("UTF-8");
+		} catch (final Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] compress(final CompressionCodec codec, final byte[] content) throws Exception {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final OutputStream outputStream = codec.compress(baos);
+		outputStream.write(content);
+		outputStream.close();
+		return baos.toByteArray();
+	}
+
+	private static byte[] detectAndDecompress(final byte[] compressed) throws Exception {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		IoUtil.copy(CompressionCodec.detectAndDecompress(new ByteArrayInputStream(compressed)), baos);
+		return baos.toByteArray();
+	}
+
+	@Test
+	public void detectAndDecompressShouldRestoreGzipContent() throws Exception {
+		assertThat(Arrays.equals(detectAndDecompress(compress(CompressionCodec.GZIP, CONTENT)), CONTENT), is(true));
+	}
+
+	@Test
+	public void detectAndDecompressShouldRestoreXzContent() throws Exception {
+		assertThat(Arrays.equals(detectAndDecompress(compress(CompressionCodec.XZ, CONTENT)), CONTENT), is(true));
+	}
+
+	@Test
+	public void detectAndDecompressShouldRestoreStoredContent() throws Exception {
+		assertThat(Arrays.equals(detectAndDecompress(compress(CompressionCodec.STORED, CONTENT)), CONTENT), is(true));
+	}
+
+	@Test
+	public void detectAndDecompressShouldRestoreContentShorterThanMagic() throws Exception {
+		assertThat(detectAndDecompress(new byte[] { 1, 2 }), equalTo(new byte[] { 1, 2 }));
+	}
+
+	@Test
+	public void detectShouldRecogniseGzipMagic() throws Exception {
+		final byte[] compressed = compress(CompressionCodec.GZIP, CONTENT);
+		assertThat(CompressionCodec.detect(compressed, compressed.length), equalTo(CompressionCodec.GZIP));
+	}
+
+	@Test
+	public void detectShouldRecogniseXzMagic() throws Exception {
+		final byte[] compressed = compress(CompressionCodec.XZ, CONTENT);
+		assertThat(CompressionCodec.detect(compressed, compressed.length), equalTo(CompressionCodec.XZ));
+	}
+
+	@Test
+	public void detectShouldAssumeStoredWithoutMagic() throws Exception {
+		final byte[] header = "SQLite format 3".getBytes("US-ASCII");
+		assertThat(CompressionCodec.detect(header, header.length), equalTo(CompressionCodec.STORED));
+	}
+
+	@Test
+	public void xzShouldCompressTextSmallerThanGzip() throws Exception {
+		assertThat(compress(CompressionCodec.XZ, CONTENT).length, lessThan(compress(CompressionCodec.GZIP, CONTENT).length));
+	}
+
+	@Test
+	public void forNameShouldReturnCodecWithName() {
+		for (final CompressionCodec codec : CompressionCodec.values()) {
+			assertThat(CompressionCodec.forName(codec.getName()), equalTo(codec));
+		}
+	}
+
+	@Test
+	public void forNameShouldReturnNullForUnsupportedName() {
+		assertThat(CompressionCodec.forName("bzip2"), nullValue());
+	}
+
+	@Test
+	public void benchmarkShouldReportEachCodec() throws Exception {
+		final File databaseFile = this.tempFolder.newFile("dictionary.db");
+		final FileOutputStream outputStream = new FileOutputStream(databaseFile);
+		outputStream.write(CONTENT);
+		outputStream.close();
+		final Properties results = new CompressionCodecBenchmark(this.tempFolder.getRoot()).run(databaseFile);
+		for (final CompressionCodec codec : CompressionCodec.values()) {
+			assertThat(results.getProperty(codec.getName() + ".compressedBytes"), notNullValue());
+			assertThat(results.getProperty(codec.getName() + ".installMillis"), notNullValue());
+		}
+		assertThat(results.getProperty("stored.compressedBytes"), equalTo(Integer.toString(CONTENT.length)));
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DictionaryArtifactCacheTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private DictionaryArtifactCache cache;
+
+	@Before
+	public void setUp() {
+		this.cache = new DictionaryArtifactCache(new File(this.tempFolder.getRoot(), "cache"), 250);
+	}
+
+	private File createArtifact(final int size) throws Exception {
+		final File file = File.createTempFile("artifact", ".part", this.tempFolder.getRoot());
+		final FileOutputStream outputStream = new FileOutputStream(file);
+		outputStream.write(new byte[size]);
+		outputStream.close();
+		return file;
+	}
+
+	private void putWithLastUse(final String sha1, final long lastUse) throws Exception {
+		this.cache.put(sha1, this.createArtifact(100));
+		this.cache.get(sha1).setLastModified(lastUse);
+	}
+
+	@Test
+	public void getShouldReturnNullForUncachedArtifact() {
+		assertThat(this.cache.get("abc"), nullValue());
+	}
+
+	@Test
+	public void putShouldMoveArtifactIntoCache() throws Exception {
+		final File artifact = this.createArtifact(100);
+		this.cache.put("abc", artifact);
+		assertThat(artifact.exists(), is(false));
+		assertThat(this.cache.get("abc").length(), equalTo(100L));
+	}
+
+	@Test
+	public void putShouldNotCacheArtifactLargerThanCache() throws Exception {
+		final File artifact = this.createArtifact(251);
+		this.cache.put("abc", artifact);
+		assertThat(artifact.exists(), is(false));
+		assertThat(this.cache.get("abc"), nullValue());
+	}
+
+	@Test
+	public void putShouldEvictLeastRecentlyUsedArtifacts() throws Exception {
+		this.putWithLastUse("a", 1000000000000L);
+		this.putWithLastUse("b", 1000000001000L);
+		this.cache.put("c", this.createArtifact(100));
+		assertThat(this.cache.get("a"), nullValue());
+		assertThat(this.cache.get("b"), notNullValue());
+		assertThat(this.cache.get("c"), notNullValue());
+	}
+
+	@Test
+	public void getShouldMarkArtifactAsRecentlyUsed() throws Exception {
+		this.putWithLastUse("a", 1000000000000L);
+		this.putWithLastUse("b", 1000000001000L);
+		this.cache.get("a");
+		this.cache.put("c", this.createArtifact(100));
+		assertThat(this.cache.get("a"), notNullValue());
+		assertThat(this.cache.get("b"), nullValue());
+	}
+
+	@Test
+	public void putShouldNotEvictLockedArtifacts() throws Exception {
+		this.putWithLastUse("a", 1000000000000L);
+		this.putWithLastUse("b", 1000000001000L);
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		final Thread holder = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					final DictionaryArtifactCache.ArtifactLock lock = DictionaryArtifactCacheTest.this.cache.lock("a");
+					locked.countDown();
+					done.await();
+					lock.release();
+				} catch (final Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+		};
+		holder.start();
+		locked.await();
+		this.cache.put("c", this.createArtifact(100));
+		done.countDown();
+		holder.join();
+		assertThat(this.cache.get("a"), notNullValue());
+		assertThat(this.cache.get("b"), nullValue());
+	}
+
+	@Test
+	public void lockShouldWaitForOtherHolder() throws Exception {
+		final DictionaryArtifactCache.ArtifactLock lock = this.cache.lock("abc");
+		final CountDownLatch acquired = new CountDownLatch(1);
+		final Thread waiter = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					DictionaryArtifactCacheTest.this.cache.lock("abc").release();
+					acquired.countDown();
+				} catch (final Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+		};
+		waiter.start();
+		assertThat(acquired.await(200, TimeUnit.MILLISECONDS), is(false));
+		lock.release();
+		assertThat(acquired.await(5, TimeUnit.SECONDS), is(true));
+	}
+
+	@Test
+	public void removeShouldDeleteCachedArtifact() throws Exception {
+		this.cache.put("abc", this.createArtifact(100));
+		this.cache.remove("abc");
+		assertThat(this.cache.get("abc"), nullValue());
+	}
+
+}
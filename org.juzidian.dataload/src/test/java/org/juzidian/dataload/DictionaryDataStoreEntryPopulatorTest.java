@@ -0,0 +1,127 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.juzidian.cedict.CedictInputStreamProvider;
+import org.juzidian.cedict.CedictLoader;
+import org.juzidian.core.DictionaryDataStore;
+import org.juzidian.core.DictionaryDataStoreEntry;
+import org.juzidian.core.DictionaryDataStoreMetadata;
+import org.juzidian.core.DictionaryDataStoreReference;
+import org.juzidian.core.DictionaryEntry;
+import org.juzidian.core.DictionaryEntryReference.Type;
+import org.juzidian.pinyin.PinyinParser;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+
+public class DictionaryDataStoreEntryPopulatorTest {
+
+	private static final String SILVER = "銀 银 [yin2] /silver/see 行/\n";
+
+	private static final String XING = "行 行 [xing2] /to walk/\n";
+
+	private static final String HANG = "行 行 [hang2] /row/\n";
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private DictionaryDataStore populate(final String sourceVersion, final String cedictData) throws Exception {
+		final DictionaryDataStore dataStore = createDataStore(sourceVersion);
+		this.createPopulator(cedictData).populateEntries(dataStore);
+		return dataStore;
+	}
+
+	private DictionaryDataStoreEntryPopulator createPopulator(final String cedictData) throws IOException {
+		final CedictLoader cedictLoader = new CedictLoader(new CedictInputStreamProvider() {
+
+			@Override
+			public InputStream getInputStream() throws IOException {
+				return new ByteArrayInputStream(cedictData.getBytes("UTF-8"));
+			}
+
+		});
+		return new DictionaryDataStoreEntryPopulator(cedictLoader, new CedictEntryToDictionaryEntryConverter(), 1, this.tempFolder.newFolder());
+	}
+
+	private static DictionaryDataStore createDataStore(final String sourceVersion) throws Exception {
+		final JdbcConnectionSource connectionSource = new JdbcConnectionSource("jdbc:sqlite::memory:");
+		final Dao<DictionaryDataStoreEntry, Long> entryDao = DaoManager.createDao(connectionSource, DictionaryDataStoreEntry.class);
+		final Dao<DictionaryDataStoreMetadata, Long> metadataDao = DaoManager.createDao(connectionSource, DictionaryDataStoreMetadata.class);
+		final Dao<DictionaryDataStoreReference, Long> referenceDao = DaoManager.createDao(connectionSource, DictionaryDataStoreReference.class);
+		final DictionaryDataStore dataStore = new DictionaryDataStore(entryDao, metadataDao, referenceDao);
+		dataStore.createSchema();
+		dataStore.populateMetadata(sourceVersion);
+		return dataStore;
+	}
+
+	private static String getReferencedPinyin(final DictionaryDataStore dataStore) {
+		final DictionaryEntry silver = dataStore.findChinese("银", 1, 0, null).get(0);
+		final List<DictionaryEntry> referencedEntries = dataStore.getReferencedEntries(silver, Arrays.asList(Type.SEE));
+		assertThat(referencedEntries, hasSize(1));
+		return referencedEntries.get(0).getPinyin().toString();
+	}
+
+	private static String getPinyin(final String pinyin) {
+		return new PinyinParser().parse(pinyin).toString();
+	}
+
+	@Test
+	public void populateEntriesShouldLinkReferenceToHomographWithFirstPinyin() throws Exception {
+		assertThat(getReferencedPinyin(this.populate("1", SILVER + XING + HANG)), equalTo(getPinyin("hang2")));
+	}
+
+	@Test
+	public void populateEntriesShouldLinkReferenceRegardlessOfSourceOrder() throws Exception {
+		assertThat(getReferencedPinyin(this.populate("1", HANG + SILVER + XING)), equalTo(getPinyin("hang2")));
+	}
+
+	@Test
+	public void updateEntriesShouldLinkReferenceAsPopulateEntriesDoes() throws Exception {
+		final DictionaryDataStore dataStore = this.populate("1", SILVER + XING);
+		this.createPopulator(SILVER + XING + HANG).updateEntries(dataStore, "2");
+		final DictionaryDataStore populatedDataStore = this.populate("2", SILVER + XING + HANG);
+		assertThat(getReferencedPinyin(dataStore), equalTo(getPinyin("hang2")));
+		assertThat(dataStore.getContentDigest(), equalTo(populatedDataStore.getContentDigest()));
+	}
+
+	@Test
+	public void patchedDataStoreShouldLinkReferenceAsPopulatedDataStoreDoes() throws Exception {
+		final DictionaryDataStore baseDataStore = this.populate("1", SILVER + XING);
+		final DictionaryDataStore targetDataStore = this.populate("2", SILVER + XING + HANG);
+		baseDataStore.applyPatch(targetDataStore.createPatch(baseDataStore));
+		assertThat(getReferencedPinyin(baseDataStore), equalTo(getPinyin("hang2")));
+		assertThat(baseDataStore.getContentDigest(), equalTo(targetDataStore.getContentDigest()));
+	}
+
+}
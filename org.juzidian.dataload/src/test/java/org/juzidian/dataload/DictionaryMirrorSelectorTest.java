@@ -0,0 +1,109 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class DictionaryMirrorSelectorTest {
+
+	private static final long ONE_HOUR_MILLIS = 60L * 60 * 1000;
+
+	private FlakyHttpServer slowServer;
+
+	private FlakyHttpServer fastServer;
+
+	private DictionaryResource mockResource;
+
+	@Before
+	public void setUp() throws Exception {
+		final byte[] content = new byte[3 * DictionaryMirrorSelector.PROBE_SIZE];
+		new Random(1).nextBytes(content);
+		this.slowServer = new FlakyHttpServer(content);
+		this.slowServer.setBytesPerSecond(10000);
+		this.fastServer = new FlakyHttpServer(content);
+		this.mockResource = Mockito.mock(DictionaryResource.class);
+		when(this.mockResource.getUrls()).thenReturn(Arrays.asList(this.slowServer.getUrl(), this.fastServer.getUrl()));
+		when(this.mockResource.getSha1()).thenReturn("abc123");
+	}
+
+	@After
+	public void tearDown() {
+		this.slowServer.stop();
+		this.fastServer.stop();
+	}
+
+	@Test
+	public void selectMirrorShouldOrderMirrorsFastestFirst() {
+		final DictionaryResource resource = new DictionaryMirrorSelector(ONE_HOUR_MILLIS).selectMirror(this.mockResource);
+		assertThat(resource.getUrls(), contains(this.fastServer.getUrl(), this.slowServer.getUrl()));
+		assertThat(resource.getUrl(), equalTo(this.fastServer.getUrl()));
+		assertThat(resource.getSha1(), equalTo("abc123"));
+	}
+
+	@Test
+	public void selectMirrorShouldProbeWithSmallRangeRequests() {
+		new DictionaryMirrorSelector(ONE_HOUR_MILLIS).selectMirror(this.mockResource);
+		final String probeRange = "bytes=0-" + (DictionaryMirrorSelector.PROBE_SIZE - 1);
+		assertThat(this.fastServer.getRangeHeaders(), contains(probeRange));
+		assertThat(this.slowServer.getRangeHeaders(), contains(probeRange));
+	}
+
+	@Test
+	public void selectMirrorShouldPutUnreachableMirrorsLast() {
+		this.fastServer.stop();
+		final DictionaryResource resource = new DictionaryMirrorSelector(ONE_HOUR_MILLIS).selectMirror(this.mockResource);
+		assertThat(resource.getUrls(), contains(this.slowServer.getUrl(), this.fastServer.getUrl()));
+	}
+
+	@Test
+	public void selectMirrorShouldReuseProbesWithinInterval() {
+		final DictionaryMirrorSelector selector = new DictionaryMirrorSelector(ONE_HOUR_MILLIS);
+		selector.selectMirror(this.mockResource);
+		selector.selectMirror(this.mockResource);
+		assertThat(this.fastServer.getRequestCount(), equalTo(1));
+	}
+
+	@Test
+	public void selectMirrorShouldProbeAgainAfterInterval() {
+		final DictionaryMirrorSelector selector = new DictionaryMirrorSelector(0);
+		selector.selectMirror(this.mockResource);
+		selector.selectMirror(this.mockResource);
+		assertThat(this.fastServer.getRequestCount(), equalTo(2));
+	}
+
+	@Test
+	public void selectMirrorShouldNotProbeSingleMirror() {
+		when(this.mockResource.getUrls()).thenReturn(Arrays.asList(this.fastServer.getUrl()));
+		assertThat(new DictionaryMirrorSelector(ONE_HOUR_MILLIS).selectMirror(this.mockResource), sameInstance(this.mockResource));
+		assertThat(this.fastServer.getRequestCount(), equalTo(0));
+	}
+
+}
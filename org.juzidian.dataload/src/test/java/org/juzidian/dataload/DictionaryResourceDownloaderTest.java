@@ -18,7 +18,14 @@
  */
 package org.juzidian.dataload;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.atLeastOnce;
@@ -26,14 +33,27 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.juzidian.dataload.DictionaryResource;
 import org.juzidian.dataload.DictionaryResourceDownloader;
 import org.juzidian.dataload.DictionaryResourceDownloaderException;
@@ -44,18 +64,32 @@ import org.mockito.Mockito;
 
 public class DictionaryResourceDownloaderTest {
 
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
 	private DictionaryResourceDownloader downloader;
 
+	private FlakyHttpServer httpServer;
+
+	private byte[] httpContent;
+
 	private DownloadProgressHandler mockProgressHandler;
 
 	private DictionaryResource mockResource;
 
 	@Before
 	public void setUp() {
-		this.downloader = new DictionaryResourceDownloader();
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS);
 		this.mockProgressHandler = Mockito.mock(DownloadProgressHandler.class);
 	}
 
+	@After
+	public void tearDown() {
+		if (this.httpServer != null) {
+			this.httpServer.stop();
+		}
+	}
+
 	private static byte[] gzip(final String content) throws IOException {
 		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		final GZIPOutputStream gzos = new GZIPOutputStream(baos);
@@ -78,9 +112,37 @@ public class DictionaryResourceDownloaderTest {
 		this.mockResource = createMockDictionaryResource("mock://localhost/foo", sha1, gzipContent.length);
 	}
 
+	private void initHttpDictionaryResource() throws Exception {
+		this.initHttpDictionaryResource(20000);
+	}
+
+	private void initHttpDictionaryResource(final int size) throws Exception {
+		final byte[] content = new byte[size];
+		new Random(1).nextBytes(content);
+		this.httpContent = content;
+		final byte[] gzipContent = gzip(content);
+		this.httpServer = new FlakyHttpServer(gzipContent);
+		this.mockResource = createMockDictionaryResource(this.httpServer.getUrl(), sha1(gzipContent), gzipContent.length);
+	}
+
+	private static byte[] gzip(final byte[] content) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final GZIPOutputStream gzos = new GZIPOutputStream(baos);
+		gzos.write(content);
+		gzos.close();
+		return baos.toByteArray();
+	}
+
+	private byte[] downloadHttpResource() throws DictionaryResourceDownloaderException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		this.downloader.download(this.mockResource, baos, this.mockProgressHandler);
+		return baos.toByteArray();
+	}
+
 	private static DictionaryResource createMockDictionaryResource(final String url, final String hash, final int size) {
 		final DictionaryResource mock = Mockito.mock(DictionaryResource.class);
 		when(mock.getUrl()).thenReturn(url);
+		when(mock.getUrls()).thenReturn(Arrays.asList(url));
 		when(mock.getSha1()).thenReturn(hash);
 		when(mock.getSize()).thenReturn(size);
 		return mock;
@@ -94,6 +156,21 @@ public class DictionaryResourceDownloaderTest {
 		assertThat(baos.toString(), equalTo("foo"));
 	}
 
+	@Test
+	public void downloadShouldDetectXzCompressedContent() throws Exception {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		final OutputStream xzOutputStream = CompressionCodec.XZ.compress(compressed);
+		xzOutputStream.write("foo".getBytes());
+		xzOutputStream.close();
+		final byte[] xzContent = compressed.toByteArray();
+		MockUrlHandler.delegate = Mockito.mock(MockUrlHandler.class);
+		when(MockUrlHandler.delegate.openConnection(Matchers.any(URL.class))).thenReturn(new MockUrlConnection(xzContent));
+		this.mockResource = createMockDictionaryResource("mock://localhost/foo", sha1(xzContent), xzContent.length);
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		this.downloader.download(this.mockResource, baos, this.mockProgressHandler);
+		assertThat(baos.toString(), equalTo("foo"));
+	}
+
 	@Test
 	public void downloadShouldNotifyProgress() throws Exception {
 		this.initMockDictionaryResource("foo");
@@ -130,4 +207,315 @@ public class DictionaryResourceDownloaderTest {
 		verify(this.mockProgressHandler, atLeastOnce()).handleProgress(anyInt(), anyInt());
 	}
 
+	@Test
+	public void downloadShouldResumeWithRangeRequestAfterConnectionDropped() throws Exception {
+		this.initHttpDictionaryResource();
+		this.httpServer.dropConnections(1, 5000);
+		assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+		assertThat(this.httpServer.getRangeHeaders(), contains(nullValue(), equalTo("bytes=5000-")));
+	}
+
+	@Test
+	public void downloadShouldRestartWhenServerIgnoresRange() throws Exception {
+		this.initHttpDictionaryResource();
+		this.httpServer.setRangeSupported(false);
+		this.httpServer.dropConnections(1, 5000);
+		assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+	}
+
+	@Test
+	public void downloadShouldResumePartialDownloadOfEarlierCall() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), 1);
+		this.initHttpDictionaryResource();
+		this.httpServer.dropConnections(1, 5000);
+		try {
+			this.downloadHttpResource();
+		} catch (final DictionaryResourceDownloaderException e) {
+		}
+		assertThat(this.downloader.getPartialFile(this.mockResource).length(), equalTo(5000L));
+		assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+		assertThat(this.httpServer.getRangeHeaders(), contains(nullValue(), equalTo("bytes=5000-")));
+	}
+
+	@Test(expected = DictionaryResourceDownloaderException.class)
+	public void downloadShouldFailWhenAllAttemptsAreDropped() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), 2);
+		this.initHttpDictionaryResource();
+		this.httpServer.dropConnections(2, 5000);
+		this.downloadHttpResource();
+	}
+
+	@Test
+	public void downloadShouldDeletePartialFileWhenComplete() throws Exception {
+		this.initHttpDictionaryResource();
+		this.httpServer.dropConnections(1, 5000);
+		this.downloadHttpResource();
+		assertThat(this.downloader.getPartialFile(this.mockResource).exists(), is(false));
+	}
+
+	@Test
+	public void downloadShouldRestartWhenPartialFileIsLongerThanResource() throws Exception {
+		this.initHttpDictionaryResource();
+		final File partialFile = this.downloader.getPartialFile(this.mockResource);
+		final FileOutputStream partialOut = new FileOutputStream(partialFile);
+		partialOut.write(new byte[this.mockResource.getSize() + 1]);
+		partialOut.close();
+		assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+	}
+
+	@Test
+	public void downloadShouldReturnStatisticsForEachStage() throws Exception {
+		this.initHttpDictionaryResource();
+		final DownloadStatistics statistics = this.downloader.download(this.mockResource, new ByteArrayOutputStream(), this.mockProgressHandler);
+		assertThat(statistics.getCompressedBytes(), equalTo((long) this.mockResource.getSize()));
+		assertThat(statistics.getInflatedBytes(), equalTo((long) this.httpContent.length));
+	}
+
+	@Test
+	public void downloadShouldDeletePartialFileWhenDataIsCorrupt() throws Exception {
+		this.initHttpDictionaryResource();
+		this.httpServer.stop();
+		final byte[] gzipContent = gzip(this.httpContent);
+		final byte[] truncatedContent = Arrays.copyOf(gzipContent, gzipContent.length / 2);
+		this.httpServer = new FlakyHttpServer(truncatedContent);
+		this.mockResource = createMockDictionaryResource(this.httpServer.getUrl(), sha1(truncatedContent), truncatedContent.length);
+		try {
+			this.downloadHttpResource();
+		} catch (final DictionaryResourceDownloaderException e) {
+		}
+		assertThat(this.downloader.getPartialFile(this.mockResource).exists(), is(false));
+	}
+
+	@Test
+	public void segmentedDownloadShouldFetchSegmentsConcurrently() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS, 4);
+		this.initHttpDictionaryResource(300000);
+		this.httpServer.setBytesPerSecond(1000000);
+		assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+		assertThat(this.httpServer.getRangeHeaders(), hasSize(4));
+		assertThat(this.httpServer.getPeakConnections(), greaterThan(1));
+	}
+
+	@Test
+	public void segmentedDownloadShouldResumeDroppedSegment() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS, 4);
+		this.initHttpDictionaryResource(300000);
+		this.httpServer.dropConnections(1, 1000);
+		assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+		assertThat(this.httpServer.getRangeHeaders(), hasSize(5));
+	}
+
+	@Test
+	public void segmentedDownloadShouldFallBackToSingleConnectionWhenRangesUnsupported() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS, 4);
+		this.initHttpDictionaryResource(300000);
+		this.httpServer.setRangeSupported(false);
+		assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+	}
+
+	@Test
+	public void segmentedDownloadShouldRetrySegmentRejectedWithErrorStatus() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS, 4);
+		this.initHttpDictionaryResource(300000);
+		this.httpServer.rejectRequests(1, 503);
+		assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+		assertThat(this.httpServer.getRangeHeaders(), hasSize(5));
+		for (final String range : this.httpServer.getRangeHeaders()) {
+			assertThat(range, notNullValue());
+		}
+	}
+
+	@Test
+	public void segmentedDownloadShouldReportAggregatedProgress() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS, 4);
+		this.initHttpDictionaryResource(300000);
+		this.downloadHttpResource();
+		final int size = this.mockResource.getSize();
+		verify(this.mockProgressHandler).handleProgress(size, size);
+	}
+
+	@Test
+	public void segmentedDownloadShouldWriteOutputBeforeAllSegmentsAreReceived() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS, 4);
+		this.initHttpDictionaryResource(300000);
+		this.httpServer.setBytesPerSecond(300000);
+		final AtomicInteger bytesReceived = new AtomicInteger();
+		final AtomicInteger bytesReceivedAtFirstWrite = new AtomicInteger(-1);
+		final DownloadProgressHandler progressHandler = new DownloadProgressHandler() {
+
+			@Override
+			public void handleProgress(final int contentLength, final int received) {
+				bytesReceived.set(received);
+			}
+
+		};
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream() {
+
+			@Override
+			public synchronized void write(final byte[] b, final int off, final int len) {
+				bytesReceivedAtFirstWrite.compareAndSet(-1, bytesReceived.get());
+				super.write(b, off, len);
+			}
+
+		};
+		this.downloader.download(this.mockResource, baos, progressHandler);
+		assertThat(Arrays.equals(baos.toByteArray(), this.httpContent), is(true));
+		assertThat(bytesReceivedAtFirstWrite.get(), lessThan(this.mockResource.getSize()));
+	}
+
+	@Test(expected = DictionaryResourceDownloaderException.class)
+	public void segmentedDownloadShouldFailWhenChecksumMismatches() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS, 4);
+		this.initHttpDictionaryResource(300000);
+		final int size = this.mockResource.getSize();
+		this.mockResource = createMockDictionaryResource(this.httpServer.getUrl(), "abc123", size);
+		this.downloadHttpResource();
+	}
+
+	@Test
+	public void downloadShouldFailOverToNextMirrorWithoutLosingProgress() throws Exception {
+		this.initHttpDictionaryResource();
+		final FlakyHttpServer mirrorServer = new FlakyHttpServer(gzip(this.httpContent));
+		try {
+			this.httpServer.dropConnections(1, 5000);
+			when(this.mockResource.getUrls()).thenReturn(Arrays.asList(this.httpServer.getUrl(), mirrorServer.getUrl()));
+			assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+			assertThat(this.httpServer.getRangeHeaders(), contains(nullValue()));
+			assertThat(mirrorServer.getRangeHeaders(), contains(equalTo("bytes=5000-")));
+		} finally {
+			mirrorServer.stop();
+		}
+	}
+
+	@Test
+	public void downloadShouldFailOverFromUnreachableMirror() throws Exception {
+		this.initHttpDictionaryResource();
+		final FlakyHttpServer deadServer = new FlakyHttpServer(new byte[0]);
+		deadServer.stop();
+		when(this.mockResource.getUrls()).thenReturn(Arrays.asList(deadServer.getUrl(), this.httpServer.getUrl()));
+		assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+	}
+
+	@Test
+	public void segmentedDownloadShouldFailOverDroppedSegmentToNextMirror() throws Exception {
+		this.downloader = new DictionaryResourceDownloader(this.tempFolder.getRoot(), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS, 4);
+		this.initHttpDictionaryResource(300000);
+		final FlakyHttpServer mirrorServer = new FlakyHttpServer(gzip(this.httpContent));
+		try {
+			this.httpServer.dropConnections(1, 1000);
+			when(this.mockResource.getUrls()).thenReturn(Arrays.asList(this.httpServer.getUrl(), mirrorServer.getUrl()));
+			assertThat(Arrays.equals(this.downloadHttpResource(), this.httpContent), is(true));
+			assertThat(this.httpServer.getRangeHeaders(), hasSize(4));
+			assertThat(mirrorServer.getRangeHeaders(), hasSize(1));
+		} finally {
+			mirrorServer.stop();
+		}
+	}
+
+	private DictionaryResourceDownloader createCachingDownloader(final String partialDirectoryName) throws IOException {
+		final DictionaryArtifactCache cache = new DictionaryArtifactCache(new File(this.tempFolder.getRoot(), "cache"), 1024 * 1024);
+		return new DictionaryResourceDownloader(this.tempFolder.newFolder(partialDirectoryName), DictionaryResourceDownloader.DEFAULT_MAX_ATTEMPTS,
+				DictionaryResourceDownloader.DEFAULT_SEGMENT_COUNT, cache);
+	}
+
+	private byte[] download(final DictionaryResourceDownloader downloader) throws DictionaryResourceDownloaderException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		downloader.download(this.mockResource, baos, this.mockProgressHandler);
+		return baos.toByteArray();
+	}
+
+	@Test
+	public void downloadShouldInstallCachedArtifactWithoutNetworkAccess() throws Exception {
+		this.initHttpDictionaryResource();
+		this.download(this.createCachingDownloader("first"));
+		assertThat(Arrays.equals(this.download(this.createCachingDownloader("second")), this.httpContent), is(true));
+		assertThat(this.httpServer.getRequestCount(), equalTo(1));
+	}
+
+	@Test
+	public void downloadShouldReportCompleteProgressForCachedArtifact() throws Exception {
+		this.initHttpDictionaryResource();
+		final DictionaryResourceDownloader downloader = this.createCachingDownloader("partial");
+		this.download(downloader);
+		this.mockProgressHandler = Mockito.mock(DownloadProgressHandler.class);
+		this.download(downloader);
+		final int size = this.mockResource.getSize();
+		verify(this.mockProgressHandler).handleProgress(size, size);
+	}
+
+	@Test
+	public void downloadShouldDownloadConcurrentInstallsOfSameArtifactOnce() throws Exception {
+		this.initHttpDictionaryResource();
+		this.httpServer.setBytesPerSecond(100000);
+		final DictionaryResourceDownloader first = this.createCachingDownloader("first");
+		final DictionaryResourceDownloader second = this.createCachingDownloader("second");
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<byte[]> firstContent = executor.submit(new Callable<byte[]>() {
+
+				@Override
+				public byte[] call() throws Exception {
+					return DictionaryResourceDownloaderTest.this.download(first);
+				}
+
+			});
+			final Future<byte[]> secondContent = executor.submit(new Callable<byte[]>() {
+
+				@Override
+				public byte[] call() throws Exception {
+					return DictionaryResourceDownloaderTest.this.download(second);
+				}
+
+			});
+			assertThat(Arrays.equals(firstContent.get(), this.httpContent), is(true));
+			assertThat(Arrays.equals(secondContent.get(), this.httpContent), is(true));
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(this.httpServer.getRequestCount(), equalTo(1));
+	}
+
+	@Test
+	public void downloadShouldNotCacheArtifactWithMismatchedChecksum() throws Exception {
+		this.initHttpDictionaryResource();
+		final int size = this.mockResource.getSize();
+		this.mockResource = createMockDictionaryResource(this.httpServer.getUrl(), "abc123", size);
+		final DictionaryResourceDownloader downloader = this.createCachingDownloader("partial");
+		try {
+			this.download(downloader);
+		} catch (final DictionaryResourceDownloaderException e) {
+		}
+		assertThat(new File(this.tempFolder.getRoot(), "cache/abc123.artifact").exists(), is(false));
+		assertThat(downloader.getPartialFile(this.mockResource).exists(), is(false));
+	}
+
+	@Test
+	public void downloadShouldRemoveCorruptCachedArtifact() throws Exception {
+		this.initHttpDictionaryResource();
+		this.download(this.createCachingDownloader("first"));
+		final File cachedFile = new File(this.tempFolder.getRoot(), "cache/" + this.mockResource.getSha1() + ".artifact");
+		final FileOutputStream cachedOut = new FileOutputStream(cachedFile);
+		cachedOut.write(gzip("corrupt"));
+		cachedOut.close();
+		final DictionaryResourceDownloader downloader = this.createCachingDownloader("second");
+		try {
+			this.download(downloader);
+		} catch (final DictionaryResourceDownloaderException e) {
+		}
+		assertThat(cachedFile.exists(), is(false));
+		assertThat(Arrays.equals(this.download(downloader), this.httpContent), is(true));
+	}
+
+	@SuppressWarnings("unused")
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorShouldRejectNonPositiveSegmentCount() {
+		new DictionaryResourceDownloader(this.tempFolder.getRoot(), 1, 0);
+	}
+
+	@SuppressWarnings("unused")
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorShouldRejectNonPositiveMaxAttempts() {
+		new DictionaryResourceDownloader(this.tempFolder.getRoot(), 0);
+	}
+
 }
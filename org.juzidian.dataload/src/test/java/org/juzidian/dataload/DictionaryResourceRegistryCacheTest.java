@@ -0,0 +1,98 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DictionaryResourceRegistryCacheTest {
+
+	private static final long ONE_DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private DictionaryResourceRegistryCache createCache(final long timeToLiveMillis) {
+		return new DictionaryResourceRegistryCache(new File(this.tempFolder.getRoot(), "cache"), timeToLiveMillis);
+	}
+
+	@Test
+	public void getShouldReturnNullWhenNothingIsCached() {
+		assertThat(this.createCache(ONE_DAY_MILLIS).get(3), nullValue());
+	}
+
+	@Test
+	public void getShouldReturnStoredDocumentAndValidators() throws Exception {
+		this.createCache(ONE_DAY_MILLIS).put(3, new byte[] { 1, 2, 3 }, "\"abc\"", "Tue, 15 Oct 2013 08:00:00 GMT");
+		final DictionaryResourceRegistryCache.Entry entry = this.createCache(ONE_DAY_MILLIS).get(3);
+		assertThat(entry.getDocument(), equalTo(new byte[] { 1, 2, 3 }));
+		assertThat(entry.getEtag(), equalTo("\"abc\""));
+		assertThat(entry.getLastModified(), equalTo("Tue, 15 Oct 2013 08:00:00 GMT"));
+	}
+
+	@Test
+	public void getShouldReturnNullValidatorsWhenNoneWereServed() throws Exception {
+		final DictionaryResourceRegistryCache cache = this.createCache(ONE_DAY_MILLIS);
+		cache.put(3, new byte[] { 1 }, null, null);
+		assertThat(cache.get(3).getEtag(), nullValue());
+		assertThat(cache.get(3).getLastModified(), nullValue());
+	}
+
+	@Test
+	public void isFreshShouldReturnTrueWithinTimeToLive() throws Exception {
+		final DictionaryResourceRegistryCache cache = this.createCache(ONE_DAY_MILLIS);
+		cache.put(3, new byte[] { 1 }, null, null);
+		assertThat(cache.isFresh(cache.get(3)), is(true));
+	}
+
+	@Test
+	public void isFreshShouldReturnFalseAfterTimeToLive() throws Exception {
+		final DictionaryResourceRegistryCache cache = this.createCache(0);
+		cache.put(3, new byte[] { 1 }, null, null);
+		assertThat(cache.isFresh(cache.get(3)), is(false));
+	}
+
+	@Test
+	public void revalidatedShouldKeepValidators() throws Exception {
+		final DictionaryResourceRegistryCache cache = this.createCache(ONE_DAY_MILLIS);
+		cache.put(3, new byte[] { 1 }, "\"abc\"", null);
+		cache.revalidated(3, cache.get(3));
+		assertThat(cache.get(3).getEtag(), equalTo("\"abc\""));
+	}
+
+	@Test
+	public void getShouldReturnNullWhenMetadataIsCorrupt() throws Exception {
+		final DictionaryResourceRegistryCache cache = this.createCache(ONE_DAY_MILLIS);
+		cache.put(3, new byte[] { 1 }, null, null);
+		final FileOutputStream outputStream = new FileOutputStream(new File(this.tempFolder.getRoot(), "cache/registry-v3.properties"));
+		outputStream.write("fetchedMillis=garbage".getBytes("ISO-8859-1"));
+		outputStream.close();
+		assertThat(cache.get(3), nullValue());
+	}
+
+}
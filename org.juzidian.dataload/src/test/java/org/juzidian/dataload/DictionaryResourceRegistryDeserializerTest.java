@@ -18,6 +18,7 @@
  */
 package org.juzidian.dataload;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
@@ -63,4 +64,125 @@ public class DictionaryResourceRegistryDeserializerTest {
 		assertThat(dictionaryResource.getUrl(), equalTo("http://test/dict1"));
 	}
 
+	@Test
+	public void deserializeShouldReadCodecAndUncompressedSize() throws Exception {
+		final String xml = "<juzidianDictionaries>\n" +
+				"	  <dictionary formatVersion='3'>\n" +
+				"	    <size>1234</size>\n" +
+				"	    <uncompressedSize>5678</uncompressedSize>\n" +
+				"	    <codec>xz</codec>\n" +
+				"	    <sha1>1234abcd</sha1>\n" +
+				"	    <url>http://test/dict1.xz</url>\n" +
+				"	  </dictionary>\n" +
+				"	</juzidianDictionaries>\n";
+		final DictionaryResource dictionaryResource = this.deserializer.deserialize(new ByteArrayInputStream(xml.getBytes()))
+				.getDictionaryResources().get(0);
+		assertThat(dictionaryResource.getCodec(), equalTo(CompressionCodec.XZ));
+		assertThat(dictionaryResource.getUncompressedSize(), equalTo(5678L));
+	}
+
+	@Test
+	public void deserializeShouldDefaultToGzipWithUnknownUncompressedSize() throws Exception {
+		final String xml = "<juzidianDictionaries>\n" +
+				"	  <dictionary formatVersion='0'>\n" +
+				"	    <size>1234</size>\n" +
+				"	    <sha1>1234abcd</sha1>\n" +
+				"	    <url>http://test/dict1</url>\n" +
+				"	  </dictionary>\n" +
+				"	</juzidianDictionaries>\n";
+		final DictionaryResource dictionaryResource = this.deserializer.deserialize(new ByteArrayInputStream(xml.getBytes()))
+				.getDictionaryResources().get(0);
+		assertThat(dictionaryResource.getCodec(), equalTo(CompressionCodec.GZIP));
+		assertThat(dictionaryResource.getUncompressedSize(), equalTo(-1L));
+	}
+
+	@Test
+	public void deserializeShouldReadEachMirrorUrlInOrder() throws Exception {
+		final String xml = "<juzidianDictionaries>\n" +
+				"	  <dictionary formatVersion='3'>\n" +
+				"	    <size>1234</size>\n" +
+				"	    <sha1>1234abcd</sha1>\n" +
+				"	    <url>http://mirror1/dict1</url>\n" +
+				"	    <url>http://mirror2/dict1</url>\n" +
+				"	  </dictionary>\n" +
+				"	</juzidianDictionaries>\n";
+		final DictionaryResource dictionaryResource = this.deserializer.deserialize(new ByteArrayInputStream(xml.getBytes()))
+				.getDictionaryResources().get(0);
+		assertThat(dictionaryResource.getUrls(), contains("http://mirror1/dict1", "http://mirror2/dict1"));
+		assertThat(dictionaryResource.getUrl(), equalTo("http://mirror1/dict1"));
+	}
+
+	@Test
+	public void deserializeShouldReadSourceVersionAndPatches() throws Exception {
+		final String xml = "<juzidianDictionaries>\n" +
+				"	  <dictionary formatVersion='3'>\n" +
+				"	    <size>1234</size>\n" +
+				"	    <sha1>1234abcd</sha1>\n" +
+				"	    <url>http://test/dict3</url>\n" +
+				"	    <sourceVersion>3</sourceVersion>\n" +
+				"	    <patch>\n" +
+				"	      <fromVersion>2</fromVersion>\n" +
+				"	      <toVersion>3</toVersion>\n" +
+				"	      <size>56</size>\n" +
+				"	      <codec>xz</codec>\n" +
+				"	      <sha1>5678abcd</sha1>\n" +
+				"	      <url>http://test/patch2-3</url>\n" +
+				"	    </patch>\n" +
+				"	  </dictionary>\n" +
+				"	</juzidianDictionaries>\n";
+		final DictionaryResource dictionaryResource = this.deserializer.deserialize(new ByteArrayInputStream(xml.getBytes()))
+				.getDictionaryResources().get(0);
+		assertThat(dictionaryResource.getSourceVersion(), equalTo("3"));
+		assertThat(dictionaryResource.getSha1(), equalTo("1234abcd"));
+		assertThat(dictionaryResource.getUrls(), contains("http://test/dict3"));
+		assertThat(dictionaryResource.getPatches(), hasSize(1));
+		final DictionaryPatchResource patch = dictionaryResource.getPatches().get(0);
+		assertThat(patch.getFromSourceVersion(), equalTo("2"));
+		assertThat(patch.getToSourceVersion(), equalTo("3"));
+		assertThat(patch.getSize(), equalTo(56));
+		assertThat(patch.getCodec(), equalTo(CompressionCodec.XZ));
+		assertThat(patch.getSha1(), equalTo("5678abcd"));
+		assertThat(patch.getUrl(), equalTo("http://test/patch2-3"));
+	}
+
+	@Test
+	public void deserializeShouldReadTiers() throws Exception {
+		final String xml = "<juzidianDictionaries>\n" +
+				"	  <dictionary formatVersion='3'>\n" +
+				"	    <size>1234</size>\n" +
+				"	    <sha1>1234abcd</sha1>\n" +
+				"	    <url>http://test/dict3</url>\n" +
+				"	    <sourceVersion>3</sourceVersion>\n" +
+				"	    <coreTier>\n" +
+				"	      <size>123</size>\n" +
+				"	      <uncompressedSize>456</uncompressedSize>\n" +
+				"	      <sha1>9999abcd</sha1>\n" +
+				"	      <url>http://test/core3</url>\n" +
+				"	      <sourceVersion>3+core</sourceVersion>\n" +
+				"	    </coreTier>\n" +
+				"	    <remainderTier>\n" +
+				"	      <fromVersion>3+core</fromVersion>\n" +
+				"	      <toVersion>3</toVersion>\n" +
+				"	      <size>1111</size>\n" +
+				"	      <sha1>8888abcd</sha1>\n" +
+				"	      <url>http://test/remainder3</url>\n" +
+				"	    </remainderTier>\n" +
+				"	  </dictionary>\n" +
+				"	</juzidianDictionaries>\n";
+		final DictionaryResource dictionaryResource = this.deserializer.deserialize(new ByteArrayInputStream(xml.getBytes()))
+				.getDictionaryResources().get(0);
+		assertThat(dictionaryResource.getSha1(), equalTo("1234abcd"));
+		assertThat(dictionaryResource.getSourceVersion(), equalTo("3"));
+		final DictionaryResource coreTier = dictionaryResource.getCoreTier();
+		assertThat(coreTier.getSize(), equalTo(123));
+		assertThat(coreTier.getUncompressedSize(), equalTo(456L));
+		assertThat(coreTier.getUrl(), equalTo("http://test/core3"));
+		assertThat(coreTier.getSourceVersion(), equalTo("3+core"));
+		final DictionaryPatchResource remainderTier = dictionaryResource.getRemainderTier();
+		assertThat(remainderTier.getFromSourceVersion(), equalTo("3+core"));
+		assertThat(remainderTier.getToSourceVersion(), equalTo("3"));
+		assertThat(remainderTier.getSha1(), equalTo("8888abcd"));
+		assertThat(remainderTier.getUrl(), equalTo("http://test/remainder3"));
+	}
+
 }
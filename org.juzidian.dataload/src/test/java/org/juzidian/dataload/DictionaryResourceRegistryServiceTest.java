@@ -20,16 +20,21 @@ package org.juzidian.dataload;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.net.URL;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.juzidian.dataload.DictionaryResource;
 import org.juzidian.dataload.DictionaryResourceRegistry;
 import org.juzidian.dataload.DictionaryResourceRegistryDeserializer;
@@ -39,14 +44,43 @@ import org.mockito.Mockito;
 
 public class DictionaryResourceRegistryServiceTest {
 
+	private static final String REGISTRY_XML = "<dictionaries><dictionary><url>http://foo/bar</url></dictionary></dictionaries>";
+
+	private static final String UPDATED_REGISTRY_XML = "<dictionaries><dictionary><url>http://foo/baz</url></dictionary></dictionaries>";
+
+	private static final long ONE_DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
 	private DictionaryResourceRegistryService dictionaryResourceRegistryService;
 
+	private DictionaryResourceRegistryDeserializer deserializer;
+
+	private FlakyHttpServer server;
+
 	@Before
 	public void setUp() throws Exception {
 		final SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
-		final DictionaryResourceRegistryDeserializer deserializer = new DictionaryResourceRegistryDeserializer(saxParser);
+		this.deserializer = new DictionaryResourceRegistryDeserializer(saxParser);
 		MockUrlHandler.delegate = Mockito.mock(MockUrlHandler.class);
-		this.dictionaryResourceRegistryService = new DictionaryResourceRegistryService(new URL("mock://localhost/dictionaries/"), deserializer);
+		this.dictionaryResourceRegistryService = new DictionaryResourceRegistryService(new URL("mock://localhost/dictionaries/"), this.deserializer);
+		this.server = new FlakyHttpServer(REGISTRY_XML.getBytes("UTF-8"));
+	}
+
+	@After
+	public void tearDown() {
+		this.server.stop();
+	}
+
+	private DictionaryResourceRegistryService createCachingService(final long timeToLiveMillis) throws Exception {
+		final File cacheDirectory = new File(this.tempFolder.getRoot(), "cache");
+		final DictionaryResourceRegistryCache cache = new DictionaryResourceRegistryCache(cacheDirectory, timeToLiveMillis);
+		return new DictionaryResourceRegistryService(new URL(this.server.getBaseUrl()), this.deserializer, cache);
+	}
+
+	private static String getFirstUrl(final DictionaryResourceRegistry registry) {
+		return registry.getDictionaryResources().get(0).getUrl();
 	}
 
 	@Test
@@ -67,5 +101,68 @@ public class DictionaryResourceRegistryServiceTest {
 		assertThat(dictionaryResource.getUrl(), equalTo("http://foo/bar"));
 	}
 
-}
+	@Test
+	public void getDictionaryResourceRegistryShouldNotRequestFreshCachedRegistry() throws Exception {
+		this.createCachingService(ONE_DAY_MILLIS).getDictionaryResourceRegistry(3);
+		final DictionaryResourceRegistry registry = this.createCachingService(ONE_DAY_MILLIS).getDictionaryResourceRegistry(3);
+		assertThat(getFirstUrl(registry), equalTo("http://foo/bar"));
+		assertThat(this.server.getRequestCount(), equalTo(1));
+	}
 
+	@Test
+	public void getDictionaryResourceRegistryShouldRevalidateStaleRegistryWithEtag() throws Exception {
+		this.server.setEtag("\"v1\"");
+		final DictionaryResourceRegistryService service = this.createCachingService(0);
+		service.getDictionaryResourceRegistry(3);
+		final DictionaryResourceRegistry registry = service.getDictionaryResourceRegistry(3);
+		assertThat(getFirstUrl(registry), equalTo("http://foo/bar"));
+		assertThat(this.server.getRequestCount(), equalTo(2));
+		assertThat(this.server.getNotModifiedResponses(), equalTo(1));
+	}
+
+	@Test
+	public void getDictionaryResourceRegistryShouldRevalidateStaleRegistryWithLastModified() throws Exception {
+		this.server.setLastModified("Tue, 15 Oct 2013 08:00:00 GMT");
+		final DictionaryResourceRegistryService service = this.createCachingService(0);
+		service.getDictionaryResourceRegistry(3);
+		service.getDictionaryResourceRegistry(3);
+		assertThat(this.server.getNotModifiedResponses(), equalTo(1));
+	}
+
+	@Test
+	public void getDictionaryResourceRegistryShouldReplaceChangedRegistry() throws Exception {
+		this.server.setEtag("\"v1\"");
+		final DictionaryResourceRegistryService service = this.createCachingService(0);
+		service.getDictionaryResourceRegistry(3);
+		this.server.setEtag("\"v2\"");
+		this.server.setContent(UPDATED_REGISTRY_XML.getBytes("UTF-8"));
+		assertThat(getFirstUrl(service.getDictionaryResourceRegistry(3)), equalTo("http://foo/baz"));
+		assertThat(getFirstUrl(service.getDictionaryResourceRegistry(3)), equalTo("http://foo/baz"));
+		assertThat(this.server.getNotModifiedResponses(), equalTo(1));
+	}
+
+	@Test
+	public void getDictionaryResourceRegistryShouldUseCachedRegistryWhenOffline() throws Exception {
+		this.createCachingService(0).getDictionaryResourceRegistry(3);
+		final DictionaryResourceRegistryService service = this.createCachingService(0);
+		this.server.stop();
+		assertThat(getFirstUrl(service.getDictionaryResourceRegistry(3)), equalTo("http://foo/bar"));
+	}
+
+	@Test(expected = DictonaryResourceRegistryServiceException.class)
+	public void getDictionaryResourceRegistryShouldFailWhenOfflineWithoutCachedRegistry() throws Exception {
+		final DictionaryResourceRegistryService service = this.createCachingService(0);
+		this.server.stop();
+		service.getDictionaryResourceRegistry(3);
+	}
+
+	@Test
+	public void getDictionaryResourceRegistryShouldCacheEachVersionSeparately() throws Exception {
+		final DictionaryResourceRegistryService service = this.createCachingService(ONE_DAY_MILLIS);
+		service.getDictionaryResourceRegistry(3);
+		service.getDictionaryResourceRegistry(4);
+		assertThat(this.server.getRequestCount(), equalTo(2));
+		assertThat(new File(this.tempFolder.getRoot(), "cache/registry-v4.xml").isFile(), is(true));
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DictionaryUpdatePlannerTest {
+
+	private DictionaryUpdatePlanner planner;
+
+	private DictionaryResourceImpl resource;
+
+	@Before
+	public void setUp() {
+		this.planner = new DictionaryUpdatePlanner();
+		this.resource = new DictionaryResourceImpl();
+		this.resource.setSourceVersion("3");
+		this.resource.setSize(1000);
+	}
+
+	private DictionaryPatchResource addPatch(final String fromVersion, final String toVersion, final int size) {
+		final DictionaryPatchResourceImpl patch = new DictionaryPatchResourceImpl();
+		patch.setFromSourceVersion(fromVersion);
+		patch.setToSourceVersion(toVersion);
+		patch.setSize(size);
+		this.resource.addPatch(patch);
+		return patch;
+	}
+
+	@Test
+	public void planShouldBeEmptyWhenUpToDate() {
+		assertThat(this.planner.plan("3", this.resource), empty());
+	}
+
+	@Test
+	public void planShouldBeEmptyWhenResourceSourceVersionIsUnknown() {
+		this.resource.setSourceVersion(null);
+		assertThat(this.planner.plan("1", this.resource), empty());
+	}
+
+	@Test
+	public void planShouldChainConsecutivePatches() {
+		final DictionaryPatchResource patch1 = this.addPatch("1", "2", 100);
+		final DictionaryPatchResource patch2 = this.addPatch("2", "3", 100);
+		assertThat(this.planner.plan("1", this.resource), contains(patch1, patch2));
+	}
+
+	@Test
+	public void planShouldChooseCheapestChain() {
+		this.addPatch("1", "3", 500);
+		final DictionaryPatchResource patch1 = this.addPatch("1", "2", 100);
+		final DictionaryPatchResource patch2 = this.addPatch("2", "3", 100);
+		assertThat(this.planner.plan("1", this.resource), contains(patch1, patch2));
+	}
+
+	@Test
+	public void planShouldPreferFullDownloadWhenPatchesAreLarger() {
+		this.addPatch("1", "2", 600);
+		this.addPatch("2", "3", 600);
+		assertThat(this.planner.plan("1", this.resource), nullValue());
+	}
+
+	@Test
+	public void planShouldPreferFullDownloadWhenNoChainExists() {
+		this.addPatch("1", "2", 100);
+		assertThat(this.planner.plan("1", this.resource), nullValue());
+	}
+
+	@Test
+	public void planShouldCompleteCoreTierWithRemainderTier() {
+		final DictionaryPatchResourceImpl remainderTier = new DictionaryPatchResourceImpl();
+		remainderTier.setFromSourceVersion("3+core");
+		remainderTier.setToSourceVersion("3");
+		remainderTier.setSize(800);
+		this.resource.setRemainderTier(remainderTier);
+		assertThat(this.planner.plan("3+core", this.resource), contains((DictionaryPatchResource) remainderTier));
+	}
+
+	@Test
+	public void planShouldPreferFullDownloadWhenSourceVersionIsUnknown() {
+		this.addPatch("1", "3", 100);
+		assertThat(this.planner.plan(null, this.resource), nullValue());
+	}
+
+	@Test
+	public void planShouldSkipPatchesWithUnsupportedCodec() {
+		final DictionaryPatchResourceImpl unsupported = (DictionaryPatchResourceImpl) this.addPatch("1", "3", 50);
+		unsupported.setCodec(null);
+		final DictionaryPatchResource patch = this.addPatch("1", "3", 100);
+		assertThat(this.planner.plan("1", this.resource), contains(patch));
+	}
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.juzidian.util.HexUtil;
+
+public class DownloadPipelineTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private byte[] content;
+
+	private byte[] gzipContent;
+
+	private File partialFile;
+
+	private MessageDigest messageDigest;
+
+	private DownloadStatistics statistics;
+
+	@Before
+	public void setUp() throws Exception {
+		this.content = new byte[200000];
+		new Random(1).nextBytes(this.content);
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final GZIPOutputStream gzos = new GZIPOutputStream(baos);
+		gzos.write(this.content);
+		gzos.close();
+		this.gzipContent = baos.toByteArray();
+		this.partialFile = new File(this.tempFolder.getRoot(), "download.part");
+		this.messageDigest = MessageDigest.getInstance("SHA1");
+		this.statistics = new DownloadStatistics();
+	}
+
+	private static void receiveAll(final DownloadPipeline pipeline, final InputStream inputStream) throws IOException {
+		while (pipeline.receive(inputStream) != -1) {
+			/* keep receiving */
+		}
+	}
+
+	private static String sha1(final byte[] data) throws Exception {
+		return HexUtil.bytesToHex(MessageDigest.getInstance("SHA1").digest(data));
+	}
+
+	@Test
+	public void finishShouldWriteInflatedData() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final DownloadPipeline pipeline = new DownloadPipeline(this.messageDigest, out, this.statistics);
+		pipeline.openPartialFile(this.partialFile, false);
+		receiveAll(pipeline, new ByteArrayInputStream(this.gzipContent));
+		pipeline.closePartialFile();
+		pipeline.finish();
+		assertThat(Arrays.equals(out.toByteArray(), this.content), is(true));
+	}
+
+	@Test
+	public void closePartialFileShouldSaveReceivedData() throws Exception {
+		final DownloadPipeline pipeline = new DownloadPipeline(this.messageDigest, new ByteArrayOutputStream(), this.statistics);
+		pipeline.openPartialFile(this.partialFile, false);
+		receiveAll(pipeline, new ByteArrayInputStream(this.gzipContent));
+		pipeline.closePartialFile();
+		assertThat(this.partialFile.length(), equalTo((long) this.gzipContent.length));
+		pipeline.finish();
+	}
+
+	@Test
+	public void finishShouldDigestReceivedData() throws Exception {
+		final DownloadPipeline pipeline = new DownloadPipeline(this.messageDigest, new ByteArrayOutputStream(), this.statistics);
+		pipeline.openPartialFile(this.partialFile, false);
+		receiveAll(pipeline, new ByteArrayInputStream(this.gzipContent));
+		pipeline.closePartialFile();
+		pipeline.finish();
+		assertThat(HexUtil.bytesToHex(this.messageDigest.digest()), equalTo(sha1(this.gzipContent)));
+	}
+
+	@Test
+	public void finishShouldNotWriteRestartedDataTwice() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final DownloadPipeline pipeline = new DownloadPipeline(this.messageDigest, out, this.statistics);
+		pipeline.openPartialFile(this.partialFile, false);
+		receiveAll(pipeline, new ByteArrayInputStream(this.gzipContent, 0, 50000));
+		pipeline.closePartialFile();
+		pipeline.openPartialFile(this.partialFile, false);
+		receiveAll(pipeline, new ByteArrayInputStream(this.gzipContent));
+		pipeline.closePartialFile();
+		pipeline.finish();
+		assertThat(Arrays.equals(out.toByteArray(), this.content), is(true));
+		assertThat(HexUtil.bytesToHex(this.messageDigest.digest()), equalTo(sha1(this.gzipContent)));
+	}
+
+	@Test
+	public void replayShouldInflateDataSavedInPartialFile() throws Exception {
+		final DownloadPipeline first = new DownloadPipeline(this.messageDigest, new ByteArrayOutputStream(), this.statistics);
+		first.openPartialFile(this.partialFile, false);
+		receiveAll(first, new ByteArrayInputStream(this.gzipContent, 0, 50000));
+		first.closePartialFile();
+		first.abort();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final MessageDigest messageDigest = MessageDigest.getInstance("SHA1");
+		final DownloadPipeline second = new DownloadPipeline(messageDigest, out, this.statistics);
+		second.replay(this.partialFile);
+		second.openPartialFile(this.partialFile, true);
+		receiveAll(second, new ByteArrayInputStream(this.gzipContent, 50000, this.gzipContent.length - 50000));
+		second.closePartialFile();
+		second.finish();
+		assertThat(Arrays.equals(out.toByteArray(), this.content), is(true));
+		assertThat(HexUtil.bytesToHex(messageDigest.digest()), equalTo(sha1(this.gzipContent)));
+	}
+
+	@Test
+	public void finishShouldWriteStoredDataUnchanged() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final DownloadPipeline pipeline = new DownloadPipeline(this.messageDigest, out, this.statistics);
+		pipeline.openPartialFile(this.partialFile, false);
+		receiveAll(pipeline, new ByteArrayInputStream(this.content));
+		pipeline.closePartialFile();
+		pipeline.finish();
+		assertThat(Arrays.equals(out.toByteArray(), this.content), is(true));
+	}
+
+	@Test
+	public void finishShouldRecordStageStatistics() throws Exception {
+		final DownloadPipeline pipeline = new DownloadPipeline(this.messageDigest, new ByteArrayOutputStream(), this.statistics);
+		pipeline.openPartialFile(this.partialFile, false);
+		receiveAll(pipeline, new ByteArrayInputStream(this.gzipContent));
+		pipeline.closePartialFile();
+		pipeline.finish();
+		assertThat(this.statistics.getCompressedBytes(), equalTo((long) this.gzipContent.length));
+		assertThat(this.statistics.getInflatedBytes(), equalTo((long) this.content.length));
+	}
+
+	@Test(expected = IOException.class)
+	public void finishShouldFailWhenCompressedDataIsTruncated() throws Exception {
+		final DownloadPipeline pipeline = new DownloadPipeline(this.messageDigest, new ByteArrayOutputStream(), this.statistics);
+		pipeline.openPartialFile(this.partialFile, false);
+		receiveAll(pipeline, new ByteArrayInputStream(this.gzipContent, 0, this.gzipContent.length / 2));
+		pipeline.closePartialFile();
+		pipeline.finish();
+	}
+
+	@Test
+	public void receiveShouldFailWhenOutputFails() throws Exception {
+		final OutputStream out = new OutputStream() {
+
+			@Override
+			public void write(final int b) throws IOException {
+				throw new IOException("disk full");
+			}
+
+		};
+		final DownloadPipeline pipeline = new DownloadPipeline(this.messageDigest, out, this.statistics);
+		pipeline.openPartialFile(this.partialFile, false);
+		try {
+			for (;;) {
+				receiveAll(pipeline, new ByteArrayInputStream(this.gzipContent));
+			}
+		} catch (final DownloadPipeline.StageFailedException e) {
+			assertThat(e.getMessage(), equalTo("disk full"));
+		}
+		assertThat(pipeline.hasFailed(), is(true));
+	}
+
+	@Test
+	public void abortShouldCloseOutput() throws Exception {
+		final AtomicBoolean closed = new AtomicBoolean();
+		final OutputStream out = new ByteArrayOutputStream() {
+
+			@Override
+			public void close() throws IOException {
+				closed.set(true);
+			}
+
+		};
+		final DownloadPipeline pipeline = new DownloadPipeline(this.messageDigest, out, this.statistics);
+		pipeline.abort();
+		for (int i = 0; i < 50 && !closed.get(); i++) {
+			Thread.sleep(10);
+		}
+		assertThat(closed.get(), is(true));
+		assertThat(pipeline.hasFailed(), is(false));
+	}
+
+}
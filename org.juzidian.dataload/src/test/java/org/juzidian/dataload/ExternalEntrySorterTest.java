@@ -0,0 +1,237 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.juzidian.core.DictionaryDataStore;
+import org.juzidian.core.DictionaryDataStoreBatchStatistics;
+import org.juzidian.core.DictionaryEntry;
+import org.juzidian.core.DictionaryEntryFlag;
+import org.juzidian.core.DictionaryEntryReference;
+import org.juzidian.pinyin.PinyinSyllable;
+import org.juzidian.pinyin.Tone;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class ExternalEntrySorterTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private DictionaryDataStore dictionaryDataStore;
+
+	private List<List<DictionaryEntry>> addedBatches;
+
+	private ExternalEntrySorter entrySorter;
+
+	private DictionaryLoadStatistics statistics;
+
+	@Before
+	public void setUp() {
+		this.addedBatches = new ArrayList<List<DictionaryEntry>>();
+		this.statistics = new DictionaryLoadStatistics();
+		this.dictionaryDataStore = mock(DictionaryDataStore.class);
+		when(this.dictionaryDataStore.getEntryId(any(DictionaryEntry.class))).thenAnswer(new Answer<Long>() {
+
+			@Override
+			public Long answer(final InvocationOnMock invocation) throws Throwable {
+				final DictionaryEntry entry = (DictionaryEntry) invocation.getArguments()[0];
+				return Long.valueOf(entry.getSimplified().codePointAt(0));
+			}
+
+		});
+		doAnswer(new Answer<DictionaryDataStoreBatchStatistics>() {
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public DictionaryDataStoreBatchStatistics answer(final InvocationOnMock invocation) throws Throwable {
+				final List<DictionaryEntry> batch = new ArrayList<DictionaryEntry>((Collection<DictionaryEntry>) invocation.getArguments()[0]);
+				ExternalEntrySorterTest.this.addedBatches.add(batch);
+				return new DictionaryDataStoreBatchStatistics(batch.size(), 0, 0);
+			}
+
+		}).when(this.dictionaryDataStore).add(any(Collection.class));
+	}
+
+	@After
+	public void tearDown() {
+		if (this.entrySorter != null) {
+			this.entrySorter.close();
+		}
+	}
+
+	private void createSorter(final int maxEntriesInMemory) {
+		this.entrySorter = new ExternalEntrySorter(this.dictionaryDataStore, maxEntriesInMemory, this.tempFolder.getRoot(),
+				this.statistics);
+	}
+
+	private void addEntries(final String... simplified) throws Exception {
+		for (final String characters : simplified) {
+			this.entrySorter.add(createEntry(characters, characters));
+		}
+	}
+
+	private static DictionaryEntry createEntry(final String simplified, final String definition) {
+		return new DictionaryEntry(simplified, simplified, Arrays.asList(new PinyinSyllable("a", Tone.FIRST)), Arrays.asList(definition));
+	}
+
+	private List<String> getAddedSimplified() {
+		final List<String> simplified = new ArrayList<String>();
+		for (final List<DictionaryEntry> batch : this.addedBatches) {
+			for (final DictionaryEntry entry : batch) {
+				simplified.add(entry.getSimplified());
+			}
+		}
+		return simplified;
+	}
+
+	private List<String> getAddedDefinitions() {
+		final List<String> definitions = new ArrayList<String>();
+		for (final List<DictionaryEntry> batch : this.addedBatches) {
+			for (final DictionaryEntry entry : batch) {
+				definitions.addAll(entry.getDefinitions());
+			}
+		}
+		return definitions;
+	}
+
+	@Test
+	public void addSortedEntriesShouldAddEntriesInKeyOrderWhenHeldInMemory() throws Exception {
+		this.createSorter(10);
+		this.addEntries("c", "a", "d", "b");
+		this.entrySorter.addSortedEntries();
+		assertThat(this.entrySorter.getRunCount(), equalTo(0));
+		assertThat(this.getAddedSimplified(), contains("a", "b", "c", "d"));
+	}
+
+	@Test
+	public void addSortedEntriesShouldAddEntriesInKeyOrderWhenSpilledToDisk() throws Exception {
+		this.createSorter(2);
+		this.addEntries("e", "c", "a", "d", "b");
+		this.entrySorter.addSortedEntries();
+		assertThat(this.entrySorter.getRunCount(), equalTo(3));
+		assertThat(this.getAddedSimplified(), contains("a", "b", "c", "d", "e"));
+	}
+
+	@Test
+	public void addSortedEntriesShouldAddBatchesNoLargerThanMaxEntriesInMemory() throws Exception {
+		this.createSorter(2);
+		this.addEntries("e", "c", "a", "d", "b");
+		this.entrySorter.addSortedEntries();
+		assertThat(this.addedBatches, hasSize(3));
+		for (final List<DictionaryEntry> batch : this.addedBatches) {
+			assertThat(batch.size(), lessThanOrEqualTo(2));
+		}
+	}
+
+	@Test
+	public void addSortedEntriesShouldRecordInsertedEntries() throws Exception {
+		this.createSorter(2);
+		this.addEntries("e", "c", "a", "d", "b");
+		this.entrySorter.addSortedEntries();
+		assertThat(this.statistics.getInsertedEntryCount(), equalTo(5L));
+		assertThat(this.statistics.toProperties().getProperty("insert.batches"), equalTo("3"));
+	}
+
+	@Test
+	public void addSortedEntriesShouldKeepAddedOrderOfEntriesWithEqualKeys() throws Exception {
+		this.createSorter(2);
+		this.entrySorter.add(createEntry("b", "first"));
+		this.entrySorter.add(createEntry("a", "other"));
+		this.entrySorter.add(createEntry("b", "second"));
+		this.entrySorter.add(createEntry("b", "third"));
+		this.entrySorter.addSortedEntries();
+		assertThat(this.getAddedDefinitions(), contains("other", "first", "second", "third"));
+	}
+
+	@Test
+	public void addSortedEntriesShouldAddEntriesWithEqualKeysInOneBatch() throws Exception {
+		this.createSorter(2);
+		this.addEntries("b", "a", "b", "c", "b");
+		this.entrySorter.addSortedEntries();
+		assertThat(this.getAddedSimplified(), contains("a", "b", "b", "b", "c"));
+		int batchesWithKey = 0;
+		for (final List<DictionaryEntry> batch : this.addedBatches) {
+			for (final DictionaryEntry entry : batch) {
+				if (entry.getSimplified().equals("b")) {
+					batchesWithKey += 1;
+					break;
+				}
+			}
+		}
+		assertThat(batchesWithKey, equalTo(1));
+	}
+
+	@Test
+	public void addSortedEntriesShouldPreserveEntryContentInRunFiles() throws Exception {
+		this.createSorter(1);
+		final List<PinyinSyllable> pinyin = Arrays.asList(new PinyinSyllable("nü", Tone.THIRD), new PinyinSyllable("er", Tone.NEUTRAL),
+				new PinyinSyllable("U", Tone.ANY));
+		final List<DictionaryEntryReference> references = Arrays.asList(new DictionaryEntryReference(DictionaryEntryReference.Type.CLASSIFIER,
+				"個", "个", Arrays.asList(new PinyinSyllable("ge", Tone.FOURTH))));
+		final Set<DictionaryEntryFlag> flags = EnumSet.of(DictionaryEntryFlag.VARIANT, DictionaryEntryFlag.ERHUA);
+		this.entrySorter.add(new DictionaryEntry(null, "女儿", pinyin, Arrays.asList("daughter", "girl"), references, flags));
+		this.entrySorter.addSortedEntries();
+		final DictionaryEntry entry = this.addedBatches.get(0).get(0);
+		assertThat(entry.getTraditional(), nullValue());
+		assertThat(entry.getSimplified(), equalTo("女儿"));
+		assertThat(entry.getPinyin(), equalTo(pinyin));
+		assertThat(entry.getDefinitions(), contains("daughter", "girl"));
+		assertThat(entry.getReferences(), equalTo(references));
+		assertThat(entry.getFlags(), equalTo(flags));
+	}
+
+	@Test
+	public void closeShouldDeleteRunFiles() throws Exception {
+		this.createSorter(1);
+		this.addEntries("b", "a");
+		this.entrySorter.addSortedEntries();
+		this.entrySorter.close();
+		assertThat(this.tempFolder.getRoot().listFiles(), emptyArray());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorShouldRejectNonPositiveMaxEntriesInMemory() {
+		this.createSorter(0);
+	}
+
+}
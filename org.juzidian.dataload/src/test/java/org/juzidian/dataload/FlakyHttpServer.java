@@ -0,0 +1,319 @@
+/*
+ * Copyright Nathan Jones 2013
+ * 
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.dataload;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded HTTP server that serves fixed content, optionally honouring
+ * <code>Range</code> requests and conditional requests, limiting the bandwidth
+ * of each connection and dropping connections part way through a response.
+ */
+class FlakyHttpServer {
+
+	private static final int HTTP_OK = 200;
+
+	private static final int HTTP_PARTIAL = 206;
+
+	private static final int HTTP_NOT_MODIFIED = 304;
+
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+	private volatile byte[] content;
+
+	private volatile String etag;
+
+	private volatile String lastModified;
+
+	private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+	private final HttpServer server;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	private final AtomicInteger activeConnections = new AtomicInteger();
+
+	private final AtomicInteger peakConnections = new AtomicInteger();
+
+	private volatile int bytesPerSecond;
+
+	private final List<String> rangeHeaders = Collections.synchronizedList(new ArrayList<String>());
+
+	private volatile boolean rangeSupported = true;
+
+	private int connectionsToDrop;
+
+	private int dropAfterBytes;
+
+	private int requestsToReject;
+
+	private int rejectionStatus;
+
+	public FlakyHttpServer(final byte[] content) throws IOException {
+		this.content = content;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/", new ContentHandler());
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	public String getUrl() {
+		return this.getBaseUrl() + "dictionary.db.gz";
+	}
+
+	/**
+	 * @return the URL of the server root. The content is served at any path.
+	 */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/";
+	}
+
+	/**
+	 * @param content the content to serve from now on.
+	 */
+	public void setContent(final byte[] content) {
+		this.content = content;
+	}
+
+	/**
+	 * @param etag the <code>ETag</code> to serve the content with, or
+	 *        <code>null</code> for none. Requests with a matching
+	 *        <code>If-None-Match</code> header are answered with 304.
+	 */
+	public void setEtag(final String etag) {
+		this.etag = etag;
+	}
+
+	/**
+	 * @param lastModified the <code>Last-Modified</code> date to serve the
+	 *        content with, or <code>null</code> for none. Requests with a
+	 *        matching <code>If-Modified-Since</code> header are answered with
+	 *        304.
+	 */
+	public void setLastModified(final String lastModified) {
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * @return the number of requests received.
+	 */
+	public int getRequestCount() {
+		return this.rangeHeaders.size();
+	}
+
+	/**
+	 * @return the number of requests answered with 304 Not Modified.
+	 */
+	public int getNotModifiedResponses() {
+		return this.notModifiedResponses.get();
+	}
+
+	/**
+	 * @param rangeSupported <code>false</code> to respond to range requests
+	 *        with the complete content.
+	 */
+	public void setRangeSupported(final boolean rangeSupported) {
+		this.rangeSupported = rangeSupported;
+	}
+
+	/**
+	 * Close the next connections after sending some of the response body.
+	 * 
+	 * @param connections the number of connections to drop.
+	 * @param afterBytes the number of body bytes to send before dropping.
+	 */
+	public synchronized void dropConnections(final int connections, final int afterBytes) {
+		this.connectionsToDrop = connections;
+		this.dropAfterBytes = afterBytes;
+	}
+
+	/**
+	 * Respond to the next requests with an error status instead of content.
+	 * 
+	 * @param requests the number of requests to reject.
+	 * @param status the HTTP status to respond with.
+	 */
+	public synchronized void rejectRequests(final int requests, final int status) {
+		this.requestsToReject = requests;
+		this.rejectionStatus = status;
+	}
+
+	/**
+	 * @param bytesPerSecond the maximum rate to send each response body at, or
+	 *        0 for no limit.
+	 */
+	public void setBytesPerSecond(final int bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * @return the largest number of requests that were handled concurrently.
+	 */
+	public int getPeakConnections() {
+		return this.peakConnections.get();
+	}
+
+	/**
+	 * @return the <code>Range</code> header of each request received, or
+	 *         <code>null</code> for requests without one.
+	 */
+	public List<String> getRangeHeaders() {
+		return new ArrayList<String>(this.rangeHeaders);
+	}
+
+	public void stop() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	private class ContentHandler implements HttpHandler {
+
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			final int connections = FlakyHttpServer.this.activeConnections.incrementAndGet();
+			try {
+				updatePeak(connections);
+				this.respond(exchange);
+			} finally {
+				FlakyHttpServer.this.activeConnections.decrementAndGet();
+			}
+		}
+
+		private void updatePeak(final int connections) {
+			int peak;
+			while ((peak = FlakyHttpServer.this.peakConnections.get()) < connections) {
+				if (FlakyHttpServer.this.peakConnections.compareAndSet(peak, connections)) {
+					return;
+				}
+			}
+		}
+
+		private void respond(final HttpExchange exchange) throws IOException {
+			final byte[] content = FlakyHttpServer.this.content;
+			final String range = exchange.getRequestHeaders().getFirst("Range");
+			FlakyHttpServer.this.rangeHeaders.add(range);
+			if (this.isNotModified(exchange)) {
+				FlakyHttpServer.this.notModifiedResponses.incrementAndGet();
+				exchange.sendResponseHeaders(HTTP_NOT_MODIFIED, -1);
+				exchange.close();
+				return;
+			}
+			if (this.isRejected(exchange)) {
+				return;
+			}
+			this.setValidators(exchange);
+			int start = 0;
+			int end = content.length;
+			if (range != null && FlakyHttpServer.this.rangeSupported) {
+				final String[] bounds = range.substring("bytes=".length()).split("-", -1);
+				start = Integer.parseInt(bounds[0]);
+				if (bounds[1].length() > 0) {
+					end = Math.min(end, Integer.parseInt(bounds[1]) + 1);
+				}
+				if (start >= content.length) {
+					exchange.sendResponseHeaders(HTTP_RANGE_NOT_SATISFIABLE, -1);
+					exchange.close();
+					return;
+				}
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + content.length);
+				exchange.sendResponseHeaders(HTTP_PARTIAL, end - start);
+			} else {
+				exchange.sendResponseHeaders(HTTP_OK, content.length);
+			}
+			int sendEnd = end;
+			synchronized (FlakyHttpServer.this) {
+				if (FlakyHttpServer.this.connectionsToDrop > 0) {
+					FlakyHttpServer.this.connectionsToDrop -= 1;
+					sendEnd = Math.min(end, start + FlakyHttpServer.this.dropAfterBytes);
+				}
+			}
+			try {
+				this.send(exchange.getResponseBody(), content, start, sendEnd);
+			} finally {
+				/* closing before the full length is written drops the connection */
+				exchange.close();
+			}
+		}
+
+		private boolean isRejected(final HttpExchange exchange) throws IOException {
+			final int status;
+			synchronized (FlakyHttpServer.this) {
+				if (FlakyHttpServer.this.requestsToReject == 0) {
+					return false;
+				}
+				FlakyHttpServer.this.requestsToReject -= 1;
+				status = FlakyHttpServer.this.rejectionStatus;
+			}
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+			return true;
+		}
+
+		private boolean isNotModified(final HttpExchange exchange) {
+			final String etag = FlakyHttpServer.this.etag;
+			final String lastModified = FlakyHttpServer.this.lastModified;
+			final String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			final String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+			if (ifNoneMatch != null) {
+				return ifNoneMatch.equals(etag);
+			}
+			return ifModifiedSince != null && ifModifiedSince.equals(lastModified);
+		}
+
+		private void setValidators(final HttpExchange exchange) {
+			if (FlakyHttpServer.this.etag != null) {
+				exchange.getResponseHeaders().set("ETag", FlakyHttpServer.this.etag);
+			}
+			if (FlakyHttpServer.this.lastModified != null) {
+				exchange.getResponseHeaders().set("Last-Modified", FlakyHttpServer.this.lastModified);
+			}
+		}
+
+		private void send(final OutputStream body, final byte[] content, final int start, final int end) throws IOException {
+			final int bytesPerSecond = FlakyHttpServer.this.bytesPerSecond;
+			final int chunkSize = bytesPerSecond > 0 ? Math.max(1, bytesPerSecond / 20) : end - start;
+			for (int offset = start; offset < end; offset += chunkSize) {
+				body.write(content, offset, Math.min(chunkSize, end - offset));
+				body.flush();
+				if (bytesPerSecond > 0) {
+					try {
+						Thread.sleep(1000L * chunkSize / bytesPerSecond);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that replaces a file only once everything has been
+ * written to it.
+ * <p>
+ * Bytes are written to a sibling file in the same directory as the target.
+ * Closing the stream flushes and syncs the sibling file to disk, but leaves the
+ * target untouched; {@link #commit()} then renames the sibling file over the
+ * target. Because the rename happens within one directory it is atomic on the
+ * file systems we care about, so readers of the target see either the old
+ * content or the new content, never a partially written file.
+ * <p>
+ * Callers should always {@link #discard()} in a <code>finally</code> block;
+ * discarding a committed stream does nothing.
+ */
+public class AtomicFileOutputStream extends OutputStream {
+
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	private final File file;
+
+	private final File tempFile;
+
+	private final FileOutputStream outputStream;
+
+	private boolean closed;
+
+	private boolean committed;
+
+	/**
+	 * @param file the file to replace when the stream is committed.
+	 * @throws IOException if the sibling file can not be created.
+	 */
+	public AtomicFileOutputStream(final File file) throws IOException {
+		this.file = file;
+		this.tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + TEMP_FILE_SUFFIX);
+		this.outputStream = new FileOutputStream(this.tempFile);
+	}
+
+	/**
+	 * @return the sibling file that bytes are written to before commit.
+	 */
+	public File getTempFile() {
+		return this.tempFile;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		this.outputStream.write(b);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		this.outputStream.write(b, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		this.outputStream.flush();
+	}
+
+	/**
+	 * Flush and sync the written bytes to disk without replacing the target
+	 * file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			this.outputStream.flush();
+			this.outputStream.getFD().sync();
+		} finally {
+			this.outputStream.close();
+		}
+	}
+
+	/**
+	 * Close the stream if necessary and rename the written file over the
+	 * target file.
+	 * <p>
+	 * Platforms that can not rename over an existing file have the target
+	 * deleted first, in which case the replacement is not atomic.
+	 *
+	 * @throws IOException if the written file could not be synced or renamed.
+	 */
+	public void commit() throws IOException {
+		if (this.committed) {
+			return;
+		}
+		this.close();
+		if (!this.tempFile.renameTo(this.file)) {
+			if (!this.file.delete() || !this.tempFile.renameTo(this.file)) {
+				throw new IOException("Failed to rename " + this.tempFile + " to " + this.file);
+			}
+		}
+		this.committed = true;
+	}
+
+	/**
+	 * Close the stream and delete the written file, leaving the target file
+	 * untouched. Does nothing if the stream has been committed.
+	 */
+	public void discard() {
+		if (this.committed) {
+			return;
+		}
+		try {
+			this.close();
+		} catch (final IOException e) {
+			/* the written file is being thrown away anyway */
+		}
+		this.tempFile.delete();
+	}
+
+}
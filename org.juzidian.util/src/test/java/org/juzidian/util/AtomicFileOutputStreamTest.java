@@ -0,0 +1,123 @@
+/*
+ * Copyright Nathan Jones 2013
+ *
+ * This file is part of Juzidian.
+ *
+ * Juzidian is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Juzidian is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Juzidian.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.juzidian.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AtomicFileOutputStreamTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		this.file = new File(this.tempFolder.getRoot(), "target.db");
+		writeFile(this.file, "old");
+	}
+
+	private static void writeFile(final File file, final String content) throws IOException {
+		final FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content.getBytes("UTF-8"));
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	private static String readFile(final File file) throws IOException {
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		IoUtil.copy(new FileInputStream(file), outputStream);
+		return outputStream.toString("UTF-8");
+	}
+
+	@Test
+	public void closeShouldNotReplaceTargetFile() throws Exception {
+		final AtomicFileOutputStream outputStream = new AtomicFileOutputStream(this.file);
+		outputStream.write("new".getBytes("UTF-8"));
+		outputStream.close();
+		Assert.assertThat(readFile(this.file), Matchers.equalTo("old"));
+	}
+
+	@Test
+	public void commitShouldReplaceTargetFile() throws Exception {
+		final AtomicFileOutputStream outputStream = new AtomicFileOutputStream(this.file);
+		outputStream.write("new".getBytes("UTF-8"));
+		outputStream.commit();
+		Assert.assertThat(readFile(this.file), Matchers.equalTo("new"));
+	}
+
+	@Test
+	public void commitShouldCreateMissingTargetFile() throws Exception {
+		this.file.delete();
+		final AtomicFileOutputStream outputStream = new AtomicFileOutputStream(this.file);
+		outputStream.write("new".getBytes("UTF-8"));
+		outputStream.commit();
+		Assert.assertThat(readFile(this.file), Matchers.equalTo("new"));
+	}
+
+	@Test
+	public void commitShouldRemoveTempFile() throws Exception {
+		final AtomicFileOutputStream outputStream = new AtomicFileOutputStream(this.file);
+		outputStream.write("new".getBytes("UTF-8"));
+		outputStream.commit();
+		Assert.assertThat(outputStream.getTempFile().exists(), Matchers.equalTo(false));
+	}
+
+	@Test
+	public void commitShouldSucceedAfterStreamClosedByCopy() throws Exception {
+		final AtomicFileOutputStream outputStream = new AtomicFileOutputStream(this.file);
+		final File source = this.tempFolder.newFile("source");
+		writeFile(source, "copied");
+		IoUtil.copy(new FileInputStream(source), outputStream);
+		outputStream.commit();
+		Assert.assertThat(readFile(this.file), Matchers.equalTo("copied"));
+	}
+
+	@Test
+	public void discardShouldLeaveTargetFileAndRemoveTempFile() throws Exception {
+		final AtomicFileOutputStream outputStream = new AtomicFileOutputStream(this.file);
+		outputStream.write("new".getBytes("UTF-8"));
+		outputStream.discard();
+		Assert.assertThat(readFile(this.file), Matchers.equalTo("old"));
+		Assert.assertThat(outputStream.getTempFile().exists(), Matchers.equalTo(false));
+	}
+
+	@Test
+	public void discardShouldDoNothingAfterCommit() throws Exception {
+		final AtomicFileOutputStream outputStream = new AtomicFileOutputStream(this.file);
+		outputStream.write("new".getBytes("UTF-8"));
+		outputStream.commit();
+		outputStream.discard();
+		Assert.assertThat(readFile(this.file), Matchers.equalTo("new"));
+	}
+
+}